@@ -26,12 +26,21 @@ package grevend.common;
 
 import grevend.common.jacoco.Generated;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
+ * A value that is computed at most once on first access. A null value is remembered like any
+ * other value, and once loaded the value is read without locking. The computation can optionally
+ * be started ahead of the first access with {@link #prefetch(Executor)}.
+ *
  * @author David Greven
  * @since 0.2.0
  */
@@ -39,7 +48,9 @@ public class Lazy<E> {
 
     private final Supplier<E> supplier;
 
-    private volatile E element;
+    private E element;
+    private volatile boolean loaded;
+    private volatile CompletableFuture<E> pending;
 
     /**
      * @param supplier
@@ -51,6 +62,19 @@ public class Lazy<E> {
         this.supplier = supplier;
     }
 
+    /**
+     * @param supplier
+     * @param element
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    private Lazy(@NotNull final Supplier<E> supplier, @Nullable E element) {
+        this.supplier = supplier;
+        this.element = element;
+        this.loaded = true;
+    }
+
     /**
      * @param supplier
      * @param <E>
@@ -76,7 +100,7 @@ public class Lazy<E> {
     @NotNull
     @Contract(value = "_ -> new", pure = true)
     public static <E> Lazy<E> of(@NotNull final E value) {
-        return new Lazy<>(() -> value);
+        return new Lazy<>(() -> value, value);
     }
 
     /**
@@ -85,11 +109,63 @@ public class Lazy<E> {
      * @since 0.2.0
      */
     @Nullable
-    public synchronized E get() {
-        if (this.element == null) {
-            this.element = this.supplier.get();
+    public E get() {
+        if (this.loaded) {
+            return this.element;
+        }
+        synchronized (this) {
+            if (!this.loaded) {
+                var pending = this.pending;
+                E element = null;
+                var prefetched = false;
+                if (pending != null) {
+                    try {
+                        element = pending.join();
+                        prefetched = true;
+                    } catch (CompletionException | CancellationException ignored) {
+                    }
+                    this.pending = null;
+                }
+                this.element = prefetched ? element : this.supplier.get();
+                this.loaded = true;
+            }
+            return this.element;
+        }
+    }
+
+    /**
+     * Starts computing the value on the given executor unless it is already loaded or being
+     * prefetched. A failed prefetch is retried on the first access.
+     *
+     * @param executor
+     *
+     * @return this
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public Lazy<E> prefetch(@NotNull Executor executor) {
+        if (!this.loaded && this.pending == null) {
+            synchronized (this) {
+                if (!this.loaded && this.pending == null) {
+                    try {
+                        this.pending = CompletableFuture.supplyAsync(this.supplier, executor);
+                    } catch (RejectedExecutionException ignored) {
+                    }
+                }
+            }
         }
-        return this.element;
+        return this;
+    }
+
+    /**
+     * @return True if the value has been computed.
+     *
+     * @since 0.6.9
+     */
+    public boolean isLoaded() {
+        return this.loaded;
     }
 
     /**
@@ -129,7 +205,7 @@ public class Lazy<E> {
     @NotNull
     @Override
     public String toString() {
-        return "Lazy{element=" + this.element + '}';
+        return "Lazy{element=" + (this.loaded ? this.element : null) + '}';
     }
 
 }
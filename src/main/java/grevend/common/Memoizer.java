@@ -24,30 +24,279 @@
 
 package grevend.common;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
 
+/**
+ * Thread-safe memoization of functions. Reads of computed values are lock-free and concurrent
+ * callers for the same key share a single computation. Memoized functions can optionally be
+ * bounded in size, evicting the oldest computed values first, and expire values after a fixed
+ * time since they have been computed. Keys must not be null.
+ *
+ * @author David Greven
+ * @since 0.2.0
+ */
 public final class Memoizer {
 
+    /**
+     * @param function
+     * @param <T>
+     * @param <R>
+     *
+     * @return An unbounded memoization of the given function.
+     *
+     * @since 0.2.0
+     */
     @NotNull
     @Contract(value = "_ -> new", pure = true)
-    public static <T, R> Function<T, R> memoize(@NotNull final Function<T, R> function) {
-        return new Function<>() {
+    public static <T, R> Memoized<T, R> memoize(@NotNull final Function<T, R> function) {
+        return new Memoized<>(function, 0, 0);
+    }
+
+    /**
+     * @param function
+     * @param maximumSize The maximum number of memoized values, zero for no bound.
+     * @param <T>
+     * @param <R>
+     *
+     * @return A bounded memoization of the given function.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(value = "_, _ -> new", pure = true)
+    public static <T, R> Memoized<T, R> memoize(@NotNull final Function<T, R> function, @Range(from = 0, to = Integer.MAX_VALUE) int maximumSize) {
+        return new Memoized<>(function, maximumSize, 0);
+    }
+
+    /**
+     * @param function
+     * @param maximumSize The maximum number of memoized values, zero for no bound.
+     * @param ttl         The time after which a memoized value is computed again, zero for no
+     *                    expiration.
+     * @param unit
+     * @param <T>
+     * @param <R>
+     *
+     * @return A bounded memoization of the given function with expiring values.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(value = "_, _, _, _ -> new", pure = true)
+    public static <T, R> Memoized<T, R> memoize(@NotNull final Function<T, R> function, @Range(from = 0, to = Integer.MAX_VALUE) int maximumSize, @Range(from = 0, to = Long.MAX_VALUE) long ttl, @NotNull TimeUnit unit) {
+        return new Memoized<>(function, maximumSize, unit.toNanos(ttl));
+    }
+
+    /**
+     * @param <T>
+     * @param <R>
+     *
+     * @author David Greven
+     * @see Memoizer
+     * @since 0.6.9
+     */
+    public static final class Memoized<T, R> implements Function<T, R> {
+
+        private final Function<T, R> function;
+        private final int maximumSize;
+        private final long ttlNanos;
+        private final ConcurrentHashMap<T, Entry<T, R>> cache;
+        private final ArrayDeque<Entry<T, R>> order;
+        private final LongAdder hits, misses;
+
+        /**
+         * @param function
+         * @param maximumSize
+         * @param ttlNanos
+         *
+         * @since 0.6.9
+         */
+        private Memoized(@NotNull Function<T, R> function, int maximumSize, long ttlNanos) {
+            if (maximumSize < 0 || ttlNanos < 0) {
+                throw new IllegalArgumentException("Size and time to live must not be negative.");
+            }
+            this.function = function;
+            this.maximumSize = maximumSize;
+            this.ttlNanos = ttlNanos;
+            this.cache = new ConcurrentHashMap<>();
+            this.order = new ArrayDeque<>();
+            this.hits = new LongAdder();
+            this.misses = new LongAdder();
+        }
+
+        /**
+         * @param key
+         *
+         * @return The memoized value for the given key, computing it if absent or expired.
+         *
+         * @since 0.6.9
+         */
+        @Override
+        public R apply(@NotNull T key) {
+            while (true) {
+                var entry = this.cache.get(key);
+                if (entry != null) {
+                    if (!entry.expired(this.ttlNanos)) {
+                        (entry.future.isDone() ? this.hits : this.misses).increment();
+                        return entry.value();
+                    }
+                    this.cache.remove(key, entry);
+                    continue;
+                }
+
+                var created = new Entry<T, R>(key);
+                if (this.cache.putIfAbsent(key, created) == null) {
+                    this.misses.increment();
+                    return this.compute(created);
+                }
+            }
+        }
+
+        @Nullable
+        private R compute(@NotNull Entry<T, R> entry) {
+            R value;
+            try {
+                value = this.function.apply(entry.key);
+            } catch (RuntimeException | Error throwable) {
+                this.cache.remove(entry.key, entry);
+                entry.future.completeExceptionally(throwable);
+                throw throwable;
+            }
+            entry.written = System.nanoTime();
+            entry.future.complete(value);
+            if (this.maximumSize > 0) {
+                synchronized (this.order) {
+                    this.order.add(entry);
+                    if (this.order.size() - this.maximumSize > this.maximumSize) {
+                        this.order.removeIf(queued -> this.cache.get(queued.key) != queued);
+                    }
+                    while (this.cache.size() > this.maximumSize && !this.order.isEmpty()) {
+                        var eldest = this.order.poll();
+                        this.cache.remove(eldest.key, eldest);
+                    }
+                }
+            }
+            return value;
+        }
+
+        /**
+         * @param key
+         *
+         * @since 0.6.9
+         */
+        public void invalidate(@NotNull T key) {
+            this.cache.remove(key);
+        }
+
+        /**
+         * @since 0.6.9
+         */
+        public void clear() {
+            this.cache.clear();
+            synchronized (this.order) {
+                this.order.clear();
+            }
+        }
+
+        /**
+         * @return The number of memoized values.
+         *
+         * @since 0.6.9
+         */
+        public int size() {
+            return this.cache.size();
+        }
+
+        /**
+         * @return The number of entries in the eviction order, including those of values that
+         * expired or were invalidated since.
+         *
+         * @since 0.6.9
+         */
+        int queued() {
+            synchronized (this.order) {
+                return this.order.size();
+            }
+        }
+
+        /**
+         * @return The number of calls answered with an already computed value.
+         *
+         * @since 0.6.9
+         */
+        public long hits() {
+            return this.hits.sum();
+        }
+
+        /**
+         * @return The number of calls that computed a value or waited for the computation of a
+         * concurrent call.
+         *
+         * @since 0.6.9
+         */
+        public long misses() {
+            return this.misses.sum();
+        }
+
+    }
+
+    /**
+     * @param <T>
+     * @param <R>
+     *
+     * @author David Greven
+     * @since 0.6.9
+     */
+    private static final class Entry<T, R> {
+
+        private final T key;
+        private final CompletableFuture<R> future;
+        private volatile long written;
+
+        /**
+         * @param key
+         *
+         * @since 0.6.9
+         */
+        @Contract(pure = true)
+        private Entry(@NotNull T key) {
+            this.key = key;
+            this.future = new CompletableFuture<>();
+        }
 
-            private final Map<T, R> cache = new HashMap<>();
+        @Contract(pure = true)
+        private boolean expired(long ttlNanos) {
+            var written = this.written;
+            return ttlNanos > 0 && written != 0 && System.nanoTime() - written > ttlNanos;
+        }
 
-            @Override
-            public R apply(T t) {
-                if (!this.cache.containsKey(t)) {
-                    this.cache.put(t, function.apply(t));
+        @Nullable
+        private R value() {
+            try {
+                return this.future.get();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a value.");
+            } catch (ExecutionException exception) {
+                var cause = exception.getCause();
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
                 }
-                return this.cache.get(t);
+                throw (Error) cause;
             }
+        }
 
-        };
     }
 
 }
@@ -0,0 +1,188 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+/**
+ * A bounded, thread-safe cache with a segmented LRU eviction policy. New entries are admitted to a
+ * probation segment and promoted to a protected segment on their second hit, so that a burst of
+ * one-time reads cannot evict the frequently used entries. Entries are only evicted from the
+ * probation segment, the protected segment is bounded to 80% of the capacity.
+ *
+ * @param <K>
+ * @param <V>
+ *
+ * @author David Greven
+ * @since 0.6.9
+ */
+public final class SegmentedCache<K, V> {
+
+    private final int capacity, protectedCapacity;
+    private final LinkedHashMap<K, Entry<V>> probation, protectedSegment;
+
+    /**
+     * @param capacity The maximum number of entries.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public SegmentedCache(@Range(from = 1, to = Integer.MAX_VALUE) int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.protectedCapacity = capacity * 4 / 5;
+        this.probation = new LinkedHashMap<>(16, 0.75f, true);
+        this.protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param key
+     *
+     * @return The cached value or null if the key is absent or expired.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    public synchronized V get(@NotNull K key) {
+        var entry = this.protectedSegment.get(key);
+        if (entry == null) {
+            entry = this.probation.get(key);
+            if (entry == null) {
+                return null;
+            } else if (!entry.expired()) {
+                this.probation.remove(key);
+                this.protectedSegment.put(key, entry);
+                this.demote();
+            }
+        }
+        if (entry.expired()) {
+            this.invalidate(key);
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * @param key
+     * @param value
+     *
+     * @since 0.6.9
+     */
+    public void put(@NotNull K key, @NotNull V value) {
+        this.put(key, value, 0);
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @param ttl   The time to live in nanoseconds, values less than one disable the expiration.
+     *
+     * @since 0.6.9
+     */
+    public synchronized void put(@NotNull K key, @NotNull V value, long ttl) {
+        var entry = new Entry<>(value, ttl < 1 ? 0 : System.nanoTime() + ttl);
+        if (this.protectedSegment.containsKey(key)) {
+            this.protectedSegment.put(key, entry);
+        } else {
+            this.probation.put(key, entry);
+            this.evict();
+        }
+    }
+
+    /**
+     * @param key
+     *
+     * @since 0.6.9
+     */
+    public synchronized void invalidate(@NotNull K key) {
+        if (this.protectedSegment.remove(key) == null) {
+            this.probation.remove(key);
+        }
+    }
+
+    /**
+     * @param predicate
+     *
+     * @since 0.6.9
+     */
+    public synchronized void invalidateIf(@NotNull Predicate<? super K> predicate) {
+        this.protectedSegment.keySet().removeIf(predicate);
+        this.probation.keySet().removeIf(predicate);
+    }
+
+    /**
+     * @since 0.6.9
+     */
+    public synchronized void clear() {
+        this.protectedSegment.clear();
+        this.probation.clear();
+    }
+
+    /**
+     * @return
+     *
+     * @since 0.6.9
+     */
+    public synchronized int size() {
+        return this.protectedSegment.size() + this.probation.size();
+    }
+
+    private void demote() {
+        while (this.protectedSegment.size() > this.protectedCapacity) {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = this.protectedSegment.entrySet().iterator();
+            var eldest = iterator.next();
+            iterator.remove();
+            this.probation.put(eldest.getKey(), eldest.getValue());
+        }
+        this.evict();
+    }
+
+    private void evict() {
+        var iterator = this.probation.entrySet().iterator();
+        while (this.size() > this.capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static final record Entry<V>(@NotNull V value, long expiresAt) {
+
+        @Contract(pure = true)
+        private boolean expired() {
+            return this.expiresAt != 0 && System.nanoTime() - this.expiresAt > 0;
+        }
+
+    }
+
+}
@@ -24,6 +24,8 @@
 
 package grevend.persistencelite.dao;
 
+import org.jetbrains.annotations.NotNull;
+
 /**
  * An interface that provides the necessary operations to manage a group of logically related
  * operations that are to be applied to the data source.<br><br>
@@ -42,6 +44,42 @@ package grevend.persistencelite.dao;
  */
 public interface Transaction extends AutoCloseable {
 
+    /**
+     * Starts a transaction that spans all following operations of daos using this transaction
+     * until it is committed or rolled back. Services whose operations are not transactional
+     * ignore it.
+     *
+     * @throws Exception
+     * @since 0.6.9
+     */
+    default void begin() throws Exception {}
+
+    /**
+     * @return {@code true} if a transaction has been {@link #begin() started} and neither committed
+     * nor rolled back yet. Services whose operations are not transactional always return {@code
+     * false}.
+     *
+     * @throws Exception
+     * @since 0.6.9
+     */
+    default boolean started() throws Exception {
+        return false;
+    }
+
+    /**
+     * Runs the action once the changes made so far are visible to other transactions, that is
+     * right away unless a transaction has been {@link #begin() started}, in which case the action
+     * runs after the next {@link #commit()} and is discarded on {@link #rollback()}.
+     *
+     * @param action
+     *
+     * @throws Exception
+     * @since 0.6.9
+     */
+    default void afterCommit(@NotNull Runnable action) throws Exception {
+        action.run();
+    }
+
     /**
      * @throws Exception
      * @since 0.2.0
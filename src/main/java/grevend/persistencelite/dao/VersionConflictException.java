@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.dao;
+
+import grevend.persistencelite.entity.Version;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Thrown if an update of an entity with a {@link Version} property did not affect any rows,
+ * i.e. the entity has been modified concurrently since it was retrieved.
+ *
+ * @author David Greven
+ * @see Version
+ * @since 0.6.9
+ */
+public final class VersionConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 5301982667326475184L;
+
+    private final Class<?> entity;
+    private final Map<String, Object> identifiers;
+    private final Object version;
+
+    /**
+     * @param entity
+     * @param identifiers
+     * @param version
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public VersionConflictException(@NotNull Class<?> entity, @NotNull Map<String, Object> identifiers, @Nullable Object version) {
+        super("Entity " + entity.getCanonicalName() + " with identifiers " + identifiers +
+            " is no longer at version " + version + ".");
+        this.entity = entity;
+        this.identifiers = Collections.unmodifiableMap(new HashMap<>(identifiers));
+        this.version = version;
+    }
+
+    /**
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(pure = true)
+    public Class<?> entity() {
+        return this.entity;
+    }
+
+    /**
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(pure = true)
+    public Map<String, Object> identifiers() {
+        return this.identifiers;
+    }
+
+    /**
+     * @return The version the update expected to find.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    @Contract(pure = true)
+    public Object version() {
+        return this.version;
+    }
+
+}
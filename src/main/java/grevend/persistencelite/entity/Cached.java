@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.entity;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Enables the second-level cache of the service for the annotated entity. Entities retrieved by
+ * their identifiers are kept in memory and served without querying the data source until they are
+ * updated, deleted, evicted or expired. The cache is only used by services that allow caching.
+ *
+ * @author David Greven
+ * @since 0.6.9
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cached {
+
+    /**
+     * @return The time to live of cached entities, values less than one disable the expiration.
+     *
+     * @since 0.6.9
+     */
+    long ttl() default 0;
+
+    /**
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * @return True if the results of {@code retrieveByProps} and {@code retrieveAll} should be
+     * cached as well. Cached results are invalidated by every create, update or delete of the
+     * entity or of one of its related entities.
+     *
+     * @since 0.6.9
+     */
+    boolean queries() default false;
+
+}
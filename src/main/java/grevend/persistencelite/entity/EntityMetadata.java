@@ -30,16 +30,19 @@ import grevend.common.jacoco.Generated;
 import grevend.persistencelite.internal.entity.EntityProperty;
 import grevend.persistencelite.internal.entity.EntityRelationType;
 import grevend.persistencelite.internal.entity.EntityType;
+import grevend.persistencelite.internal.entity.index.EntityIndex;
 import grevend.persistencelite.internal.entity.lookup.EntityLookup;
 import grevend.persistencelite.internal.entity.lookup.InterfaceLookup;
 import grevend.persistencelite.internal.entity.lookup.RecordLookup;
 import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.Contract;
@@ -58,15 +61,19 @@ import org.reflections.Reflections;
  */
 public final class EntityMetadata<E> {
 
+    private static final ClassValue<Compiled> COMPILED = new ClassValue<>() {
+        @Override
+        protected Compiled computeValue(Class<?> type) {
+            return new Compiled(EntityMetadata.of(type));
+        }
+    };
+
     private final EntityLookup<E, ?> lookup;
 
     private final Class<E> entityClass;
-    private final List<EntityMetadata<?>> superTypes;
     private final Function<EntityMetadata<?>, Collection<EntityMetadata<?>>> subTypeLookup;
-    private final Collection<EntityProperty> properties;
-    private final Collection<EntityProperty> identifiers;
     private final EntityType entityType;
-    private MethodHandle constructor;
+    private volatile List<EntityProperty> properties;
 
     /**
      * @param entityClass
@@ -78,15 +85,17 @@ public final class EntityMetadata<E> {
      */
     private EntityMetadata(@NotNull Class<E> entityClass, @NotNull EntityType entityType) {
         this.entityClass = entityClass;
-        this.superTypes = new ArrayList<>();
         this.subTypeLookup = memoize(self -> {
-            Reflections reflections = new Reflections("entities");
+            var index = EntityIndex.instance();
+            if (index != null && index.contains(self.entityClass())) {
+                return index.subTypes(self.entityClass()).stream().map(EntityMetadata::of)
+                    .collect(Collectors.toUnmodifiableSet());
+            }
+            Reflections reflections = new Reflections(self.entityClass().getPackageName());
             return reflections.getSubTypesOf(self.entityClass()).stream().map(EntityMetadata::of)
                 .collect(Collectors.toUnmodifiableSet());
         });
-        this.properties = new ArrayList<>();
-        this.identifiers = new ArrayList<>();
-        this.constructor = null;
+        this.properties = null;
         this.entityType = entityType;
 
         this.lookup = switch (this.entityType) {
@@ -124,7 +133,26 @@ public final class EntityMetadata<E> {
         }
     }
 
+    /**
+     * Looks up all entities declared in the given package or one of its sub packages. The
+     * compile time {@link EntityIndex} is used if present, otherwise the classpath is scanned.
+     *
+     * @param packageScope
+     *
+     * @return
+     *
+     * @see EntityIndex
+     * @since 0.4.6
+     */
     public static Collection<EntityMetadata<?>> entities(@NotNull String packageScope) {
+        var index = EntityIndex.instance();
+        if (index != null) {
+            var entities = index.entities(packageScope);
+            if (!entities.isEmpty()) {
+                return entities.stream().map(EntityMetadata::of)
+                    .collect(Collectors.toUnmodifiableSet());
+            }
+        }
         Reflections reflections = new Reflections(packageScope);
         return reflections.getTypesAnnotatedWith(Entity.class).stream().map(EntityMetadata::of)
             .collect(Collectors.toUnmodifiableSet());
@@ -184,7 +212,7 @@ public final class EntityMetadata<E> {
      */
     @NotNull
     public String name() {
-        return this.entityClass().getAnnotation(Entity.class).name();
+        return this.compiled().name;
     }
 
     /**
@@ -210,10 +238,7 @@ public final class EntityMetadata<E> {
     @NotNull
     @Contract(pure = true)
     public Collection<EntityMetadata<?>> declaredSuperTypes() {
-        if (this.superTypes.isEmpty()) {
-            this.superTypes.addAll(this.lookup.lookupSuperTypes(this));
-        }
-        return this.superTypes;
+        return this.compiled().declaredSuperTypes;
     }
 
     /**
@@ -226,11 +251,7 @@ public final class EntityMetadata<E> {
      */
     @NotNull
     public Collection<EntityMetadata<?>> superTypes() {
-        Collection<EntityMetadata<?>> list = this.declaredSuperTypes().stream()
-            .flatMap(superType -> superType.superTypes().stream())
-            .collect(Collectors.toList());
-        list.addAll(this.declaredSuperTypes());
-        return list;
+        return this.compiled().superTypes;
     }
 
 
@@ -244,12 +265,7 @@ public final class EntityMetadata<E> {
      */
     @NotNull
     public Collection<EntityMetadata<?>> types() {
-        Collection<EntityMetadata<?>> list = this.declaredSuperTypes().stream()
-            .flatMap(superType -> superType.superTypes().stream())
-            .collect(Collectors.toList());
-        list.addAll(this.declaredSuperTypes());
-        list.add(this);
-        return list;
+        return this.compiled().types;
     }
 
     /**
@@ -285,10 +301,16 @@ public final class EntityMetadata<E> {
      */
     @NotNull
     public Collection<EntityProperty> declaredProperties() {
-        if (this.properties.isEmpty()) {
-            this.properties.addAll(this.lookup.lookupProperties(this));
+        var result = this.properties;
+        if (result == null) {
+            synchronized (this) {
+                result = this.properties;
+                if (result == null) {
+                    this.properties = result = List.copyOf(this.lookup.lookupProperties(this));
+                }
+            }
         }
-        return this.properties;
+        return result;
     }
 
     /**
@@ -301,13 +323,7 @@ public final class EntityMetadata<E> {
      */
     @NotNull
     public Collection<EntityProperty> uniqueProperties() {
-        var allSuperProps = this.superTypes().stream()
-            .flatMap(superType -> superType.declaredProperties().stream())
-            .map(EntityProperty::fieldName).collect(Collectors.toUnmodifiableSet());
-        return this.declaredProperties().stream().filter(
-            prop -> !allSuperProps.contains(prop.fieldName()) || prop.identifier() != null ||
-                prop.copy()).filter(prop -> prop.relation() == null)
-            .collect(Collectors.toUnmodifiableSet());
+        return this.compiled().uniqueProperties;
     }
 
     /**
@@ -317,12 +333,20 @@ public final class EntityMetadata<E> {
      */
     @NotNull
     public Collection<EntityProperty> properties() {
-        Collection<EntityProperty> list = this.declaredSuperTypes().stream()
-            .flatMap(superType -> superType.superTypes().stream())
-            .flatMap(superType -> superType.declaredProperties().stream()).distinct()
-            .collect(Collectors.toList());
-        list.addAll(this.declaredProperties());
-        return list;
+        return this.compiled().properties;
+    }
+
+    /**
+     * @param name The property or field name of the property.
+     *
+     * @return The property with the given name out of {@link #properties()} or null if no such
+     * property exists.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    public EntityProperty property(@NotNull String name) {
+        return this.compiled().propertyIndex.get(name);
     }
 
     /**
@@ -335,12 +359,7 @@ public final class EntityMetadata<E> {
      */
     @NotNull
     public Collection<EntityProperty> declaredIdentifiers() {
-        if (this.identifiers.isEmpty()) {
-            this.identifiers.addAll(
-                this.declaredProperties().stream().filter(prop -> prop.identifier() != null)
-                    .collect(Collectors.toList()));
-        }
-        return this.identifiers;
+        return this.compiled().declaredIdentifiers;
     }
 
     /**
@@ -353,8 +372,20 @@ public final class EntityMetadata<E> {
      */
     @NotNull
     public Collection<EntityProperty> declaredRelations() {
-        return this.declaredProperties().stream().filter(prop -> prop.relation() != null)
-            .collect(Collectors.toList());
+        return this.compiled().declaredRelations;
+    }
+
+    /**
+     * @return The property annotated with {@link Version} or null if this entity is not
+     * versioned.
+     *
+     * @see EntityProperty
+     * @see #declaredProperties()
+     * @since 0.6.9
+     */
+    @Nullable
+    public EntityProperty declaredVersion() {
+        return this.compiled().declaredVersion;
     }
 
     /**
@@ -366,10 +397,7 @@ public final class EntityMetadata<E> {
      */
     @Nullable
     public MethodHandle constructor() {
-        if (this.constructor == null) {
-            this.constructor = this.lookup.lookupConstructor(this);
-        }
-        return this.constructor;
+        return this.compiled().constructor;
     }
 
     /**
@@ -390,7 +418,27 @@ public final class EntityMetadata<E> {
      * @since 0.5.0
      */
     public boolean escape() {
-        return this.entityClass.getAnnotation(Entity.class).escape();
+        return this.compiled().escape;
+    }
+
+    @NotNull
+    private Collection<EntityMetadata<?>> lookupSuperTypes() {
+        return this.lookup.lookupSuperTypes(this);
+    }
+
+    @Nullable
+    private MethodHandle lookupConstructor() {
+        return this.lookup.lookupConstructor(this);
+    }
+
+    /**
+     * @return The immutable compiled view of this entity, shared by all threads.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    private Compiled compiled() {
+        return COMPILED.get(this.entityClass);
     }
 
     /**
@@ -467,7 +515,7 @@ public final class EntityMetadata<E> {
          */
         @Contract(pure = true)
         private EntityMetadataCache() {
-            this.entityMetadataMap = new HashMap<>();
+            this.entityMetadataMap = new ConcurrentHashMap<>();
         }
 
         /**
@@ -512,4 +560,78 @@ public final class EntityMetadata<E> {
 
     }
 
+    /**
+     * The derived metadata of an entity, compiled once from its declared properties and super
+     * types and safely published through a {@link ClassValue}.
+     *
+     * @author David Greven
+     * @see EntityMetadata
+     * @since 0.6.9
+     */
+    private static final class Compiled {
+
+        private final String name;
+        private final boolean escape;
+        private final List<EntityMetadata<?>> declaredSuperTypes;
+        private final List<EntityMetadata<?>> superTypes;
+        private final List<EntityMetadata<?>> types;
+        private final List<EntityProperty> properties;
+        private final List<EntityProperty> uniqueProperties;
+        private final List<EntityProperty> declaredIdentifiers;
+        private final List<EntityProperty> declaredRelations;
+        private final Map<String, EntityProperty> propertyIndex;
+        private final EntityProperty declaredVersion;
+        private final MethodHandle constructor;
+
+        /**
+         * @param metadata
+         *
+         * @since 0.6.9
+         */
+        private Compiled(@NotNull EntityMetadata<?> metadata) {
+            var entity = metadata.entityClass().getAnnotation(Entity.class);
+            this.name = entity.name();
+            this.escape = entity.escape();
+            this.declaredSuperTypes = List.copyOf(metadata.lookupSuperTypes());
+
+            List<EntityMetadata<?>> superTypes = new ArrayList<>();
+            this.declaredSuperTypes.forEach(superType -> superTypes.addAll(superType.superTypes()));
+            superTypes.addAll(this.declaredSuperTypes);
+            this.superTypes = Collections.unmodifiableList(superTypes);
+            List<EntityMetadata<?>> types = new ArrayList<>(superTypes);
+            types.add(metadata);
+            this.types = Collections.unmodifiableList(types);
+
+            var declaredProperties = metadata.declaredProperties();
+            List<EntityProperty> properties = new ArrayList<>(this.declaredSuperTypes.stream()
+                .flatMap(superType -> superType.superTypes().stream())
+                .flatMap(superType -> superType.declaredProperties().stream()).distinct()
+                .collect(Collectors.toList()));
+            properties.addAll(declaredProperties);
+            this.properties = Collections.unmodifiableList(properties);
+
+            var superProperties = this.superTypes.stream()
+                .flatMap(superType -> superType.declaredProperties().stream())
+                .map(EntityProperty::fieldName).collect(Collectors.toUnmodifiableSet());
+            this.uniqueProperties = declaredProperties.stream().filter(
+                prop -> !superProperties.contains(prop.fieldName()) || prop.identifier() != null
+                    || prop.copy()).filter(prop -> prop.relation() == null).distinct()
+                .collect(Collectors.toUnmodifiableList());
+            this.declaredIdentifiers = declaredProperties.stream()
+                .filter(prop -> prop.identifier() != null).collect(Collectors.toUnmodifiableList());
+            this.declaredRelations = declaredProperties.stream()
+                .filter(prop -> prop.relation() != null).collect(Collectors.toUnmodifiableList());
+            this.declaredVersion = declaredProperties.stream().filter(EntityProperty::version)
+                .findFirst().orElse(null);
+
+            Map<String, EntityProperty> propertyIndex = new HashMap<>();
+            properties.forEach(prop -> propertyIndex.putIfAbsent(prop.propertyName(), prop));
+            properties.forEach(prop -> propertyIndex.putIfAbsent(prop.fieldName(), prop));
+            this.propertyIndex = Collections.unmodifiableMap(propertyIndex);
+
+            this.constructor = metadata.lookupConstructor();
+        }
+
+    }
+
 }
@@ -0,0 +1,366 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.cache;
+
+import grevend.common.SegmentedCache;
+import grevend.persistencelite.entity.Cached;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.entity.EntityProperty;
+import grevend.persistencelite.internal.entity.EntityType;
+import grevend.persistencelite.internal.util.Utils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+import org.jetbrains.annotations.UnmodifiableView;
+
+/**
+ * The second-level cache shared by all data access objects of a service. Entities are keyed by
+ * their class and the values of their declared identifiers, query results are keyed by their
+ * class and the normalized properties of the query. Every write increments the generation of the
+ * written entity types; query results remember the generations of the entity types they depend on
+ * and are discarded as soon as one of them has changed.
+ *
+ * @author David Greven
+ * @see Cached
+ * @see SegmentedCache
+ * @since 0.6.9
+ */
+public final class EntityCache {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final ClassValue<Cached> CACHED = new ClassValue<>() {
+        @Override
+        protected Cached computeValue(Class<?> type) {
+            return type.getAnnotation(Cached.class);
+        }
+    };
+
+    private final SegmentedCache<Key, Object> entities;
+    private final SegmentedCache<Key, Query> queries;
+    private final Map<Class<?>, AtomicLong> generations;
+    private final Map<Class<?>, Class<?>[]> dependencies;
+    private final long defaultTtl;
+
+    /**
+     * @param capacity The maximum number of cached entities and the maximum number of cached query
+     *                 results.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public EntityCache(@Range(from = 1, to = Integer.MAX_VALUE) int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param capacity   The maximum number of cached entities and the maximum number of cached
+     *                   query results.
+     * @param defaultTtl The time to live in nanoseconds of entities whose {@link Cached#ttl()} is
+     *                   zero, zero keeps them until they are written or evicted.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public EntityCache(@Range(from = 1, to = Integer.MAX_VALUE) int capacity, @Range(from = 0, to = Long.MAX_VALUE) long defaultTtl) {
+        this.defaultTtl = defaultTtl;
+        this.entities = new SegmentedCache<>(capacity);
+        this.queries = new SegmentedCache<>(capacity);
+        this.generations = new ConcurrentHashMap<>();
+        this.dependencies = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param entityMetadata
+     *
+     * @return True if the entity is annotated with {@link Cached}.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public static boolean cacheable(@NotNull EntityMetadata<?> entityMetadata) {
+        return CACHED.get(entityMetadata.entityClass()) != null;
+    }
+
+    /**
+     * @param entityMetadata
+     *
+     * @return True if the entity is annotated with {@link Cached} and its queries should be
+     * cached.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public static boolean queriesCacheable(@NotNull EntityMetadata<?> entityMetadata) {
+        var cached = CACHED.get(entityMetadata.entityClass());
+        return cached != null && cached.queries();
+    }
+
+    @Contract(pure = true)
+    private long ttl(@NotNull EntityMetadata<?> entityMetadata) {
+        var cached = CACHED.get(entityMetadata.entityClass());
+        return cached == null || cached.ttl() == 0 ? this.defaultTtl
+            : cached.unit().toNanos(cached.ttl());
+    }
+
+    /**
+     * @param entityMetadata
+     * @param identifiers    The identifier values keyed by field or property names.
+     * @param <E>
+     *
+     * @return The cached entity or null.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    public <E> E get(@NotNull EntityMetadata<E> entityMetadata, @NotNull Map<String, Object> identifiers) {
+        if (!cacheable(entityMetadata)) {
+            return null;
+        }
+        var key = key(entityMetadata, identifiers);
+        return key == null ? null : entityMetadata.entityClass().cast(this.entities.get(key));
+    }
+
+    /**
+     * @param entityMetadata
+     * @param entity
+     * @param <E>
+     *
+     * @since 0.6.9
+     */
+    public <E> void put(@NotNull EntityMetadata<E> entityMetadata, @NotNull E entity) {
+        if (cacheable(entityMetadata)) {
+            var key = key(entityMetadata, entity);
+            if (key != null) {
+                this.entities.put(key, entity, this.ttl(entityMetadata));
+            }
+        }
+    }
+
+    /**
+     * @param entityMetadata
+     * @param identifiers    The identifier values keyed by field or property names.
+     *
+     * @since 0.6.9
+     */
+    public void invalidate(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> identifiers) {
+        if (cacheable(entityMetadata)) {
+            var key = key(entityMetadata, identifiers);
+            if (key != null) {
+                this.entities.invalidate(key);
+            } else {
+                this.entities.invalidateIf(k -> k.entity() == entityMetadata.entityClass());
+            }
+        }
+    }
+
+    /**
+     * @param entityMetadata
+     * @param entity
+     * @param <E>
+     *
+     * @since 0.6.9
+     */
+    public <E> void invalidate(@NotNull EntityMetadata<E> entityMetadata, @NotNull E entity) {
+        if (cacheable(entityMetadata)) {
+            var key = key(entityMetadata, entity);
+            if (key != null) {
+                this.entities.invalidate(key);
+            } else {
+                this.entities.invalidateIf(k -> k.entity() == entityMetadata.entityClass());
+            }
+        }
+    }
+
+    /**
+     * Increments the generations of all types of the entity. Must be called after every create,
+     * update or delete regardless of whether the entity itself is cached.
+     *
+     * @param entityMetadata
+     *
+     * @since 0.6.9
+     */
+    public void modified(@NotNull EntityMetadata<?> entityMetadata) {
+        entityMetadata.types().forEach(type -> this.generations
+            .computeIfAbsent(type.entityClass(), entity -> new AtomicLong()).incrementAndGet());
+    }
+
+    /**
+     * Takes a snapshot of the generations a query result of the entity depends on. The snapshot
+     * must be taken before the query is executed.
+     *
+     * @param entityMetadata
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    public long[] generations(@NotNull EntityMetadata<?> entityMetadata) {
+        var types = this.dependencies.computeIfAbsent(entityMetadata.entityClass(),
+            entity -> dependencies(entityMetadata));
+        var res = new long[types.length];
+        for (var i = 0; i < types.length; i++) {
+            res[i] = this.generations.computeIfAbsent(types[i], entity -> new AtomicLong()).get();
+        }
+        return res;
+    }
+
+    /**
+     * @param entityMetadata
+     * @param props          The properties of the query keyed by field or property names.
+     * @param <E>
+     *
+     * @return The cached query result or null.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    @UnmodifiableView
+    @SuppressWarnings("unchecked")
+    public <E> List<E> query(@NotNull EntityMetadata<E> entityMetadata, @NotNull Map<String, Object> props) {
+        if (!queriesCacheable(entityMetadata)) {
+            return null;
+        }
+        var key = queryKey(entityMetadata, props);
+        var query = this.queries.get(key);
+        if (query == null) {
+            return null;
+        } else if (!Arrays.equals(query.generations(), this.generations(entityMetadata))) {
+            this.queries.invalidate(key);
+            return null;
+        }
+        return (List<E>) query.entities();
+    }
+
+    /**
+     * @param entityMetadata
+     * @param props          The properties of the query keyed by field or property names.
+     * @param entities       The query result.
+     * @param generations    The snapshot taken before the query was executed.
+     * @param <E>
+     *
+     * @since 0.6.9
+     */
+    public <E> void query(@NotNull EntityMetadata<E> entityMetadata, @NotNull Map<String, Object> props, @NotNull Collection<E> entities, @NotNull long[] generations) {
+        if (queriesCacheable(entityMetadata)) {
+            this.queries.put(queryKey(entityMetadata, props),
+                new Query(List.copyOf(entities), generations), this.ttl(entityMetadata));
+        }
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    private static Class<?>[] dependencies(@NotNull EntityMetadata<?> entityMetadata) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        entityMetadata.types().forEach(type -> types.add(type.entityClass()));
+        entityMetadata.declaredRelations().forEach(relation -> {
+            var target = EntityMetadata
+                .of(Objects.requireNonNull(relation.relation()).getTargetEntity());
+            types.add(target.entityClass());
+            if (target.entityType() == EntityType.INTERFACE) {
+                target.subTypes().forEach(subType -> types.add(subType.entityClass()));
+            }
+        });
+        return types.toArray(Class<?>[]::new);
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    private static Key queryKey(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> props) {
+        Map<String, String> names = new HashMap<>();
+        entityMetadata.properties().forEach(prop -> names.put(prop.fieldName(), prop.propertyName()));
+        Map<String, Object> normalized = new HashMap<>();
+        props.forEach((name, value) -> normalized
+            .put(names.getOrDefault(name, name), Utils.normalize(value)));
+        return new Key(entityMetadata.entityClass(), List.of(normalized));
+    }
+
+    /**
+     * @param entityMetadata
+     * @param identifiers    The identifier values keyed by field or property names.
+     *
+     * @return The normalized identifier values in declaration order or null if not all declared
+     * identifiers are present.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    @Contract(pure = true)
+    static List<Object> identifiers(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> identifiers) {
+        List<Object> values = new ArrayList<>();
+        for (var identifier : entityMetadata.declaredIdentifiers()) {
+            if (identifiers.containsKey(identifier.propertyName())) {
+                values.add(Utils.normalize(identifiers.get(identifier.propertyName())));
+            } else if (identifiers.containsKey(identifier.fieldName())) {
+                values.add(Utils.normalize(identifiers.get(identifier.fieldName())));
+            } else {
+                return null;
+            }
+        }
+        return values.isEmpty() ? null : Collections.unmodifiableList(values);
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    private static Key key(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> identifiers) {
+        var values = identifiers(entityMetadata, identifiers);
+        return values == null ? null : new Key(entityMetadata.entityClass(), values);
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    private static Key key(@NotNull EntityMetadata<?> entityMetadata, @NotNull Object entity) {
+        List<Object> values = new ArrayList<>();
+        for (EntityProperty identifier : entityMetadata.declaredIdentifiers()) {
+            try {
+                values.add(Utils.normalize(Objects.requireNonNull(identifier.getter())
+                    .invoke(entity)));
+            } catch (Throwable throwable) {
+                return null;
+            }
+        }
+        return values.isEmpty() ? null
+            : new Key(entityMetadata.entityClass(), Collections.unmodifiableList(values));
+    }
+
+    private static final record Key(@NotNull Class<?>entity, @NotNull List<Object>values) {}
+
+    private static final record Query(@NotNull List<?>entities, @NotNull long[]generations) {}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.cache;
+
+import grevend.persistencelite.entity.EntityMetadata;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The first-level cache of a transaction. Every identity is constructed at most once per
+ * transaction and the same entity instance is returned for all subsequent reads, including the
+ * reads of related entities.
+ *
+ * @author David Greven
+ * @see EntityCache
+ * @since 0.6.9
+ */
+public final class IdentityMap {
+
+    private final Map<Class<?>, Map<List<Object>, Object>> entities;
+
+    /**
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public IdentityMap() {
+        this.entities = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param entityMetadata
+     * @param identifiers    The identifier values keyed by field or property names.
+     * @param <E>
+     *
+     * @return The entity or null if the identity has not been read in this transaction.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    public <E> E get(@NotNull EntityMetadata<E> entityMetadata, @NotNull Map<String, Object> identifiers) {
+        var key = EntityCache.identifiers(entityMetadata, identifiers);
+        var entities = this.entities.get(entityMetadata.entityClass());
+        return key == null || entities == null ? null
+            : entityMetadata.entityClass().cast(entities.get(key));
+    }
+
+    /**
+     * @param entityMetadata
+     * @param identifiers    The identifier values keyed by field or property names.
+     * @param entity
+     * @param <E>
+     *
+     * @return The entity that was already mapped to the identity or the given entity.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    public <E> E putIfAbsent(@NotNull EntityMetadata<E> entityMetadata, @NotNull Map<String, Object> identifiers, @NotNull E entity) {
+        var key = EntityCache.identifiers(entityMetadata, identifiers);
+        if (key == null) {
+            return entity;
+        }
+        var present = this.entities
+            .computeIfAbsent(entityMetadata.entityClass(), type -> new ConcurrentHashMap<>())
+            .putIfAbsent(key, entity);
+        return present == null ? entity : entityMetadata.entityClass().cast(present);
+    }
+
+    /**
+     * Removes the identity for all types of the entity.
+     *
+     * @param entityMetadata
+     * @param identifiers    The identifier values keyed by field or property names.
+     *
+     * @since 0.6.9
+     */
+    public void remove(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> identifiers) {
+        entityMetadata.types().forEach(type -> {
+            var entities = this.entities.get(type.entityClass());
+            if (entities != null) {
+                var key = EntityCache.identifiers(type, identifiers);
+                if (key == null) {
+                    entities.clear();
+                } else {
+                    entities.remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * @since 0.6.9
+     */
+    public void clear() {
+        this.entities.clear();
+    }
+
+}
@@ -35,6 +35,7 @@ import grevend.persistencelite.dao.Dao;
 import grevend.persistencelite.dao.Transaction;
 import grevend.persistencelite.dao.TransactionFactory;
 import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.cache.EntityCache;
 import grevend.persistencelite.internal.entity.EntityProperty;
 import grevend.persistencelite.internal.entity.factory.EntityFactory;
 import grevend.persistencelite.internal.entity.representation.EntityDeserializer;
@@ -42,9 +43,11 @@ import grevend.persistencelite.internal.entity.representation.EntitySerializer;
 import grevend.persistencelite.internal.util.Utils;
 import grevend.persistencelite.util.TypeMarshaller;
 import grevend.sequence.Seq;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -68,18 +71,44 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     private final DaoImpl<Thr> daoImpl;
     private final EntitySerializer<E> entitySerializer;
     private final EntityDeserializer<E> entityDeserializer;
+    private final EntityCache entityCache;
     private Transaction transaction;
 
     @Contract(pure = true)
     public BaseDao(@NotNull EntityMetadata<E> entityMetadata, @NotNull DaoImpl<Thr> daoImpl, @NotNull TransactionFactory transactionFactory, @Nullable Transaction transaction, boolean props, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> unmarshallerMap) throws Throwable {
+        this(entityMetadata, daoImpl, transactionFactory, transaction, props, marshallerMap,
+            unmarshallerMap, null);
+    }
+
+    /**
+     * @param entityCache The second-level cache of the service or null if the service does not
+     *                    allow caching. Entities and queries are only cached for entities
+     *                    annotated with {@link grevend.persistencelite.entity.Cached}, but every
+     *                    write is reported to the cache.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public BaseDao(@NotNull EntityMetadata<E> entityMetadata, @NotNull DaoImpl<Thr> daoImpl, @NotNull TransactionFactory transactionFactory, @Nullable Transaction transaction, boolean props, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> unmarshallerMap, @Nullable EntityCache entityCache) throws Throwable {
         this.entityMetadata = entityMetadata;
+        this.entityCache = entityCache;
         this.daoImpl = daoImpl;
         this.transaction = transaction == null ?
             transactionFactory.createTransaction() : transaction;
         this.entitySerializer = entity ->
             EntityFactory.deconstruct(entityMetadata, entity, unsafeCast(unmarshallerMap));
-        this.entityDeserializer = map ->
-            EntityFactory.construct(entityMetadata, map, props, unsafeCast(marshallerMap));
+        this.entityDeserializer = map -> {
+            // Outside of a started transaction there is no boundary after which shared instances
+            // would become stale, so every row constructs a fresh entity.
+            var identityMap = this.transaction.started() ? daoImpl.identityMap() : null;
+            if (identityMap == null) {
+                return EntityFactory
+                    .construct(entityMetadata, map, props, unsafeCast(marshallerMap));
+            }
+            var entity = identityMap.get(entityMetadata, map);
+            return entity != null ? entity : identityMap.putIfAbsent(entityMetadata, map,
+                EntityFactory.construct(entityMetadata, map, props, unsafeCast(marshallerMap)));
+        };
     }
 
     /**
@@ -98,12 +127,12 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
         return Result.ofThrowing(() -> {
             var entityComponents = this.entitySerializer.serialize(entity);
             this.daoImpl.create(entityComponents);
+            this.modified();
             var merged = this.entitySerializer.merge(entityComponents);
-            var iter = this.daoImpl.retrieve(
-                Seq.of(this.entityMetadata.declaredIdentifiers()).map(EntityProperty::propertyName)
-                    .toUnmodifiableList(), merged).iterator();
-            if (!iter.hasNext()) { throw new IllegalStateException("Unable to retrieve entity!"); }
-            return this.entityDeserializer.deserialize(iter.next());
+            var row = this.first(Seq.of(this.entityMetadata.declaredIdentifiers())
+                .map(EntityProperty::propertyName).toUnmodifiableList(), merged);
+            if (row == null) { throw new IllegalStateException("Unable to retrieve entity!"); }
+            return this.cache(this.entityDeserializer.deserialize(row));
         });
     }
 
@@ -124,9 +153,29 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     @NotNull
     @Override
     public ResultCollection<E> create(@NotNull Iterable<E> entities) {
-        return Result.ofTry(() -> SuccessCollection.of(Seq.of(entities).filter(Objects::nonNull)
-            .mapAbort(entity -> this.create(Objects.requireNonNull(entity)).orAbort())
-            .toUnmodifiableList()));
+        return Result.ofTry(() -> SuccessCollection.of(Result.ofThrowing(() -> {
+            List<Iterable<Map<String, Object>>> components = new ArrayList<>();
+            for (var entity : entities) {
+                if (entity != null) {
+                    components.add(this.entitySerializer.serialize(entity));
+                }
+            }
+            if (components.isEmpty()) {
+                return List.<E>of();
+            }
+            this.daoImpl.createBatch(components);
+            this.modified();
+            List<E> created = new ArrayList<>(components.size());
+            for (var rows : this.daoImpl.retrieveBatch(this.identifiers(), Seq.of(components)
+                .map(this.entitySerializer::merge).toUnmodifiableList())) {
+                var iter = rows.iterator();
+                if (!iter.hasNext()) {
+                    throw new IllegalStateException("Unable to retrieve entity!");
+                }
+                created.add(this.cache(this.entityDeserializer.deserialize(iter.next())));
+            }
+            return Collections.unmodifiableList(created);
+        }).orAbort()));
     }
 
     /**
@@ -144,10 +193,15 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     @Override
     public Result<E> retrieveById(@NotNull Map<String, Object> identifiers) {
         return Result.ofThrowing(() -> {
-            var iter = this.daoImpl.retrieve(
+            var cached = this.entityCache == null ? null
+                : this.entityCache.get(this.entityMetadata, identifiers);
+            if (cached != null) {
+                return cached;
+            }
+            var row = this.first(
                 this.entityMetadata.declaredIdentifiers().stream().map(EntityProperty::propertyName)
-                    .collect(Collectors.toUnmodifiableList()), identifiers).iterator();
-            return iter.hasNext() ? this.entityDeserializer.deserialize(iter.next())
+                    .collect(Collectors.toUnmodifiableList()), identifiers);
+            return row != null ? this.cache(this.entityDeserializer.deserialize(row))
                 : Result.abort("Empty collection.");
         });
     }
@@ -167,22 +221,36 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     @NotNull
     @Override
     public ResultCollection<E> retrieveByIds(@NotNull Iterable<String> identifiers, @NotNull Iterable<Iterable<Object>> values) {
-        record PairImpl<A, B>(A first, B second) implements Pair<A, B> {}
-
-        return Result.ofTry(() -> SuccessCollection
-            .of(Seq.of(values).map(vals -> new PairImpl<>(identifiers, vals)).mapThrowing(
-                pair -> Seq.of(() -> this.daoImpl.retrieve(
-                    this.entityMetadata.declaredIdentifiers().stream()
-                        .map(EntityProperty::propertyName)
-                        .collect(Collectors.toUnmodifiableList()),
-                    Utils.zip(pair.first.iterator(), pair.second.iterator())
-                        .collect(Collectors.toMap(Pair::first, Pair::second))))
-                    .mapThrowing(this.entityDeserializer::deserialize)
-                    .filter(Objects::nonNull)
-                    .mapAbort(Result::orAbort)
-                    .toUnmodifiableList())
-                .flatMap(res -> Seq.of(res.or(Collections.emptyList())))
-                .toUnmodifiableList()));
+        return Result.ofTry(() -> SuccessCollection.of(Result.ofThrowing(() -> {
+            List<E> cached = new ArrayList<>();
+            List<Map<String, Object>> missing = new ArrayList<>();
+            for (var vals : values) {
+                Map<String, Object> ids = Utils.zip(identifiers.iterator(), vals.iterator())
+                    .collect(Collectors.toMap(Pair::first, Pair::second));
+                var entity = this.entityCache == null ? null
+                    : this.entityCache.get(this.entityMetadata, ids);
+                cached.add(entity);
+                if (entity == null) {
+                    missing.add(ids);
+                }
+            }
+            var rows = (missing.isEmpty() ? List.<Iterable<Map<String, Object>>>of()
+                : this.daoImpl.retrieveBatch(this.identifiers(), missing)).iterator();
+            List<E> res = new ArrayList<>();
+            for (var entity : cached) {
+                if (entity != null) {
+                    res.add(entity);
+                    continue;
+                }
+                for (var row : rows.next()) {
+                    var deserialized = this.entityDeserializer.deserialize(row);
+                    if (deserialized != null) {
+                        res.add(this.cache(deserialized));
+                    }
+                }
+            }
+            return Collections.unmodifiableList(res);
+        }).orAbort()));
     }
 
     /**
@@ -199,13 +267,25 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     @NotNull
     @Override
     public ResultCollection<E> retrieveByProps(@NotNull Map<String, Object> props) {
-        return Result.ofTry(() -> SuccessCollection.of(Seq.of(() ->
+        long[] generations = null;
+        if (this.entityCache != null && EntityCache.queriesCacheable(this.entityMetadata)) {
+            var cached = this.entityCache.query(this.entityMetadata, props);
+            if (cached != null) {
+                return SuccessCollection.of(cached);
+            }
+            generations = this.entityCache.generations(this.entityMetadata);
+        }
+        ResultCollection<E> res = Result.ofTry(() -> SuccessCollection.of(Seq.of(() ->
             this.daoImpl.retrieve(props.keySet(), props))
             .mapThrowing(this.entityDeserializer::deserialize)
             .filter(Objects::nonNull)
             .mapAbort(Result::orAbort)
             .filter(Objects::nonNull)
             .toUnmodifiableList()));
+        if (generations != null && res instanceof SuccessCollection<E> success) {
+            this.entityCache.query(this.entityMetadata, props, success.get(), generations);
+        }
+        return res;
     }
 
     /**
@@ -223,11 +303,11 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     @Override
     public Result<E> retrieveFirstByProps(@NotNull Map<String, Object> properties) {
         return Result.ofThrowing(() -> {
-            var iter = this.daoImpl.retrieve(
+            var row = this.first(
                 this.entityMetadata.declaredProperties().stream().filter(e -> properties
                     .containsKey(e.fieldName())).map(EntityProperty::propertyName)
-                    .collect(Collectors.toUnmodifiableList()), properties).iterator();
-            return iter.hasNext() ? this.entityDeserializer.deserialize(iter.next())
+                    .collect(Collectors.toUnmodifiableList()), properties);
+            return row != null ? this.entityDeserializer.deserialize(row)
                 : Result.abort("Empty collection.");
         });
     }
@@ -265,19 +345,22 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     public Result<E> update(@NotNull E entity, @NotNull Map<String, Object> props) {
         return Result.ofThrowing(() -> {
             var components = this.entitySerializer.serialize(entity);
+            this.forget(this.entitySerializer.merge(components));
             this.daoImpl.update(components, props);
+            this.invalidate(entity);
+            this.modified();
             var merged = this.entitySerializer.merge(components);
-            var iter = this.daoImpl.retrieve(
+            var row = this.first(
                 Seq.of(this.entityMetadata.declaredIdentifiers()).map(EntityProperty::propertyName)
                     .toUnmodifiableList(),
                 Stream.of(merged, props)
                     .flatMap(map -> map.entrySet().stream()).
                     collect(HashMap::new, (m, v) -> m.put(v.getKey(), v.getValue()),
-                        HashMap::putAll)).iterator();
-            if (!iter.hasNext()) {
+                        HashMap::putAll));
+            if (row == null) {
                 throw new NoSuchElementException("No entity found for " + props + ".");
             }
-            return this.entityDeserializer.deserialize(iter.next());
+            return this.cache(this.entityDeserializer.deserialize(row));
         });
     }
 
@@ -298,14 +381,47 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     @NotNull
     @Override
     public ResultCollection<E> update(@NotNull Iterable<E> entities, @NotNull Iterable<Map<String, Object>> props) {
-        var res = Utils.zip(entities.iterator(), props.iterator())
-            .map((Pair<E, Map<String, Object>> pair) -> this
-                .update(Objects.requireNonNull(pair).first(), pair.second()))
-            .collect(Collectors.toUnmodifiableList());
-
-        return Result.ofTry(() -> SuccessCollection
-            .of(Seq.of(res).mapAbort(el -> Objects.requireNonNull(el).orAbort())
-                .toUnmodifiableList()));
+        return Result.ofTry(() -> SuccessCollection.of(Result.ofThrowing(() -> {
+            List<Iterable<Map<String, Object>>> components = new ArrayList<>();
+            List<Map<String, Object>> changes = new ArrayList<>();
+            List<E> written = new ArrayList<>();
+            var entityIter = entities.iterator();
+            var propsIter = props.iterator();
+            while (entityIter.hasNext() && propsIter.hasNext()) {
+                var entity = Objects.requireNonNull(entityIter.next());
+                var component = this.entitySerializer.serialize(entity);
+                this.forget(this.entitySerializer.merge(component));
+                written.add(entity);
+                components.add(component);
+                changes.add(propsIter.next());
+            }
+            if (components.isEmpty()) {
+                return List.<E>of();
+            }
+            this.daoImpl.updateBatch(components, changes);
+            for (var entity : written) {
+                this.invalidate(entity);
+            }
+            this.modified();
+            List<Map<String, Object>> lookups = new ArrayList<>(components.size());
+            for (var i = 0; i < components.size(); i++) {
+                Map<String, Object> lookup = new HashMap<>(this.entitySerializer
+                    .merge(components.get(i)));
+                lookup.putAll(changes.get(i));
+                lookups.add(lookup);
+            }
+            var rows = this.daoImpl.retrieveBatch(this.identifiers(), lookups);
+            List<E> updated = new ArrayList<>(rows.size());
+            for (var i = 0; i < rows.size(); i++) {
+                var iter = rows.get(i).iterator();
+                if (!iter.hasNext()) {
+                    throw new NoSuchElementException("No entity found for " + changes.get(i) +
+                        ".");
+                }
+                updated.add(this.cache(this.entityDeserializer.deserialize(iter.next())));
+            }
+            return Collections.unmodifiableList(updated);
+        }).orAbort()));
     }
 
     /**
@@ -319,8 +435,15 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     @Override
     public Result<Void> delete(@NotNull E entity) {
         try {
-            return this.delete(this.entitySerializer
-                .merge(this.entitySerializer.serialize(entity)));
+            var identifiers = this.entitySerializer
+                .merge(this.entitySerializer.serialize(entity));
+            return Result.ofThrowing(() -> {
+                this.forget(identifiers);
+                this.daoImpl.delete(identifiers);
+                this.invalidate(entity);
+                this.invalidate(identifiers);
+                this.modified();
+            });
         } catch (Throwable throwable) {
             return (Failure<Void>) () -> throwable;
         }
@@ -336,7 +459,12 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     @NotNull
     @Override
     public Result<Void> delete(@NotNull Map<String, Object> identifiers) {
-        return Result.ofThrowing(() -> this.daoImpl.delete(identifiers));
+        return Result.ofThrowing(() -> {
+            this.forget(identifiers);
+            this.daoImpl.delete(identifiers);
+            this.invalidate(identifiers);
+            this.modified();
+        });
     }
 
     /**
@@ -350,9 +478,27 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
     @NotNull
     @Override
     public Result<Void> delete(@NotNull Iterable<E> entities) {
-        return Result.ofTry(() -> Seq.of(entities).filter(Objects::nonNull)
-            .mapAbort(entity -> this.delete(Objects.requireNonNull(entity)).orAbort())
-            .toUnmodifiableList());
+        return Result.ofThrowing(() -> {
+            List<Map<String, Object>> identifiers = new ArrayList<>();
+            List<E> written = new ArrayList<>();
+            for (var entity : entities) {
+                if (entity == null) {
+                    continue;
+                }
+                var ids = this.entitySerializer.merge(this.entitySerializer.serialize(entity));
+                this.forget(ids);
+                written.add(entity);
+                identifiers.add(ids);
+            }
+            if (!identifiers.isEmpty()) {
+                this.daoImpl.deleteBatch(identifiers);
+                for (var i = 0; i < written.size(); i++) {
+                    this.invalidate(written.get(i));
+                    this.invalidate(identifiers.get(i));
+                }
+                this.modified();
+            }
+        });
     }
 
     /**
@@ -368,6 +514,105 @@ public class BaseDao<E, Thr extends Throwable> implements Dao<E> {
         }
     }
 
+    @NotNull
+    private List<String> identifiers() {
+        return Seq.of(this.entityMetadata.declaredIdentifiers()).map(EntityProperty::propertyName)
+            .toUnmodifiableList();
+    }
+
+    /**
+     * Retrieves only the first matching row. Results read lazily from a response are closed
+     * afterwards, as their remaining rows would otherwise hold on to the connection.
+     */
+    @Nullable
+    private Map<String, Object> first(@NotNull Iterable<String> keys, @NotNull Map<String, Object> props) throws Throwable {
+        var rows = this.daoImpl.retrieve(keys, props);
+        try {
+            var iter = rows.iterator();
+            return iter.hasNext() ? iter.next() : null;
+        } finally {
+            if (rows instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private void forget(@NotNull Map<String, Object> identifiers) {
+        var identityMap = this.daoImpl.identityMap();
+        if (identityMap != null) {
+            identityMap.remove(this.entityMetadata, identifiers);
+        }
+    }
+
+    /**
+     * Bumps the query generations after the write. Inside a started transaction they are bumped
+     * again after the commit, as concurrent readers may cache pre-commit results under the first
+     * bump.
+     */
+    private void modified() throws Exception {
+        var entityCache = this.entityCache;
+        if (entityCache != null) {
+            entityCache.modified(this.entityMetadata);
+            if (this.transaction.started()) {
+                this.transaction.afterCommit(() -> entityCache.modified(this.entityMetadata));
+            }
+        }
+    }
+
+    /**
+     * Puts the entity into the second-level cache once it is committed, entities of a transaction
+     * that is rolled back never reach the cache.
+     */
+    @NotNull
+    @Contract("_ -> param1")
+    private E cache(@NotNull E entity) throws Exception {
+        var entityCache = this.entityCache;
+        if (entityCache != null) {
+            this.transaction.afterCommit(() -> entityCache.put(this.entityMetadata, entity));
+        }
+        return entity;
+    }
+
+    /**
+     * Evicts the written entity after the write, so that readers cannot cache the previous state
+     * again, and once more after the commit of a started transaction, as readers outside of the
+     * transaction keep seeing the previous state until then.
+     */
+    private void invalidate(@NotNull E entity) throws Exception {
+        var entityCache = this.entityCache;
+        if (entityCache != null) {
+            entityCache.invalidate(this.entityMetadata, entity);
+            if (this.transaction.started()) {
+                this.transaction.afterCommit(() ->
+                    entityCache.invalidate(this.entityMetadata, entity));
+            }
+        }
+    }
+
+    private void invalidate(@NotNull Map<String, Object> identifiers) throws Exception {
+        var entityCache = this.entityCache;
+        if (entityCache != null) {
+            entityCache.invalidate(this.entityMetadata, identifiers);
+            if (this.transaction.started()) {
+                this.transaction.afterCommit(() ->
+                    entityCache.invalidate(this.entityMetadata, identifiers));
+            }
+        }
+    }
+
+    /**
+     * @param row
+     *
+     * @return The entity constructed from the given row.
+     *
+     * @throws Throwable
+     * @since 0.6.9
+     */
+    @NotNull
+    protected E deserialize(@NotNull Map<String, Object> row) throws Throwable {
+        return this.entityDeserializer.deserialize(row);
+    }
+
     @NotNull
     @Contract(pure = true)
     public DaoImpl<Thr> daoImpl() {
@@ -24,8 +24,12 @@
 
 package grevend.persistencelite.internal.dao;
 
+import grevend.persistencelite.internal.cache.IdentityMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * @param <Thr>
@@ -44,4 +48,104 @@ public interface DaoImpl<Thr extends Throwable> {
 
     void delete(@NotNull Map<String, Object> props) throws Thr;
 
+    /**
+     * Creates several entities at once. The default implementation creates them one after another,
+     * implementations that can combine the operations, for example into a single request, should
+     * override it.
+     *
+     * @param entities The components of every entity, mutated like those passed to {@link
+     *                 #create(Iterable)}.
+     *
+     * @throws Thr
+     * @since 0.6.9
+     */
+    default void createBatch(@NotNull List<? extends Iterable<Map<String, Object>>> entities) throws Thr {
+        for (var entity : entities) {
+            this.create(entity);
+        }
+    }
+
+    /**
+     * Retrieves the entities matching each of the given properties. The default implementation
+     * retrieves them one after another.
+     *
+     * @param keys  The keys shared by all properties.
+     * @param props
+     *
+     * @return The rows found for each of the given properties in the same order.
+     *
+     * @throws Thr
+     * @since 0.6.9
+     */
+    @NotNull
+    default List<Iterable<Map<String, Object>>> retrieveBatch(@NotNull Iterable<String> keys, @NotNull List<Map<String, Object>> props) throws Thr {
+        List<Iterable<Map<String, Object>>> rows = new ArrayList<>(props.size());
+        for (var prop : props) {
+            rows.add(this.retrieve(keys, prop));
+        }
+        return rows;
+    }
+
+    /**
+     * Updates several entities at once. The default implementation updates them one after
+     * another.
+     *
+     * @param entities The components of every entity.
+     * @param props    The changed properties of every entity in the same order.
+     *
+     * @throws Thr
+     * @since 0.6.9
+     */
+    default void updateBatch(@NotNull List<? extends Iterable<Map<String, Object>>> entities, @NotNull List<Map<String, Object>> props) throws Thr {
+        for (var i = 0; i < entities.size(); i++) {
+            this.update(entities.get(i), props.get(i));
+        }
+    }
+
+    /**
+     * Deletes several entities at once. The default implementation deletes them one after another.
+     *
+     * @param props The identifiers of every entity.
+     *
+     * @throws Thr
+     * @since 0.6.9
+     */
+    default void deleteBatch(@NotNull List<Map<String, Object>> props) throws Thr {
+        for (var prop : props) {
+            this.delete(prop);
+        }
+    }
+
+    /**
+     * Retrieves a page of the entities matching the given properties, ordered by their declared
+     * identifiers, so that the next page can be resolved from the last entity of the previous one
+     * without counting the skipped entities.
+     *
+     * @param keys  The properties that should be matched.
+     * @param props
+     * @param after The identifier values of the last entity of the previous page or null for the
+     *              first page.
+     * @param limit The maximum number of rows of the page.
+     *
+     * @return The rows of the page or null if the implementation cannot page, the default.
+     *
+     * @throws Thr
+     * @since 0.6.9
+     */
+    @Nullable
+    default List<Map<String, Object>> page(@NotNull Iterable<String> keys, @NotNull Map<String, Object> props, @Nullable List<Object> after, int limit) throws Thr {
+        return null;
+    }
+
+    /**
+     * @return The identity map of the transaction used by this implementation or null if entities
+     * should not be shared.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    default IdentityMap identityMap() {
+        return null;
+    }
+
 }
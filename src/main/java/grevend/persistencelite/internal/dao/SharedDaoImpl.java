@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.dao;
+
+import grevend.persistencelite.dao.Transaction;
+import grevend.persistencelite.dao.TransactionFactory;
+import grevend.sequence.function.ThrowingFunction;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link DaoImpl} that can be shared between threads. Every operation runs on its own
+ * transaction from the transaction factory, which is closed as soon as the operation completes, so
+ * that pooled connections are returned right away. The implementation bound to that transaction is
+ * created for every operation, so it should only wrap state that is computed once per entity.
+ *
+ * @param transactionFactory
+ * @param daoImplFactory     Creates the implementation bound to the transaction of an operation.
+ *
+ * @author David Greven
+ * @since 0.6.9
+ */
+public final record SharedDaoImpl(@NotNull TransactionFactory transactionFactory, @NotNull ThrowingFunction<Transaction, DaoImpl<?>> daoImplFactory) implements DaoImpl<Throwable> {
+
+    @Override
+    public void create(@NotNull Iterable<Map<String, Object>> entity) throws Throwable {
+        this.run(daoImpl -> {
+            daoImpl.create(entity);
+            return null;
+        });
+    }
+
+    @NotNull
+    @Override
+    public Iterable<Map<String, Object>> retrieve(@NotNull Iterable<String> keys, @NotNull Map<String, Object> props) throws Throwable {
+        return this.run(daoImpl -> daoImpl.retrieve(keys, props));
+    }
+
+    @Override
+    public void update(@NotNull Iterable<Map<String, Object>> entity, @NotNull Map<String, Object> props) throws Throwable {
+        this.run(daoImpl -> {
+            daoImpl.update(entity, props);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(@NotNull Map<String, Object> props) throws Throwable {
+        this.run(daoImpl -> {
+            daoImpl.delete(props);
+            return null;
+        });
+    }
+
+    @Override
+    public void createBatch(@NotNull List<? extends Iterable<Map<String, Object>>> entities) throws Throwable {
+        this.run(daoImpl -> {
+            daoImpl.createBatch(entities);
+            return null;
+        });
+    }
+
+    @NotNull
+    @Override
+    public List<Iterable<Map<String, Object>>> retrieveBatch(@NotNull Iterable<String> keys, @NotNull List<Map<String, Object>> props) throws Throwable {
+        return this.run(daoImpl -> daoImpl.retrieveBatch(keys, props));
+    }
+
+    @Override
+    public void updateBatch(@NotNull List<? extends Iterable<Map<String, Object>>> entities, @NotNull List<Map<String, Object>> props) throws Throwable {
+        this.run(daoImpl -> {
+            daoImpl.updateBatch(entities, props);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteBatch(@NotNull List<Map<String, Object>> props) throws Throwable {
+        this.run(daoImpl -> {
+            daoImpl.deleteBatch(props);
+            return null;
+        });
+    }
+
+    @Nullable
+    @Override
+    public List<Map<String, Object>> page(@NotNull Iterable<String> keys, @NotNull Map<String, Object> props, @Nullable List<Object> after, int limit) throws Throwable {
+        return this.run(daoImpl -> daoImpl.page(keys, props, after, limit));
+    }
+
+    private <R> R run(@NotNull ThrowingFunction<DaoImpl<?>, R> operation) throws Throwable {
+        try (var transaction = this.transactionFactory.createTransaction()) {
+            return operation.apply(this.daoImplFactory.apply(transaction));
+        }
+    }
+
+}
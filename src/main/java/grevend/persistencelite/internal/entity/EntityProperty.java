@@ -35,4 +35,4 @@ import org.jetbrains.annotations.Nullable;
  * @see MethodHandle
  * @since 0.2.0
  */
-public final record EntityProperty(@NotNull Class<?>type, @Nullable MethodHandle getter, @NotNull String fieldName, @NotNull String propertyName, @Nullable EntityIdentifier identifier, @Nullable EntityRelation relation, boolean copy, @AvailableSince(value = "0.5.0")boolean escape) {}
+public final record EntityProperty(@NotNull Class<?>type, @Nullable MethodHandle getter, @NotNull String fieldName, @NotNull String propertyName, @Nullable EntityIdentifier identifier, @Nullable EntityRelation relation, boolean copy, @AvailableSince(value = "0.5.0")boolean escape, @AvailableSince(value = "0.6.9")boolean version) {}
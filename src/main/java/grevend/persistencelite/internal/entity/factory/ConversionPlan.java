@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.entity.factory;
+
+import grevend.persistencelite.internal.entity.EntityProperty;
+import grevend.persistencelite.util.TypeMarshaller;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The conversions of all declared properties of an entity compiled for one marshaller map. The
+ * scoped or global marshaller of every property and the constants of enum properties are
+ * resolved once, so that converting a value neither looks up marshallers nor reflects on enums.
+ * Registering a marshaller with any service bumps a global generation, which outdates all plans
+ * compiled before.
+ *
+ * @author David Greven
+ * @see EntityMapper
+ * @see TypeMarshaller
+ * @since 0.6.9
+ */
+final class ConversionPlan {
+
+    private static final TypeMarshaller<Object, Object> IDENTITY = value -> value;
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    private final Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap;
+    private final int generation;
+    private final TypeMarshaller<Object, Object>[] converters;
+
+    /**
+     * @param entityClass
+     * @param properties
+     * @param marshallerMap
+     * @param marshall      True if values are converted into entity components, false if
+     *                      components are converted into values.
+     *
+     * @since 0.6.9
+     */
+    ConversionPlan(@NotNull Class<?> entityClass, @NotNull EntityProperty[] properties, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap, boolean marshall) {
+        this.marshallerMap = marshallerMap;
+        this.generation = GENERATION.get();
+        @SuppressWarnings("unchecked")
+        var converters = (TypeMarshaller<Object, Object>[]) new TypeMarshaller<?, ?>[properties
+            .length];
+        for (var i = 0; i < properties.length; i++) {
+            var type = properties[i].type();
+            var marshaller = resolve(entityClass, type, marshallerMap);
+            converters[i] = marshall ? marshaller(type, marshaller)
+                : unmarshaller(type, marshaller);
+        }
+        this.converters = converters;
+    }
+
+    /**
+     * Outdates all compiled plans, called whenever a marshaller is registered.
+     *
+     * @since 0.6.9
+     */
+    static void invalidate() {
+        GENERATION.incrementAndGet();
+    }
+
+    @NotNull
+    private static TypeMarshaller<Object, Object> resolve(@NotNull Class<?> entityClass, @NotNull Class<?> type, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) {
+        TypeMarshaller<Object, Object> marshaller = null;
+        if (marshallerMap.containsKey(entityClass)) {
+            marshaller = marshallerMap.get(entityClass).get(type);
+        } else if (marshallerMap.containsKey(null)) {
+            marshaller = marshallerMap.get(null).get(type);
+        }
+        return marshaller == null ? IDENTITY : marshaller;
+    }
+
+    @NotNull
+    private static TypeMarshaller<Object, Object> marshaller(@NotNull Class<?> type, @NotNull TypeMarshaller<Object, Object> marshaller) {
+        if (!type.isEnum()) {
+            return marshaller;
+        }
+        Map<String, Object> constants = new HashMap<>();
+        for (var constant : type.getEnumConstants()) {
+            var name = ((Enum<?>) constant).name();
+            constants.put(name, constant);
+            constants.putIfAbsent(name.toLowerCase(), constant);
+        }
+        return value -> {
+            if (value instanceof String string) {
+                var constant = constants.get(string);
+                return constant != null ? constant
+                    : constants.getOrDefault(string.toUpperCase(), value);
+            }
+            return marshaller.marshall(value);
+        };
+    }
+
+    @NotNull
+    private static TypeMarshaller<Object, Object> unmarshaller(@NotNull Class<?> type, @NotNull TypeMarshaller<Object, Object> marshaller) {
+        if (type.isEnum()) {
+            var constants = type.getEnumConstants();
+            var names = new String[constants.length];
+            for (var i = 0; i < constants.length; i++) {
+                names[i] = constants[i].toString().toLowerCase();
+            }
+            return value -> {
+                if (value != null && value.getClass() == type) {
+                    return names[((Enum<?>) value).ordinal()];
+                }
+                return value != null && value.getClass().isEnum() ? value.toString()
+                    .toLowerCase() : marshaller.marshall(value);
+            };
+        }
+        return value -> value != null && value.getClass().isEnum() ? value.toString()
+            .toLowerCase() : marshaller.marshall(value);
+    }
+
+    /**
+     * @param marshallerMap
+     *
+     * @return True if this plan is still valid for the given marshaller map.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    boolean compiledFor(@NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) {
+        return this.marshallerMap == marshallerMap && this.current();
+    }
+
+    /**
+     * @return False if a marshaller has been registered since this plan was compiled.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    boolean current() {
+        return this.generation == GENERATION.get();
+    }
+
+    /**
+     * @param index The index of the property in the declared properties of the entity.
+     * @param value
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    Object convert(int index, @Nullable Object value) {
+        return this.converters[index].marshall(value);
+    }
+
+}
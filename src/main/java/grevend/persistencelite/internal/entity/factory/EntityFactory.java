@@ -33,13 +33,10 @@ import grevend.sequence.function.ThrowingFunction;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 /**
  * @author David Greven
@@ -50,6 +47,16 @@ import org.jetbrains.annotations.Nullable;
  */
 public final class EntityFactory {
 
+    /**
+     * Discards the conversions compiled for the current marshallers, to be called by services
+     * whenever a marshaller is registered.
+     *
+     * @since 0.6.9
+     */
+    public static void marshallersChanged() {
+        ConversionPlan.invalidate();
+    }
+
     /**
      * @param entityMetadata
      * @param properties
@@ -93,59 +100,27 @@ public final class EntityFactory {
         if (entityMetadata.constructor() == null) {
             throw new IllegalArgumentException("Missing constructor.");
         }
-        final var propertyNames = entityMetadata.declaredProperties().stream()
-            .map(prop -> props ? prop.propertyName() : prop.fieldName())
-            .collect(Collectors.toUnmodifiableList());
-        if (!properties.containsAll(propertyNames)) {
-            final var missingProperties = new ArrayList<>(propertyNames);
-            missingProperties.removeAll(properties);
-            throw new IllegalArgumentException(
-                "Missing properties: " + missingProperties.toString());
-        }
-        final var propsMeta = entityMetadata.declaredProperties().stream().filter(
-            prop -> props ? propertyNames.contains(prop.propertyName())
-                : propertyNames.contains(prop.fieldName()))
-            .collect(Collectors.toUnmodifiableList());
-
-        final List<Object> propertyValues = new ArrayList<>();
-        for (var prop : propsMeta) {
+        final var mapper = EntityMapper.of(entityMetadata);
+        final var plan = mapper.marshalling(marshallerMap);
+        final var declaredProperties = entityMetadata.declaredProperties();
+        final var propertyValues = new Object[declaredProperties.size()];
+        List<String> missingProperties = null;
+        var i = 0;
+        for (var prop : declaredProperties) {
             var name = props ? prop.propertyName() : prop.fieldName();
-            propertyValues
-                .add(marshall(entityMetadata, values.apply(name), prop.type(), marshallerMap));
-        }
-        return (E) Objects.requireNonNull(entityMetadata.constructor())
-            .invokeWithArguments(propertyValues);
-    }
-
-    /**
-     * @param value
-     * @param marshallerMap
-     *
-     * @return
-     *
-     * @since 0.5.3
-     */
-    @Nullable
-    private static Object marshall(@NotNull EntityMetadata<?> entityMetadata, @Nullable Object value, @NotNull Class<?> type, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) {
-        if (type.isEnum() && value instanceof String) {
-            try {
-                var method = type.getMethod("valueOf", String.class);
-                method.setAccessible(true);
-                return method.invoke(null, ((String) value).toUpperCase());
-            } catch (Exception e) {
-                e.printStackTrace();
-                return value;
-            }
-        } else if (marshallerMap.containsKey(entityMetadata.entityClass())) {
-            if (marshallerMap.get(entityMetadata.entityClass()).containsKey(type)) {
-                return marshallerMap.get(entityMetadata.entityClass()).get(type).marshall(value);
-            }
-        } else if (marshallerMap.containsKey(null)) {
-            if (marshallerMap.get(null).containsKey(type)) {
-                return marshallerMap.get(null).get(type).marshall(value);
+            if (!properties.contains(name)) {
+                if (missingProperties == null) { missingProperties = new ArrayList<>(); }
+                missingProperties.add(name);
+            } else if (missingProperties == null) {
+                propertyValues[i] = plan.convert(i, values.apply(name));
             }
+            i++;
+        }
+        if (missingProperties != null) {
+            throw new IllegalArgumentException(
+                "Missing properties: " + missingProperties.toString());
         }
-        return value;
+        return (E) mapper.construct(propertyValues);
     }
 
     /**
@@ -214,15 +189,17 @@ public final class EntityFactory {
     @NotNull
     private static <E> Map<String, Object> deconstructRecordSuperType(@NotNull EntityMetadata<?> superTypeMetadata, @NotNull E entity, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) {
         Map<String, Object> properties = new HashMap<>();
-        superTypeMetadata.declaredProperties().forEach(property -> {
+        var mapper = EntityMapper.of(superTypeMetadata);
+        var plan = mapper.unmarshalling(unmarshallerMap);
+        var i = 0;
+        for (var property : superTypeMetadata.declaredProperties()) {
             try {
-                properties.put(property.propertyName(), unmarshall(superTypeMetadata,
-                    Objects.requireNonNull(property.getter()).invoke(entity), property.type(),
-                    unmarshallerMap));
+                properties.put(property.propertyName(), plan.convert(i, mapper.get(i, entity)));
             } catch (Throwable throwable) {
                 throwable.printStackTrace();
             }
-        });
+            i++;
+        }
         return properties;
     }
 
@@ -239,45 +216,21 @@ public final class EntityFactory {
     @NotNull
     private static <E> Map<String, Object> deconstructRecordComponents(@NotNull EntityMetadata<E> entityMetadata, @NotNull E entity, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) {
         Map<String, Object> properties = new HashMap<>();
-        var superPropNames = new HashSet<String>();
-        entityMetadata.superTypes().forEach(metadata -> metadata.declaredProperties()
-            .forEach(prop -> superPropNames.add(prop.fieldName())));
-        var props = entityMetadata.declaredProperties().stream()
-            .filter(prop -> !superPropNames.contains(prop.fieldName()) || prop.identifier() != null
-                || prop.copy()).collect(Collectors.toCollection(ArrayList::new));
-        props.forEach(property -> {
-            try {
-                properties.put(property.propertyName(), unmarshall(entityMetadata,
-                    Objects.requireNonNull(property.getter()).invoke(entity), property.type(),
-                    unmarshallerMap));
-            } catch (Throwable throwable) {
-                throwable.printStackTrace();
-            }
-        });
-        return properties;
-    }
-
-    /**
-     * @param value
-     *
-     * @return
-     *
-     * @since 0.5.3
-     */
-    @Nullable
-    private static Object unmarshall(@NotNull EntityMetadata<?> entityMetadata, @Nullable Object value, @NotNull Class<?> type, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) {
-        if (value != null && Objects.requireNonNull(value).getClass().isEnum()) {
-            return value.toString().toLowerCase();
-        } else if (unmarshallerMap.containsKey(entityMetadata.entityClass())) {
-            if (unmarshallerMap.get(entityMetadata.entityClass()).containsKey(type)) {
-                return unmarshallerMap.get(entityMetadata.entityClass()).get(type).marshall(value);
-            }
-        } else if (unmarshallerMap.containsKey(null)) {
-            if (unmarshallerMap.get(null).containsKey(type)) {
-                return unmarshallerMap.get(null).get(type).marshall(value);
+        var mapper = EntityMapper.of(entityMetadata);
+        var plan = mapper.unmarshalling(unmarshallerMap);
+        var i = 0;
+        for (var property : entityMetadata.declaredProperties()) {
+            if (mapper.component(i)) {
+                try {
+                    properties.put(property.propertyName(),
+                        plan.convert(i, mapper.get(i, entity)));
+                } catch (Throwable throwable) {
+                    throwable.printStackTrace();
+                }
             }
+            i++;
         }
-        return value;
+        return properties;
     }
 
 }
@@ -0,0 +1,227 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.entity.factory;
+
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.entity.EntityProperty;
+import grevend.persistencelite.util.TypeMarshaller;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The per entity adaption of the constructor and getter handles to erased exact types, so that
+ * entities can be constructed and deconstructed with {@link MethodHandle#invokeExact(Object...)}
+ * instead of the argument spreading and boxing of {@link MethodHandle#invokeWithArguments(Object...)}.
+ * The handles are adapted once per entity class and shared. They are held in instance fields of
+ * the mapper, so the JIT does not fold them into constants, the gain comes from the exact call
+ * alone. {@code EntityMapperBenchmark} in the tests measures it.
+ *
+ * @author David Greven
+ * @see EntityFactory
+ * @since 0.6.9
+ */
+final class EntityMapper {
+
+    private static final MethodType CONSTRUCTOR = MethodType
+        .methodType(Object.class, Object[].class);
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * The maximum number of marshaller maps plans are kept for per entity and direction.
+     */
+    private static final int PLANS = 8;
+
+    private static final ClassValue<EntityMapper> MAPPERS = new ClassValue<>() {
+        @Override
+        protected EntityMapper computeValue(Class<?> type) {
+            return new EntityMapper(EntityMetadata.of(type));
+        }
+    };
+
+    private final Class<?> entityClass;
+    private final EntityProperty[] properties;
+    private final MethodHandle constructor;
+    private final MethodHandle[] getters;
+    private final boolean[] components;
+    private volatile ConversionPlan[] marshalling;
+    private volatile ConversionPlan[] unmarshalling;
+
+    /**
+     * @param entityMetadata
+     *
+     * @since 0.6.9
+     */
+    private EntityMapper(@NotNull EntityMetadata<?> entityMetadata) {
+        var properties = entityMetadata.declaredProperties().toArray(EntityProperty[]::new);
+        this.entityClass = entityMetadata.entityClass();
+        this.properties = properties;
+        this.marshalling = new ConversionPlan[0];
+        this.unmarshalling = new ConversionPlan[0];
+        var constructor = entityMetadata.constructor();
+        this.constructor = constructor == null ? null : constructor
+            .asSpreader(Object[].class, properties.length).asType(CONSTRUCTOR);
+        var superProperties = new HashSet<String>();
+        entityMetadata.superTypes().forEach(superType -> superType.declaredProperties()
+            .forEach(property -> superProperties.add(property.fieldName())));
+        this.getters = new MethodHandle[properties.length];
+        this.components = new boolean[properties.length];
+        for (var i = 0; i < properties.length; i++) {
+            var getter = properties[i].getter();
+            this.getters[i] = getter == null ? null : getter.asType(GETTER);
+            this.components[i] = !superProperties.contains(properties[i].fieldName())
+                || properties[i].identifier() != null || properties[i].copy();
+        }
+    }
+
+    /**
+     * @param entityMetadata
+     *
+     * @return The shared mapper of the given entity.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    static EntityMapper of(@NotNull EntityMetadata<?> entityMetadata) {
+        return MAPPERS.get(entityMetadata.entityClass());
+    }
+
+    /**
+     * @param values The values of all declared properties in declaration order.
+     *
+     * @return
+     *
+     * @throws Throwable
+     * @since 0.6.9
+     */
+    @NotNull
+    Object construct(@NotNull Object[] values) throws Throwable {
+        if (this.constructor == null) {
+            throw new IllegalArgumentException("Missing constructor.");
+        }
+        return (Object) this.constructor.invokeExact(values);
+    }
+
+    /**
+     * @param index The index of the property in the declared properties of the entity.
+     *
+     * @return True if the property is persisted with the entity itself rather than only with one
+     * of its super types.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    boolean component(int index) {
+        return this.components[index];
+    }
+
+    /**
+     * @param index  The index of the property in the declared properties of the entity.
+     * @param entity
+     *
+     * @return
+     *
+     * @throws Throwable
+     * @since 0.6.9
+     */
+    @Nullable
+    @Contract(pure = true)
+    Object get(int index, @NotNull Object entity) throws Throwable {
+        return (Object) this.getters[index].invokeExact(entity);
+    }
+
+    /**
+     * @param marshallerMap
+     *
+     * @return The plan converting values into the components of the entity.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    ConversionPlan marshalling(@NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) {
+        for (var plan : this.marshalling) {
+            if (plan.compiledFor(marshallerMap)) {
+                return plan;
+            }
+        }
+        synchronized (this) {
+            var plan = new ConversionPlan(this.entityClass, this.properties, marshallerMap, true);
+            this.marshalling = plans(plan, marshallerMap, this.marshalling);
+            return plan;
+        }
+    }
+
+    /**
+     * @param unmarshallerMap
+     *
+     * @return The plan converting the components of the entity into values.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    ConversionPlan unmarshalling(@NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) {
+        for (var plan : this.unmarshalling) {
+            if (plan.compiledFor(unmarshallerMap)) {
+                return plan;
+            }
+        }
+        synchronized (this) {
+            var plan = new ConversionPlan(this.entityClass, this.properties, unmarshallerMap,
+                false);
+            this.unmarshalling = plans(plan, unmarshallerMap, this.unmarshalling);
+            return plan;
+        }
+    }
+
+    /**
+     * @param plan          The newly compiled plan.
+     * @param marshallerMap The marshaller map the new plan has been compiled for.
+     * @param plans         The plans compiled so far, most recently compiled first.
+     *
+     * @return The plans with the new plan first, without outdated plans and plans for the same
+     * marshaller map, bounded to {@value #PLANS} plans so that the maps of discarded services are
+     * not retained for long.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    private static ConversionPlan[] plans(@NotNull ConversionPlan plan, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap, @NotNull ConversionPlan[] plans) {
+        var updated = new ArrayList<ConversionPlan>(PLANS);
+        updated.add(plan);
+        for (var existing : plans) {
+            if (updated.size() < PLANS && existing.current() &&
+                !existing.compiledFor(marshallerMap)) {
+                updated.add(existing);
+            }
+        }
+        return updated.toArray(ConversionPlan[]::new);
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.entity.index;
+
+import grevend.persistencelite.entity.Entity;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The compile time index of all entities written by the {@link EntityProcessor}. Every line of
+ * the index resource names an entity followed by its direct entity super types. Indexed types that
+ * no longer exist or are no longer annotated, for example after an incremental compilation that
+ * did not run the processor, are skipped.
+ *
+ * @author David Greven
+ * @see EntityProcessor
+ * @since 0.6.9
+ */
+public final class EntityIndex {
+
+    /**
+     * The name of the index resource.
+     *
+     * @since 0.6.9
+     */
+    public static final String RESOURCE = "META-INF/persistencelite/entities";
+
+    private static volatile EntityIndex INSTANCE;
+
+    private final Map<String, Class<?>> entities;
+    private final Map<Class<?>, Set<Class<?>>> subTypes;
+
+    /**
+     * @param entities
+     * @param superTypes
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    private EntityIndex(@NotNull Map<String, Class<?>> entities, @NotNull Map<Class<?>, Collection<Class<?>>> superTypes) {
+        this.entities = entities;
+        Map<Class<?>, Set<Class<?>>> directSubTypes = new HashMap<>();
+        superTypes.forEach((entity, types) -> types.forEach(superType -> directSubTypes
+            .computeIfAbsent(superType, type -> new LinkedHashSet<>()).add(entity)));
+        this.subTypes = new HashMap<>();
+        directSubTypes.keySet().forEach(
+            type -> this.subTypes.put(type, closure(type, directSubTypes)));
+    }
+
+    /**
+     * @return The index of all entities visible to the context class loader or null if no index
+     * resource has been generated.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    public static EntityIndex instance() {
+        var result = INSTANCE;
+        if (result == null) {
+            synchronized (EntityIndex.class) {
+                result = INSTANCE;
+                if (result == null) {
+                    INSTANCE = result = load();
+                }
+            }
+        }
+        return result.entities.isEmpty() ? null : result;
+    }
+
+    @NotNull
+    private static EntityIndex load() {
+        Map<String, Class<?>> entities = new HashMap<>();
+        Map<Class<?>, Collection<Class<?>>> superTypes = new HashMap<>();
+        var classLoader = Objects.requireNonNullElse(
+            Thread.currentThread().getContextClassLoader(), EntityIndex.class.getClassLoader());
+        try {
+            Map<String, List<String>> lines = new HashMap<>();
+            for (URL url : Collections.list(classLoader.getResources(RESOURCE))) {
+                try (var reader = new BufferedReader(
+                    new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    reader.lines().map(String::strip)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .map(line -> List.of(line.split("\\s+")))
+                        .forEach(names -> lines.putIfAbsent(names.get(0), names));
+                }
+            }
+            for (var names : lines.values()) {
+                var entity = load(names.get(0), classLoader);
+                if (entity != null && entity.isAnnotationPresent(Entity.class)) {
+                    entities.put(entity.getName(), entity);
+                    superTypes.put(entity, names.stream().skip(1)
+                        .map(name -> load(name, classLoader)).filter(Objects::nonNull)
+                        .collect(Collectors.toList()));
+                }
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return new EntityIndex(entities, superTypes);
+    }
+
+    @Nullable
+    private static Class<?> load(@NotNull String name, @NotNull ClassLoader classLoader) {
+        try {
+            return Class.forName(name, false, classLoader);
+        } catch (ClassNotFoundException | LinkageError exception) {
+            return null;
+        }
+    }
+
+    @NotNull
+    private static Set<Class<?>> closure(@NotNull Class<?> type, @NotNull Map<Class<?>, Set<Class<?>>> directSubTypes) {
+        Set<Class<?>> visited = new HashSet<>();
+        var queue = new ArrayDeque<Class<?>>(directSubTypes.getOrDefault(type, Set.of()));
+        while (!queue.isEmpty()) {
+            var current = queue.poll();
+            if (visited.add(current)) {
+                queue.addAll(directSubTypes.getOrDefault(current, Set.of()));
+            }
+        }
+        return Collections.unmodifiableSet(visited);
+    }
+
+    /**
+     * @param packageScope
+     *
+     * @return All indexed entities declared in the given package or one of its sub packages.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    public Collection<Class<?>> entities(@NotNull String packageScope) {
+        return this.entities.values().stream().filter(entity ->
+            entity.getPackageName().equals(packageScope) || entity.getPackageName()
+                .startsWith(packageScope + ".")).collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * @param entity
+     *
+     * @return True if the given entity has been indexed.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public boolean contains(@NotNull Class<?> entity) {
+        return this.entities.get(entity.getName()) == entity;
+    }
+
+    /**
+     * @param entity
+     *
+     * @return All indexed direct and indirect sub types of the given entity.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    public Collection<Class<?>> subTypes(@NotNull Class<?> entity) {
+        return this.subTypes.getOrDefault(entity, Set.of());
+    }
+
+}
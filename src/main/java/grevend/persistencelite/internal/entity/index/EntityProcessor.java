@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.entity.index;
+
+import grevend.persistencelite.entity.Entity;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.StandardLocation;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes the {@link EntityIndex} of all types annotated with {@link Entity} in the current
+ * compilation, so that entities and their sub types can be looked up without scanning the
+ * classpath at runtime. An incremental compilation only sees the changed sources, so the index of
+ * the previous compilation is merged with the new entries, keeping those entities that still
+ * exist and are still annotated.
+ *
+ * @author David Greven
+ * @see EntityIndex
+ * @since 0.6.9
+ */
+public final class EntityProcessor extends AbstractProcessor {
+
+    private final Map<String, String> entities = new TreeMap<>();
+
+    /**
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Set.of(Entity.class.getCanonicalName());
+    }
+
+    /**
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * @param annotations
+     * @param roundEnv
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @Override
+    public boolean process(@NotNull Set<? extends TypeElement> annotations, @NotNull RoundEnvironment roundEnv) {
+        for (var element : roundEnv.getElementsAnnotatedWith(Entity.class)) {
+            if (element.getKind() == ElementKind.RECORD || element.getKind() == ElementKind.INTERFACE) {
+                var type = (TypeElement) element;
+                this.entities.put(this.binaryName(type), this.processingEnv.getTypeUtils()
+                    .directSupertypes(type.asType()).stream()
+                    .map(superType -> (TypeElement) ((DeclaredType) superType).asElement())
+                    .filter(superType -> superType.getAnnotation(Entity.class) != null)
+                    .map(this::binaryName).collect(Collectors.joining(" ")));
+            }
+        }
+
+        if (roundEnv.processingOver() && !this.entities.isEmpty()) {
+            this.write();
+        }
+        return false;
+    }
+
+    @NotNull
+    private String binaryName(@NotNull TypeElement type) {
+        return this.processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    /**
+     * Adds the entries of the index written by a previous compilation into the same output, unless
+     * the entity has been compiled again or no longer exists as an entity.
+     */
+    private void merge() {
+        try (var reader = new BufferedReader(this.processingEnv.getFiler()
+            .getResource(StandardLocation.CLASS_OUTPUT, "", EntityIndex.RESOURCE)
+            .openReader(true))) {
+            reader.lines().map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .forEach(line -> {
+                    var separator = line.indexOf(' ');
+                    var name = separator < 0 ? line : line.substring(0, separator);
+                    var type = this.processingEnv.getElementUtils()
+                        .getTypeElement(name.replace('$', '.'));
+                    if (type != null && type.getAnnotation(Entity.class) != null) {
+                        this.entities.putIfAbsent(name, separator < 0 ? ""
+                            : line.substring(separator + 1).strip());
+                    }
+                });
+        } catch (IOException | IllegalArgumentException ignored) {
+            // No index has been written into the output yet.
+        }
+    }
+
+    private void write() {
+        this.merge();
+        try (Writer writer = this.processingEnv.getFiler()
+            .createResource(StandardLocation.CLASS_OUTPUT, "", EntityIndex.RESOURCE)
+            .openWriter()) {
+            writer.write("# Generated by " + EntityProcessor.class.getCanonicalName() + "\n");
+            for (var entity : this.entities.entrySet()) {
+                writer.write((entity.getKey() + " " + entity.getValue()).strip() + "\n");
+            }
+        } catch (IOException exception) {
+            this.processingEnv.getMessager().printMessage(Kind.ERROR,
+                "Entity index could not be written: " + exception.getMessage());
+        }
+    }
+
+}
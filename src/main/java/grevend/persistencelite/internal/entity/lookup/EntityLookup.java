@@ -28,6 +28,7 @@ import grevend.persistencelite.entity.EntityMetadata;
 import grevend.persistencelite.entity.Id;
 import grevend.persistencelite.entity.Property;
 import grevend.persistencelite.entity.Relation;
+import grevend.persistencelite.entity.Version;
 import grevend.persistencelite.internal.entity.EntityIdentifier;
 import grevend.persistencelite.internal.entity.EntityProperty;
 import grevend.persistencelite.internal.entity.EntityRelation;
@@ -137,8 +138,11 @@ public interface EntityLookup<E, C extends AnnotatedElement> {
         var escape = component.isAnnotationPresent(Property.class) &&
             component.getAnnotation(Property.class).escape();
 
+        var version = component.isAnnotationPresent(Version.class);
+
         return new EntityProperty(this.lookupComponentType(component), getter,
-            this.lookupComponentName(component), propertyName, identifier, relation, copy, escape);
+            this.lookupComponentName(component), propertyName, identifier, relation, copy, escape,
+            version);
     }
 
     /**
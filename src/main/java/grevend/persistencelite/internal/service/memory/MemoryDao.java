@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.memory;
+
+import static grevend.persistencelite.internal.util.Utils.unsafeCast;
+
+import grevend.common.Lazy;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.dao.DaoImpl;
+import grevend.persistencelite.internal.entity.EntityRelation;
+import grevend.persistencelite.internal.entity.EntityType;
+import grevend.persistencelite.internal.entity.factory.EntityFactory;
+import grevend.persistencelite.internal.util.Utils;
+import grevend.persistencelite.util.TypeMarshaller;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.UnmodifiableView;
+
+/**
+ * @param <E>
+ *
+ * @author David Greven
+ * @see MemoryStore
+ * @since 0.6.9
+ */
+public final record MemoryDao<E>(@NotNull EntityMetadata<E>entityMetadata, @NotNull MemoryStore store, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>>marshallerMap) implements DaoImpl<RuntimeException> {
+
+    /**
+     * Creates the relation indexes on the target properties of all declared relations.
+     *
+     * @since 0.6.9
+     */
+    public MemoryDao {
+        entityMetadata.declaredRelations().forEach(relation -> {
+            var entityRelation = Objects.requireNonNull(relation.relation());
+            targets(entityRelation).forEach(target -> store
+                .index(target, List.of(entityRelation.getTargetProperties())));
+        });
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    private static Collection<EntityMetadata<?>> targets(@NotNull EntityRelation entityRelation) {
+        var targetMetadata = EntityMetadata.of(entityRelation.getTargetEntity());
+        return targetMetadata.entityType() == EntityType.INTERFACE ?
+            targetMetadata.concreteSubTypes() : List.of(targetMetadata);
+    }
+
+    private void mutate(@NotNull Iterable<Map<String, Object>> all, @NotNull Map<String, Object> changes) {
+        changes.forEach((key, value) -> all.forEach(entity -> {
+            if (entity.containsKey(key)) {
+                entity.replace(key, value);
+            }
+        }));
+    }
+
+    @Override
+    public void create(@NotNull Iterable<Map<String, Object>> entity) {
+        var types = this.entityMetadata.types().iterator();
+        Map<String, Object> generated = new HashMap<>();
+        List<Map.Entry<MemoryTable, List<Object>>> inserted = new ArrayList<>();
+        this.store.lock().lock();
+        try {
+            for (var component : entity) {
+                if (!types.hasNext()) { break; }
+                var table = this.store.table(types.next());
+                var row = table.canonicalize(component);
+                var ids = table.insert(row, generated);
+                row.putAll(ids);
+                inserted.add(Map.entry(table, table.primaryKey(row)));
+                generated.putAll(ids);
+            }
+        } catch (RuntimeException exception) {
+            Collections.reverse(inserted);
+            inserted.forEach(entry -> entry.getKey().delete(entry.getValue()));
+            throw exception;
+        } finally {
+            this.store.lock().unlock();
+        }
+        this.mutate(entity, generated);
+    }
+
+    @NotNull
+    @Override
+    @UnmodifiableView
+    public Iterable<Map<String, Object>> retrieve(@NotNull Iterable<String> keys, @NotNull Map<String, Object> props) {
+        Map<String, Object> criteria = new HashMap<>();
+        keys.forEach(key -> criteria.put(key, props.get(key)));
+        var res = this.rows(criteria);
+        res.forEach(this::createRelationValues);
+        return Collections.unmodifiableList(res);
+    }
+
+    @NotNull
+    private List<Map<String, Object>> rows(@NotNull Map<String, Object> criteria) {
+        var table = this.store.table(this.entityMetadata);
+        var superTypes = this.entityMetadata.types().stream()
+            .filter(type -> !type.equals(this.entityMetadata)).map(this.store::table)
+            .toArray(MemoryTable[]::new);
+
+        Map<String, Object> local = new HashMap<>();
+        Map<String, Object> remaining = new HashMap<>();
+        criteria.forEach((key, value) -> {
+            var name = table.propertyName(key);
+            if (name != null) {
+                local.put(name, value);
+            } else {
+                remaining.put(key, value);
+            }
+        });
+
+        List<Map<String, Object>> res = new ArrayList<>();
+        rows:
+        for (var row : table.select(local)) {
+            Map<String, Object> merged = new HashMap<>(row);
+            for (var superType : superTypes) {
+                var superRow = superType.row(superType.primaryKey(merged));
+                if (superRow == null) { continue rows; }
+                superRow.forEach(merged::putIfAbsent);
+            }
+            for (var criterion : remaining.entrySet()) {
+                if (!this.matches(superTypes, merged, criterion.getKey(), criterion.getValue())) {
+                    continue rows;
+                }
+            }
+            res.add(merged);
+        }
+        return res;
+    }
+
+    @Contract(pure = true)
+    private boolean matches(@NotNull MemoryTable[] tables, @NotNull Map<String, Object> row, @NotNull String key, Object value) {
+        for (var table : tables) {
+            var name = table.propertyName(key);
+            if (name != null) {
+                return Objects.equals(Utils.normalize(row.get(name)),
+                    Utils.normalize(value));
+            }
+        }
+        throw new IllegalArgumentException("Unknown property " + key + " for entity " +
+            this.entityMetadata.name() + ".");
+    }
+
+    private void createRelationValues(@NotNull Map<String, Object> row) {
+        var table = this.store.table(this.entityMetadata);
+        this.entityMetadata.declaredRelations().forEach(relation -> {
+            var entityRelation = Objects.requireNonNull(relation.relation());
+            var selfProperties = entityRelation.getSelfProperties();
+            var targetProperties = entityRelation.getTargetProperties();
+            Map<String, Object> criteria = new HashMap<>();
+            for (var i = 0; i < selfProperties.length; i++) {
+                var name = table.propertyName(selfProperties[i]);
+                criteria.put(targetProperties[i], row.get(name == null ? selfProperties[i] : name));
+            }
+            row.put(relation.propertyName(), relation.type().isAssignableFrom(Collection.class) ?
+                new MemoryRelation<>(() -> this.retrieve(entityRelation, criteria)) :
+                (relation.type().isAssignableFrom(Lazy.class) ? Lazy.of(
+                    () -> this.retrieve(entityRelation, criteria).stream().findFirst()
+                        .orElse(null)) : null));
+        });
+    }
+
+    @NotNull
+    private List<Object> retrieve(@NotNull EntityRelation entityRelation, @NotNull Map<String, Object> criteria) {
+        List<Object> elements = new ArrayList<>();
+        for (var target : targets(entityRelation)) {
+            var dao = new MemoryDao<>(target, this.store, this.marshallerMap);
+            for (var row : dao.retrieve(criteria.keySet(), criteria)) {
+                try {
+                    elements.add(EntityFactory.construct(target, row, true,
+                        unsafeCast(this.marshallerMap)));
+                } catch (Throwable throwable) {
+                    throw new IllegalStateException("Failed to construct related entity.",
+                        throwable);
+                }
+            }
+        }
+        return elements;
+    }
+
+    @Override
+    public void update(@NotNull Iterable<Map<String, Object>> entity, @NotNull Map<String, Object> props) {
+        var types = this.entityMetadata.types().iterator();
+        List<Map.Entry<MemoryTable, List<Object>>> updates = new ArrayList<>();
+        List<Map<String, Object>> changes = new ArrayList<>();
+        this.store.lock().lock();
+        try {
+            for (var component : entity) {
+                if (!types.hasNext()) { break; }
+                var table = this.store.table(types.next());
+                var tableChanges = table.canonicalize(props);
+                if (!table.versioned() && tableChanges.isEmpty()) {
+                    continue;
+                }
+                var current = table.canonicalize(component);
+                var primaryKey = table.primaryKey(current);
+                table.verify(primaryKey, current);
+                updates.add(Map.entry(table, primaryKey));
+                changes.add(tableChanges);
+            }
+            Iterator<Map<String, Object>> iterator = changes.iterator();
+            updates.forEach(entry -> entry.getKey().update(entry.getValue(), iterator.next()));
+        } finally {
+            this.store.lock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(@NotNull Map<String, Object> props) {
+        this.store.lock().lock();
+        try {
+            this.entityMetadata.types().stream().map(this.store::table)
+                .forEach(table -> table.delete(table.primaryKey(table.canonicalize(props))));
+        } finally {
+            this.store.lock().unlock();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.memory;
+
+import grevend.common.LazyCollection;
+import grevend.sequence.Seq;
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An immutable relation collection that resolves its elements on first access.
+ *
+ * @param <E>
+ *
+ * @author David Greven
+ * @see LazyCollection
+ * @since 0.6.9
+ */
+final class MemoryRelation<E> extends AbstractCollection<E> implements LazyCollection<E> {
+
+    private final Supplier<List<E>> supplier;
+    private volatile List<E> elements;
+
+    /**
+     * @param supplier
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    MemoryRelation(@NotNull Supplier<List<E>> supplier) {
+        this.supplier = supplier;
+    }
+
+    @NotNull
+    private List<E> elements() {
+        var res = this.elements;
+        if (res == null) {
+            synchronized (this) {
+                res = this.elements;
+                if (res == null) {
+                    res = List.copyOf(this.supplier.get());
+                    this.elements = res;
+                }
+            }
+        }
+        return res;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return this.elements().iterator();
+    }
+
+    @Override
+    public int size() {
+        return this.elements().size();
+    }
+
+    @NotNull
+    @Override
+    public <S extends Seq<E, S>> Seq<E, S> sequence() {
+        return Seq.of(this.elements());
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.memory;
+
+import grevend.persistencelite.entity.EntityMetadata;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The tables of an in-memory service. Every entity type of a hierarchy is stored in its own
+ * {@link MemoryTable}, mirroring the layout used by the SQL backends.
+ *
+ * @author David Greven
+ * @see MemoryTable
+ * @since 0.6.9
+ */
+public final class MemoryStore {
+
+    private final Map<Class<?>, MemoryTable> tables;
+    private final Lock lock;
+
+    /**
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public MemoryStore() {
+        this.tables = new ConcurrentHashMap<>();
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * @param entityMetadata
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    MemoryTable table(@NotNull EntityMetadata<?> entityMetadata) {
+        return this.tables.computeIfAbsent(entityMetadata.entityClass(),
+            entity -> new MemoryTable(entityMetadata));
+    }
+
+    /**
+     * Eagerly creates a secondary index on the given properties of the entity.
+     *
+     * @param entityMetadata
+     * @param properties     The field or property names.
+     *
+     * @since 0.6.9
+     */
+    public void index(@NotNull EntityMetadata<?> entityMetadata, @NotNull Iterable<String> properties) {
+        List<String> names = new ArrayList<>();
+        properties.forEach(names::add);
+        this.table(entityMetadata).index(names);
+    }
+
+    /**
+     * Serializes mutations that span the tables of several entity types, reads are not blocked.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(pure = true)
+    Lock lock() {
+        return this.lock;
+    }
+
+}
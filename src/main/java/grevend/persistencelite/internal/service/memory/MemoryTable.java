@@ -0,0 +1,456 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.memory;
+
+import grevend.persistencelite.dao.VersionConflictException;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.entity.EntityProperty;
+import grevend.persistencelite.internal.util.Utils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.UnmodifiableView;
+
+/**
+ * The rows of a single entity, keyed by their identifier values. Rows are stored as immutable
+ * maps from property names to values. Lookups by identifiers are lock-free, every other lookup is
+ * answered by a secondary hash index over the requested property names that is built on first
+ * use and maintained by all subsequent writes.
+ *
+ * @author David Greven
+ * @see MemoryStore
+ * @since 0.6.9
+ */
+final class MemoryTable {
+
+    private final EntityMetadata<?> entityMetadata;
+    private final List<String> identifiers;
+    private final Map<String, String> propertyNames;
+    private final Map<String, AtomicLong> sequences;
+    private final Map<List<Object>, Map<String, Object>> rows;
+    private final Map<List<String>, Map<List<Object>, Set<List<Object>>>> indexes;
+    private final ReadWriteLock lock;
+    private final String version;
+
+    /**
+     * @param entityMetadata
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    MemoryTable(@NotNull EntityMetadata<?> entityMetadata) {
+        this.entityMetadata = entityMetadata;
+        this.identifiers = entityMetadata.declaredIdentifiers().stream()
+            .map(EntityProperty::propertyName).collect(Collectors.toUnmodifiableList());
+        this.propertyNames = new HashMap<>();
+        entityMetadata.properties().stream().filter(prop -> prop.relation() == null)
+            .forEach(prop -> {
+                this.propertyNames.put(prop.fieldName(), prop.propertyName());
+                this.propertyNames.put(prop.propertyName(), prop.propertyName());
+            });
+        this.sequences = new ConcurrentHashMap<>();
+        this.rows = new ConcurrentHashMap<>();
+        this.indexes = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.version = entityMetadata.uniqueProperties().stream().filter(EntityProperty::version)
+            .map(EntityProperty::propertyName).findFirst().orElse(null);
+    }
+
+    /**
+     * @param name A field or property name.
+     *
+     * @return The property name or null if the entity does not declare such a property.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    @Contract(pure = true)
+    String propertyName(@NotNull String name) {
+        return this.propertyNames.get(name);
+    }
+
+    /**
+     * @param values Values keyed by field or property names.
+     *
+     * @return The values keyed by property names, unknown names are dropped.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    Map<String, Object> canonicalize(@NotNull Map<String, Object> values) {
+        Map<String, Object> canonical = new HashMap<>();
+        values.forEach((key, value) -> {
+            var name = this.propertyNames.get(key);
+            if (name != null && (!canonical.containsKey(name) || key.equals(name))) {
+                canonical.put(name, value);
+            }
+        });
+        return canonical;
+    }
+
+    @NotNull
+    private List<Object> key(@NotNull List<String> names, @NotNull Map<String, Object> row) {
+        var key = new ArrayList<>(names.size());
+        for (var name : names) {
+            key.add(Utils.normalize(row.get(name)));
+        }
+        return Collections.unmodifiableList(key);
+    }
+
+    /**
+     * @param row Values keyed by property names.
+     *
+     * @return The identifier key of the row.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    List<Object> primaryKey(@NotNull Map<String, Object> row) {
+        return this.key(this.identifiers, row);
+    }
+
+    /**
+     * @param row      Values keyed by property names.
+     * @param assigned Identifier values that have already been generated for a supertype of the
+     *                 entity and must be reused instead of generating new ones.
+     *
+     * @return The generated identifier values keyed by property names.
+     *
+     * @throws IllegalStateException if a row with the same identifiers already exists.
+     * @since 0.6.9
+     */
+    @NotNull
+    Map<String, Object> insert(@NotNull Map<String, Object> row, @NotNull Map<String, Object> assigned) {
+        Map<String, Object> generated = new HashMap<>();
+        this.lock.writeLock().lock();
+        try {
+            Map<String, Object> values = new HashMap<>(row);
+            this.entityMetadata.declaredIdentifiers().stream()
+                .filter(prop -> prop.identifier() != null && Objects
+                    .requireNonNull(prop.identifier()).autoGenerated())
+                .forEach(prop -> generated.put(prop.propertyName(),
+                    assigned.containsKey(prop.propertyName()) ? assigned.get(prop.propertyName())
+                        : this.next(prop)));
+            values.putAll(generated);
+            var key = this.primaryKey(values);
+            if (this.rows.containsKey(key)) {
+                throw new IllegalStateException("Duplicate key " + key + " for entity " +
+                    this.entityMetadata.name() + ".");
+            }
+            this.put(key, Collections.unmodifiableMap(values));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        return generated;
+    }
+
+    @NotNull
+    private Object next(@NotNull EntityProperty property) {
+        var value = this.sequences.computeIfAbsent(property.propertyName(),
+            name -> new AtomicLong()).incrementAndGet();
+        var type = property.type();
+        if (type == int.class || type == Integer.class) {
+            return (int) value;
+        } else if (type == long.class || type == Long.class) {
+            return value;
+        } else if (type == short.class || type == Short.class) {
+            return (short) value;
+        }
+        throw new UnsupportedOperationException("Auto generated identifiers of type " + type +
+            " are not supported.");
+    }
+
+    /**
+     * @param criteria Values keyed by property names.
+     *
+     * @return A snapshot of all rows matching the criteria.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @UnmodifiableView
+    List<Map<String, Object>> select(@NotNull Map<String, Object> criteria) {
+        if (criteria.isEmpty()) {
+            return List.copyOf(this.rows.values());
+        }
+
+        var names = criteria.keySet().stream().sorted().collect(Collectors.toUnmodifiableList());
+        if (names.size() == this.identifiers.size() && names.containsAll(this.identifiers)) {
+            var row = this.rows.get(this.primaryKey(criteria));
+            return row == null ? List.of() : List.of(row);
+        }
+
+        var key = this.key(names, criteria);
+        this.lock.readLock().lock();
+        try {
+            var index = this.indexes.get(names);
+            if (index != null) {
+                return this.rows(index.get(key));
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            return this.rows(this.createIndex(names).get(key));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @NotNull
+    private List<Map<String, Object>> rows(@Nullable Collection<List<Object>> keys) {
+        if (keys == null) {
+            return List.of();
+        }
+        List<Map<String, Object>> res = new ArrayList<>(keys.size());
+        for (var key : keys) {
+            res.add(this.rows.get(key));
+        }
+        return Collections.unmodifiableList(res);
+    }
+
+    /**
+     * Creates the secondary index over the given property names unless it already exists. The
+     * caller must hold the write lock.
+     *
+     * @param names The sorted property names.
+     *
+     * @return The index.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    private Map<List<Object>, Set<List<Object>>> createIndex(@NotNull List<String> names) {
+        var index = this.indexes.get(names);
+        if (index == null) {
+            var created = new HashMap<List<Object>, Set<List<Object>>>();
+            this.rows.forEach((primaryKey, row) -> created
+                .computeIfAbsent(this.key(names, row), key -> new HashSet<>()).add(primaryKey));
+            this.indexes.put(names, created);
+            index = created;
+        }
+        return index;
+    }
+
+    /**
+     * Eagerly creates the secondary index over the given property names.
+     *
+     * @param names Field or property names.
+     *
+     * @since 0.6.9
+     */
+    void index(@NotNull Collection<String> names) {
+        var canonical = names.stream().map(this.propertyNames::get).filter(Objects::nonNull)
+            .sorted().collect(Collectors.toUnmodifiableList());
+        if (canonical.size() != names.size() || (canonical.size() == this.identifiers.size() &&
+            canonical.containsAll(this.identifiers))) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            this.createIndex(canonical);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return True if the entity declares a version property.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    boolean versioned() {
+        return this.version != null;
+    }
+
+    /**
+     * @param primaryKey The identifier key of the row.
+     *
+     * @return The row or null if no such row exists.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    Map<String, Object> row(@NotNull List<Object> primaryKey) {
+        return this.rows.get(primaryKey);
+    }
+
+    /**
+     * Verifies that the row is still at the expected version. Does nothing for entities without a
+     * version property.
+     *
+     * @param primaryKey The identifier key of the row.
+     * @param expected   Values keyed by property names that contain the expected version.
+     *
+     * @throws VersionConflictException if the row no longer exists or is at another version.
+     * @since 0.6.9
+     */
+    void verify(@NotNull List<Object> primaryKey, @NotNull Map<String, Object> expected) {
+        if (this.version == null) {
+            return;
+        }
+        var version = expected.get(this.version);
+        var row = this.rows.get(primaryKey);
+        if (row == null || !Objects
+            .equals(Utils.normalize(row.get(this.version)), Utils.normalize(version))) {
+            Map<String, Object> identifiers = new HashMap<>();
+            for (var i = 0; i < this.identifiers.size(); i++) {
+                identifiers.put(this.identifiers.get(i), primaryKey.get(i));
+            }
+            throw new VersionConflictException(this.entityMetadata.entityClass(), identifiers,
+                version);
+        }
+    }
+
+    /**
+     * Applies the changes to the row and increments its version if the entity is versioned. The
+     * caller is responsible for calling {@link #verify(List, Map)} beforehand.
+     *
+     * @param primaryKey The identifier key of the row to update.
+     * @param changes    Values keyed by property names.
+     *
+     * @throws IllegalStateException if the changes collide with the identifiers of another row.
+     * @since 0.6.9
+     */
+    void update(@NotNull List<Object> primaryKey, @NotNull Map<String, Object> changes) {
+        this.lock.writeLock().lock();
+        try {
+            var row = this.rows.get(primaryKey);
+            if (row == null) {
+                return;
+            }
+            Map<String, Object> values = new HashMap<>(row);
+            values.putAll(changes);
+            if (this.version != null) {
+                values.put(this.version, increment(row.get(this.version)));
+            }
+            var key = this.primaryKey(values);
+            if (!key.equals(primaryKey) && this.rows.containsKey(key)) {
+                throw new IllegalStateException("Duplicate key " + key + " for entity " +
+                    this.entityMetadata.name() + ".");
+            }
+            if (key.equals(primaryKey)) {
+                this.replace(primaryKey, row, Collections.unmodifiableMap(values));
+            } else {
+                this.remove(primaryKey);
+                this.put(key, Collections.unmodifiableMap(values));
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    private static Object increment(@Nullable Object version) {
+        if (version instanceof Integer integer) {
+            return integer + 1;
+        } else if (version instanceof Long value) {
+            return value + 1;
+        } else if (version instanceof Short value) {
+            return (short) (value + 1);
+        }
+        throw new IllegalStateException("Unsupported version value " + version + ".");
+    }
+
+    /**
+     * @param primaryKey The identifier key of the row to delete.
+     *
+     * @since 0.6.9
+     */
+    void delete(@NotNull List<Object> primaryKey) {
+        this.lock.writeLock().lock();
+        try {
+            this.remove(primaryKey);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void put(@NotNull List<Object> primaryKey, @NotNull Map<String, Object> row) {
+        this.rows.put(primaryKey, row);
+        this.indexes.forEach((names, index) -> index
+            .computeIfAbsent(this.key(names, row), key -> new HashSet<>()).add(primaryKey));
+    }
+
+    /**
+     * Swaps the row in place, so that lock-free readers never observe the row as missing, and
+     * moves the primary key only between the index entries whose values changed.
+     *
+     * @since 0.6.9
+     */
+    private void replace(@NotNull List<Object> primaryKey, @NotNull Map<String, Object> previous, @NotNull Map<String, Object> row) {
+        this.rows.put(primaryKey, row);
+        this.indexes.forEach((names, index) -> {
+            var previousKey = this.key(names, previous);
+            var key = this.key(names, row);
+            if (previousKey.equals(key)) {
+                return;
+            }
+            index.computeIfAbsent(key, k -> new HashSet<>()).add(primaryKey);
+            var keys = index.get(previousKey);
+            if (keys != null) {
+                keys.remove(primaryKey);
+                if (keys.isEmpty()) {
+                    index.remove(previousKey);
+                }
+            }
+        });
+    }
+
+    private void remove(@NotNull List<Object> primaryKey) {
+        var row = this.rows.remove(primaryKey);
+        if (row != null) {
+            this.indexes.forEach((names, index) -> {
+                var key = this.key(names, row);
+                var keys = index.get(key);
+                if (keys != null) {
+                    keys.remove(primaryKey);
+                    if (keys.isEmpty()) {
+                        index.remove(key);
+                    }
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Encodes entities in the binary format negotiated between PersistenceLite servers and
+ * requesters. A response starts with the format version and a schema listing the property names
+ * once, followed by the rows and a terminating end marker. Every row carries one type-tagged value
+ * per property in schema order: zigzag varints for integral numbers, IEEE 754 floats, booleans
+ * and nulls as bare tags and everything else as length-prefixed UTF-8 of the marshalled value.
+ *
+ * @author David Greven
+ * @see RestCodec
+ * @since 0.6.9
+ */
+final class BinaryEncoder implements Closeable, Flushable {
+
+    static final String CONTENT_TYPE = "application/pl.v0.entity+binary";
+    static final int VERSION = 1;
+
+    static final int END = 0;
+    static final int ROW = 1;
+
+    static final int NULL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int INTEGER = 3;
+    static final int DOUBLE = 4;
+    static final int FLOAT = 5;
+    static final int STRING = 6;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    /**
+     * @param out
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    BinaryEncoder(@NotNull OutputStream out) {
+        this.out = out;
+        this.buffer = new byte[JsonEncoder.BUFFER_SIZE];
+    }
+
+    /**
+     * @param names The property names in the order their values are written in every row.
+     *
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    BinaryEncoder schema(@NotNull List<String> names) throws IOException {
+        this.put(VERSION);
+        this.varint(names.size());
+        for (var name : names) {
+            this.utf8(name);
+        }
+        return this;
+    }
+
+    /**
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(" -> this")
+    BinaryEncoder row() throws IOException {
+        this.put(ROW);
+        return this;
+    }
+
+    /**
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(" -> this")
+    BinaryEncoder end() throws IOException {
+        this.put(END);
+        return this;
+    }
+
+    /**
+     * Writes booleans and numbers that fit into a varint or an IEEE 754 float as such if the
+     * marshalled value is one of them or the canonical textual representation of the value, so
+     * that registered marshallers are honoured, and everything else as {@link #string(Object)
+     * string}.
+     *
+     * @param value      The value before marshalling.
+     * @param marshalled The marshalled value.
+     *
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_, _ -> this")
+    BinaryEncoder value(@Nullable Object value, @Nullable Object marshalled) throws IOException {
+        if (tagged(marshalled)) {
+            this.literal(marshalled);
+        } else if (marshalled != null && tagged(value) && marshalled.toString()
+            .equals(value.toString())) {
+            this.literal(value);
+        } else {
+            this.string(marshalled);
+        }
+        return this;
+    }
+
+    /**
+     * @param marshalled The marshalled value, written as length-prefixed UTF-8 of its string
+     *                   representation.
+     *
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    BinaryEncoder string(@Nullable Object marshalled) throws IOException {
+        if (marshalled == null) {
+            this.put(NULL);
+        } else {
+            this.put(STRING);
+            this.utf8(marshalled.toString());
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.drain();
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.drain();
+        this.out.close();
+    }
+
+    @Contract(value = "null -> false", pure = true)
+    private static boolean tagged(@Nullable Object value) {
+        return value instanceof Boolean || value instanceof Integer || value instanceof Long ||
+            value instanceof Short || value instanceof Byte || value instanceof Double ||
+            value instanceof Float;
+    }
+
+    private void literal(@NotNull Object value) throws IOException {
+        if (value instanceof Boolean bool) {
+            this.put(bool ? TRUE : FALSE);
+        } else if (value instanceof Double number) {
+            this.put(DOUBLE);
+            this.fixed(Double.doubleToRawLongBits(number), 8);
+        } else if (value instanceof Float number) {
+            this.put(FLOAT);
+            this.fixed(Float.floatToRawIntBits(number), 4);
+        } else {
+            this.put(INTEGER);
+            var number = ((Number) value).longValue();
+            this.varint((number << 1) ^ (number >> 63));
+        }
+    }
+
+    private void utf8(@NotNull String value) throws IOException {
+        this.varint(Utf8.length(value));
+        for (var i = 0; i < value.length(); ) {
+            var codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (this.buffer.length - this.position < Utf8.MAX_BYTES) {
+                this.drain();
+            }
+            this.position = Utf8.put(Utf8.encodable(codePoint) ? codePoint : '?', this.buffer,
+                this.position);
+        }
+    }
+
+    private void varint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            this.put((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.put((int) value);
+    }
+
+    private void fixed(long bits, int bytes) throws IOException {
+        for (var i = bytes - 1; i >= 0; i--) {
+            this.put((int) (bits >>> (i * 8)));
+        }
+    }
+
+    private void drain() throws IOException {
+        if (this.position > 0) {
+            this.out.write(this.buffer, 0, this.position);
+            this.position = 0;
+        }
+    }
+
+    private void put(int b) throws IOException {
+        if (this.position == this.buffer.length) {
+            this.drain();
+        }
+        this.buffer[this.position++] = (byte) b;
+    }
+
+}
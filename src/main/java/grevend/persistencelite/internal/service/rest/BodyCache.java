@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import grevend.persistencelite.entity.EntityMetadata;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+/**
+ * The server-side cache of serialized GET response bodies, bounded by the total number of cached
+ * bytes. Every body remembers the modification generation of its entity at the time the query was
+ * executed and is only served as long as the generation has not advanced.
+ *
+ * @author David Greven
+ * @see EntityHandler
+ * @since 0.6.9
+ */
+public final class BodyCache {
+
+    private final long budget;
+    private final LinkedHashMap<Key, Body> bodies;
+    private long size;
+
+    /**
+     * @param budget The maximum number of cached bytes.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public BodyCache(@Range(from = 1, to = Long.MAX_VALUE) long budget) {
+        this.budget = budget;
+        this.bodies = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param entityMetadata
+     * @param query          The normalized query.
+     * @param generation     The current modification generation of the entity.
+     *
+     * @return The cached body or null.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    synchronized Body get(@NotNull EntityMetadata<?> entityMetadata, @NotNull String query, long generation) {
+        var key = new Key(entityMetadata, query);
+        var body = this.bodies.get(key);
+        if (body != null && body.generation() != generation) {
+            this.remove(key);
+            return null;
+        }
+        return body;
+    }
+
+    /**
+     * @param entityMetadata
+     * @param query          The normalized query.
+     * @param generation     The modification generation of the entity taken before the query was
+     *                       executed.
+     * @param bytes          The serialized body.
+     *
+     * @return The cached body.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    Body put(@NotNull EntityMetadata<?> entityMetadata, @NotNull String query, long generation, byte[] bytes) {
+        var body = new Body(bytes, etag(bytes), generation);
+        if (bytes.length <= this.budget) {
+            synchronized (this) {
+                var key = new Key(entityMetadata, query);
+                this.remove(key);
+                this.bodies.put(key, body);
+                this.size += bytes.length;
+                var iterator = this.bodies.values().iterator();
+                while (this.size > this.budget && iterator.hasNext()) {
+                    this.size -= iterator.next().bytes().length;
+                    iterator.remove();
+                }
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Removes the bodies of all entities that share a type with the given entity.
+     *
+     * @param entityMetadata
+     *
+     * @since 0.6.9
+     */
+    synchronized void invalidate(@NotNull EntityMetadata<?> entityMetadata) {
+        var types = entityMetadata.types();
+        var iterator = this.bodies.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            var entity = entry.getKey().entityMetadata();
+            if (types.contains(entity) || entity.types().contains(entityMetadata)) {
+                this.size -= entry.getValue().bytes().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void remove(@NotNull Key key) {
+        var body = this.bodies.remove(key);
+        if (body != null) {
+            this.size -= body.bytes().length;
+        }
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    private static String etag(byte[] bytes) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            var builder = new StringBuilder(digest.length * 2 + 2).append('"');
+            for (var b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.append('"').toString();
+        } catch (NoSuchAlgorithmException exception) {
+            return '"' + Integer.toHexString(new String(bytes, StandardCharsets.ISO_8859_1)
+                .hashCode()) + '-' + bytes.length + '"';
+        }
+    }
+
+    private static final record Key(@NotNull EntityMetadata<?>entityMetadata, @NotNull String query) {}
+
+    /**
+     * @param bytes
+     * @param etag
+     * @param generation
+     *
+     * @since 0.6.9
+     */
+    static final record Body(byte[] bytes, @NotNull String etag, long generation) {}
+
+}
@@ -0,0 +1,290 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+/**
+ * The {@code gzip} and {@code deflate} content codings of the REST server and requester. Deflaters
+ * and inflaters hold native memory and are expensive to create, so they are pooled and reset
+ * instead of being created per response.
+ *
+ * @author David Greven
+ * @see ResponseStream
+ * @since 0.6.9
+ */
+final class Compression {
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    /**
+     * The {@code Accept-Encoding} header of the requester, {@code deflate} is preferred since its
+     * checksum is verified by the pooled inflater itself.
+     */
+    static final String ACCEPT_ENCODING = DEFLATE + ", " + GZIP + ";q=0.9";
+
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+    private static final Pool<Deflater> deflaters = new Pool<>();
+    private static final Pool<Deflater> rawDeflaters = new Pool<>();
+    private static final Pool<Inflater> inflaters = new Pool<>();
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0,
+        0, 0, (byte) 0xff};
+
+    /**
+     * @param acceptEncoding The {@code Accept-Encoding} header of the request.
+     *
+     * @return The supported content coding with the highest quality or null if the response
+     * should not be compressed, {@code gzip} wins ties.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    @Contract(pure = true)
+    static String negotiate(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        String encoding = null;
+        var quality = 0d;
+        for (var range : acceptEncoding.split(",")) {
+            var parts = range.split(";");
+            var coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (!coding.equals(GZIP) && !coding.equals(DEFLATE)) {
+                continue;
+            }
+            var q = 1d;
+            for (var i = 1; i < parts.length; i++) {
+                var parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException exception) {
+                        q = 0;
+                    }
+                }
+            }
+            if (q > quality || (q == quality && q > 0 && coding.equals(GZIP))) {
+                encoding = coding;
+                quality = q;
+            }
+        }
+        return encoding;
+    }
+
+    /**
+     * @param etag An entity tag of a possibly compressed response.
+     *
+     * @return The entity tag of the uncompressed response.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(pure = true)
+    static String identity(@NotNull String etag) {
+        for (var encoding : new String[]{GZIP, DEFLATE}) {
+            if (etag.endsWith('-' + encoding + '"')) {
+                return etag.substring(0, etag.length() - encoding.length() - 2) + '"';
+            }
+        }
+        return etag;
+    }
+
+    /**
+     * @param out
+     * @param encoding Either {@code gzip} or {@code deflate}.
+     * @param level    The compression level.
+     *
+     * @return A stream compressing into the given stream that returns its deflater to the pool
+     * once it is closed.
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    static OutputStream compress(@NotNull OutputStream out, @NotNull String encoding, @Range(from = 1, to = 9) int level) throws IOException {
+        if (encoding.equals(GZIP)) {
+            var deflater = rawDeflaters.take(() -> new Deflater(level, true));
+            deflater.setLevel(level);
+            out.write(GZIP_HEADER);
+            return new CompressingStream(out, deflater, rawDeflaters, new CRC32());
+        }
+        var deflater = deflaters.take(() -> new Deflater(level));
+        deflater.setLevel(level);
+        return new CompressingStream(out, deflater, deflaters, null);
+    }
+
+    /**
+     * @param in
+     * @param encoding The {@code Content-Encoding} header of the response.
+     *
+     * @return A stream decompressing the given stream.
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    static InputStream decompress(@NotNull InputStream in, @Nullable String encoding) throws IOException {
+        if (encoding == null) {
+            return in;
+        }
+        return switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case GZIP -> new GZIPInputStream(in, JsonEncoder.BUFFER_SIZE);
+            case DEFLATE -> new DecompressingStream(in, inflaters.take(Inflater::new));
+            default -> in;
+        };
+    }
+
+    /**
+     * A bounded pool of reset instances.
+     *
+     * @param <T>
+     */
+    private static final class Pool<T> {
+
+        private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        @NotNull
+        private T take(@NotNull java.util.function.Supplier<T> factory) {
+            var instance = this.queue.poll();
+            if (instance == null) {
+                return factory.get();
+            }
+            this.size.decrementAndGet();
+            return instance;
+        }
+
+        /**
+         * @return {@code false} if the pool is full and the instance should be released.
+         */
+        private boolean offer(@NotNull T instance) {
+            if (this.size.incrementAndGet() > POOL_SIZE) {
+                this.size.decrementAndGet();
+                return false;
+            }
+            this.queue.offer(instance);
+            return true;
+        }
+
+    }
+
+    private static final class CompressingStream extends DeflaterOutputStream {
+
+        private final Pool<Deflater> pool;
+        private final CRC32 crc;
+        private boolean closed;
+
+        private CompressingStream(@NotNull OutputStream out, @NotNull Deflater deflater, @NotNull Pool<Deflater> pool, @Nullable CRC32 crc) {
+            super(out, deflater, JsonEncoder.BUFFER_SIZE, true);
+            this.pool = pool;
+            this.crc = crc;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            if (this.crc != null) {
+                this.crc.update(b, off, len);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!this.def.finished()) {
+                super.finish();
+                if (this.crc != null) {
+                    this.trailer((int) this.crc.getValue());
+                    this.trailer(this.def.getTotalIn());
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                try {
+                    super.close();
+                } finally {
+                    this.def.reset();
+                    if (!this.pool.offer(this.def)) {
+                        this.def.end();
+                    }
+                }
+            }
+        }
+
+        private void trailer(int value) throws IOException {
+            this.out.write(value & 0xFF);
+            this.out.write((value >> 8) & 0xFF);
+            this.out.write((value >> 16) & 0xFF);
+            this.out.write((value >> 24) & 0xFF);
+        }
+
+    }
+
+    private static final class DecompressingStream extends InflaterInputStream {
+
+        private boolean closed;
+
+        private DecompressingStream(@NotNull InputStream in, @NotNull Inflater inflater) {
+            super(in, inflater, JsonEncoder.BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                try {
+                    super.close();
+                } finally {
+                    this.inf.reset();
+                    if (!inflaters.offer(this.inf)) {
+                        this.inf.end();
+                    }
+                }
+            }
+        }
+
+    }
+
+}
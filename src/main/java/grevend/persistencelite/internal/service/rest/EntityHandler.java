@@ -27,32 +27,152 @@ package grevend.persistencelite.internal.service.rest;
 import static grevend.persistencelite.internal.service.rest.RestUtils.marshall;
 import static grevend.persistencelite.internal.service.rest.RestUtils.unmarshall;
 
-import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import grevend.common.Pair;
+import grevend.persistencelite.dao.Transaction;
 import grevend.persistencelite.entity.EntityMetadata;
 import grevend.persistencelite.internal.dao.BaseDao;
 import grevend.persistencelite.internal.dao.DaoImpl;
+import grevend.persistencelite.internal.dao.SharedDaoImpl;
+import grevend.persistencelite.internal.entity.EntityProperty;
 import grevend.persistencelite.internal.util.Utils;
 import grevend.persistencelite.util.TypeMarshaller;
 import grevend.sequence.Seq;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.jetbrains.annotations.ApiStatus.AvailableSince;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-public final record EntityHandler(@NotNull RestConfiguration configuration) implements RestHandler {
+public final record EntityHandler(@NotNull RestConfiguration configuration, @Nullable BodyCache bodyCache, @AvailableSince(value = "0.6.9") @NotNull Map<EntityMetadata<?>, Handle> handles, @AvailableSince(value = "0.6.9") @Nullable Metrics metrics) implements RestHandler, AutoCloseable {
 
-    public static final ConcurrentHashMap<EntityMetadata<?>, ZonedDateTime> lastModified = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<EntityMetadata<?>, Version> versions = new ConcurrentHashMap<>();
+
+    @NotNull
+    private static Version version(@NotNull EntityMetadata<?> entityMetadata) {
+        return versions.computeIfAbsent(entityMetadata, entity -> new Version(
+            ZonedDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS), 0));
+    }
+
+    /**
+     * Returns the timestamp sent in the {@code Last-Modified} header. While the second of the last
+     * modification has not passed yet, a further modification in the same second would not
+     * advance the timestamp, so the second before is returned instead and conditional requests
+     * based on it are answered in full once more.
+     *
+     * @param entityMetadata
+     *
+     * @return The last modification timestamp of the entity in second precision, never in the
+     * future.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    public static ZonedDateTime lastModified(@NotNull EntityMetadata<?> entityMetadata) {
+        var modified = version(entityMetadata).modified();
+        return ZonedDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS)
+            .isAfter(modified) ? modified : modified.minusSeconds(1);
+    }
+
+    /**
+     * @param entityMetadata
+     *
+     * @return The number of modifications of the entity since the server started, which tells
+     * modifications within the same second apart.
+     *
+     * @since 0.6.9
+     */
+    public static long generation(@NotNull EntityMetadata<?> entityMetadata) {
+        return version(entityMetadata).generation();
+    }
+
+    /**
+     * Records a modification of the entity, which also modifies the responses of its supertypes
+     * and subtypes. The timestamps are clamped to the current time and only advance with it.
+     *
+     * @param entityMetadata
+     *
+     * @since 0.6.9
+     */
+    public static void touch(@NotNull EntityMetadata<?> entityMetadata) {
+        Stream.concat(entityMetadata.types().stream(), entityMetadata.subTypes().stream())
+            .distinct().forEach(type -> versions.compute(type, (entity, previous) -> {
+            var now = ZonedDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
+            return previous == null ? new Version(now, 1) : new Version(
+                now.isAfter(previous.modified()) ? now : previous.modified(),
+                previous.generation() + 1);
+        }));
+    }
+
+    /**
+     * @param configuration
+     *
+     * @since 0.6.9
+     */
+    public EntityHandler(@NotNull RestConfiguration configuration) {
+        this(configuration, null);
+    }
+
+    /**
+     * @param configuration
+     * @param metrics       The metrics body cache lookups are recorded in or null.
+     *
+     * @since 0.6.9
+     */
+    public EntityHandler(@NotNull RestConfiguration configuration, @Nullable Metrics metrics) {
+        this(configuration, configuration.cached() ?
+            new BodyCache(configuration.cacheBudget()) : null, new ConcurrentHashMap<>(), metrics);
+    }
+
+    /**
+     * @param entityMetadata
+     *
+     * @return The long-lived handle of the entity, created on first use and shared by all
+     * requests.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    public Handle handle(@NotNull EntityMetadata<?> entityMetadata) {
+        return this.handles.computeIfAbsent(entityMetadata, entity -> {
+            var service = Objects.requireNonNull(this.configuration.service());
+            return new Handle(Collections.unmodifiableMap(this.getTypes(entity)),
+                new SharedDaoImpl(service.transactionFactory(),
+                    transaction -> this.daoImpl(entity, Objects.requireNonNull(transaction))));
+        });
+    }
+
+    /**
+     * Releases the handles of all entities.
+     *
+     * @since 0.6.9
+     */
+    @Override
+    public void close() {
+        this.handles.clear();
+    }
 
     public void handle(int version, @NotNull EntityMetadata<?> entityMetadata,
         @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap,
@@ -70,7 +190,7 @@ public final record EntityHandler(@NotNull RestConfiguration configuration) impl
                     unmarshallerMap);
                 case PATCH -> this.handlePatch(entityMetadata, exchange, unmarshallerMap);
                 case DELETE -> this.handleDelete(props, entityMetadata, exchange, unmarshallerMap);
-                default -> exchange.sendResponseHeaders(NOT_IMPLEMENTED, 0);
+                default -> this.respond(exchange, NOT_IMPLEMENTED);
             }
         } catch (Throwable throwable) {
             throwable.printStackTrace();
@@ -106,6 +226,21 @@ public final record EntityHandler(@NotNull RestConfiguration configuration) impl
                 .contains("MagicNumber/32204d61722032303230");
     }
 
+    /**
+     * @param exchange
+     *
+     * @return {@code true} if the requester is a PersistenceLite requester that accepts the binary
+     * format.
+     *
+     * @since 0.6.9
+     */
+    private boolean acceptsBinary(@NotNull HttpExchange exchange) {
+        var accept = exchange.getRequestHeaders().getFirst("Accept");
+        return accept != null && this.isProprietary(exchange) && Stream.of(accept.split(","))
+            .map(range -> range.split(";")[0].trim())
+            .anyMatch(BinaryEncoder.CONTENT_TYPE::equalsIgnoreCase);
+    }
+
     private Map<String, Class<?>> getTypes(@NotNull EntityMetadata<?> entityMetadata) {
         Map<String, Class<?>> map = new HashMap<>();
 
@@ -117,19 +252,80 @@ public final record EntityHandler(@NotNull RestConfiguration configuration) impl
         return map;
     }
 
+    private boolean notModified(@NotNull EntityMetadata<?> entityMetadata, @NotNull HttpExchange exchange) {
+        var since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (since == null) {
+            return false;
+        }
+        try {
+            return !version(entityMetadata).modified().isAfter(ZonedDateTime
+                .parse(since, DateTimeFormatter.RFC_1123_DATE_TIME));
+        } catch (DateTimeParseException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Sends a response without body and completes the exchange, so that clients waiting for the
+     * end of the response are not left hanging. The unread rest of the request body is consumed
+     * first, otherwise the connection is reset instead of being kept alive.
+     *
+     * @param exchange
+     * @param code
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    private void respond(@NotNull HttpExchange exchange, int code) throws IOException {
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+        exchange.sendResponseHeaders(code, -1);
+        exchange.close();
+    }
+
+    /**
+     * @param exchange
+     * @param code
+     *
+     * @return The body of a response with the given status code, compressed with the encoding
+     * accepted by the client once it exceeds the configured threshold.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    private OutputStream responseBody(@NotNull HttpExchange exchange, int code) {
+        return new ResponseStream(exchange, code, Compression.negotiate(exchange
+            .getRequestHeaders().getFirst("Accept-Encoding")),
+            this.configuration.compressionLevel(), this.configuration.compressionThreshold());
+    }
+
     private void handleHead(@NotNull HttpExchange exchange) throws IOException {
-        exchange.sendResponseHeaders(OK, 0);
+        this.respond(exchange, OK);
     }
 
     private void handleGet(int version, @NotNull Map<String, Object> props, @NotNull EntityMetadata<?> entityMetadata,
         @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap,
         @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap, @NotNull HttpExchange exchange) throws IOException {
         try {
-            var types = this.getTypes(entityMetadata);
+            if (this.notModified(entityMetadata, exchange)) {
+                this.respond(exchange, NOT_MODIFIED);
+                return;
+            }
+
+            var types = this.handle(entityMetadata).types();
+            var parameters = Utils.query(exchange.getRequestURI());
+            int limit;
+            List<Object> after;
+            try {
+                limit = Pagination.limit(parameters);
+                after = Pagination.after(entityMetadata, parameters, unmarshallerMap);
+            } catch (IllegalArgumentException exception) {
+                this.respond(exchange, BAD_REQUEST);
+                return;
+            }
 
             if (this.isProprietary(exchange)) {
-                props = new Gson().fromJson(new InputStreamReader(exchange.getRequestBody()),
-                    Props.class).props.entrySet().stream().map(prop -> {
+                props = RestCodec.GSON.fromJson(new InputStreamReader(exchange.getRequestBody(),
+                    this.configuration.charset()), Props.class).props.entrySet().stream().map(prop -> {
                     try {
                         return new SimpleEntry<>(prop.getKey(), unmarshall(entityMetadata,
                             prop.getValue(), types.get(prop.getKey()), unmarshallerMap));
@@ -142,66 +338,60 @@ public final record EntityHandler(@NotNull RestConfiguration configuration) impl
             }
 
             var relations = entityMetadata.declaredRelations();
-            var entities = this.daoImpl(entityMetadata).retrieve(props.keySet(), props).iterator();
-            exchange.sendResponseHeaders(OK, CHUNKED);
-            var out = exchange.getResponseBody();
-            out.write(("{\"types\": {\"0\": \"" + entityMetadata.name() + "\"}, \"entities\": [")
-                .getBytes(this.configuration.charset()));
-            while (entities.hasNext()) {
-                out.flush();
-                out.write("{\"type\": 0, \"props\": {".getBytes(this.configuration.charset()));
-
-                var properties = Seq.of(entities.next().entrySet())
-                    .filter(entry -> relations.stream()
-                        .noneMatch(rel -> rel.propertyName().equals(entry.getKey())))
-                    .map(entry -> "\"" + entry.getKey() + "\": \"" + marshall(entityMetadata,
-                        entry.getValue(), types.get(entry.getKey()), marshallerMap) + "\"")
-                    .iterator();
-
-                while (properties.hasNext()) {
-                    out.flush();
-                    out.write((properties.next() + (properties.hasNext() ? ", " : ""))
-                        .getBytes(this.configuration.charset()));
+            var binary = this.acceptsBinary(exchange);
+            exchange.getResponseHeaders().add("Vary", this.configuration.compressionLevel() > 0 ?
+                "Accept, Accept-Encoding" : "Accept");
+            if (binary) {
+                exchange.getResponseHeaders().set("Content-Type", BinaryEncoder.CONTENT_TYPE);
+            }
+            if (limit > 0) {
+                var rows = Pagination.page(this.daoImpl(entityMetadata), entityMetadata, props,
+                    after, limit + 1);
+                if (rows.size() > limit) {
+                    rows = rows.subList(0, limit);
+                    exchange.getResponseHeaders().set("Link", Pagination.link(exchange
+                        .getRequestURI(), limit, Pagination.token(entityMetadata,
+                        rows.get(limit - 1), marshallerMap)));
                 }
+                var out = this.responseBody(exchange, OK);
+                this.writeEntities(binary, out, entityMetadata, rows.iterator(), types, relations,
+                    marshallerMap);
+                out.close();
+                return;
+            }
+            if (this.bodyCache == null) {
+                var entities = this.daoImpl(entityMetadata).retrieve(props.keySet(), props)
+                    .iterator();
+                var out = this.responseBody(exchange, OK);
+                this.writeEntities(binary, out, entityMetadata, entities, types, relations,
+                    marshallerMap);
+                out.close();
+                return;
+            }
 
-                out.flush();
-                out.write("}, \"rels\": {".getBytes(this.configuration.charset()));
-
-                /*for (var current : relations) {
-                    out.flush();
-                    out.write(("\"" + current.propertyName() + "\": \"http://localhost:8000/api/v"
-                        + version + "/" + Objects.requireNonNull(current.relation())
-                        .getTargetEntity().getSimpleName().toLowerCase() + "?")
-                        .getBytes(this.configuration.charset()));
-                    out.flush();
-
-                    var params = Utils.zip(Seq.of(Objects.requireNonNull(current.relation())
-                            .getTargetProperties()).iterator(),
-                        Seq.of(Objects.requireNonNull(current.relation())
-                            .getSelfProperties()).iterator()).iterator();
-
-                    while (params.hasNext()) {
-                        var param = params.next();
-                        out.flush();
-                        out.write((param.first() + "=").getBytes(StandardCharsets.UTF_8));
-                        out.flush();
-                        out.write((props.get(param.second()).toString() ("test" +
-                            (params.hasNext() ? "&" : "")).getBytes(StandardCharsets.UTF_8));
-                        out.write((param.first() + "=" + props.get(param.second()).toString() +
-                            (params.hasNext() ? "&" : "")).getBytes(StandardCharsets.UTF_8));
-                    }
-
-                    out.flush();
-                    out.write("\"".getBytes(this.configuration.charset()));
-                }*/
+            var query = (binary ? BinaryEncoder.CONTENT_TYPE + ' ' : "") + new TreeMap<>(props);
+            var generation = generation(entityMetadata);
+            var body = this.bodyCache.get(entityMetadata, query, generation);
+            if (this.metrics != null) { this.metrics.cache(entityMetadata, body != null); }
+            if (body == null) {
+                var entities = this.daoImpl(entityMetadata).retrieve(props.keySet(), props)
+                    .iterator();
+                var buffer = new ByteArrayOutputStream();
+                this.writeEntities(binary, buffer, entityMetadata, entities, types, relations,
+                    marshallerMap);
+                body = this.bodyCache.put(entityMetadata, query, generation, buffer.toByteArray());
+            }
 
-                out.flush();
-                out.write(("}}" + (entities.hasNext() ? ", " : ""))
-                    .getBytes(this.configuration.charset()));
-                out.flush();
+            exchange.getResponseHeaders().put("ETag", List.of(body.etag()));
+            var match = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (match != null && (match.trim().equals("*") || List.of(match.split(","))
+                .stream().map(tag -> Compression.identity(tag.trim()))
+                .anyMatch(body.etag()::equals))) {
+                this.respond(exchange, NOT_MODIFIED);
+                return;
             }
-            out.write("]}".getBytes(this.configuration.charset()));
-            out.flush();
+            var out = this.responseBody(exchange, OK);
+            out.write(body.bytes());
             out.close();
         } catch (Throwable throwable) {
             exchange.close();
@@ -209,60 +399,133 @@ public final record EntityHandler(@NotNull RestConfiguration configuration) impl
         }
     }
 
+    private void writeEntities(boolean binary, @NotNull OutputStream out, @NotNull EntityMetadata<?> entityMetadata, @NotNull Iterator<Map<String, Object>> entities, @NotNull Map<String, Class<?>> types, @NotNull Collection<EntityProperty> relations,
+        @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) throws IOException {
+        if (binary) {
+            this.writeBinary(out, entityMetadata, entities, types, relations, marshallerMap);
+        } else {
+            this.writeEntities(out, entityMetadata, entities, types, relations, marshallerMap);
+        }
+    }
+
+    /**
+     * Writes the entities in the binary format, the property names of the first entity form the
+     * schema of all entities.
+     *
+     * @since 0.6.9
+     */
+    private void writeBinary(@NotNull OutputStream out, @NotNull EntityMetadata<?> entityMetadata, @NotNull Iterator<Map<String, Object>> entities, @NotNull Map<String, Class<?>> types, @NotNull Collection<EntityProperty> relations,
+        @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) throws IOException {
+        var excluded = relations.stream().map(EntityProperty::propertyName)
+            .collect(Collectors.toUnmodifiableSet());
+        var encoder = new BinaryEncoder(out);
+        var row = entities.hasNext() ? entities.next() : null;
+        var names = row == null ? List.<String>of() : row.keySet().stream()
+            .filter(name -> !excluded.contains(name)).collect(Collectors.toUnmodifiableList());
+        encoder.schema(names);
+        while (row != null) {
+            encoder.row();
+            for (var name : names) {
+                var value = row.get(name);
+                encoder.value(value, marshall(entityMetadata, value, types.get(name),
+                    marshallerMap));
+            }
+            row = entities.hasNext() ? entities.next() : null;
+        }
+        encoder.end().flush();
+    }
+
+    private void writeEntities(@NotNull OutputStream out, @NotNull EntityMetadata<?> entityMetadata, @NotNull Iterator<Map<String, Object>> entities, @NotNull Map<String, Class<?>> types, @NotNull Collection<EntityProperty> relations,
+        @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) throws IOException {
+        var encoder = new JsonEncoder(out, this.configuration.charset());
+        this.writeEntities(encoder, entityMetadata, entities, types, relations, marshallerMap);
+        encoder.flush();
+    }
+
+    private void writeEntities(@NotNull JsonEncoder encoder, @NotNull EntityMetadata<?> entityMetadata, @NotNull Iterator<Map<String, Object>> entities, @NotNull Map<String, Class<?>> types, @NotNull Collection<EntityProperty> relations,
+        @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) throws IOException {
+        var names = JsonEncoder.names(entityMetadata, this.configuration.charset());
+        var excluded = relations.stream().map(EntityProperty::propertyName)
+            .collect(Collectors.toUnmodifiableSet());
+        encoder.raw("{\"types\": {\"0\": ").string(entityMetadata.name())
+            .raw("}, \"entities\": [");
+        while (entities.hasNext()) {
+            encoder.raw("{\"type\": 0, \"props\": {");
+            var first = true;
+            for (var entry : entities.next().entrySet()) {
+                if (!excluded.contains(entry.getKey())) {
+                    if (!first) {
+                        encoder.raw(", ");
+                    }
+                    first = false;
+                    encoder.name(entry.getKey(), names).value(entry.getValue(),
+                        marshall(entityMetadata, entry.getValue(), types.get(entry.getKey()),
+                            marshallerMap));
+                }
+            }
+            encoder.raw(entities.hasNext() ? "}, \"rels\": {}}, " : "}, \"rels\": {}}");
+        }
+        encoder.raw("]}");
+    }
+
     private void handlePut(@NotNull EntityMetadata<?> entityMetadata, @NotNull HttpExchange exchange,
         @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap,
         @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) throws IOException {
         try {
-            var request = new Gson().fromJson(new InputStreamReader(exchange.getRequestBody()),
-                Entity.class);
+            var request = RestCodec.GSON.fromJson(new InputStreamReader(exchange
+                .getRequestBody(), this.configuration.charset()), Entity.class);
             var res = request.entity.stream().map(input ->
                 this.unmarshallMap(input, entityMetadata, unmarshallerMap))
                 .collect(Collectors.toList());
             this.daoImpl(entityMetadata).create(res);
 
-            EntityHandler.lastModified.put(entityMetadata, ZonedDateTime.now());
-
-            var resIter = res.iterator();
-            var types = this.getTypes(entityMetadata);
-
-            exchange.sendResponseHeaders(CREATED, CHUNKED);
-
-            var out = exchange.getResponseBody();
-            out.write("{\"entity\": [".getBytes(this.configuration.charset()));
-            while (resIter.hasNext()) {
-                out.flush();
-                out.write("{".getBytes(this.configuration.charset()));
-
-                var props = resIter.next();
-                var entryIter = props.entrySet().iterator();
-
-                while (entryIter.hasNext()) {
-                    out.flush();
-                    var entry = entryIter.next();
-                    out.write(("\"" + entry.getKey() + "\": \"" + marshall(entityMetadata,
-                        entry.getValue(), types.get(entry.getKey()), marshallerMap) + "\"")
-                        .getBytes(this.configuration.charset()));
-                    if (entryIter.hasNext()) {
-                        out.write(", ".getBytes(this.configuration.charset()));
-                    }
-                }
+            EntityHandler.touch(entityMetadata);
+            if (this.bodyCache != null) { this.bodyCache.invalidate(entityMetadata); }
 
-                out.write(("}" + (resIter.hasNext() ? ", " : ""))
-                    .getBytes(this.configuration.charset()));
-            }
-            out.write("]}".getBytes(this.configuration.charset()));
-            out.flush();
+            var out = this.responseBody(exchange, CREATED);
+            var encoder = new JsonEncoder(out, this.configuration.charset());
+            encoder.raw("{");
+            this.writeCreated(encoder, entityMetadata, res, marshallerMap);
+            encoder.raw("}").flush();
             out.close();
         } catch (Throwable throwable) {
             throwable.printStackTrace();
-            exchange.sendResponseHeaders(BAD_REQUEST, 0);
+            this.respond(exchange, BAD_REQUEST);
         }
     }
 
+    /**
+     * Writes the {@code entity} member of a create response.
+     *
+     * @since 0.6.9
+     */
+    private void writeCreated(@NotNull JsonEncoder encoder, @NotNull EntityMetadata<?> entityMetadata, @NotNull Collection<Map<String, Object>> created,
+        @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) throws IOException {
+        var types = this.handle(entityMetadata).types();
+        var names = JsonEncoder.names(entityMetadata, this.configuration.charset());
+        var resIter = created.iterator();
+        encoder.raw("\"entity\": [");
+        while (resIter.hasNext()) {
+            encoder.raw("{");
+            var first = true;
+            for (var entry : resIter.next().entrySet()) {
+                if (!first) {
+                    encoder.raw(", ");
+                }
+                first = false;
+                encoder.name(entry.getKey(), names).value(entry.getValue(),
+                    marshall(entityMetadata, entry.getValue(), types.get(entry.getKey()),
+                        marshallerMap));
+            }
+            encoder.raw(resIter.hasNext() ? "}, " : "}");
+        }
+        encoder.raw("]");
+    }
+
     @NotNull
     private Map<String, Object> unmarshallMap(@NotNull Map<String, String> input, @NotNull EntityMetadata<?> entityMetadata,
         @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) {
-        var types = this.getTypes(entityMetadata);
+        var types = this.handle(entityMetadata).types();
         return input.entrySet().stream().map(entry -> {
             try {
                 return new SimpleEntry<>(entry.getKey(), unmarshall(entityMetadata,
@@ -278,17 +541,18 @@ public final record EntityHandler(@NotNull RestConfiguration configuration) impl
     private void handlePatch(@NotNull EntityMetadata<?> entityMetadata, @NotNull HttpExchange exchange,
         @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) throws IOException {
         try {
-            var request = new Gson().fromJson(new InputStreamReader(exchange.getRequestBody()),
-                EntityProps.class);
+            var request = RestCodec.GSON.fromJson(new InputStreamReader(exchange
+                .getRequestBody(), this.configuration.charset()), EntityProps.class);
             this.daoImpl(entityMetadata).update(request.entity.stream().map(input ->
                     this.unmarshallMap(input, entityMetadata, unmarshallerMap))
                     .collect(Collectors.toList()),
                 this.unmarshallMap(request.props, entityMetadata, unmarshallerMap));
-            EntityHandler.lastModified.put(entityMetadata, ZonedDateTime.now());
-            exchange.sendResponseHeaders(OK, 0);
+            EntityHandler.touch(entityMetadata);
+            if (this.bodyCache != null) { this.bodyCache.invalidate(entityMetadata); }
+            this.respond(exchange, OK);
         } catch (Throwable throwable) {
             throwable.printStackTrace();
-            exchange.sendResponseHeaders(BAD_REQUEST, 0);
+            this.respond(exchange, BAD_REQUEST);
         }
     }
 
@@ -296,32 +560,218 @@ public final record EntityHandler(@NotNull RestConfiguration configuration) impl
         @NotNull HttpExchange exchange, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) throws IOException {
         try {
             if (this.isProprietary(exchange)) {
-                var request = new Gson().fromJson(new InputStreamReader(exchange.getRequestBody()),
-                    Props.class);
+                var request = RestCodec.GSON.fromJson(new InputStreamReader(exchange
+                    .getRequestBody(), this.configuration.charset()), Props.class);
                 this.daoImpl(entityMetadata).delete(this.unmarshallMap(request.props,
                     entityMetadata, unmarshallerMap));
             } else {
                 this.daoImpl(entityMetadata).delete(props);
             }
-            EntityHandler.lastModified.put(entityMetadata, ZonedDateTime.now());
-            exchange.sendResponseHeaders(OK, 0);
+            EntityHandler.touch(entityMetadata);
+            if (this.bodyCache != null) { this.bodyCache.invalidate(entityMetadata); }
+            this.respond(exchange, OK);
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            this.respond(exchange, BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Runs the operations of a batch request one after another and streams their results back in
+     * the same order. The operations are encoded like the bodies of the single requests and
+     * additionally name their {@code method} and entity {@code type}. All operations share one
+     * transaction, if the request asks for a {@code transaction} the first failure rolls back all
+     * operations and the remaining operations are skipped, otherwise every operation is committed
+     * on its own. Every result is encoded into a scratch buffer first and only copied to the
+     * response once its operation succeeded, so that a failing operation can not leave a partial
+     * result behind. Charsets that are not ASCII-compatible are buffered as escaped ASCII.
+     *
+     * <pre>{@code
+     * {"transaction": true, "operations": [{"method": "PUT", "type": "pet", "entity": [{...}]},
+     *     {"method": "GET", "type": "pet", "props": {...}}]}
+     * }</pre>
+     *
+     * @param entities        The entities served, by their lowercase names.
+     * @param marshallerMap
+     * @param unmarshallerMap
+     * @param exchange
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    public void handleBatch(@NotNull Map<String, EntityMetadata<?>> entities,
+        @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap,
+        @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap, @NotNull HttpExchange exchange) throws IOException {
+        Batch batch;
+        try {
+            var method = exchange.getRequestMethod();
+            if (!method.equals(POST) && !method.equals(PUT)) {
+                this.respond(exchange, METHOD_NOT_ALLOWED);
+                return;
+            }
+            batch = RestCodec.GSON.fromJson(new InputStreamReader(exchange.getRequestBody(),
+                this.configuration.charset()), Batch.class);
+            Objects.requireNonNull(batch.operations);
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            this.respond(exchange, BAD_REQUEST);
+            return;
+        }
+
+        try (var transaction = Objects.requireNonNull(this.configuration.service())
+            .transactionFactory().createTransaction()) {
+            if (batch.transaction) {
+                transaction.begin();
+            }
+            var out = this.responseBody(exchange, OK);
+            var charset = this.configuration.charset();
+            var encoder = new JsonEncoder(out, charset);
+            var scratch = new ByteArrayOutputStream();
+            var scratchCharset = JsonEncoder.compatible(charset) ? charset
+                : StandardCharsets.US_ASCII;
+            var modified = new HashSet<EntityMetadata<?>>();
+            var failed = false;
+            encoder.raw("{\"results\": [");
+            var operations = batch.operations.iterator();
+            while (operations.hasNext()) {
+                var operation = operations.next();
+                encoder.raw("{\"code\": ");
+                if (failed) {
+                    encoder.raw(Integer.toString(FAILED_DEPENDENCY));
+                } else {
+                    try {
+                        var entityMetadata = entities.get(String.valueOf(operation.type)
+                            .toLowerCase());
+                        if (entityMetadata == null) {
+                            throw new IllegalArgumentException("Unknown entity type '" +
+                                operation.type + "'.");
+                        }
+                        scratch.reset();
+                        var result = new JsonEncoder(scratch, scratchCharset);
+                        this.runOperation(operation, entityMetadata, this.daoImpl(entityMetadata,
+                            transaction), result, marshallerMap, unmarshallerMap);
+                        result.flush();
+                        if (scratchCharset == charset) {
+                            encoder.raw(scratch.toByteArray());
+                        } else {
+                            encoder.raw(scratch.toString(scratchCharset));
+                        }
+                        if (!operation.method.equals(GET)) {
+                            modified.add(entityMetadata);
+                        }
+                    } catch (Throwable throwable) {
+                        encoder.raw(Integer.toString(BAD_REQUEST) + ", \"error\": ")
+                            .string(String.valueOf(throwable.getMessage()));
+                        failed = batch.transaction;
+                    }
+                }
+                encoder.raw(operations.hasNext() ? "}, " : "}");
+            }
+            var committed = true;
+            if (batch.transaction) {
+                try {
+                    if (failed) {
+                        transaction.rollback();
+                    } else {
+                        transaction.commit();
+                    }
+                } catch (Throwable throwable) {
+                    throwable.printStackTrace();
+                    failed = true;
+                }
+                committed = !failed;
+            }
+            if (committed) {
+                for (var entityMetadata : modified) {
+                    EntityHandler.touch(entityMetadata);
+                    if (this.bodyCache != null) { this.bodyCache.invalidate(entityMetadata); }
+                }
+            }
+            encoder.raw("], \"committed\": " + committed + "}").flush();
+            out.close();
         } catch (Throwable throwable) {
+            exchange.close();
             throwable.printStackTrace();
-            exchange.sendResponseHeaders(BAD_REQUEST, 0);
+        }
+    }
+
+    /**
+     * Runs a single operation of a batch and writes the rest of its result object after the
+     * status code.
+     *
+     * @since 0.6.9
+     */
+    private void runOperation(@NotNull Operation operation, @NotNull EntityMetadata<?> entityMetadata, @NotNull DaoImpl<?> daoImpl, @NotNull JsonEncoder encoder,
+        @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap,
+        @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) throws Throwable {
+        var props = operation.props == null ? Map.<String, Object>of()
+            : this.unmarshallMap(operation.props, entityMetadata, unmarshallerMap);
+        List<Map<String, Object>> entity = operation.entity == null ? List.of()
+            : operation.entity.stream().map(input ->
+                this.unmarshallMap(input, entityMetadata, unmarshallerMap))
+                .collect(Collectors.toList());
+        switch (String.valueOf(operation.method).toUpperCase()) {
+            case GET -> {
+                var rows = daoImpl.retrieve(props.keySet(), props).iterator();
+                encoder.raw(OK + ", \"body\": ");
+                this.writeEntities(encoder, entityMetadata, rows,
+                    this.handle(entityMetadata).types(), entityMetadata.declaredRelations(),
+                    marshallerMap);
+            }
+            case POST, PUT -> {
+                daoImpl.create(entity);
+                encoder.raw(CREATED + ", ");
+                this.writeCreated(encoder, entityMetadata, entity, marshallerMap);
+            }
+            case PATCH -> {
+                daoImpl.update(entity, props);
+                encoder.raw(Integer.toString(OK));
+            }
+            case DELETE -> {
+                daoImpl.delete(props);
+                encoder.raw(Integer.toString(OK));
+            }
+            default -> throw new IllegalArgumentException("Unsupported method '" +
+                operation.method + "'.");
         }
     }
 
     @NotNull
-    private DaoImpl<?> daoImpl(@NotNull EntityMetadata<?> entityMetadata) throws Throwable {
+    private DaoImpl<?> daoImpl(@NotNull EntityMetadata<?> entityMetadata) {
+        return this.handle(entityMetadata).daoImpl();
+    }
+
+    @NotNull
+    private DaoImpl<?> daoImpl(@NotNull EntityMetadata<?> entityMetadata, @NotNull Transaction transaction) {
         if (Objects.requireNonNull(this.configuration.service()).daoFactory()
-            .createDao(entityMetadata, Objects.requireNonNull(this.configuration.service())
-                .transactionFactory().createTransaction()) instanceof BaseDao<?, ?> baseDao) {
+            .createDao(entityMetadata, transaction) instanceof BaseDao<?, ?> baseDao) {
             return baseDao.daoImpl();
         } else {
             throw new IllegalStateException("Failed to construct a DaoImpl.");
         }
     }
 
+    /**
+     * The state of an entity computed once and reused by every request.
+     *
+     * @param types   The types of the properties by field and property name.
+     * @param daoImpl The thread-safe implementation running every operation on its own
+     *                transaction.
+     *
+     * @author David Greven
+     * @since 0.6.9
+     */
+    public static final record Handle(@NotNull Map<String, Class<?>> types, @NotNull DaoImpl<?> daoImpl) {}
+
+    /**
+     * @param modified   The second of the last modification.
+     * @param generation The number of modifications.
+     *
+     * @author David Greven
+     * @since 0.6.9
+     */
+    private static final record Version(@NotNull ZonedDateTime modified, long generation) {}
+
     private static final class Props {
 
         public Map<String, String> props;
@@ -348,6 +798,40 @@ public final record EntityHandler(@NotNull RestConfiguration configuration) impl
 
     }
 
+    private static final class Batch {
+
+        public boolean transaction;
+        public List<Operation> operations;
+
+        @Override
+        public String toString() {
+            return "Batch{" +
+                "transaction=" + this.transaction +
+                ", operations=" + this.operations +
+                '}';
+        }
+
+    }
+
+    private static final class Operation {
+
+        public String method;
+        public String type;
+        public Collection<Map<String, String>> entity;
+        public Map<String, String> props;
+
+        @Override
+        public String toString() {
+            return "Operation{" +
+                "method='" + this.method + '\'' +
+                ", type='" + this.type + '\'' +
+                ", entity=" + this.entity +
+                ", props=" + this.props +
+                '}';
+        }
+
+    }
+
     private static final class EntityProps {
 
         public Collection<Map<String, String>> entity;
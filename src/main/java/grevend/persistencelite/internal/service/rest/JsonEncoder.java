@@ -0,0 +1,421 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import grevend.persistencelite.entity.EntityMetadata;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A streaming JSON encoder writing into a buffer that is only handed to the underlying stream once
+ * it is full, so that chunked responses consist of a few large chunks. Property names are encoded
+ * once per entity and charset. UTF-8 is encoded directly, other ASCII-compatible charsets string by
+ * string and all remaining charsets, such as UTF-16, through one {@link CharsetEncoder} for the
+ * whole document. Characters the charset can not represent are escaped.
+ *
+ * @author David Greven
+ * @see EntityHandler
+ * @since 0.6.9
+ */
+final class JsonEncoder implements Closeable, Flushable {
+
+    static final int BUFFER_SIZE = 8192;
+
+    private static final Map<Charset, Map<EntityMetadata<?>, Map<String, byte[]>>> names = new ConcurrentHashMap<>();
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final String ASCII = IntStream.rangeClosed(0x20, 0x7E)
+        .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+        .toString();
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final boolean utf8, ascii;
+    private final CharsetEncoder encoder, probe;
+    private final byte[] buffer;
+    private int position;
+
+    /**
+     * @param out
+     * @param charset
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    JsonEncoder(@NotNull OutputStream out, @NotNull Charset charset) {
+        this.out = out;
+        this.charset = charset;
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        this.ascii = compatible(charset);
+        this.encoder = this.ascii ? null : charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.probe = this.utf8 ? null : charset.newEncoder();
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * @param charset
+     *
+     * @return If the charset encodes ASCII characters as single ASCII bytes, so that encoded
+     * fragments can be concatenated.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    static boolean compatible(@NotNull Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || Arrays.equals(
+            ASCII.getBytes(charset), ASCII.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param entityMetadata
+     * @param charset
+     *
+     * @return The encoded {@code "name": } prefixes of all properties of the entity, by property
+     * and field name, or an empty map if the charset is not {@link #compatible(Charset)
+     * ASCII-compatible}.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    static Map<String, byte[]> names(@NotNull EntityMetadata<?> entityMetadata, @NotNull Charset charset) {
+        if (!compatible(charset)) {
+            return Map.of();
+        }
+        return names.computeIfAbsent(charset, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(entityMetadata, entity -> {
+                var probe = charset.equals(StandardCharsets.UTF_8) ? null : charset.newEncoder();
+                return entity.properties().stream()
+                    .flatMap(property -> Stream.of(property.propertyName(),
+                        property.fieldName()))
+                    .distinct()
+                    .collect(Collectors.toUnmodifiableMap(Function.identity(),
+                        name -> ('"' + escape(name, probe) + "\": ").getBytes(charset)));
+            });
+    }
+
+    /**
+     * @param bytes Bytes already encoded in the charset of this encoder.
+     *
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    JsonEncoder raw(byte[] bytes) throws IOException {
+        if (bytes.length > this.buffer.length - this.position) {
+            this.drain();
+            if (bytes.length > this.buffer.length) {
+                this.out.write(bytes);
+                return this;
+            }
+        }
+        System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+        this.position += bytes.length;
+        return this;
+    }
+
+    /**
+     * @param ascii JSON text consisting of ASCII characters only.
+     *
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    JsonEncoder raw(@NotNull String ascii) throws IOException {
+        if (!this.ascii) {
+            this.encode(ascii);
+            return this;
+        }
+        for (var i = 0; i < ascii.length(); i++) {
+            this.put(ascii.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * @param name  The property name.
+     * @param names The encoded property names of the entity.
+     *
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_, _ -> this")
+    JsonEncoder name(@NotNull String name, @NotNull Map<String, byte[]> names) throws IOException {
+        var encoded = names.get(name);
+        if (encoded != null) {
+            return this.raw(encoded);
+        }
+        return this.string(name).raw(": ");
+    }
+
+    /**
+     * @param value
+     *
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    JsonEncoder string(@NotNull String value) throws IOException {
+        if (!this.utf8) {
+            var escaped = '"' + escape(value, this.probe) + '"';
+            if (this.ascii) {
+                return this.raw(escaped.getBytes(this.charset));
+            }
+            this.encode(escaped);
+            return this;
+        }
+        this.put('"');
+        for (var i = 0; i < value.length(); ) {
+            var codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (codePoint < 0x80) {
+                this.ascii((char) codePoint);
+            } else if (!Utf8.encodable(codePoint)) {
+                this.raw(String.format("\\u%04x", codePoint));
+            } else {
+                if (this.buffer.length - this.position < Utf8.MAX_BYTES) {
+                    this.drain();
+                }
+                this.position = Utf8.put(codePoint, this.buffer, this.position);
+            }
+        }
+        this.put('"');
+        return this;
+    }
+
+    /**
+     * Writes numbers and booleans as JSON literals if the marshalled value is their canonical
+     * textual representation and everything else as escaped string.
+     *
+     * @param value      The value before marshalling.
+     * @param marshalled The marshalled value.
+     *
+     * @return
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_, _ -> this")
+    JsonEncoder value(@Nullable Object value, @Nullable Object marshalled) throws IOException {
+        if (marshalled == null) {
+            return this.keyword(NULL);
+        } else if (marshalled instanceof Boolean bool) {
+            return this.keyword(bool ? TRUE : FALSE);
+        } else if (literal(marshalled)) {
+            return this.raw(marshalled.toString());
+        }
+        var string = marshalled.toString();
+        if (value != null && (value instanceof Boolean || literal(value)) &&
+            string.equals(value.toString())) {
+            return this.raw(string);
+        }
+        return this.string(string);
+    }
+
+    /**
+     * Hands the buffered bytes to the underlying stream and flushes it.
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @Override
+    public void flush() throws IOException {
+        this.drain();
+        this.out.flush();
+    }
+
+    /**
+     * Completes the encoding, then flushes and closes the underlying stream.
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.encoder != null) {
+            this.encode(CharBuffer.allocate(0), true);
+            ByteBuffer bytes;
+            do {
+                bytes = ByteBuffer.wrap(this.buffer, this.position,
+                    this.buffer.length - this.position);
+                var result = this.encoder.flush(bytes);
+                this.position = bytes.position();
+                if (!result.isOverflow()) {
+                    break;
+                }
+                this.drain();
+            } while (true);
+        }
+        this.drain();
+        this.out.close();
+    }
+
+    @NotNull
+    private JsonEncoder keyword(byte[] keyword) throws IOException {
+        return this.ascii ? this.raw(keyword)
+            : this.raw(new String(keyword, StandardCharsets.US_ASCII));
+    }
+
+    private void encode(@NotNull String chars) throws IOException {
+        this.encode(CharBuffer.wrap(chars), false);
+    }
+
+    private void encode(@NotNull CharBuffer chars, boolean end) throws IOException {
+        while (true) {
+            var bytes = ByteBuffer.wrap(this.buffer, this.position,
+                this.buffer.length - this.position);
+            var result = this.encoder.encode(chars, bytes, end);
+            this.position = bytes.position();
+            if (!result.isOverflow()) {
+                return;
+            }
+            this.drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (this.position > 0) {
+            this.out.write(this.buffer, 0, this.position);
+            this.position = 0;
+        }
+    }
+
+    private void put(int b) throws IOException {
+        if (this.position == this.buffer.length) {
+            this.drain();
+        }
+        this.buffer[this.position++] = (byte) b;
+    }
+
+    private void ascii(char c) throws IOException {
+        switch (c) {
+            case '"' -> this.raw("\\\"");
+            case '\\' -> this.raw("\\\\");
+            case '\n' -> this.raw("\\n");
+            case '\r' -> this.raw("\\r");
+            case '\t' -> this.raw("\\t");
+            case '\b' -> this.raw("\\b");
+            case '\f' -> this.raw("\\f");
+            default -> {
+                if (c < 0x20) {
+                    this.raw(String.format("\\u%04x", (int) c));
+                } else {
+                    this.put(c);
+                }
+            }
+        }
+    }
+
+    @Contract(pure = true)
+    private static boolean literal(@NotNull Object value) {
+        if (value instanceof Double number) {
+            return Double.isFinite(number);
+        } else if (value instanceof Float number) {
+            return Float.isFinite(number);
+        }
+        return value instanceof Integer || value instanceof Long || value instanceof Short ||
+            value instanceof Byte || value instanceof BigInteger || value instanceof BigDecimal;
+    }
+
+    /**
+     * @param value
+     * @param probe An encoder of the target charset or null for UTF-8. Characters it can not
+     *              encode are escaped.
+     *
+     * @return The value with all characters escaped that JSON or the charset can not represent
+     * as is, lone surrogates are always escaped.
+     */
+    @NotNull
+    private static String escape(@NotNull String value, @Nullable CharsetEncoder probe) {
+        var builder = new StringBuilder(value.length() + 8);
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                case '\b' -> builder.append("\\b");
+                case '\f' -> builder.append("\\f");
+                default -> {
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character
+                        .isLowSurrogate(value.charAt(i + 1))) {
+                        var pair = value.substring(i, i + 2);
+                        i++;
+                        if (probe == null || probe.canEncode(pair)) {
+                            builder.append(pair);
+                        } else {
+                            builder.append(String.format("\\u%04x\\u%04x", (int) pair.charAt(0),
+                                (int) pair.charAt(1)));
+                        }
+                    } else if (c < 0x20 || Character.isSurrogate(c) || (probe != null && c >= 0x80
+                        && !probe.canEncode(c))) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import grevend.persistencelite.entity.EntityMetadata;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Collects request metrics of the REST server and writes them in the Prometheus text format. All
+ * counters are striped {@link LongAdder LongAdders}, so that concurrent requests to the same
+ * endpoint do not contend on a single memory location. The counters are only summed up when the
+ * metrics are {@link #write(OutputStream) written}.
+ *
+ * @author David Greven
+ * @since 0.6.9
+ */
+public final class Metrics {
+
+    /**
+     * @since 0.6.9
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * The upper bounds of the latency histogram buckets in seconds.
+     *
+     * @since 0.6.9
+     */
+    static final double[] BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1,
+        2.5, 5, 10};
+
+    private static final String PREFIX = "persistencelite_";
+    private static final Set<String> METHODS = Set.of(RestHandler.GET, RestHandler.HEAD,
+        RestHandler.POST, RestHandler.PUT, RestHandler.DELETE, RestHandler.CONNECT,
+        RestHandler.OPTIONS, RestHandler.TRACE, RestHandler.PATCH);
+
+    private final Map<Key, Endpoint> endpoints;
+    private final Map<String, LongAdder[]> cache;
+    private final LongAdder inFlight;
+    private volatile Executor executor;
+
+    /**
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public Metrics() {
+        this.endpoints = new ConcurrentHashMap<>();
+        this.cache = new ConcurrentHashMap<>();
+        this.inFlight = new LongAdder();
+    }
+
+    /**
+     * @param exchange
+     *
+     * @return The method of the request, taking the method override header into account.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    public static String method(@NotNull HttpExchange exchange) {
+        var override = exchange.getRequestHeaders().getFirst("X-http-method-override");
+        return override != null ? override.toUpperCase() : exchange.getRequestMethod();
+    }
+
+    /**
+     * @param executor The executor of the server whose queue depth and active threads are
+     *                 reported if it is a {@link ThreadPoolExecutor}.
+     *
+     * @since 0.6.9
+     */
+    public void executor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param name The name of the endpoint the requests are recorded for, usually the name of the
+     *             entity.
+     *
+     * @return A filter recording the count, latency, transferred bytes and status of every
+     * request.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    public Filter filter(@NotNull String name) {
+        return new Filter() {
+
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                var start = System.nanoTime();
+                var in = new CountingInputStream(exchange.getRequestBody());
+                var out = new CountingOutputStream(exchange.getResponseBody());
+                exchange.setStreams(in, out);
+                Metrics.this.inFlight.increment();
+                try {
+                    chain.doFilter(exchange);
+                } finally {
+                    Metrics.this.inFlight.decrement();
+                    Metrics.this.record(name, method(exchange), exchange.getResponseCode(),
+                        in.count, out.count, System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Records the metrics of " + name + " requests.";
+            }
+
+        };
+    }
+
+    /**
+     * @param name
+     * @param method   The method of the request, unknown methods are recorded as {@code OTHER}
+     *                 to keep the number of label values bounded.
+     * @param code     The status code of the response or {@code -1} if none has been sent.
+     * @param bytesIn  The number of bytes read from the request body.
+     * @param bytesOut The number of bytes written to the response body.
+     * @param nanos    The time it took to handle the request.
+     *
+     * @since 0.6.9
+     */
+    void record(@NotNull String name, @NotNull String method, int code, long bytesIn, long bytesOut, long nanos) {
+        var endpoint = this.endpoints.computeIfAbsent(new Key(name,
+            METHODS.contains(method) ? method : "OTHER"), key -> new Endpoint());
+        endpoint.codes[code < 100 || code > 599 ? 0 : code / 100].increment();
+        if (code == RestHandler.NOT_MODIFIED) {
+            endpoint.notModified.increment();
+        }
+        endpoint.bytesIn.add(bytesIn);
+        endpoint.bytesOut.add(bytesOut);
+        endpoint.nanos.add(nanos);
+        var seconds = nanos / 1e9;
+        var bucket = 0;
+        while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+            bucket++;
+        }
+        endpoint.buckets[bucket].increment();
+    }
+
+    /**
+     * @param entityMetadata
+     * @param hit            Whether the response body was served from the body cache.
+     *
+     * @since 0.6.9
+     */
+    void cache(@NotNull EntityMetadata<?> entityMetadata, boolean hit) {
+        this.cache.computeIfAbsent(entityMetadata.name().toLowerCase(),
+            name -> new LongAdder[]{new LongAdder(), new LongAdder()})[hit ? 0 : 1].increment();
+    }
+
+    /**
+     * Writes a snapshot of all metrics in the Prometheus text exposition format.
+     *
+     * @param out
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    public void write(@NotNull OutputStream out) throws IOException {
+        var writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        var endpoints = new TreeMap<>(this.endpoints);
+
+        this.header(writer, "http_requests_total", "counter",
+            "Requests by entity, method and status class.");
+        for (var entry : endpoints.entrySet()) {
+            var codes = entry.getValue().codes;
+            for (var i = 0; i < codes.length; i++) {
+                var count = codes[i].sum();
+                if (count > 0) {
+                    this.sample(writer, "http_requests_total", entry.getKey().labels() +
+                        ",code=\"" + (i == 0 ? "none" : i + "xx") + '"', count);
+                }
+            }
+        }
+
+        this.header(writer, "http_errors_total", "counter",
+            "Requests that failed with a client or server error or without a response.");
+        for (var entry : endpoints.entrySet()) {
+            var codes = entry.getValue().codes;
+            this.sample(writer, "http_errors_total", entry.getKey().labels(),
+                codes[0].sum() + codes[4].sum() + codes[5].sum());
+        }
+
+        this.header(writer, "http_not_modified_total", "counter",
+            "Conditional requests answered with 304 Not Modified.");
+        for (var entry : endpoints.entrySet()) {
+            this.sample(writer, "http_not_modified_total", entry.getKey().labels(),
+                entry.getValue().notModified.sum());
+        }
+
+        this.header(writer, "http_request_duration_seconds", "histogram",
+            "Time it took to handle a request.");
+        for (var entry : endpoints.entrySet()) {
+            var labels = entry.getKey().labels();
+            var buckets = entry.getValue().buckets;
+            var cumulative = 0L;
+            for (var i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                this.sample(writer, "http_request_duration_seconds_bucket", labels + ",le=\"" +
+                    (i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf") + '"', cumulative);
+            }
+            writer.write(PREFIX + "http_request_duration_seconds_sum{" + labels + "} " +
+                entry.getValue().nanos.sum() / 1e9 + '\n');
+            this.sample(writer, "http_request_duration_seconds_count", labels, cumulative);
+        }
+
+        this.header(writer, "http_request_bytes_total", "counter",
+            "Bytes read from request bodies.");
+        for (var entry : endpoints.entrySet()) {
+            this.sample(writer, "http_request_bytes_total", entry.getKey().labels(),
+                entry.getValue().bytesIn.sum());
+        }
+
+        this.header(writer, "http_response_bytes_total", "counter",
+            "Bytes written to response bodies after compression.");
+        for (var entry : endpoints.entrySet()) {
+            this.sample(writer, "http_response_bytes_total", entry.getKey().labels(),
+                entry.getValue().bytesOut.sum());
+        }
+
+        this.header(writer, "http_requests_in_flight", "gauge",
+            "Requests currently being handled.");
+        this.sample(writer, "http_requests_in_flight", null, this.inFlight.sum());
+
+        if (this.executor instanceof ThreadPoolExecutor threadPoolExecutor) {
+            this.header(writer, "executor_queue_size", "gauge",
+                "Requests waiting for a thread of the server.");
+            this.sample(writer, "executor_queue_size", null,
+                threadPoolExecutor.getQueue().size());
+            this.header(writer, "executor_active_threads", "gauge",
+                "Threads of the server currently handling a request.");
+            this.sample(writer, "executor_active_threads", null,
+                threadPoolExecutor.getActiveCount());
+        }
+
+        if (!this.cache.isEmpty()) {
+            this.header(writer, "body_cache_requests_total", "counter",
+                "Lookups of the response body cache by entity and result.");
+            for (var entry : new TreeMap<>(this.cache).entrySet()) {
+                var labels = "entity=\"" + escape(entry.getKey()) + '"';
+                this.sample(writer, "body_cache_requests_total", labels + ",result=\"hit\"",
+                    entry.getValue()[0].sum());
+                this.sample(writer, "body_cache_requests_total", labels + ",result=\"miss\"",
+                    entry.getValue()[1].sum());
+            }
+        }
+        writer.flush();
+    }
+
+    private void header(@NotNull Writer writer, @NotNull String name, @NotNull String type, @NotNull String help) throws IOException {
+        writer.write("# HELP " + PREFIX + name + ' ' + help + "\n# TYPE " + PREFIX + name + ' ' +
+            type + '\n');
+    }
+
+    private void sample(@NotNull Writer writer, @NotNull String name, @Nullable String labels, long value) throws IOException {
+        writer.write(PREFIX + name + (labels == null ? " " : '{' + labels + "} ") + value + '\n');
+    }
+
+    @NotNull
+    private static String escape(@NotNull String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final record Key(@NotNull String name, @NotNull String method) implements Comparable<Key> {
+
+        @NotNull
+        private String labels() {
+            return "entity=\"" + escape(this.name) + "\",method=\"" + escape(this.method) + '"';
+        }
+
+        @Override
+        public int compareTo(@NotNull Key key) {
+            var compared = this.name.compareTo(key.name);
+            return compared != 0 ? compared : this.method.compareTo(key.method);
+        }
+
+    }
+
+    private static final class Endpoint {
+
+        private final LongAdder[] codes = adders(6);
+        private final LongAdder[] buckets = adders(BUCKETS.length + 1);
+        private final LongAdder notModified = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        @NotNull
+        private static LongAdder[] adders(int length) {
+            var adders = new LongAdder[length];
+            for (var i = 0; i < length; i++) {
+                adders[i] = new LongAdder();
+            }
+            return adders;
+        }
+
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(@NotNull InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            var read = super.read();
+            if (read >= 0) { this.count++; }
+            return read;
+        }
+
+        @Override
+        public int read(byte @NotNull [] bytes, int offset, int length) throws IOException {
+            var read = super.read(bytes, offset, length);
+            if (read > 0) { this.count += read; }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            var skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(@NotNull OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte @NotNull [] bytes, int offset, int length) throws IOException {
+            this.out.write(bytes, offset, length);
+            this.count += length;
+        }
+
+    }
+
+}
@@ -0,0 +1,613 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import com.sun.net.httpserver.Headers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A keep-alive connection of a {@link NioServer}. Requests are parsed on the selector loop that
+ * owns the connection, including their bodies, and queued so that a client may pipeline them.
+ * Only one exchange of a connection runs at a time and the next one is dispatched once the
+ * previous one was closed, which keeps the responses in the order of the requests. Reading pauses
+ * while too many requests are queued, writing blocks the handler while too many bytes are
+ * waiting for the client.
+ *
+ * @author David Greven
+ * @see NioExchange
+ * @since 0.6.9
+ */
+final class NioConnection {
+
+    /**
+     * The maximum number of bytes of a request line and its headers.
+     *
+     * @since 0.6.9
+     */
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of bytes of a request body.
+     *
+     * @since 0.6.9
+     */
+    static final long MAX_BODY_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The number of queued requests after which reading pauses.
+     *
+     * @since 0.6.9
+     */
+    static final int MAX_PIPELINED = 16;
+
+    /**
+     * The number of unwritten bytes after which writing handlers are blocked.
+     *
+     * @since 0.6.9
+     */
+    static final int HIGH_WATER = 256 * 1024;
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(ISO_8859_1);
+
+    private final NioServer server;
+    private final SocketChannel channel;
+    private final NioServer.Loop loop;
+    private final InetSocketAddress remote, local;
+    private final Queue<Request> requests = new ArrayDeque<>();
+    private final Queue<ByteBuffer> out = new ArrayDeque<>();
+    private SelectionKey key;
+    private ByteBuffer in = ByteBuffer.allocate(8 * 1024);
+    private Request head;
+    private long length;
+    private boolean chunked, expect, continued, eof, closing;
+    private ByteArrayOutputStream body;
+    private long chunk;
+    private boolean trailers;
+    private Rejection rejection;
+    private long active = System.nanoTime();
+    private int pending;
+    private volatile boolean busy, closed;
+
+    /**
+     * @param server  The server that accepted the connection.
+     * @param channel The channel of the connection.
+     * @param loop    The selector loop that owns the connection.
+     *
+     * @since 0.6.9
+     */
+    NioConnection(@NotNull NioServer server, @NotNull SocketChannel channel, @NotNull NioServer.Loop loop) {
+        this.server = server;
+        this.channel = channel;
+        this.loop = loop;
+        this.remote = address(channel, true);
+        this.local = address(channel, false);
+    }
+
+    @Nullable
+    private static InetSocketAddress address(@NotNull SocketChannel channel, boolean remote) {
+        try {
+            return (InetSocketAddress) (remote ? channel.getRemoteAddress()
+                : channel.getLocalAddress());
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    @Nullable
+    InetSocketAddress remote() {
+        return this.remote;
+    }
+
+    @Nullable
+    InetSocketAddress local() {
+        return this.local;
+    }
+
+    /**
+     * @return If an exchange of this connection is in progress.
+     *
+     * @since 0.6.9
+     */
+    boolean busy() {
+        return this.busy;
+    }
+
+    /**
+     * @param key The key of this connection on the selector of its loop.
+     *
+     * @since 0.6.9
+     */
+    void registered(@NotNull SelectionKey key) {
+        this.key = key;
+        if (this.closed) {
+            key.cancel();
+        }
+    }
+
+    /**
+     * Handles the readiness of this connection, called by its loop.
+     *
+     * @param key The selected key of this connection.
+     *
+     * @since 0.6.9
+     */
+    void ready(@NotNull SelectionKey key) {
+        try {
+            if (key.isWritable()) {
+                this.flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                this.read();
+            }
+        } catch (IOException exception) {
+            this.close();
+        }
+    }
+
+    /**
+     * Closes this connection if it was idle for too long, called by its loop.
+     *
+     * @param now The current value of {@link System#nanoTime()}.
+     *
+     * @since 0.6.9
+     */
+    void expire(long now) {
+        if (!this.busy && this.requests.isEmpty() && now - this.active > NioServer.IDLE_TIMEOUT) {
+            this.close();
+        }
+    }
+
+    /**
+     * Notifies this connection that its current exchange was closed.
+     *
+     * @param keepAlive If the connection may be used for further requests.
+     *
+     * @since 0.6.9
+     */
+    void finished(boolean keepAlive) {
+        this.loop.execute(() -> {
+            this.busy = false;
+            this.active = System.nanoTime();
+            if (keepAlive) {
+                this.proceed();
+            } else {
+                this.closeAfterFlush();
+            }
+        });
+    }
+
+    /**
+     * Writes the buffer to the client. If the client does not keep up, the buffer is queued and
+     * the calling handler blocks until the backlog drained below {@link #HIGH_WATER}.
+     *
+     * @param buffer The bytes to write.
+     *
+     * @throws IOException If the connection was closed or writing failed.
+     * @since 0.6.9
+     */
+    void write(@NotNull ByteBuffer buffer) throws IOException {
+        synchronized (this.out) {
+            if (this.closed) {
+                throw new IOException("Connection closed.");
+            }
+            if (this.out.isEmpty()) {
+                this.channel.write(buffer);
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+            }
+            this.out.add(buffer);
+            this.pending += buffer.remaining();
+        }
+        if (this.loop.inLoop()) {
+            this.interest();
+            return;
+        }
+        this.loop.execute(this::interest);
+        synchronized (this.out) {
+            try {
+                while (this.pending > HIGH_WATER && !this.closed) {
+                    this.out.wait();
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (this.closed) {
+                throw new IOException("Connection closed.");
+            }
+        }
+    }
+
+    /**
+     * Closes this connection immediately.
+     *
+     * @since 0.6.9
+     */
+    void close() {
+        synchronized (this.out) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.out.clear();
+            this.pending = 0;
+            this.out.notifyAll();
+        }
+        if (this.key != null) {
+            this.key.cancel();
+        }
+        try {
+            this.channel.close();
+        } catch (IOException ignored) {
+        }
+        this.server.closed(this);
+    }
+
+    private void closeAfterFlush() {
+        this.closing = true;
+        synchronized (this.out) {
+            if (this.out.isEmpty()) {
+                this.close();
+                return;
+            }
+        }
+        this.interest();
+    }
+
+    private void flush() throws IOException {
+        synchronized (this.out) {
+            ByteBuffer buffer;
+            while ((buffer = this.out.peek()) != null) {
+                this.pending -= this.channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                this.out.poll();
+            }
+            this.out.notifyAll();
+            if (this.out.isEmpty() && this.closing) {
+                this.close();
+                return;
+            }
+        }
+        this.interest();
+    }
+
+    private void interest() {
+        if (this.key == null || !this.key.isValid()) {
+            return;
+        }
+        var ops = 0;
+        if (!this.eof && !this.closing && this.rejection == null
+            && this.requests.size() < MAX_PIPELINED) {
+            ops |= SelectionKey.OP_READ;
+        }
+        synchronized (this.out) {
+            if (!this.out.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+        }
+        this.key.interestOps(ops);
+    }
+
+    private void read() throws IOException {
+        if (!this.in.hasRemaining()) {
+            var buffer = ByteBuffer.allocate(this.in.capacity() * 2);
+            this.in.flip();
+            this.in = buffer.put(this.in);
+        }
+        var count = this.channel.read(this.in);
+        if (count < 0) {
+            this.eof = true;
+        } else if (count == 0) {
+            return;
+        } else {
+            this.active = System.nanoTime();
+            try {
+                this.parse();
+            } catch (Rejection rejection) {
+                this.rejection = rejection;
+            }
+        }
+        this.proceed();
+    }
+
+    /**
+     * Dispatches the next queued request if no exchange is in progress and otherwise updates the
+     * state of the connection, always on its loop.
+     */
+    private void proceed() {
+        while (!this.busy && !this.closed && !this.closing) {
+            var request = this.requests.poll();
+            if (request == null) {
+                break;
+            }
+            var path = request.uri().getPath();
+            var context = this.server.context(path == null || path.isEmpty() ? "/" : path);
+            if (context == null) {
+                this.respond(404, request.keepAlive());
+                continue;
+            }
+            this.busy = true;
+            try {
+                this.server.dispatch(new NioExchange(this, request, context));
+            } catch (RejectedExecutionException exception) {
+                this.busy = false;
+                this.respond(503, false);
+            }
+        }
+        if (this.closed || this.closing || this.busy || !this.requests.isEmpty()) {
+            this.interest();
+            return;
+        }
+        if (this.rejection != null) {
+            this.respond(this.rejection.code, false);
+        } else if (this.eof) {
+            this.closeAfterFlush();
+        } else {
+            if (this.head != null && this.expect && !this.continued) {
+                this.continued = true;
+                try {
+                    this.write(ByteBuffer.wrap(CONTINUE));
+                } catch (IOException exception) {
+                    this.close();
+                    return;
+                }
+            }
+            this.interest();
+        }
+    }
+
+    private void respond(int code, boolean keepAlive) {
+        var response = "HTTP/1.1 " + code + " " + NioExchange.reason(code)
+            + "\r\nContent-length: 0\r\n" + (keepAlive ? "" : "Connection: close\r\n") + "\r\n";
+        try {
+            this.write(ByteBuffer.wrap(response.getBytes(ISO_8859_1)));
+        } catch (IOException exception) {
+            this.close();
+            return;
+        }
+        if (!keepAlive) {
+            this.closeAfterFlush();
+        }
+    }
+
+    private void parse() throws Rejection {
+        this.in.flip();
+        try {
+            while (true) {
+                if (this.head == null) {
+                    var end = this.headerEnd();
+                    if (end < 0) {
+                        if (this.in.remaining() >= MAX_HEADER_SIZE) {
+                            throw new Rejection(431);
+                        }
+                        return;
+                    }
+                    this.head(end);
+                }
+                var body = this.chunked ? this.chunks() : this.body();
+                if (body == null) {
+                    return;
+                }
+                this.requests.add(new Request(this.head.method, this.head.uri, this.head.protocol,
+                    this.head.headers, body, this.head.keepAlive));
+                this.head = null;
+                this.continued = false;
+            }
+        } finally {
+            this.in.compact();
+        }
+    }
+
+    private int headerEnd() {
+        while (this.in.remaining() >= 2 && this.in.get(this.in.position()) == '\r'
+            && this.in.get(this.in.position() + 1) == '\n') {
+            this.in.position(this.in.position() + 2);
+        }
+        for (int i = this.in.position(); i + 3 < this.in.limit(); i++) {
+            if (this.in.get(i) == '\r' && this.in.get(i + 1) == '\n' && this.in.get(i + 2) == '\r'
+                && this.in.get(i + 3) == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    private void head(int end) throws Rejection {
+        var text = new String(this.in.array(), this.in.position(), end - this.in.position() - 4,
+            ISO_8859_1);
+        this.in.position(end);
+        var lines = text.split("\r\n");
+        var line = lines[0].split(" ");
+        if (line.length != 3 || !line[2].startsWith("HTTP/1.")) {
+            throw new Rejection(400);
+        }
+        URI uri;
+        try {
+            uri = new URI(line[1]);
+        } catch (URISyntaxException exception) {
+            throw new Rejection(400);
+        }
+        var headers = new Headers();
+        for (int i = 1; i < lines.length; i++) {
+            var colon = lines[i].indexOf(':');
+            if (colon <= 0 || Character.isWhitespace(lines[i].charAt(0))) {
+                throw new Rejection(400);
+            }
+            headers.add(lines[i].substring(0, colon), lines[i].substring(colon + 1).strip());
+        }
+        var encoding = headers.getFirst("Transfer-encoding");
+        this.chunked = encoding != null;
+        if (this.chunked && !encoding.strip().toLowerCase().endsWith("chunked")) {
+            throw new Rejection(400);
+        }
+        this.body = this.chunked ? new ByteArrayOutputStream() : null;
+        this.chunk = -1;
+        this.trailers = false;
+        this.length = 0;
+        var lengths = headers.get("Content-length");
+        if (!this.chunked && lengths != null) {
+            try {
+                this.length = Long.parseLong(lengths.get(0));
+            } catch (NumberFormatException exception) {
+                throw new Rejection(400);
+            }
+            if (this.length < 0 || lengths.stream().anyMatch(value -> !value.equals(lengths.get(0)))) {
+                throw new Rejection(400);
+            }
+            if (this.length > MAX_BODY_SIZE) {
+                throw new Rejection(413);
+            }
+        }
+        var http11 = line[2].equals("HTTP/1.1");
+        var connection = headers.getFirst("Connection");
+        var keepAlive = http11 ? !"close".equalsIgnoreCase(connection)
+            : "keep-alive".equalsIgnoreCase(connection);
+        this.expect = http11 && "100-continue".equalsIgnoreCase(headers.getFirst("Expect"));
+        this.head = new Request(line[0], uri, line[2], headers, null, keepAlive);
+    }
+
+    @Nullable
+    private byte[] body() {
+        if (this.in.remaining() < this.length) {
+            return null;
+        }
+        var body = new byte[(int) this.length];
+        this.in.get(body);
+        return body;
+    }
+
+    /**
+     * Consumes the chunks of the body that have been received so far, the partial body and the
+     * size of the current chunk are kept until the next read, so every byte is only parsed once.
+     */
+    @Nullable
+    private byte[] chunks() throws Rejection {
+        while (true) {
+            var position = this.in.position();
+            if (this.chunk > 0) {
+                var count = (int) Math.min(this.chunk, this.in.remaining());
+                if (count == 0) {
+                    return null;
+                }
+                this.body.write(this.in.array(), position, count);
+                this.in.position(position + count);
+                this.chunk -= count;
+            } else if (this.chunk == 0) {
+                if (this.in.remaining() < 2) {
+                    return null;
+                }
+                if (this.in.get(position) != '\r' || this.in.get(position + 1) != '\n') {
+                    throw new Rejection(400);
+                }
+                this.in.position(position + 2);
+                this.chunk = -1;
+            } else {
+                var end = this.lineEnd(position);
+                if (end < 0) {
+                    return null;
+                }
+                this.in.position(end + 2);
+                if (this.trailers) {
+                    if (end == position) {
+                        var body = this.body.toByteArray();
+                        this.body = null;
+                        return body;
+                    }
+                    continue;
+                }
+                var line = new String(this.in.array(), position, end - position, ISO_8859_1);
+                var extension = line.indexOf(';');
+                long size;
+                try {
+                    size = Long.parseLong((extension < 0 ? line : line.substring(0, extension))
+                        .strip(), 16);
+                } catch (NumberFormatException exception) {
+                    throw new Rejection(400);
+                }
+                if (size < 0 || this.body.size() + size > MAX_BODY_SIZE) {
+                    throw new Rejection(413);
+                }
+                this.trailers = size == 0;
+                this.chunk = this.trailers ? -1 : size;
+            }
+        }
+    }
+
+    private int lineEnd(int from) throws Rejection {
+        for (int i = from; i + 1 < this.in.limit(); i++) {
+            if (this.in.get(i) == '\r' && this.in.get(i + 1) == '\n') {
+                return i;
+            }
+            if (i - from > MAX_HEADER_SIZE) {
+                throw new Rejection(431);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A request read from a connection.
+     *
+     * @author David Greven
+     * @since 0.6.9
+     */
+    record Request(@NotNull String method, @NotNull URI uri, @NotNull String protocol, @NotNull Headers headers, byte[] body, boolean keepAlive) {}
+
+    /**
+     * A request that can not be answered by a handler, the connection is closed after the
+     * status code was sent.
+     */
+    private static final class Rejection extends Exception {
+
+        private static final long serialVersionUID = -3165418733627905146L;
+
+        private final int code;
+
+        private Rejection(int code) {
+            super(null, null, false, false);
+            this.code = code;
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A context of a {@link NioServer}.
+ *
+ * @author David Greven
+ * @since 0.6.9
+ */
+final class NioContext extends HttpContext {
+
+    private final NioServer server;
+    private final String path;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final List<Filter> filters = new CopyOnWriteArrayList<>();
+    private volatile HttpHandler handler;
+    private volatile Authenticator authenticator;
+
+    NioContext(@NotNull NioServer server, @NotNull String path, @Nullable HttpHandler handler) {
+        this.server = server;
+        this.path = path;
+        this.handler = handler;
+    }
+
+    @Nullable
+    @Override
+    public HttpHandler getHandler() {
+        return this.handler;
+    }
+
+    @Override
+    public synchronized void setHandler(@NotNull HttpHandler handler) {
+        if (this.handler != null) {
+            throw new IllegalArgumentException("Handler already set.");
+        }
+        this.handler = handler;
+    }
+
+    @NotNull
+    @Override
+    public String getPath() {
+        return this.path;
+    }
+
+    @NotNull
+    @Override
+    public HttpServer getServer() {
+        return this.server;
+    }
+
+    @NotNull
+    @Override
+    public Map<String, Object> getAttributes() {
+        return this.attributes;
+    }
+
+    @NotNull
+    @Override
+    public List<Filter> getFilters() {
+        return this.filters;
+    }
+
+    @Nullable
+    @Override
+    public Authenticator setAuthenticator(@Nullable Authenticator authenticator) {
+        var previous = this.authenticator;
+        this.authenticator = authenticator;
+        return previous;
+    }
+
+    @Nullable
+    @Override
+    public Authenticator getAuthenticator() {
+        return this.authenticator;
+    }
+
+}
@@ -0,0 +1,451 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An exchange of a {@link NioConnection}. The request body was read completely before the
+ * exchange was dispatched. The response is buffered in blocks of {@link #BUFFER_SIZE} bytes and
+ * the status line and headers are sent together with the first block. Closing the exchange hands
+ * the connection back for the next request.
+ *
+ * @author David Greven
+ * @since 0.6.9
+ */
+final class NioExchange extends HttpExchange {
+
+    /**
+     * The number of response bytes that are buffered before they are written.
+     *
+     * @since 0.6.9
+     */
+    static final int BUFFER_SIZE = 8 * 1024;
+
+    private static volatile Date date = new Date(0, "");
+
+    private final NioConnection connection;
+    private final NioConnection.Request request;
+    private final NioContext context;
+    private final Headers responseHeaders = new Headers();
+    private final Output output = new Output();
+    private InputStream in;
+    private OutputStream out = this.output;
+    private HttpPrincipal principal;
+    private int code = -1;
+    private boolean keepAlive, closed;
+
+    /**
+     * @param connection The connection the request was read from.
+     * @param request    The request.
+     * @param context    The context that handles the request.
+     *
+     * @since 0.6.9
+     */
+    NioExchange(@NotNull NioConnection connection, @NotNull NioConnection.Request request, @NotNull NioContext context) {
+        this.connection = connection;
+        this.request = request;
+        this.context = context;
+        this.in = new ByteArrayInputStream(request.body());
+        this.keepAlive = request.keepAlive();
+    }
+
+    /**
+     * @param code A status code.
+     *
+     * @return The reason phrase of the status code.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    static String reason(int code) {
+        return switch (code) {
+            case 100 -> "Continue";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 206 -> "Partial Content";
+            case 301 -> "Moved Permanently";
+            case 302 -> "Found";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 406 -> "Not Acceptable";
+            case 409 -> "Conflict";
+            case 412 -> "Precondition Failed";
+            case 413 -> "Payload Too Large";
+            case 415 -> "Unsupported Media Type";
+            case 422 -> "Unprocessable Entity";
+            case 428 -> "Precondition Required";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 503 -> "Service Unavailable";
+            default -> "";
+        };
+    }
+
+    @NotNull
+    private static String date() {
+        var now = System.currentTimeMillis() / 1000;
+        var current = date;
+        if (current.second != now) {
+            current = new Date(now, DateTimeFormatter.RFC_1123_DATE_TIME
+                .format(ZonedDateTime.now(ZoneOffset.UTC)));
+            date = current;
+        }
+        return current.value;
+    }
+
+    /**
+     * Runs the authenticator, filters and handler of the context and closes the exchange
+     * afterwards.
+     *
+     * @since 0.6.9
+     */
+    void run() {
+        try {
+            var handler = this.context.getHandler();
+            if (handler == null) {
+                this.sendResponseHeaders(500, -1);
+                return;
+            }
+            var authenticator = this.context.getAuthenticator();
+            if (authenticator != null) {
+                var result = authenticator.authenticate(this);
+                if (result instanceof Authenticator.Success success) {
+                    this.principal = success.getPrincipal();
+                } else {
+                    this.sendResponseHeaders(result instanceof Authenticator.Failure failure
+                        ? failure.getResponseCode()
+                        : ((Authenticator.Retry) result).getResponseCode(), -1);
+                    return;
+                }
+            }
+            new Filter.Chain(this.context.getFilters(), handler).doFilter(this);
+        } catch (Throwable throwable) {
+            if (this.code < 0) {
+                try {
+                    this.responseHeaders.clear();
+                    this.sendResponseHeaders(500, -1);
+                } catch (IOException ignored) {
+                    this.keepAlive = false;
+                }
+            } else {
+                this.keepAlive = false;
+            }
+        } finally {
+            this.close();
+        }
+    }
+
+    @NotNull
+    @Override
+    public Headers getRequestHeaders() {
+        return this.request.headers();
+    }
+
+    @NotNull
+    @Override
+    public Headers getResponseHeaders() {
+        return this.responseHeaders;
+    }
+
+    @NotNull
+    @Override
+    public URI getRequestURI() {
+        return this.request.uri();
+    }
+
+    @NotNull
+    @Override
+    public String getRequestMethod() {
+        return this.request.method();
+    }
+
+    @NotNull
+    @Override
+    public HttpContext getHttpContext() {
+        return this.context;
+    }
+
+    /**
+     * Completes the response and hands the connection back for the next request. If no response
+     * was sent, the connection is closed.
+     *
+     * @since 0.6.9
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.in.close();
+        } catch (IOException ignored) {
+        }
+        if (this.code < 0) {
+            this.keepAlive = false;
+        } else {
+            try {
+                this.out.close();
+                this.output.close();
+            } catch (IOException exception) {
+                this.keepAlive = false;
+            }
+        }
+        this.connection.finished(this.keepAlive);
+    }
+
+    @NotNull
+    @Override
+    public InputStream getRequestBody() {
+        return this.in;
+    }
+
+    @NotNull
+    @Override
+    public OutputStream getResponseBody() {
+        return this.out;
+    }
+
+    /**
+     * Sends the status line and headers together with the first block of the body. A length of
+     * zero streams the body in chunks, or until the connection is closed for HTTP/1.0 clients,
+     * and a length of -1 sends no body.
+     *
+     * @since 0.6.9
+     */
+    @Override
+    public void sendResponseHeaders(int code, long length) throws IOException {
+        if (this.code >= 0) {
+            throw new IOException("Headers already sent.");
+        }
+        this.code = code;
+        var head = new StringBuilder(256).append("HTTP/1.1 ").append(code).append(' ')
+            .append(reason(code)).append("\r\nDate: ").append(date()).append("\r\n");
+        var empty = code < 200 || code == 204 || code == 304;
+        if (empty || length < 0 || this.request.method().equals("HEAD")) {
+            if (!empty) {
+                head.append("Content-length: ").append(Math.max(length, 0)).append("\r\n");
+            }
+            this.output.remaining = 0;
+        } else if (length > 0) {
+            head.append("Content-length: ").append(length).append("\r\n");
+            this.output.remaining = length;
+        } else if (this.request.protocol().equals("HTTP/1.1")) {
+            head.append("Transfer-encoding: chunked\r\n");
+            this.output.chunked = true;
+        } else {
+            this.keepAlive = false;
+        }
+        if (!this.keepAlive) {
+            head.append("Connection: close\r\n");
+        } else if (!this.request.protocol().equals("HTTP/1.1")) {
+            head.append("Connection: keep-alive\r\n");
+        }
+        this.responseHeaders.forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("Content-length") && !name.equalsIgnoreCase("Date")
+                && !name.equalsIgnoreCase("Transfer-encoding")
+                && !name.equalsIgnoreCase("Connection")) {
+                values.forEach(value -> head.append(name).append(": ").append(value).append("\r\n"));
+            }
+        });
+        this.output.head = head.append("\r\n").toString().getBytes(ISO_8859_1);
+    }
+
+    @Nullable
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return this.connection.remote();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return this.code;
+    }
+
+    @Nullable
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return this.connection.local();
+    }
+
+    @NotNull
+    @Override
+    public String getProtocol() {
+        return this.request.protocol();
+    }
+
+    @Nullable
+    @Override
+    public Object getAttribute(@NotNull String name) {
+        return this.context.getAttributes().get(name);
+    }
+
+    @Override
+    public void setAttribute(@NotNull String name, @Nullable Object value) {
+        if (value == null) {
+            this.context.getAttributes().remove(name);
+        } else {
+            this.context.getAttributes().put(name, value);
+        }
+    }
+
+    @Override
+    public void setStreams(@Nullable InputStream in, @Nullable OutputStream out) {
+        if (in != null) {
+            this.in = in;
+        }
+        if (out != null) {
+            this.out = out;
+        }
+    }
+
+    @Nullable
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return this.principal;
+    }
+
+    private record Date(long second, @NotNull String value) {}
+
+    /**
+     * The response body, which can be wrapped before the headers are sent.
+     */
+    private final class Output extends OutputStream {
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private byte[] head;
+        private int count;
+        private long remaining = -1;
+        private boolean chunked, closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte @NotNull [] bytes, int offset, int length) throws IOException {
+            if (this.head == null && !this.closed) {
+                throw new IOException("Headers not sent.");
+            }
+            if (this.closed) {
+                throw new IOException("Stream closed.");
+            }
+            if (this.remaining >= 0) {
+                if (length > this.remaining) {
+                    throw new IOException("Too many bytes to write.");
+                }
+                this.remaining -= length;
+            }
+            while (length > 0) {
+                var size = Math.min(length, this.buffer.length - this.count);
+                System.arraycopy(bytes, offset, this.buffer, this.count, size);
+                this.count += size;
+                offset += size;
+                length -= size;
+                if (this.count == this.buffer.length) {
+                    this.drain(false);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (this.head != null && !this.closed) {
+                this.drain(false);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed || this.head == null) {
+                return;
+            }
+            this.closed = true;
+            this.drain(true);
+            if (this.remaining > 0) {
+                NioExchange.this.keepAlive = false;
+                throw new IOException("Response shorter than its length.");
+            }
+        }
+
+        private void drain(boolean last) throws IOException {
+            var size = (this.head != null ? this.head.length : 0) + this.count
+                + (this.chunked ? 16 + (last ? 5 : 0) : 0);
+            if (size == 0) {
+                return;
+            }
+            var bytes = ByteBuffer.allocate(size);
+            if (this.head != null) {
+                bytes.put(this.head);
+                this.head = new byte[0];
+            }
+            if (this.chunked && this.count > 0) {
+                bytes.put((Integer.toHexString(this.count) + "\r\n").getBytes(ISO_8859_1));
+            }
+            bytes.put(this.buffer, 0, this.count);
+            if (this.chunked && this.count > 0) {
+                bytes.put((byte) '\r').put((byte) '\n');
+            }
+            if (this.chunked && last) {
+                bytes.put("0\r\n\r\n".getBytes(ISO_8859_1));
+            }
+            this.count = 0;
+            if (bytes.flip().hasRemaining()) {
+                NioExchange.this.connection.write(bytes);
+            }
+        }
+
+    }
+
+}
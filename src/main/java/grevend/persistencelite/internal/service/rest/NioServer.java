@@ -0,0 +1,418 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An HTTP/1.1 server that spreads its connections over a fixed number of selector loops. The
+ * first loop also accepts new connections and hands them out round-robin. Connections are kept
+ * alive and may pipeline requests, which are read ahead and answered strictly in order. Handlers
+ * run on the executor of the server or, if none was set, on an internal cached thread pool so
+ * that no loop ever blocks on a handler.
+ *
+ * @author David Greven
+ * @see NioServerProvider
+ * @see NioConnection
+ * @since 0.6.9
+ */
+final class NioServer extends HttpServer {
+
+    /**
+     * The time in nanoseconds after which an idle connection is closed.
+     *
+     * @since 0.6.9
+     */
+    static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    private static final AtomicInteger WORKERS = new AtomicInteger();
+
+    private final Loop[] loops;
+    private final List<NioContext> contexts = new CopyOnWriteArrayList<>();
+    private final Set<NioConnection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger next = new AtomicInteger();
+    private ServerSocketChannel channel;
+    private volatile Executor executor;
+    private ExecutorService fallback;
+    private boolean started, stopped;
+
+    /**
+     * @param selectors The number of selector loops.
+     *
+     * @throws IOException If a selector could not be opened.
+     * @since 0.6.9
+     */
+    NioServer(int selectors) throws IOException {
+        this.loops = new Loop[selectors];
+        for (int i = 0; i < selectors; i++) {
+            this.loops[i] = new Loop(i);
+        }
+    }
+
+    @Override
+    public synchronized void bind(@NotNull InetSocketAddress address, int backlog) throws IOException {
+        if (this.channel != null) {
+            throw new BindException("Server already bound.");
+        }
+        var channel = ServerSocketChannel.open();
+        try {
+            channel.bind(address, backlog);
+            channel.configureBlocking(false);
+        } catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+        this.channel = channel;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (this.channel == null) {
+            throw new IllegalStateException("Server not bound.");
+        }
+        if (this.started) {
+            throw new IllegalStateException("Server already started.");
+        }
+        this.started = true;
+        if (this.executor == null) {
+            this.fallback = Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable,
+                    "persistencelite-nio-worker-" + WORKERS.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.loops[0].execute(() -> {
+            try {
+                this.channel.register(this.loops[0].selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException exception) {
+                throw new IllegalStateException("Unable to accept connections.", exception);
+            }
+        });
+        for (var loop : this.loops) {
+            loop.thread.start();
+        }
+    }
+
+    @Override
+    public synchronized void setExecutor(@Nullable Executor executor) {
+        if (this.started) {
+            throw new IllegalStateException("Server already started.");
+        }
+        this.executor = executor;
+    }
+
+    @Nullable
+    @Override
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Stops accepting connections, waits up to the given delay for the exchanges in progress and
+     * closes all connections afterwards.
+     *
+     * @param delay The maximum time in seconds to wait for exchanges in progress.
+     *
+     * @since 0.6.9
+     */
+    @Override
+    public void stop(int delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Delay must not be negative.");
+        }
+        synchronized (this) {
+            if (this.stopped) {
+                return;
+            }
+            this.stopped = true;
+        }
+        try {
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        } catch (IOException ignored) {
+        }
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(delay);
+        try {
+            while (System.nanoTime() < deadline && this.connections.stream()
+                .anyMatch(NioConnection::busy)) {
+                Thread.sleep(10);
+            }
+            for (var loop : this.loops) {
+                loop.shutdown();
+            }
+            for (var loop : this.loops) {
+                if (loop.thread.isAlive()) {
+                    loop.thread.join(TimeUnit.SECONDS.toMillis(1));
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (this.fallback != null) {
+                this.fallback.shutdown();
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public HttpContext createContext(@NotNull String path, @Nullable HttpHandler handler) {
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Path must start with '/'.");
+        }
+        synchronized (this.contexts) {
+            if (this.contexts.stream().anyMatch(context -> context.getPath().equals(path))) {
+                throw new IllegalArgumentException("Context already exists.");
+            }
+            var context = new NioContext(this, path, handler);
+            this.contexts.add(context);
+            return context;
+        }
+    }
+
+    @NotNull
+    @Override
+    public HttpContext createContext(@NotNull String path) {
+        return this.createContext(path, null);
+    }
+
+    @Override
+    public void removeContext(@NotNull String path) {
+        if (!this.contexts.removeIf(context -> context.getPath().equals(path))) {
+            throw new IllegalArgumentException("No context with the given path.");
+        }
+    }
+
+    @Override
+    public void removeContext(@NotNull HttpContext context) {
+        if (!this.contexts.remove(context)) {
+            throw new IllegalArgumentException("No such context.");
+        }
+    }
+
+    @Nullable
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return this.channel == null ? null
+                : (InetSocketAddress) this.channel.getLocalAddress();
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the context with the longest path that is a prefix of the given one.
+     *
+     * @param path The path of a request.
+     *
+     * @return The matching context or null if there is none.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    NioContext context(@NotNull String path) {
+        NioContext match = null;
+        for (var context : this.contexts) {
+            if (path.startsWith(context.getPath()) && (match == null
+                || context.getPath().length() > match.getPath().length())) {
+                match = context;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Runs an exchange on the executor of the server.
+     *
+     * @param exchange The exchange to run.
+     *
+     * @throws RejectedExecutionException If the executor does not accept the exchange.
+     * @since 0.6.9
+     */
+    void dispatch(@NotNull NioExchange exchange) {
+        (this.executor != null ? this.executor : this.fallback).execute(exchange::run);
+    }
+
+    /**
+     * @param connection A connection that was closed.
+     *
+     * @since 0.6.9
+     */
+    void closed(@NotNull NioConnection connection) {
+        this.connections.remove(connection);
+    }
+
+    private void accept() throws IOException {
+        SocketChannel socket;
+        while ((socket = this.channel.accept()) != null) {
+            try {
+                socket.configureBlocking(false);
+                socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException exception) {
+                socket.close();
+                continue;
+            }
+            var loop = this.loops[Math.floorMod(this.next.getAndIncrement(), this.loops.length)];
+            var accepted = socket;
+            var connection = new NioConnection(this, accepted, loop);
+            this.connections.add(connection);
+            loop.execute(() -> {
+                try {
+                    connection.registered(accepted.register(loop.selector, SelectionKey.OP_READ,
+                        connection));
+                } catch (IOException exception) {
+                    connection.close();
+                }
+            });
+        }
+    }
+
+    /**
+     * A selector loop that owns the connections registered with it. Other threads interact with
+     * those connections only through tasks executed on the loop.
+     *
+     * @author David Greven
+     * @since 0.6.9
+     */
+    final class Loop implements Executor {
+
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        private Loop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this::run, "persistencelite-nio-" + index);
+        }
+
+        /**
+         * Runs the task on this loop.
+         *
+         * @param task The task to run.
+         *
+         * @since 0.6.9
+         */
+        @Override
+        public void execute(@NotNull Runnable task) {
+            this.tasks.add(task);
+            if (!this.inLoop()) {
+                this.selector.wakeup();
+            }
+        }
+
+        /**
+         * @return If the current thread is the thread of this loop.
+         *
+         * @since 0.6.9
+         */
+        boolean inLoop() {
+            return Thread.currentThread() == this.thread;
+        }
+
+        private void shutdown() {
+            this.running = false;
+            this.selector.wakeup();
+        }
+
+        private void run() {
+            var checked = System.nanoTime();
+            while (this.running) {
+                try {
+                    if (this.tasks.isEmpty()) {
+                        this.selector.select(1000);
+                    } else {
+                        this.selector.selectNow();
+                    }
+                    Runnable task;
+                    while ((task = this.tasks.poll()) != null) {
+                        task.run();
+                    }
+                    var keys = this.selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        var key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            NioServer.this.accept();
+                        } else {
+                            ((NioConnection) key.attachment()).ready(key);
+                        }
+                    }
+                    var now = System.nanoTime();
+                    if (now - checked > TimeUnit.SECONDS.toNanos(1)) {
+                        checked = now;
+                        for (var key : this.selector.keys()) {
+                            if (key.attachment() instanceof NioConnection connection) {
+                                connection.expire(now);
+                            }
+                        }
+                    }
+                } catch (IOException | IllegalStateException ignored) {
+                }
+            }
+            for (var key : this.selector.keys()) {
+                if (key.attachment() instanceof NioConnection connection) {
+                    connection.close();
+                }
+            }
+            try {
+                this.selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+    }
+
+}
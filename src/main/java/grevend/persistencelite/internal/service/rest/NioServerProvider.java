@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsServer;
+import com.sun.net.httpserver.spi.HttpServerProvider;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Creates servers that multiplex all connections on a fixed number of selector loops instead of
+ * the single dispatcher thread of the default engine. HTTPS is not supported.
+ *
+ * @author David Greven
+ * @see NioServer
+ * @since 0.6.9
+ */
+public final class NioServerProvider extends HttpServerProvider {
+
+    private final int selectors;
+
+    /**
+     * Creates a provider whose servers run one selector loop per available processor.
+     *
+     * @since 0.6.9
+     */
+    public NioServerProvider() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param selectors The number of selector loops each server runs.
+     *
+     * @throws IllegalArgumentException If the number of selectors is not positive.
+     * @since 0.6.9
+     */
+    public NioServerProvider(int selectors) {
+        if (selectors < 1) {
+            throw new IllegalArgumentException("Selectors must be positive.");
+        }
+        this.selectors = selectors;
+    }
+
+    /**
+     * @return The number of selector loops each server runs.
+     *
+     * @since 0.6.9
+     */
+    public int selectors() {
+        return this.selectors;
+    }
+
+    /**
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    public HttpServer createHttpServer(@Nullable InetSocketAddress address, int backlog) throws IOException {
+        var server = new NioServer(this.selectors);
+        if (address != null) {
+            server.bind(address, backlog);
+        }
+        return server;
+    }
+
+    /**
+     * @throws UnsupportedOperationException Always, HTTPS is not supported.
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    public HttpsServer createHttpsServer(@Nullable InetSocketAddress address, int backlog) {
+        throw new UnsupportedOperationException("HTTPS is not supported by the NIO engine.");
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static grevend.persistencelite.internal.service.rest.RestUtils.marshall;
+import static grevend.persistencelite.internal.service.rest.RestUtils.unmarshall;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gson.JsonParseException;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.dao.DaoImpl;
+import grevend.persistencelite.internal.entity.EntityProperty;
+import grevend.persistencelite.util.TypeMarshaller;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keyset pagination of retrieve requests. A page is requested with the {@code limit} query
+ * parameter and continued with the {@code after} parameter taken from the {@code Link} header of
+ * the previous page. The continuation token encodes the identifier values of the last entity of
+ * the previous page, so that the next page starts right behind it without counting the skipped
+ * entities.
+ *
+ * @author David Greven
+ * @see DaoImpl#page(Iterable, Map, List, int)
+ * @since 0.6.9
+ */
+final class Pagination {
+
+    static final String LIMIT = "limit";
+    static final String AFTER = "after";
+
+    private Pagination() {}
+
+    /**
+     * @param query The parsed query of the request.
+     *
+     * @return The requested page size or zero if the whole result was requested.
+     *
+     * @throws IllegalArgumentException If the limit is not a positive number.
+     * @since 0.6.9
+     */
+    static int limit(@NotNull Map<String, List<String>> query) {
+        var values = query.get(LIMIT);
+        if (values == null || values.isEmpty()) {
+            return 0;
+        }
+        var limit = Integer.parseInt(values.get(0));
+        if (limit < 1 || limit == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid limit " + limit + ".");
+        }
+        return limit;
+    }
+
+    /**
+     * @param entityMetadata
+     * @param query           The parsed query of the request.
+     * @param unmarshallerMap
+     *
+     * @return The identifier values encoded by the continuation token or null if the first page
+     * was requested.
+     *
+     * @throws IllegalArgumentException If the token is malformed.
+     * @since 0.6.9
+     */
+    @Nullable
+    static List<Object> after(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, List<String>> query, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) {
+        var values = query.get(AFTER);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        String[] decoded;
+        try {
+            decoded = RestCodec.GSON.fromJson(new String(Base64.getUrlDecoder()
+                .decode(values.get(0)), UTF_8), String[].class);
+        } catch (JsonParseException exception) {
+            throw new IllegalArgumentException("Malformed continuation token.", exception);
+        }
+        var identifiers = List.copyOf(entityMetadata.declaredIdentifiers());
+        if (decoded == null || decoded.length != identifiers.size()) {
+            throw new IllegalArgumentException("Malformed continuation token.");
+        }
+        List<Object> after = new ArrayList<>(decoded.length);
+        for (var i = 0; i < decoded.length; i++) {
+            after.add(unmarshall(entityMetadata, decoded[i], identifiers.get(i).type(),
+                unmarshallerMap));
+        }
+        return after;
+    }
+
+    /**
+     * @param entityMetadata
+     * @param row            The last row of a page.
+     * @param marshallerMap
+     *
+     * @return The continuation token of the page following the given row.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    static String token(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> row, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap) {
+        var values = entityMetadata.declaredIdentifiers().stream()
+            .map(identifier -> String.valueOf(marshall(entityMetadata,
+                identifier(row, identifier), identifier.type(), marshallerMap)))
+            .toArray(String[]::new);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(RestCodec.GSON
+            .toJson(values).getBytes(UTF_8));
+    }
+
+    /**
+     * @param uri   The request uri.
+     * @param limit
+     * @param token
+     *
+     * @return The value of the {@code Link} header pointing to the next page, the other query
+     * parameters of the request are kept.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    static String link(@NotNull URI uri, int limit, @NotNull String token) {
+        var query = uri.getRawQuery() == null ? "" : List.of(uri.getRawQuery().split("&"))
+            .stream().filter(param -> !param.isEmpty() && !param.startsWith(LIMIT + "=") &&
+                !param.startsWith(AFTER + "=")).map(param -> param + "&")
+            .collect(Collectors.joining());
+        return "<" + uri.getRawPath() + "?" + query + LIMIT + "=" + limit + "&" + AFTER + "=" +
+            URLEncoder.encode(token, UTF_8) + ">; rel=\"next\"";
+    }
+
+    /**
+     * @param link The {@code Link} header of a response.
+     *
+     * @return The continuation token of the next page or null if there is none.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    @Contract(pure = true)
+    static String next(@Nullable String link) {
+        if (link == null || !link.contains("rel=\"next\"")) {
+            return null;
+        }
+        var start = link.indexOf(AFTER + "=");
+        if (start < 0) {
+            return null;
+        }
+        start += AFTER.length() + 1;
+        var end = start;
+        while (end < link.length() && link.charAt(end) != '&' && link.charAt(end) != '>') {
+            end++;
+        }
+        return link.substring(start, end);
+    }
+
+    /**
+     * Retrieves a page through {@link DaoImpl#page(Iterable, Map, List, int)} or, if the
+     * implementation cannot page, by ordering the whole result by the declared identifiers.
+     *
+     * @param daoImpl
+     * @param entityMetadata
+     * @param props
+     * @param after
+     * @param limit
+     *
+     * @return
+     *
+     * @throws Throwable
+     * @since 0.6.9
+     */
+    @NotNull
+    static List<Map<String, Object>> page(@NotNull DaoImpl<?> daoImpl, @NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> props, @Nullable List<Object> after, int limit) throws Throwable {
+        var page = daoImpl.page(props.keySet(), props, after, limit);
+        if (page != null) {
+            return page;
+        }
+        var identifiers = List.copyOf(entityMetadata.declaredIdentifiers());
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (var row : daoImpl.retrieve(props.keySet(), props)) {
+            if (after == null || compare(identifiers, row, after) > 0) {
+                rows.add(row);
+            }
+        }
+        rows.sort((first, second) -> compare(identifiers, first, identifiers.stream()
+            .map(identifier -> identifier(second, identifier)).collect(Collectors.toList())));
+        return rows.size() > limit ? rows.subList(0, limit) : rows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(@NotNull List<EntityProperty> identifiers, @NotNull Map<String, Object> row, @NotNull List<Object> key) {
+        for (var i = 0; i < identifiers.size(); i++) {
+            var value = identifier(row, identifiers.get(i));
+            var other = key.get(i);
+            var res = Objects.equals(value, other) ? 0 : value == null ? -1 : other == null ? 1 :
+                ((Comparable<Object>) value).compareTo(other);
+            if (res != 0) {
+                return res;
+            }
+        }
+        return 0;
+    }
+
+    @Nullable
+    private static Object identifier(@NotNull Map<String, Object> row, @NotNull EntityProperty identifier) {
+        return row.containsKey(identifier.fieldName()) ? row.get(identifier.fieldName())
+            : row.get(identifier.propertyName());
+    }
+
+}
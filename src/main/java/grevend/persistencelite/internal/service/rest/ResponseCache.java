@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import grevend.common.SegmentedCache;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+/**
+ * The client-side cache of retrieve responses. Cached responses are revalidated with conditional
+ * requests and reused as long as the server answers with {@code 304 Not Modified}.
+ *
+ * @author David Greven
+ * @see RestDaoImpl
+ * @since 0.6.9
+ */
+public final class ResponseCache {
+
+    private final SegmentedCache<String, Response> responses;
+
+    /**
+     * @param capacity The maximum number of cached responses.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public ResponseCache(@Range(from = 1, to = Integer.MAX_VALUE) int capacity) {
+        this.responses = new SegmentedCache<>(capacity);
+    }
+
+    /**
+     * @param entity  The entity name.
+     * @param request The request body.
+     *
+     * @return The cached response or null.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    Response get(@NotNull String entity, @NotNull String request) {
+        return this.responses.get(entity + '\n' + request);
+    }
+
+    /**
+     * @param entity       The entity name.
+     * @param request      The request body.
+     * @param lastModified The {@code Last-Modified} header of the response.
+     * @param rows         The decoded rows without relation values.
+     *
+     * @since 0.6.9
+     */
+    void put(@NotNull String entity, @NotNull String request, @NotNull String lastModified, @NotNull Collection<Map<String, Object>> rows) {
+        List<Map<String, Object>> copies = new ArrayList<>(rows.size());
+        rows.forEach(row -> copies.add(Collections.unmodifiableMap(new HashMap<>(row))));
+        this.responses.put(entity + '\n' + request, new Response(lastModified, copies));
+    }
+
+    /**
+     * @param lastModified The {@code Last-Modified} header of the response.
+     * @param rows         The decoded rows without relation values.
+     *
+     * @since 0.6.9
+     */
+    static final record Response(@NotNull String lastModified, @NotNull List<Map<String, Object>>rows) {
+
+        /**
+         * @return Mutable copies of the cached rows.
+         *
+         * @since 0.6.9
+         */
+        @NotNull
+        List<Map<String, Object>> copy() {
+            List<Map<String, Object>> res = new ArrayList<>(this.rows.size());
+            this.rows.forEach(row -> res.add(new HashMap<>(row)));
+            return res;
+        }
+
+    }
+
+}
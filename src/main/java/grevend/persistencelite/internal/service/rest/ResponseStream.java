@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The body of a response that only commits to a length and encoding once it knows enough about
+ * its size. Bodies up to the compression threshold are buffered and sent as is with a fixed
+ * length, larger bodies are streamed in chunks and compressed on the fly if an encoding was
+ * negotiated.
+ *
+ * @author David Greven
+ * @see Compression
+ * @since 0.6.9
+ */
+final class ResponseStream extends OutputStream {
+
+    private final HttpExchange exchange;
+    private final int code, level, threshold;
+    private final String encoding;
+    private byte[] buffer;
+    private int count;
+    private OutputStream out;
+    private boolean closed;
+
+    /**
+     * @param exchange
+     * @param code      The status code of the response.
+     * @param encoding  The negotiated content coding or null if the body should not be
+     *                  compressed.
+     * @param level     The compression level.
+     * @param threshold The number of bytes after which the body is compressed.
+     *
+     * @since 0.6.9
+     */
+    ResponseStream(@NotNull HttpExchange exchange, int code, @Nullable String encoding, int level, int threshold) {
+        this.exchange = exchange;
+        this.code = code;
+        this.encoding = level > 0 ? encoding : null;
+        this.level = level;
+        this.threshold = threshold;
+        this.buffer = new byte[Math.min(threshold, JsonEncoder.BUFFER_SIZE)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) throws IOException {
+        if (this.out == null && this.count + len <= this.threshold) {
+            if (this.count + len > this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.min(this.threshold,
+                    Math.max(this.count + len, 2 * this.buffer.length)));
+            }
+            System.arraycopy(b, off, this.buffer, this.count, len);
+            this.count += len;
+            return;
+        }
+        if (this.out == null) {
+            this.open();
+        }
+        this.out.write(b, off, len);
+    }
+
+    /**
+     * Sends the headers of a chunked response and writes the buffered bytes.
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    private void open() throws IOException {
+        var headers = this.exchange.getResponseHeaders();
+        if (this.encoding != null) {
+            headers.set("Content-Encoding", this.encoding);
+            var etag = headers.getFirst("ETag");
+            if (etag != null && etag.endsWith("\"")) {
+                headers.set("ETag", etag.substring(0, etag.length() - 1) + '-' +
+                    this.encoding + '"');
+            }
+        }
+        this.exchange.sendResponseHeaders(this.code, RestHandler.CHUNKED);
+        this.out = this.encoding == null ? this.exchange.getResponseBody()
+            : Compression.compress(this.exchange.getResponseBody(), this.encoding, this.level);
+        this.out.write(this.buffer, 0, this.count);
+        this.buffer = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.out != null) {
+            this.out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.out == null) {
+            this.exchange.sendResponseHeaders(this.code, this.count == 0 ? -1 : this.count);
+            this.out = this.exchange.getResponseBody();
+            this.out.write(this.buffer, 0, this.count);
+        }
+        this.out.close();
+    }
+
+}
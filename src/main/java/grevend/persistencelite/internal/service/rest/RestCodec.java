@@ -0,0 +1,515 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static grevend.persistencelite.internal.service.rest.RestUtils.unmarshall;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.entity.EntityProperty;
+import grevend.persistencelite.util.TypeMarshaller;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decodes entity responses as a stream, converting every entity into a row as soon as it has been
+ * read from the connection. JSON responses are read with a {@link JsonReader}, binary responses
+ * as written by the {@link BinaryEncoder} are read directly from the connection.
+ *
+ * @author David Greven
+ * @see RestDaoImpl
+ * @since 0.6.9
+ */
+final class RestCodec {
+
+    /**
+     * The {@code Gson} instance shared by the requester and the server, so that type adapters are
+     * only built once.
+     *
+     * @since 0.6.9
+     */
+    static final Gson GSON = new Gson();
+
+    /**
+     * @param entityMetadata
+     * @param in              The response body of a retrieve request.
+     * @param binary          If the response body is encoded by the {@link BinaryEncoder}.
+     * @param unmarshallerMap
+     * @param complete        Receives the decoded rows without relation values once the response
+     *                        has been read completely or null if the rows should not be kept.
+     *
+     * @return The lazily decoded rows including their relation values.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_, _, _, _, _ -> new")
+    static Iterable<Map<String, Object>> rows(@NotNull EntityMetadata<?> entityMetadata, @NotNull InputStream in, boolean binary, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap, @Nullable Consumer<List<Map<String, Object>>> complete) {
+        return binary ? new BinaryRows(entityMetadata, in, unmarshallerMap, complete)
+            : new JsonRows(entityMetadata, new JsonReader(new InputStreamReader(in,
+                StandardCharsets.UTF_8)), unmarshallerMap, complete, true);
+    }
+
+    /**
+     * Decodes the rows of a retrieve response embedded in a larger document, such as the result of
+     * a batch operation. The reader is left open behind the embedded response.
+     *
+     * @param entityMetadata
+     * @param reader          The reader positioned at the embedded response.
+     * @param unmarshallerMap
+     *
+     * @return The decoded rows including their relation values.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    static List<Map<String, Object>> rows(@NotNull EntityMetadata<?> entityMetadata, @NotNull JsonReader reader, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        new JsonRows(entityMetadata, reader, unmarshallerMap, null, false).forEach(rows::add);
+        return rows;
+    }
+
+    /**
+     * The decoded rows of a response, remembered so that they can be iterated more than once.
+     * Callers that stop iterating before the end of the response should {@link #close()} the rows
+     * to release the connection and decompressor of the response.
+     *
+     * @since 0.6.9
+     */
+    private abstract static class Rows implements Iterable<Map<String, Object>>, AutoCloseable {
+
+        final EntityMetadata<?> entityMetadata;
+        final Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap;
+        private final Consumer<List<Map<String, Object>>> complete;
+        private final List<Map<String, Object>> rows;
+        private final List<Map<String, Object>> decoded;
+        private boolean finished;
+
+        @Contract(pure = true)
+        private Rows(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap, @Nullable Consumer<List<Map<String, Object>>> complete) {
+            this.entityMetadata = entityMetadata;
+            this.unmarshallerMap = unmarshallerMap;
+            this.complete = complete;
+            this.rows = new ArrayList<>();
+            this.decoded = complete == null ? null : new ArrayList<>();
+        }
+
+        /**
+         * @return The next row without relation values or null if the response has been read
+         * completely.
+         */
+        @Nullable
+        abstract Map<String, Object> read() throws IOException;
+
+        abstract void release() throws IOException;
+
+        /**
+         * Stops reading the response, the rows decoded so far remain iterable but are not passed to
+         * the {@code complete} consumer.
+         */
+        @Override
+        public void close() {
+            if (!this.finished) {
+                this.finish();
+            }
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Map<String, Object>> iterator() {
+            return new Iterator<>() {
+
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return this.index < Rows.this.rows.size() || Rows.this.advance();
+                }
+
+                @Override
+                public Map<String, Object> next() {
+                    if (!this.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return Rows.this.rows.get(this.index++);
+                }
+
+            };
+        }
+
+        /**
+         * Reads the next entity from the response.
+         *
+         * @return {@code false} if the response has been read completely.
+         */
+        private boolean advance() {
+            if (this.finished) {
+                return false;
+            }
+            try {
+                var row = this.read();
+                if (row == null) {
+                    this.finish();
+                    if (this.complete != null) {
+                        this.complete.accept(this.decoded);
+                    }
+                    return false;
+                }
+                if (this.decoded != null) {
+                    this.decoded.add(new HashMap<>(row));
+                }
+                RestUtils.createRelationValues(this.entityMetadata, row);
+                this.rows.add(row);
+                return true;
+            } catch (IOException exception) {
+                this.finish();
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        private void finish() {
+            this.finished = true;
+            try {
+                this.release();
+            } catch (IOException ignored) {
+            }
+        }
+
+    }
+
+    /**
+     * @since 0.6.9
+     */
+    private static final class JsonRows extends Rows {
+
+        private final JsonReader reader;
+        private final boolean owned;
+        private boolean started;
+
+        /**
+         * @param owned If the reader should be closed once the response has been read.
+         */
+        @Contract(pure = true)
+        private JsonRows(@NotNull EntityMetadata<?> entityMetadata, @NotNull JsonReader reader, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap, @Nullable Consumer<List<Map<String, Object>>> complete, boolean owned) {
+            super(entityMetadata, unmarshallerMap, complete);
+            this.reader = reader;
+            this.owned = owned;
+        }
+
+        @Nullable
+        @Override
+        Map<String, Object> read() throws IOException {
+            if (!this.started) {
+                this.started = true;
+                if (!this.seek()) {
+                    return null;
+                }
+            }
+            if (!this.reader.hasNext()) {
+                this.reader.endArray();
+                while (this.reader.hasNext()) {
+                    this.reader.nextName();
+                    this.reader.skipValue();
+                }
+                this.reader.endObject();
+                return null;
+            }
+            return this.row(this.props());
+        }
+
+        @Override
+        void release() throws IOException {
+            if (this.owned) {
+                this.reader.close();
+            }
+        }
+
+        /**
+         * Positions the reader at the first element of the entities array.
+         *
+         * @return {@code false} if the response contains no entities array.
+         */
+        private boolean seek() throws IOException {
+            this.reader.beginObject();
+            while (this.reader.hasNext()) {
+                if (this.reader.nextName().equals("entities") &&
+                    this.reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    this.reader.beginArray();
+                    return true;
+                }
+                this.reader.skipValue();
+            }
+            this.reader.endObject();
+            return false;
+        }
+
+        @NotNull
+        private Map<String, String> props() throws IOException {
+            Map<String, String> props = new HashMap<>();
+            this.reader.beginObject();
+            while (this.reader.hasNext()) {
+                if (this.reader.nextName().equals("props") &&
+                    this.reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    this.reader.beginObject();
+                    while (this.reader.hasNext()) {
+                        var name = this.reader.nextName();
+                        props.put(name, switch (this.reader.peek()) {
+                            case NULL -> {
+                                this.reader.nextNull();
+                                yield null;
+                            }
+                            case BOOLEAN -> Boolean.toString(this.reader.nextBoolean());
+                            default -> this.reader.nextString();
+                        });
+                    }
+                    this.reader.endObject();
+                } else {
+                    this.reader.skipValue();
+                }
+            }
+            this.reader.endObject();
+            return props;
+        }
+
+        @NotNull
+        private Map<String, Object> row(@NotNull Map<String, String> props) {
+            Map<String, Object> row = new HashMap<>();
+            for (var prop : this.entityMetadata.properties()) {
+                row.put(prop.fieldName(), unmarshall(this.entityMetadata,
+                    props.containsKey(prop.fieldName()) ? props.get(prop.fieldName())
+                        : props.get(prop.propertyName()), prop.type(), this.unmarshallerMap));
+            }
+            return row;
+        }
+
+    }
+
+    /**
+     * Reads the binary format written by the {@link BinaryEncoder}. Booleans and numbers are
+     * converted to the property type directly, only strings pass through the unmarshallers.
+     *
+     * @since 0.6.9
+     */
+    private static final class BinaryRows extends Rows {
+
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position, limit;
+        private EntityProperty[] schema;
+        private List<EntityProperty> missing;
+
+        @Contract(pure = true)
+        private BinaryRows(@NotNull EntityMetadata<?> entityMetadata, @NotNull InputStream in, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap, @Nullable Consumer<List<Map<String, Object>>> complete) {
+            super(entityMetadata, unmarshallerMap, complete);
+            this.in = in;
+            this.buffer = new byte[JsonEncoder.BUFFER_SIZE];
+        }
+
+        @Nullable
+        @Override
+        Map<String, Object> read() throws IOException {
+            if (this.schema == null) {
+                this.schema();
+            }
+            if (this.get() == BinaryEncoder.END) {
+                return null;
+            }
+            Map<String, Object> row = new HashMap<>();
+            for (var prop : this.schema) {
+                var value = this.value(prop);
+                if (prop != null) {
+                    row.put(prop.fieldName(), value);
+                }
+            }
+            for (var prop : this.missing) {
+                row.put(prop.fieldName(), this.convert(null, prop.type()));
+            }
+            return row;
+        }
+
+        @Override
+        void release() throws IOException {
+            this.in.close();
+        }
+
+        private void schema() throws IOException {
+            var version = this.get();
+            if (version != BinaryEncoder.VERSION) {
+                throw new IOException("Unsupported binary format version <" + version + ">.");
+            }
+            Map<String, EntityProperty> properties = new HashMap<>();
+            this.entityMetadata.properties().forEach(prop -> {
+                properties.putIfAbsent(prop.propertyName(), prop);
+                properties.put(prop.fieldName(), prop);
+            });
+            this.missing = new ArrayList<>(this.entityMetadata.properties());
+            this.schema = new EntityProperty[(int) this.varint()];
+            for (var i = 0; i < this.schema.length; i++) {
+                var prop = properties.get(this.string((int) this.varint()));
+                if (prop != null && this.missing.remove(prop)) {
+                    this.schema[i] = prop;
+                }
+            }
+        }
+
+        @Nullable
+        private Object value(@Nullable EntityProperty prop) throws IOException {
+            var type = prop == null ? null : prop.type();
+            var tag = this.get();
+            return switch (tag) {
+                case BinaryEncoder.NULL -> this.convert(null, type);
+                case BinaryEncoder.FALSE, BinaryEncoder.TRUE -> {
+                    var bool = tag == BinaryEncoder.TRUE;
+                    yield type == boolean.class || type == Boolean.class ? bool
+                        : this.convert(Boolean.toString(bool), type);
+                }
+                case BinaryEncoder.INTEGER -> {
+                    var zigzag = this.varint();
+                    var number = (zigzag >>> 1) ^ -(zigzag & 1);
+                    if (type == int.class || type == Integer.class) {
+                        yield (int) number;
+                    } else if (type == long.class || type == Long.class) {
+                        yield number;
+                    } else if (type == short.class || type == Short.class) {
+                        yield (short) number;
+                    } else if (type == byte.class || type == Byte.class) {
+                        yield (byte) number;
+                    }
+                    yield this.convert(Long.toString(number), type);
+                }
+                case BinaryEncoder.DOUBLE -> {
+                    var number = Double.longBitsToDouble(this.fixed(8));
+                    if (type == double.class || type == Double.class) {
+                        yield number;
+                    } else if (type == float.class || type == Float.class) {
+                        yield (float) number;
+                    }
+                    yield this.convert(Double.toString(number), type);
+                }
+                case BinaryEncoder.FLOAT -> {
+                    var number = Float.intBitsToFloat((int) this.fixed(4));
+                    if (type == float.class || type == Float.class) {
+                        yield number;
+                    } else if (type == double.class || type == Double.class) {
+                        yield (double) number;
+                    }
+                    yield this.convert(Float.toString(number), type);
+                }
+                case BinaryEncoder.STRING -> {
+                    var string = this.string((int) this.varint());
+                    yield this.convert(string, type);
+                }
+                default -> throw new IOException("Unknown type tag <" + tag + ">.");
+            };
+        }
+
+        @Nullable
+        private Object convert(@Nullable String value, @Nullable Class<?> type) {
+            return type == null ? null
+                : unmarshall(this.entityMetadata, value, type, this.unmarshallerMap);
+        }
+
+        private int get() throws IOException {
+            if (this.position == this.limit) {
+                this.fill(1);
+            }
+            return this.buffer[this.position++] & 0xFF;
+        }
+
+        private long varint() throws IOException {
+            long value = 0;
+            for (var shift = 0; shift < 64; shift += 7) {
+                var b = this.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint.");
+        }
+
+        private long fixed(int bytes) throws IOException {
+            long value = 0;
+            for (var i = 0; i < bytes; i++) {
+                value = (value << 8) | this.get();
+            }
+            return value;
+        }
+
+        @NotNull
+        private String string(int length) throws IOException {
+            if (length > this.buffer.length) {
+                var bytes = new byte[length];
+                var buffered = this.limit - this.position;
+                System.arraycopy(this.buffer, this.position, bytes, 0, buffered);
+                this.position = this.limit;
+                if (this.in.readNBytes(bytes, buffered, length - buffered) < length - buffered) {
+                    throw new EOFException();
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            if (this.limit - this.position < length) {
+                this.fill(length);
+            }
+            var string = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+            this.position += length;
+            return string;
+        }
+
+        /**
+         * Reads from the connection until at least the given number of bytes is buffered.
+         */
+        private void fill(int bytes) throws IOException {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+            this.limit -= this.position;
+            this.position = 0;
+            while (this.limit < bytes) {
+                var read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                this.limit += read;
+            }
+        }
+
+    }
+
+}
@@ -26,8 +26,13 @@ package grevend.persistencelite.internal.service.rest;
 
 import grevend.persistencelite.service.Service;
 import grevend.persistencelite.service.rest.RestMode;
+import com.sun.net.httpserver.spi.HttpServerProvider;
+import java.net.URI;
 import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import org.jetbrains.annotations.ApiStatus.AvailableSince;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -35,4 +40,4 @@ import org.jetbrains.annotations.Nullable;
  * @author David Greven
  * @since 0.4.6
  */
-public record RestConfiguration(@NotNull RestMode mode, int version, @NotNull Charset charset, boolean cached, int poolSize, int backlog, @Nullable String scope, @Nullable Service<?>service, @Nullable Properties properties) {}
+public record RestConfiguration(@NotNull RestMode mode, int version, @NotNull Charset charset, boolean cached, long cacheBudget, int poolSize, int backlog, @Nullable String scope, @Nullable Service<?>service, @Nullable Properties properties, @AvailableSince(value = "0.6.9") @Nullable Executor executor, @AvailableSince(value = "0.6.9") @Nullable HttpServerProvider engine, @AvailableSince(value = "0.6.9") @Nullable URI endpoint, @AvailableSince(value = "0.6.9") @Nullable Duration timeout, @AvailableSince(value = "0.6.9") int compressionLevel, @AvailableSince(value = "0.6.9") int compressionThreshold, @AvailableSince(value = "0.6.9") int pageSize, @AvailableSince(value = "0.6.9") boolean metrics, @AvailableSince(value = "0.6.9") boolean noDelay) {}
@@ -24,15 +24,16 @@
 
 package grevend.persistencelite.internal.service.rest;
 
-import grevend.persistencelite.PersistenceLite;
 import grevend.persistencelite.dao.Transaction;
 import grevend.persistencelite.dao.TransactionFactory;
 import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.cache.EntityCache;
 import grevend.persistencelite.internal.dao.BaseDao;
 import grevend.persistencelite.util.TypeMarshaller;
+import grevend.sequence.Seq;
 import java.io.IOException;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
 import java.util.Map;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
@@ -55,17 +56,65 @@ public final class RestDao<E> extends BaseDao<E, Throwable> {
      * @param transactionFactory
      * @param transaction
      * @param props
+     * @param entityCache
      *
      * @throws Throwable
      * @since 0.4.7
      */
-    public RestDao(@NotNull EntityMetadata<E> entityMetadata, @NotNull RestDaoImpl daoImpl, @NotNull TransactionFactory transactionFactory, @Nullable Transaction transaction, boolean props, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> unmarshallerMap) throws Throwable {
+    public RestDao(@NotNull EntityMetadata<E> entityMetadata, @NotNull RestDaoImpl daoImpl, @NotNull TransactionFactory transactionFactory, @Nullable Transaction transaction, boolean props, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> unmarshallerMap, @Nullable EntityCache entityCache) throws Throwable {
         super(entityMetadata, daoImpl, transactionFactory, transaction, props, marshallerMap,
-            unmarshallerMap);
+            unmarshallerMap, entityCache);
         this.daoImpl = daoImpl;
         this.entityMetadata = entityMetadata;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @return A sequence retrieving the entities lazily page by page.
+     *
+     * @see #sequence(Map)
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    public <S extends Seq<E, S>> Seq<E, S> sequence() {
+        return this.sequence(Map.of());
+    }
+
+    /**
+     * @param props The properties the entities should match.
+     * @param <S>
+     *
+     * @return A sequence retrieving the matching entities lazily page by page, only the current
+     * page is kept in memory.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    public <S extends Seq<E, S>> Seq<E, S> sequence(@NotNull Map<String, Object> props) {
+        var rows = this.daoImpl.pages(props).iterator();
+        return Seq.of(new Iterator<E>() {
+
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public E next() {
+                try {
+                    return RestDao.this.deserialize(rows.next());
+                } catch (RuntimeException exception) {
+                    throw exception;
+                } catch (Throwable throwable) {
+                    throw new IllegalStateException(throwable);
+                }
+            }
+
+        });
+    }
+
     /**
      * Returns the last modification timestamp for the entity type assigned to this dao. The result
      * is only available if an operation was previously carried out which contained this information
@@ -83,15 +132,11 @@ public final class RestDao<E> extends BaseDao<E, Throwable> {
     public ZonedDateTime lastModified(boolean head) {
         if (head) {
             try {
-                var conn = this.daoImpl.connection();
-                conn.setRequestProperty("Accept-Charset", "utf-8");
-                conn.setRequestProperty("User-Agent", "PersistenceLite/" + PersistenceLite.VERSION +
-                    " (Java/" + Runtime.version() + ") Cache/v0");
-                this.daoImpl.lastModified = ZonedDateTime
-                    .parse(conn.getHeaderField("Last-Modified"),
-                        DateTimeFormatter.RFC_1123_DATE_TIME);
+                return this.daoImpl.head();
             } catch (IOException exception) {
                 exception.printStackTrace();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
             }
         }
         return this.daoImpl.lastModified;
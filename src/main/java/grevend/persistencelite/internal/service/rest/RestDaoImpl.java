@@ -28,29 +28,44 @@ import static grevend.persistencelite.internal.service.rest.RestUtils.marshall;
 import static grevend.persistencelite.internal.service.rest.RestUtils.unmarshall;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import grevend.persistencelite.PersistenceLite;
 import grevend.persistencelite.entity.EntityMetadata;
 import grevend.persistencelite.internal.dao.DaoImpl;
 import grevend.persistencelite.util.TypeMarshaller;
 import grevend.sequence.Seq;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Objects;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * @author David Greven
@@ -58,20 +73,58 @@ import org.jetbrains.annotations.NotNull;
  */
 public final class RestDaoImpl implements DaoImpl<Throwable> {
 
+    private static final String[] HEADERS = {"Accept-Charset", "utf-8", "Content-Type",
+        "application/pl.v0.entity+json; utf-8", "User-Agent", "PersistenceLite/" +
+        PersistenceLite.VERSION + " (Java/" + Runtime.version() +
+        " MagicNumber/32204d61722032303230)"};
+
+    private static final Type COMPONENTS = new TypeToken<List<Map<String, String>>>() {}
+        .getType();
+
     private final EntityMetadata<?> entityMetadata;
-    private final String baseUrl;
+    private final URI uri, batchUri;
     private final Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap;
     private final Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap;
     private final Map<String, Class<?>> entityTypes;
-    ZonedDateTime lastModified;
+    private final ResponseCache responseCache;
+    private final Map<String, byte[]> names;
+    private final HttpClient client;
+    private final Duration timeout;
+    private final boolean cleartext, compressed;
+    private final int pageSize;
+    volatile ZonedDateTime lastModified;
 
     @Contract(pure = true)
     public RestDaoImpl(@NotNull EntityMetadata<?> entityMetadata, @NotNull String baseUrl, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) {
+        this(entityMetadata, baseUrl, marshallerMap, unmarshallerMap, null,
+            HttpClient.newHttpClient(), null, false, 500);
+    }
+
+    /**
+     * @param responseCache The cache used to revalidate retrieve responses with conditional
+     *                      requests or null if every response should be downloaded.
+     * @param client        The client sending the requests, shared by all daos of a service.
+     * @param timeout       The timeout of every single request or null if requests should not
+     *                      time out.
+     * @param compressed    Whether compressed responses should be accepted.
+     * @param pageSize      The number of entities retrieved per request by {@link
+     *                      #pages(Map)}.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public RestDaoImpl(@NotNull EntityMetadata<?> entityMetadata, @NotNull String baseUrl, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap, @Nullable ResponseCache responseCache, @NotNull HttpClient client, @Nullable Duration timeout, boolean compressed, int pageSize) {
         this.entityMetadata = entityMetadata;
-        this.baseUrl = baseUrl;
+        this.responseCache = responseCache;
+        this.uri = URI.create(baseUrl + entityMetadata.name().toLowerCase());
+        this.batchUri = URI.create(baseUrl + "batch");
         this.marshallerMap = marshallerMap;
         this.unmarshallerMap = unmarshallerMap;
-        HttpURLConnection.setFollowRedirects(false);
+        this.client = client;
+        this.timeout = timeout;
+        this.cleartext = "http".equalsIgnoreCase(this.uri.getScheme());
+        this.compressed = compressed;
+        this.pageSize = pageSize;
 
         this.entityTypes = this.entityMetadata.properties().stream()
             .map(prop -> new SimpleEntry<>(prop.fieldName(), prop.type()))
@@ -79,231 +132,454 @@ public final class RestDaoImpl implements DaoImpl<Throwable> {
                 (oldV, newV) -> newV));
         this.entityMetadata.properties()
             .forEach(prop -> this.entityTypes.put(prop.propertyName(), prop.type()));
+        this.names = JsonEncoder.names(entityMetadata, UTF_8);
     }
 
-    HttpURLConnection connection() throws IOException {
-        return (HttpURLConnection) new URL(this.baseUrl +
-            this.entityMetadata.name().toLowerCase()).openConnection();
+    /**
+     * Sends a request over the shared client, reusing a kept-alive connection if available.
+     * HTTP/2 is only negotiated over TLS, cleartext connections are not upgraded since an upgrade
+     * attempt on every new connection costs more than it saves against servers without {@code h2c}.
+     *
+     * @param method  The method, {@code GET} and {@code PATCH} are sent as overridden {@code
+     *                POST}.
+     * @param body    The encoded request body.
+     * @param since   The value of the {@code If-Modified-Since} header or null.
+     * @param handler
+     * @param <T>
+     *
+     * @return
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     * @since 0.6.9
+     */
+    @NotNull
+    private <T> HttpResponse<T> send(@NotNull String method, byte[] body, @Nullable String since, @NotNull BodyHandler<T> handler) throws IOException, InterruptedException {
+        return this.send(this.uri, method, body, since, handler);
     }
 
     @NotNull
-    @Contract(" -> new")
-    private HttpURLConnection request() throws IOException {
-        var conn = this.connection();
-        conn.setRequestProperty("X-HTTP-Method-Override", RestHandler.GET);
-        conn.setRequestMethod(RestHandler.POST);
-        conn.setRequestProperty("Accept-Charset", "utf-8");
-        conn.setRequestProperty("Content-Type", "application/pl.v0.entity+json; utf-8");
-        conn.setRequestProperty("User-Agent", "PersistenceLite/" + PersistenceLite.VERSION +
-            " (Java/" + Runtime.version() + " MagicNumber/32204d61722032303230)");
-        conn.setRequestProperty("Transfer-Encoding", "chunked");
-        conn.setDoOutput(true);
-        conn.setDoInput(true);
-        return conn;
+    private <T> HttpResponse<T> send(@NotNull URI uri, @NotNull String method, byte[] body, @Nullable String since, @NotNull BodyHandler<T> handler) throws IOException, InterruptedException {
+        var builder = HttpRequest.newBuilder(uri).headers(HEADERS);
+        if (this.cleartext) {
+            builder.version(Version.HTTP_1_1);
+        }
+        if (this.timeout != null) {
+            builder.timeout(this.timeout);
+        }
+        if (since != null) {
+            builder.header("If-Modified-Since", since);
+        }
+        if (method.equals(RestHandler.GET)) {
+            builder.header("Accept", BinaryEncoder.CONTENT_TYPE +
+                ", application/pl.v0.entity+json; q=0.9");
+        }
+        if (this.compressed && (method.equals(RestHandler.GET) || method.equals(RestHandler.PUT) ||
+            method.equals(RestHandler.POST))) {
+            builder.header("Accept-Encoding", Compression.ACCEPT_ENCODING);
+        }
+        if (method.equals(RestHandler.GET) || method.equals(RestHandler.PATCH)) {
+            builder.header("X-HTTP-Method-Override", method)
+                .POST(BodyPublishers.ofByteArray(body));
+        } else {
+            builder.method(method, body.length == 0 ? BodyPublishers.noBody()
+                : BodyPublishers.ofByteArray(body));
+        }
+        var response = this.client.send(builder.build(), handler);
+        response.headers().firstValue("Last-Modified").ifPresent(header -> this.lastModified =
+            ZonedDateTime.parse(header, DateTimeFormatter.RFC_1123_DATE_TIME));
+        return response;
+    }
+
+    /**
+     * Sends a {@code HEAD} request to refresh the last modification timestamp.
+     *
+     * @return
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     * @since 0.6.9
+     */
+    @Nullable
+    ZonedDateTime head() throws IOException, InterruptedException {
+        this.send(RestHandler.HEAD, new byte[0], null, BodyHandlers.discarding());
+        return this.lastModified;
     }
 
+    /**
+     * @param response
+     *
+     * @return The body of the response, decompressed according to its {@code Content-Encoding}.
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
     @NotNull
-    @Contract("_ -> new")
-    private RequestUnidirectional requestWithBody(@NotNull String method) throws IOException {
-        var conn = this.connection();
-        if (method.equals(RestHandler.PATCH)) {
-            conn.setRequestProperty("X-HTTP-Method-Override", RestHandler.PATCH);
-            conn.setRequestMethod(RestHandler.POST);
-        } else {
-            conn.setRequestMethod(method);
+    private InputStream body(@NotNull HttpResponse<InputStream> response) throws IOException {
+        return Compression.decompress(response.body(), response.headers()
+            .firstValue("Content-Encoding").orElse(null));
+    }
+
+    private void check(@NotNull HttpResponse<?> response, int... codes) {
+        for (var code : codes) {
+            if (response.statusCode() == code) {
+                return;
+            }
         }
-        conn.setRequestProperty("Accept-Charset", "utf-8");
-        conn.setRequestProperty("Content-Type", "application/pl.v0.entity+json; utf-8");
-        conn.setRequestProperty("User-Agent", "PersistenceLite/" + PersistenceLite.VERSION +
-            " (Java/" + Runtime.version() + " MagicNumber/32204d61722032303230)");
-        conn.setRequestProperty("Transfer-Encoding", "chunked");
-        conn.setDoOutput(true);
-        conn.setDoInput(true);
-        return new RequestUnidirectional(new OutputStreamWriter(conn.getOutputStream(), UTF_8),
-            conn);
+        throw new IllegalStateException("Server responded with error code <" +
+            response.statusCode() + ">.");
+    }
+
+    /**
+     * Writes the given properties as JSON object, properties unknown to the entity are written as
+     * null.
+     *
+     * @param encoder
+     * @param props
+     * @param keys    The properties that should be written or null if all should be written.
+     *
+     * @throws IOException
+     * @since 0.6.9
+     */
+    private void encode(@NotNull JsonEncoder encoder, @NotNull Map<String, Object> props, @Nullable Set<String> keys) throws IOException {
+        encoder.raw("{");
+        var first = true;
+        for (var entry : props.entrySet()) {
+            if (keys == null || keys.contains(entry.getKey())) {
+                if (!first) {
+                    encoder.raw(", ");
+                }
+                first = false;
+                var known = this.entityTypes.containsKey(entry.getKey());
+                encoder.name(entry.getKey(), this.names).value(known ? entry.getValue() : null,
+                    known ? marshall(this.entityMetadata, entry.getValue(),
+                        this.entityTypes.get(entry.getKey()), this.marshallerMap) : null);
+            }
+        }
+        encoder.raw("}");
     }
 
     @Override
     public void create(@NotNull Iterable<Map<String, Object>> entity) throws Throwable {
-        var request = this.requestWithBody(RestHandler.PUT);
-        var writer = request.writer;
+        var buffer = new ByteArrayOutputStream();
+        var encoder = new JsonEncoder(buffer, UTF_8);
         var entityIter = entity.iterator();
-        writer.write("{\"entity\": [");
+        encoder.raw("{\"entity\": [");
         while (entityIter.hasNext()) {
-            writer.flush();
-            var next = entityIter.next();
-            writer.write("{");
-            var entries = next.entrySet().iterator();
-            while (entries.hasNext()) {
-                var entry = entries.next();
-                writer.flush();
-                writer.write("\"" + entry.getKey() + "\": \"" +
-                    (this.entityTypes.containsKey(entry.getKey()) ? marshall(this.entityMetadata,
-                        entry.getValue(), this.entityTypes.get(entry.getKey()), this.marshallerMap)
-                        : null) + "\"" + (entries.hasNext() ? ", " : ""));
+            this.encode(encoder, entityIter.next(), null);
+            if (entityIter.hasNext()) {
+                encoder.raw(", ");
             }
-            writer.write("}" + (entityIter.hasNext() ? ", " : ""));
         }
-        writer.write("]}");
-        writer.flush();
-        writer.close();
-        if (request.connection.getResponseCode() != RestHandler.OK &&
-            request.connection.getResponseCode() != RestHandler.CREATED) {
-            throw new IllegalStateException("Server responded with error code <" +
-                request.connection.getResponseCode() + ">.");
-        } else {
-            this.lastModified = ZonedDateTime.parse(request.connection
-                .getHeaderField("Last-Modified"), DateTimeFormatter.RFC_1123_DATE_TIME);
-
-            var res = new Gson().fromJson(new InputStreamReader(request.connection.getInputStream(),
-                UTF_8), CreatedEntity.class).entity.stream().map(e ->
-                this.entityMetadata.uniqueProperties().stream().map(prop ->
-                    new SimpleEntry<>(prop.fieldName(), unmarshall(this.entityMetadata,
-                        e.containsKey(prop.fieldName()) ? e.get(prop.fieldName())
-                            : (e.getOrDefault(prop.propertyName(), null)),
-                        prop.type(), this.unmarshallerMap)))
-                    .collect(Collectors.toMap(Entry::getKey, Entry::getValue,
-                        (olvV, newV) -> newV)))
-                .collect(Collectors.toUnmodifiableList());
-
-            entityIter = entity.iterator();
-            var resIter = res.iterator();
-            while (entityIter.hasNext() && resIter.hasNext()) {
-                entityIter.next().putAll(resIter.next());
+        encoder.raw("]}").flush();
+
+        var response = this.send(RestHandler.PUT, buffer.toByteArray(), null,
+            BodyHandlers.ofInputStream());
+        try (var in = this.body(response)) {
+            this.check(response, RestHandler.OK, RestHandler.CREATED);
+            this.merge(entity, RestCodec.GSON.fromJson(new InputStreamReader(in, UTF_8),
+                CreatedEntity.class).entity.stream().map(this::created)
+                .collect(Collectors.toUnmodifiableList()));
+        }
+    }
+
+    /**
+     * @param created An entity component of a create response.
+     *
+     * @return The unique properties of the component.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    private Map<String, Object> created(@NotNull Map<String, String> created) {
+        return this.entityMetadata.uniqueProperties().stream().map(prop ->
+            new SimpleEntry<>(prop.fieldName(), unmarshall(this.entityMetadata,
+                created.containsKey(prop.fieldName()) ? created.get(prop.fieldName())
+                    : (created.getOrDefault(prop.propertyName(), null)),
+                prop.type(), this.unmarshallerMap)))
+            .collect(Collectors.toMap(Entry::getKey, Entry::getValue,
+                (olvV, newV) -> newV));
+    }
+
+    private void merge(@NotNull Iterable<Map<String, Object>> entity, @NotNull Iterable<Map<String, Object>> created) {
+        var entityIter = entity.iterator();
+        var resIter = created.iterator();
+        while (entityIter.hasNext() && resIter.hasNext()) {
+            entityIter.next().putAll(resIter.next());
+        }
+    }
+
+    /**
+     * Sends the operations as a single batch request.
+     *
+     * @param method      The method of all operations.
+     * @param entities    The entity components of every operation or an empty list if the
+     *                    operations have none.
+     * @param props       The properties of every operation or an empty list if the operations
+     *                    have none.
+     * @param keys        The properties that should be sent or null if all should be sent.
+     * @param transaction Whether all operations should be rolled back if one fails.
+     *
+     * @return The rows of every retrieve operation and the created components of every create
+     * operation, empty for all other operations.
+     *
+     * @throws Throwable
+     * @since 0.6.9
+     */
+    @NotNull
+    private List<Iterable<Map<String, Object>>> batch(@NotNull String method, @NotNull List<? extends Iterable<Map<String, Object>>> entities, @NotNull List<Map<String, Object>> props, @Nullable Set<String> keys, boolean transaction) throws Throwable {
+        var size = Math.max(entities.size(), props.size());
+        var buffer = new ByteArrayOutputStream();
+        var encoder = new JsonEncoder(buffer, UTF_8);
+        encoder.raw("{\"transaction\": " + transaction + ", \"operations\": [");
+        for (var i = 0; i < size; i++) {
+            encoder.raw("{\"method\": \"" + method + "\", \"type\": ")
+                .string(this.entityMetadata.name());
+            if (!entities.isEmpty()) {
+                encoder.raw(", \"entity\": [");
+                var components = entities.get(i).iterator();
+                while (components.hasNext()) {
+                    this.encode(encoder, components.next(), null);
+                    if (components.hasNext()) {
+                        encoder.raw(", ");
+                    }
+                }
+                encoder.raw("]");
+            }
+            if (!props.isEmpty()) {
+                encoder.raw(", \"props\": ");
+                this.encode(encoder, props.get(i), keys);
             }
+            encoder.raw(i + 1 < size ? "}, " : "}");
+        }
+        encoder.raw("]}").flush();
+
+        var response = this.send(this.batchUri, RestHandler.POST, buffer.toByteArray(), null,
+            BodyHandlers.ofInputStream());
+        try (var in = this.body(response)) {
+            this.check(response, RestHandler.OK);
+            var reader = new JsonReader(new InputStreamReader(in, UTF_8));
+            List<Iterable<Map<String, Object>>> results = new ArrayList<>(size);
+            String failure = null;
+            var committed = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "results" -> {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            var code = 0;
+                            String error = null;
+                            List<Map<String, Object>> rows = List.of();
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                switch (reader.nextName()) {
+                                    case "code" -> code = reader.nextInt();
+                                    case "error" -> error = reader.nextString();
+                                    case "body" -> rows = RestCodec
+                                        .rows(this.entityMetadata, reader, this.unmarshallerMap);
+                                    case "entity" -> rows = RestCodec.GSON.<List<Map<String, String>>>
+                                        fromJson(reader, COMPONENTS).stream().map(this::created)
+                                        .collect(Collectors.toUnmodifiableList());
+                                    default -> reader.skipValue();
+                                }
+                            }
+                            reader.endObject();
+                            if (code >= RestHandler.BAD_REQUEST && failure == null) {
+                                failure = "Server responded with error code <" + code + ">" +
+                                    (error == null ? "." : ": " + error);
+                            }
+                            results.add(rows);
+                        }
+                        reader.endArray();
+                    }
+                    case "committed" -> committed = reader.nextBoolean();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            } else if (!committed || results.size() != size) {
+                throw new IllegalStateException("Batch of " + size + " operations failed.");
+            }
+            return results;
+        }
+    }
+
+    @Override
+    public void createBatch(@NotNull List<? extends Iterable<Map<String, Object>>> entities) throws Throwable {
+        if (entities.isEmpty()) {
+            return;
+        }
+        var results = this.batch(RestHandler.PUT, entities, List.of(), null, true);
+        for (var i = 0; i < entities.size(); i++) {
+            this.merge(entities.get(i), results.get(i));
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<Iterable<Map<String, Object>>> retrieveBatch(@NotNull Iterable<String> keys, @NotNull List<Map<String, Object>> props) throws Throwable {
+        return props.isEmpty() ? List.of() : this.batch(RestHandler.GET, List.of(), props,
+            Seq.of(keys).collect(Collectors.toUnmodifiableSet()), false);
+    }
+
+    @Override
+    public void updateBatch(@NotNull List<? extends Iterable<Map<String, Object>>> entities, @NotNull List<Map<String, Object>> props) throws Throwable {
+        if (!entities.isEmpty()) {
+            this.batch(RestHandler.PATCH, entities, props, null, true);
+        }
+    }
+
+    @Override
+    public void deleteBatch(@NotNull List<Map<String, Object>> props) throws Throwable {
+        if (!props.isEmpty()) {
+            this.batch(RestHandler.DELETE, List.of(), props, null, true);
         }
     }
 
     @NotNull
     @Override
     public Iterable<Map<String, Object>> retrieve(@NotNull Iterable<String> keys, @NotNull Map<String, Object> props) throws Throwable {
-        var request = this.request();
-        var writer = new OutputStreamWriter(request.getOutputStream(), UTF_8);
-        writer.write("{\"props\": {");
-        var propIter = props.entrySet().iterator();
-        boolean first = true;
-        while (propIter.hasNext()) {
-            writer.flush();
-            var entry = propIter.next();
-            if (Seq.of(keys).anyMatch(key -> Objects.equals(key, entry.getKey()))) {
-                if(!first) {
-                    writer.write(propIter.hasNext() ? ", " : "");
-                } else {
-                    first = false;
-                }
-                writer.write("\"" + entry.getKey() + "\": \"" +
-                    (this.entityTypes.containsKey(entry.getKey()) ?
-                        marshall(this.entityMetadata, entry.getValue(),
-                            this.entityTypes.get(entry.getKey()), this.marshallerMap)
-                        : null) + "\"");
+        var body = this.retrieveBody(keys, props);
+        var key = new String(body, UTF_8);
+
+        var cached = this.responseCache == null ? null
+            : this.responseCache.get(this.entityMetadata.name(), key);
+        var response = this.send(RestHandler.GET, body, cached == null ? null
+            : cached.lastModified(), BodyHandlers.ofInputStream());
+
+        if (cached != null && response.statusCode() == RestHandler.NOT_MODIFIED) {
+            response.body().close();
+            var rows = cached.copy();
+            for (var map : rows) {
+                RestUtils.createRelationValues(this.entityMetadata, map);
             }
-        }
-        writer.write("}}");
-        writer.flush();
-        writer.close();
-
-        var res = new Gson().fromJson(new InputStreamReader(request.getInputStream(), UTF_8),
-            EntityRequestResponse.class).entities.stream().map(entity ->
-            this.entityMetadata.properties().stream().map(prop ->
-                new SimpleEntry<>(prop.fieldName(), unmarshall(this.entityMetadata,
-                    entity.props.containsKey(prop.fieldName()) ? entity.props
-                        .get(prop.fieldName())
-                        : (entity.props.getOrDefault(prop.propertyName(), null)),
-                    prop.type(), this.unmarshallerMap)))
-                .collect(HashMap::new, (m, v) -> m.put(v.getKey(), v.getValue()),
-                    HashMap::putAll))
-            .collect(Collectors.toUnmodifiableList());
-
-        this.lastModified = ZonedDateTime.parse(request.getHeaderField("Last-Modified"),
-            DateTimeFormatter.RFC_1123_DATE_TIME);
-
-        if (request.getResponseCode() != RestHandler.OK) {
+            return Collections.unmodifiableList(rows);
+        } else if (response.statusCode() != RestHandler.OK) {
+            response.body().close();
             throw new IllegalStateException("Server responded with error code <" +
-                request.getResponseCode() + ">.");
-        } else {
-            this.lastModified = ZonedDateTime.parse(request
-                .getHeaderField("Last-Modified"), DateTimeFormatter.RFC_1123_DATE_TIME);
+                response.statusCode() + ">.");
         }
+        var header = response.headers().firstValue("Last-Modified").orElse(null);
+        var binary = response.headers().firstValue("Content-Type")
+            .filter(type -> type.startsWith(BinaryEncoder.CONTENT_TYPE)).isPresent();
+        return RestCodec.rows(this.entityMetadata, this.body(response), binary, this.unmarshallerMap,
+            this.responseCache != null && header != null ?
+                rows -> this.responseCache.put(this.entityMetadata.name(), key, header, rows)
+                : null);
+    }
 
-        for(var map : res) {
-            RestUtils.createRelationValues(this.entityMetadata, (Map<String, Object>) (Object) map);
-        }
+    @NotNull
+    private byte[] retrieveBody(@NotNull Iterable<String> keys, @NotNull Map<String, Object> props) throws IOException {
+        var buffer = new ByteArrayOutputStream();
+        var encoder = new JsonEncoder(buffer, UTF_8);
+        encoder.raw("{\"props\": ");
+        this.encode(encoder, props, Seq.of(keys).collect(Collectors.toUnmodifiableSet()));
+        encoder.raw("}").flush();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Retrieves the entities matching the given properties lazily page by page, so that only one
+     * page is held in memory at a time. The next page is requested once the previous page has been
+     * iterated, following the continuation token of the server.
+     *
+     * @param props
+     *
+     * @return
+     *
+     * @see Pagination
+     * @since 0.6.9
+     */
+    @NotNull
+    Iterable<Map<String, Object>> pages(@NotNull Map<String, Object> props) {
+        return () -> new Iterator<>() {
+
+            private Iterator<Map<String, Object>> page = Collections.emptyIterator();
+            private String after;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                while (!this.page.hasNext() && !this.last) {
+                    this.fetch();
+                }
+                return this.page.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.page.next();
+            }
+
+            private void fetch() {
+                try {
+                    var uri = URI.create(RestDaoImpl.this.uri + "?" + Pagination.LIMIT + "=" +
+                        RestDaoImpl.this.pageSize + (this.after == null ? "" : "&" +
+                        Pagination.AFTER + "=" + this.after));
+                    var response = RestDaoImpl.this.send(uri, RestHandler.GET, RestDaoImpl.this
+                        .retrieveBody(props.keySet(), props), null, BodyHandlers.ofInputStream());
+                    if (response.statusCode() != RestHandler.OK) {
+                        response.body().close();
+                        throw new IllegalStateException("Server responded with error code <" +
+                            response.statusCode() + ">.");
+                    }
+                    this.after = Pagination.next(response.headers().firstValue("Link")
+                        .orElse(null));
+                    this.last = this.after == null;
+                    this.page = RestCodec.rows(RestDaoImpl.this.entityMetadata,
+                        RestDaoImpl.this.body(response), response.headers()
+                            .firstValue("Content-Type")
+                            .filter(type -> type.startsWith(BinaryEncoder.CONTENT_TYPE))
+                            .isPresent(), RestDaoImpl.this.unmarshallerMap, null).iterator();
+                } catch (IOException exception) {
+                    this.last = true;
+                    throw new UncheckedIOException(exception);
+                } catch (InterruptedException exception) {
+                    this.last = true;
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(exception);
+                }
+            }
 
-        return (Collection<Map<String, Object>>) (Object) res;
+        };
     }
 
     @Override
     public void update(@NotNull Iterable<Map<String, Object>> entity, @NotNull Map<String, Object> props) throws Throwable {
-        var request = this.requestWithBody(RestHandler.PATCH);
-        var writer = request.writer;
+        var buffer = new ByteArrayOutputStream();
+        var encoder = new JsonEncoder(buffer, UTF_8);
         var entityIter = entity.iterator();
-        writer.write("{\"entity\": [");
+        encoder.raw("{\"entity\": [");
         while (entityIter.hasNext()) {
-            writer.flush();
-            var next = entityIter.next();
-            writer.write("{");
-            var entries = next.entrySet().iterator();
-            while (entries.hasNext()) {
-                writer.flush();
-                var entry = entries.next();
-                var res = (this.entityTypes.containsKey(entry.getKey()) ? marshall(this.entityMetadata,
-                    entry.getValue(), this.entityTypes.get(entry.getKey()), this.marshallerMap)
-                    : null);
-                writer.write("\"" + entry.getKey() + "\": \"" + res + "\"" +
-                    (entries.hasNext() ? " ," : ""));
+            this.encode(encoder, entityIter.next(), null);
+            if (entityIter.hasNext()) {
+                encoder.raw(", ");
             }
-            writer.write("}" + (entityIter.hasNext() ? ", " : ""));
-        }
-        writer.write("], \"props\": {");
-        var propIter = props.entrySet().iterator();
-        while (propIter.hasNext()) {
-            writer.flush();
-            var entry = propIter.next();
-            writer.write("\"" + entry.getKey() + "\": \"" +
-                (this.entityTypes.containsKey(entry.getKey()) ? marshall(this.entityMetadata,
-                    entry.getValue(), this.entityTypes.get(entry.getKey()), this.marshallerMap)
-                    : null) + "\"" + (propIter.hasNext() ? ", " : ""));
-        }
-        writer.write("}}");
-        writer.flush();
-        writer.close();
-        if (request.connection.getResponseCode() != RestHandler.OK) {
-            throw new IllegalStateException("Server responded with error code <" +
-                request.connection.getResponseCode() + ">.");
-        } else {
-            this.lastModified = ZonedDateTime.parse(request.connection
-                .getHeaderField("Last-Modified"), DateTimeFormatter.RFC_1123_DATE_TIME);
         }
+        encoder.raw("], \"props\": ");
+        this.encode(encoder, props, null);
+        encoder.raw("}").flush();
+        this.check(this.send(RestHandler.PATCH, buffer.toByteArray(), null,
+            BodyHandlers.discarding()), RestHandler.OK);
     }
 
     @Override
     public void delete(@NotNull Map<String, Object> props) throws Throwable {
-        var request = this.requestWithBody(RestHandler.DELETE);
-        var writer = request.writer;
-        writer.write("{\"props\": {");
-        var propIter = props.entrySet().iterator();
-        while (propIter.hasNext()) {
-            writer.flush();
-            var entry = propIter.next();
-            writer.write("\"" + entry.getKey() + "\": \"" +
-                (this.entityTypes.containsKey(entry.getKey()) ? marshall(this.entityMetadata,
-                    entry.getValue(), this.entityTypes.get(entry.getKey()), this.marshallerMap)
-                    : null) + "\"" + (propIter.hasNext() ? ", " : ""));
-        }
-        writer.write("}}");
-        writer.flush();
-        writer.close();
-        if (request.connection.getResponseCode() != RestHandler.OK) {
-            throw new IllegalStateException("Server responded with error code <" +
-                request.connection.getResponseCode() + ">.");
-        } else {
-            this.lastModified = ZonedDateTime.parse(request.connection
-                .getHeaderField("Last-Modified"), DateTimeFormatter.RFC_1123_DATE_TIME);
-        }
+        var buffer = new ByteArrayOutputStream();
+        var encoder = new JsonEncoder(buffer, UTF_8);
+        encoder.raw("{\"props\": ");
+        this.encode(encoder, props, null);
+        encoder.raw("}").flush();
+        this.check(this.send(RestHandler.DELETE, buffer.toByteArray(), null,
+            BodyHandlers.discarding()), RestHandler.OK);
     }
 
-    private record RequestUnidirectional(Writer writer, HttpURLConnection connection) {}
-
     public static class EntityRequestResponse {
 
         public Map<String, String> types;
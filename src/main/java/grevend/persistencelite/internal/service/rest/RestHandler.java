@@ -40,11 +40,13 @@ public interface RestHandler {
 
     int OK = 200;
     int CREATED = 201;
+    int NOT_MODIFIED = 304;
     int BAD_REQUEST = 400;
     int UNAUTHORIZED = 401;
     int FORBIDDEN = 403;
     int NOT_FOUND = 404;
     int METHOD_NOT_ALLOWED = 405;
+    int FAILED_DEPENDENCY = 424;
     int INTERNAL_SERVER_ERROR = 500;
     int NOT_IMPLEMENTED = 501;
 
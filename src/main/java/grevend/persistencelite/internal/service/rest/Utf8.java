@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The UTF-8 encoding shared by the {@link JsonEncoder} and the {@link BinaryEncoder}, which both
+ * write code point by code point into their own buffers.
+ *
+ * @author David Greven
+ * @since 0.6.9
+ */
+final class Utf8 {
+
+    /**
+     * The number of bytes a single code point takes at most.
+     */
+    static final int MAX_BYTES = 4;
+
+    @Contract(pure = true)
+    private Utf8() {
+    }
+
+    /**
+     * @param codePoint
+     *
+     * @return If the code point can be encoded, which is not the case for lone surrogates.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    static boolean encodable(int codePoint) {
+        return codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT || !Character
+            .isSurrogate((char) codePoint);
+    }
+
+    /**
+     * @param value
+     *
+     * @return The number of bytes of the value in UTF-8, with lone surrogates counted as one
+     * replacement byte.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    static int length(@NotNull String value) {
+        var length = 0;
+        for (var i = 0; i < value.length(); ) {
+            var codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+            length += encodable(codePoint) ? length(codePoint) : 1;
+        }
+        return length;
+    }
+
+    /**
+     * Writes an {@link #encodable(int) encodable} code point into the buffer, which has to have
+     * room for at least {@link #MAX_BYTES} bytes from the position onward.
+     *
+     * @param codePoint
+     * @param buffer
+     * @param position
+     *
+     * @return The position after the written bytes.
+     *
+     * @since 0.6.9
+     */
+    static int put(int codePoint, byte @NotNull [] buffer, int position) {
+        if (codePoint < 0x80) {
+            buffer[position++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return position;
+    }
+
+    @Contract(pure = true)
+    private static int length(int codePoint) {
+        return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2
+            : codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT ? 3 : 4;
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.sql;
+
+import grevend.sequence.function.ThrowingSupplier;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+/**
+ * Keeps released connections open, so that short lived transactions do not have to open a new
+ * connection for every operation, and optionally limits the number of open connections.
+ * Connections are only opened on demand, once the limit of a bounded pool is reached {@link
+ * #acquire()} waits for a connection to be released. An {@link #unbounded(ThrowingSupplier, int)
+ * unbounded} pool never waits and only limits the number of idle connections it keeps.
+ * Connections that have been idle for a while are validated before they are handed out again.
+ *
+ * @author David Greven
+ * @see SqlTransaction
+ * @since 0.6.9
+ */
+public final class ConnectionPool implements AutoCloseable {
+
+    /**
+     * The default time {@link #acquire()} waits for a connection once all are in use.
+     *
+     * @since 0.6.9
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Connections released more recently are handed out without validation.
+     */
+    private static final long VALIDATION_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final ThrowingSupplier<Connection> connectionSupplier;
+    private final BlockingQueue<Idle> idle;
+    private final Set<Connection> leased;
+    private final Semaphore permits;
+    private final long timeoutNanos;
+    private volatile boolean closed;
+
+    /**
+     * @param connectionSupplier Opens a new connection whenever no idle connection is available.
+     * @param capacity           The maximum number of open connections.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public ConnectionPool(@NotNull ThrowingSupplier<Connection> connectionSupplier, @Range(from = 1, to = Integer.MAX_VALUE) int capacity) {
+        this(connectionSupplier, capacity, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param connectionSupplier Opens a new connection whenever no idle connection is available.
+     * @param capacity           The maximum number of open connections.
+     * @param timeout            The time {@link #acquire()} waits for a connection once all are
+     *                           in use.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public ConnectionPool(@NotNull ThrowingSupplier<Connection> connectionSupplier, @Range(from = 1, to = Integer.MAX_VALUE) int capacity, @NotNull Duration timeout) {
+        this(connectionSupplier, capacity, new Semaphore(capacity, true), timeout);
+    }
+
+    @Contract(pure = true)
+    private ConnectionPool(@NotNull ThrowingSupplier<Connection> connectionSupplier, int idle, @Nullable Semaphore permits, @NotNull Duration timeout) {
+        this.connectionSupplier = connectionSupplier;
+        this.idle = new ArrayBlockingQueue<>(idle);
+        this.leased = ConcurrentHashMap.newKeySet();
+        this.permits = permits;
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * @param connectionSupplier Opens a new connection whenever no idle connection is available.
+     * @param idle               The maximum number of idle connections kept open, further
+     *                           released connections are closed.
+     *
+     * @return A pool that opens as many connections as are requested at the same time.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(value = "_, _ -> new", pure = true)
+    public static ConnectionPool unbounded(@NotNull ThrowingSupplier<Connection> connectionSupplier, @Range(from = 1, to = Integer.MAX_VALUE) int idle) {
+        return new ConnectionPool(connectionSupplier, idle, null, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @return An idle connection or a newly opened one if none is available.
+     *
+     * @throws SQLTransientConnectionException if no connection has been released in time.
+     * @throws SQLException
+     * @since 0.6.9
+     */
+    @NotNull
+    public Connection acquire() throws SQLException {
+        if (this.closed) {
+            throw new IllegalStateException("Connection pool has been closed.");
+        }
+        try {
+            if (this.permits != null && !this.permits
+                .tryAcquire(this.timeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException("No connection available within " +
+                    TimeUnit.NANOSECONDS.toMillis(this.timeoutNanos) + " ms.");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection.",
+                exception);
+        }
+        try {
+            var connection = this.idleConnection();
+            if (connection == null) {
+                connection = Objects.requireNonNull(this.connectionSupplier.get());
+            }
+            this.leased.add(connection);
+            return connection;
+        } catch (SQLException | RuntimeException exception) {
+            this.releasePermit();
+            throw exception;
+        } catch (Throwable throwable) {
+            this.releasePermit();
+            throw new SQLException(throwable);
+        }
+    }
+
+    /**
+     * @return An idle connection that is still usable or null if none is available, broken
+     * connections are closed on the way.
+     */
+    private Connection idleConnection() {
+        Idle idle;
+        while ((idle = this.idle.poll()) != null) {
+            var connection = idle.connection();
+            try {
+                if (!connection.isClosed() && (System.nanoTime() - idle.since() <
+                    VALIDATION_INTERVAL || connection.isValid(VALIDATION_TIMEOUT_SECONDS))) {
+                    return connection;
+                }
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the connection to the pool. A pending transaction is rolled back and auto-commit is
+     * enabled again, the connection is closed if it is broken or the pool is closed. Connections
+     * that have not been acquired from this pool or have already been released are ignored.
+     *
+     * @param connection
+     *
+     * @throws SQLException
+     * @since 0.6.9
+     */
+    public void release(@NotNull Connection connection) throws SQLException {
+        if (!this.leased.remove(connection)) {
+            return;
+        }
+        try {
+            if (connection.isClosed()) {
+                return;
+            }
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException exception) {
+                connection.close();
+                throw exception;
+            }
+            var idle = new Idle(connection, System.nanoTime());
+            if (this.closed || !this.idle.offer(idle)) {
+                connection.close();
+            } else if (this.closed && this.idle.remove(idle)) {
+                connection.close();
+            }
+        } finally {
+            this.releasePermit();
+        }
+    }
+
+    private void releasePermit() {
+        if (this.permits != null) {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * @return The number of idle connections.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public int idle() {
+        return this.idle.size();
+    }
+
+    /**
+     * Closes all idle connections, connections in use are closed once they are released.
+     *
+     * @throws SQLException
+     * @since 0.6.9
+     */
+    @Override
+    public void close() throws SQLException {
+        this.closed = true;
+        SQLException failure = null;
+        Idle idle;
+        while ((idle = this.idle.poll()) != null) {
+            try {
+                idle.connection().close();
+            } catch (SQLException exception) {
+                failure = exception;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @param connection
+     * @param since      The {@link System#nanoTime()} at which the connection was released.
+     *
+     * @author David Greven
+     * @since 0.6.9
+     */
+    private record Idle(@NotNull Connection connection, long since) {}
+
+}
@@ -33,8 +33,12 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -49,6 +53,14 @@ import org.jetbrains.annotations.Nullable;
  */
 final class PreparedStatementFactory {
 
+    /**
+     * The name of the column identifying the entity of a row selected by a union statement.
+     *
+     * @see #prepareUnionWithAttributes(List, Collection)
+     * @since 0.6.9
+     */
+    static final String DISCRIMINATOR = "$type";
+
     @Nullable
     PreparedStatement prepare(@NotNull Crud crud, @NotNull EntityMetadata<?> entityMetadata, @NotNull SqlTransaction transaction, boolean cached, int limit) {
         var cache = StatementCache.instance().cache();
@@ -131,10 +143,36 @@ final class PreparedStatementFactory {
 
     @NotNull
     private String update(@NotNull EntityMetadata<?> entityMetadata) {
-        return "update " + this.escape(entityMetadata) + " set " + entityMetadata.uniqueProperties()
-            .stream().map(this::escape).map(prop -> prop + " = ?").collect(Collectors.joining(", "))
-            + " where " + entityMetadata.declaredIdentifiers().stream().map(this::escape)
+        var version = this.version(entityMetadata);
+        var statement = "update " + this.escape(entityMetadata) + " set " + entityMetadata
+            .uniqueProperties().stream().filter(prop -> !prop.version()).map(this::escape)
+            .map(prop -> prop + " = ?").collect(Collectors.joining(", "));
+        if (version != null) {
+            var column = this.escape(version);
+            statement += ", " + column + " = " + column + " + 1";
+        }
+        statement += " where " + entityMetadata.declaredIdentifiers().stream().map(this::escape)
             .map(prop -> prop + " = ?").collect(Collectors.joining(" and "));
+        if (version != null) {
+            var column = this.escape(version);
+            statement += " and " + column + " = ?";
+        }
+        return statement;
+    }
+
+    /**
+     * @param entityMetadata
+     *
+     * @return The version property that is persisted in the table of the given entity or null if
+     * the table is not versioned.
+     *
+     * @see grevend.persistencelite.entity.Version
+     * @since 0.6.9
+     */
+    @Nullable
+    EntityProperty version(@NotNull EntityMetadata<?> entityMetadata) {
+        return entityMetadata.uniqueProperties().stream().filter(EntityProperty::version)
+            .findFirst().orElse(null);
     }
 
     @NotNull
@@ -156,11 +194,145 @@ final class PreparedStatementFactory {
      */
     @NotNull
     String prepareSelectWithAttributes(@NotNull EntityMetadata<?> entityMetadata, @NotNull Collection<String> attributes) {
-        return this.prepareSelectAll(entityMetadata) + " where " + entityMetadata.properties()
-            .stream().filter(prop -> attributes.contains(prop.propertyName()) || attributes
+        return this.prepareSelectAll(entityMetadata) + this.prepareWhere(entityMetadata, attributes);
+    }
+
+    /**
+     * @param entityMetadata
+     * @param attributes
+     *
+     * @return A statement counting the rows selected by {@link #prepareSelectWithAttributes(EntityMetadata,
+     * Collection)}.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    String prepareCountWithAttributes(@NotNull EntityMetadata<?> entityMetadata, @NotNull Collection<String> attributes) {
+        return "select count(*) from (" + this
+            .prepareSelectWithAttributes(entityMetadata, attributes) + ") as " + this
+            .escape("relation");
+    }
+
+    /**
+     * @param entityMetadata
+     * @param attributes
+     * @param identified     True if the row is further restricted to the declared identifiers of
+     *                       the entity, which are bound after the attributes.
+     *
+     * @return A statement checking whether {@link #prepareSelectWithAttributes(EntityMetadata,
+     * Collection)} selects any row.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    String prepareExistsWithAttributes(@NotNull EntityMetadata<?> entityMetadata, @NotNull Collection<String> attributes, boolean identified) {
+        return "select exists(" + this.prepareSelectWithAttributes(entityMetadata, attributes)
+            + (identified ? " and " + this.identifiers(entityMetadata).stream()
+            .map(identifier -> identifier + " = ?").collect(Collectors.joining(" and ")) : "")
+            + ")";
+    }
+
+    /**
+     * @param entityMetadata
+     * @param attributes
+     * @param after          True if the page starts after a key, whose identifier values are
+     *                       bound after the attributes.
+     * @param limit          The maximum number of rows of the page.
+     *
+     * @return A statement selecting the rows of {@link #prepareSelectWithAttributes(EntityMetadata,
+     * Collection)} ordered by the declared identifiers of the entity, starting after the given key.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    String preparePageWithAttributes(@NotNull EntityMetadata<?> entityMetadata, @NotNull Collection<String> attributes, boolean after, int limit) {
+        var identifiers = String.join(", ", this.identifiers(entityMetadata));
+        var where = this.prepareWhere(entityMetadata, attributes);
+        return this.prepareSelectAll(entityMetadata) + where + (after ? (where.isEmpty() ?
+            " where (" : " and (") + identifiers + ") > (" + entityMetadata.declaredIdentifiers().stream()
+            .map(identifier -> "?").collect(Collectors.joining(", ")) + ")" : "") + " order by "
+            + identifiers + " limit " + limit;
+    }
+
+    @NotNull
+    private List<String> identifiers(@NotNull EntityMetadata<?> entityMetadata) {
+        return entityMetadata.declaredIdentifiers().stream()
+            .map(identifier -> this.escape(entityMetadata) + "." + this.escape(identifier))
+            .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Combines the selects of the given entities into one {@code union all} statement. Every
+     * select yields the same columns, columns that do not exist for an entity are filled with
+     * {@code null}, and the {@link #DISCRIMINATOR} column holds the index of the entity the row
+     * belongs to. The attributes of each select are bound in the order of the given entities.
+     *
+     * @param entityMetadata
+     * @param attributes
+     *
+     * @return The union statement or null if the entities declare equally named properties of
+     * different types.
+     *
+     * @see #columns(EntityMetadata)
+     * @since 0.6.9
+     */
+    @Nullable
+    String prepareUnionWithAttributes(@NotNull List<EntityMetadata<?>> entityMetadata, @NotNull Collection<String> attributes) {
+        Map<String, Class<?>> types = new LinkedHashMap<>();
+        for (var metadata : entityMetadata) {
+            for (var property : this.properties(metadata)) {
+                var type = types.putIfAbsent(property.propertyName(), property.type());
+                if (type != null && type != property.type()) { return null; }
+            }
+        }
+
+        var selects = new ArrayList<String>();
+        for (var i = 0; i < entityMetadata.size(); i++) {
+            var metadata = entityMetadata.get(i);
+            var columns = this.columns(metadata);
+            selects.add("select distinct " + i + " as " + this.escape(DISCRIMINATOR) + ", " +
+                types.keySet().stream().map(column -> columns.getOrDefault(column, "null") +
+                    " as " + this.escape(column)).collect(Collectors.joining(", ")) +
+                this.prepareFrom(metadata) + this.prepareWhere(metadata, attributes));
+        }
+        return String.join(" union all ", selects);
+    }
+
+    /**
+     * @param entityMetadata
+     *
+     * @return The qualified columns selected for the given entity keyed by their property names.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    Map<String, String> columns(@NotNull EntityMetadata<?> entityMetadata) {
+        Map<String, String> columns = new LinkedHashMap<>();
+        var types = new ArrayList<>(entityMetadata.types());
+        Collections.reverse(types);
+        for (var type : types) {
+            for (var property : type.uniqueProperties()) {
+                columns.putIfAbsent(property.propertyName(),
+                    this.escape(type) + "." + this.escape(property));
+            }
+        }
+        return columns;
+    }
+
+    @NotNull
+    private Collection<EntityProperty> properties(@NotNull EntityMetadata<?> entityMetadata) {
+        return entityMetadata.types().stream().flatMap(type -> type.uniqueProperties().stream())
+            .collect(Collectors.toList());
+    }
+
+    @NotNull
+    private String prepareWhere(@NotNull EntityMetadata<?> entityMetadata, @NotNull Collection<String> attributes) {
+        var conditions = entityMetadata.properties().stream().filter(
+            prop -> attributes.contains(prop.propertyName()) || attributes
                 .contains(prop.fieldName())).map(prop ->
-                (prop.identifier() != null || prop.copy() ? (this.escape(entityMetadata) + ".")
-                    : "") + this.escape(prop) + " = ?").collect(Collectors.joining(" and "));
+            (prop.identifier() != null || prop.copy() ? (this.escape(entityMetadata) + ".") : "")
+                + this.escape(prop) + " = ?").collect(Collectors.joining(" and "));
+        return conditions.isEmpty() ? "" : " where " + conditions;
     }
 
     /**
@@ -173,8 +345,21 @@ final class PreparedStatementFactory {
      */
     @NotNull
     private String prepareSelectAll(@NotNull EntityMetadata<?> entityMetadata) {
+        return "select distinct *" + this.prepareFrom(entityMetadata);
+    }
+
+    /**
+     * @param entityMetadata
+     *
+     * @return The from clause joining the table of the given entity with the tables of all its
+     * super types.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    private String prepareFrom(@NotNull EntityMetadata<?> entityMetadata) {
         var builder = new StringBuilder();
-        builder.append("select distinct * from ").append(this.escape(entityMetadata));
+        builder.append(" from ").append(this.escape(entityMetadata));
         entityMetadata.declaredSuperTypes()
             .forEach(superType -> this.prepareSelectAll(builder, entityMetadata, superType));
         return builder.toString();
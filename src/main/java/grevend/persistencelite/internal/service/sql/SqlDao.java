@@ -28,7 +28,9 @@ import static grevend.persistencelite.internal.service.sql.SqlUtils.convert;
 
 import grevend.persistencelite.crud.Crud;
 import grevend.persistencelite.dao.TransactionFactory;
+import grevend.persistencelite.dao.VersionConflictException;
 import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.cache.IdentityMap;
 import grevend.persistencelite.internal.dao.DaoImpl;
 import grevend.persistencelite.internal.entity.EntityProperty;
 import grevend.persistencelite.internal.util.Utils;
@@ -37,15 +39,20 @@ import grevend.sequence.Seq;
 import grevend.sequence.function.ThrowableEscapeHatch;
 import java.sql.SQLException;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import org.jetbrains.annotations.ApiStatus.AvailableSince;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
 /**
@@ -54,12 +61,35 @@ import org.jetbrains.annotations.UnmodifiableView;
  * @author David Greven
  * @since 0.3.3
  */
-public final record SqlDao<E>(@NotNull EntityMetadata<E>entityMetadata, @NotNull SqlTransaction transaction, @NotNull TransactionFactory transactionFactory, @NotNull PreparedStatementFactory preparedStatementFactory, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>>marshallerMap) implements DaoImpl<SQLException> {
+public final record SqlDao<E>(@NotNull EntityMetadata<E>entityMetadata, @NotNull SqlTransaction transaction, @NotNull TransactionFactory transactionFactory, @NotNull PreparedStatementFactory preparedStatementFactory, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>>marshallerMap, @AvailableSince(value = "0.6.9") @Nullable Executor prefetch) implements DaoImpl<SQLException> {
+
+    /**
+     * The statement factory shared by all daos, the generated statements are cached per entity by
+     * the factory itself.
+     */
+    private static final PreparedStatementFactory PREPARED_STATEMENT_FACTORY =
+        new PreparedStatementFactory();
 
     @Contract(pure = true)
     public SqlDao(@NotNull EntityMetadata<E> entityMetadata, @NotNull SqlTransaction transaction, @NotNull TransactionFactory transactionFactory, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap) {
-        this(entityMetadata, transaction, transactionFactory, new PreparedStatementFactory(),
-            marshallerMap);
+        this(entityMetadata, transaction, transactionFactory, marshallerMap, null);
+    }
+
+    /**
+     * @param entityMetadata
+     * @param transaction
+     * @param transactionFactory
+     * @param marshallerMap
+     * @param prefetch           The executor on which the relations of retrieved entities start
+     *                           to be retrieved right away or null if they are retrieved on first
+     *                           access.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public SqlDao(@NotNull EntityMetadata<E> entityMetadata, @NotNull SqlTransaction transaction, @NotNull TransactionFactory transactionFactory, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap, @Nullable Executor prefetch) {
+        this(entityMetadata, transaction, transactionFactory, PREPARED_STATEMENT_FACTORY,
+            marshallerMap, prefetch);
     }
 
     private void mutate(@NotNull Iterable<Map<String, Object>> all, @NotNull Map<String, Object> changes) {
@@ -75,7 +105,10 @@ public final record SqlDao<E>(@NotNull EntityMetadata<E>entityMetadata, @NotNull
     @Override
     public void create(@NotNull Iterable<Map<String, Object>> entity) throws SQLException {
         final var escapeHatch = new ThrowableEscapeHatch<>(SQLException.class);
-        this.transaction.autoCommit(false);
+        var started = this.transaction.started();
+        if (!started) {
+            this.transaction.autoCommit(false);
+        }
         Utils.zip(this.entityMetadata.types().iterator(), entity.iterator())
             .filter(Objects::nonNull).forEach(ThrowableEscapeHatch.escapeSuper(
             pair -> {
@@ -101,11 +134,14 @@ public final record SqlDao<E>(@NotNull EntityMetadata<E>entityMetadata, @NotNull
                             HashMap::putAll));
                 }
             }, escapeHatch));
-        this.transaction.commit();
-        if (escapeHatch.failure()) {
-            this.transaction.rollback();
+        if (!started) {
+            if (escapeHatch.failure()) {
+                this.transaction.rollback();
+            } else {
+                this.transaction.commit();
+            }
+            this.transaction.autoCommit(true);
         }
-        this.transaction.autoCommit(true);
         escapeHatch.rethrow();
     }
 
@@ -123,16 +159,62 @@ public final record SqlDao<E>(@NotNull EntityMetadata<E>entityMetadata, @NotNull
                     .prepareSelectWithAttributes(this.entityMetadata, Seq.of(keys).toList()))),
             props);
         var res = convert(preparedStatement.executeQuery());
-        for (var map : res) {
+        this.createRelationValues(res);
+        return Collections.unmodifiableCollection(res);
+    }
+
+    /**
+     * Selects the page with a keyset condition on the declared identifiers, so that every page
+     * costs the same regardless of its position.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    @Override
+    public List<Map<String, Object>> page(@NotNull Iterable<String> keys, @NotNull Map<String, Object> props, @Nullable List<Object> after, int limit) throws SQLException {
+        if (this.entityMetadata.declaredIdentifiers().isEmpty()) {
+            return null;
+        }
+        var selected = Seq.of(keys).collect(Collectors.toUnmodifiableSet());
+        var attributes = this.entityMetadata.properties().stream()
+            .map(prop -> selected.contains(prop.propertyName()) ? prop.propertyName()
+                : selected.contains(prop.fieldName()) ? prop.fieldName() : null)
+            .filter(Objects::nonNull).distinct().collect(Collectors.toUnmodifiableList());
+        try (var statement = this.transaction.connection().prepareStatement(this
+            .preparedStatementFactory.preparePageWithAttributes(this.entityMetadata, attributes,
+                after != null, limit))) {
+            this.preparedStatementFactory.values(attributes, statement, props);
+            if (after != null) {
+                var index = attributes.size() + 1;
+                for (var value : after) {
+                    statement.setObject(index++, value);
+                }
+            }
+            var res = convert(statement.executeQuery());
+            this.createRelationValues(res);
+            return List.copyOf(res);
+        }
+    }
+
+    private void createRelationValues(@NotNull Collection<Map<String, Object>> rows) {
+        for (var map : rows) {
             SqlUtils.createRelationValues(this.entityMetadata, map, () -> {
                 try {
-                    return this.transactionFactory.createTransaction();
+                    var transaction = this.transactionFactory.createTransaction();
+                    if (!(transaction instanceof SqlTransaction sqlTransaction)) {
+                        return transaction;
+                    }
+                    // Lookups within a started transaction share its identity map but must not
+                    // clear it once they are done.
+                    var started = this.transaction.started();
+                    return new SqlTransaction(sqlTransaction.connection(), started ? this
+                        .transaction.identityMap() : new IdentityMap(),
+                        sqlTransaction.connectionPool(), !started);
                 } catch (Throwable throwable) {
                     return null;
                 }
-            }, this.marshallerMap);
+            }, this.marshallerMap, this.prefetch);
         }
-        return Collections.unmodifiableCollection(res);
     }
 
     @Override
@@ -154,31 +236,57 @@ public final record SqlDao<E>(@NotNull EntityMetadata<E>entityMetadata, @NotNull
                 .entrySet().stream(), props.entrySet().stream())
             .collect(HashMap::new, (m, v) -> m.put((String) v.getKey(), v.getValue()), HashMap::putAll);
 
-        this.transaction.autoCommit(false);
+        var started = this.transaction.started();
+        if (!started) {
+            this.transaction.autoCommit(false);
+        }
         try {
             for (var component : entity) {
-                if (component.keySet().stream().anyMatch(props::containsKey) && superTypes
-                    .hasNext()) {
-                    var superType = superTypes.next();
-                    this.preparedStatementFactory.values(Stream
-                        .concat(superType.uniqueProperties().stream(),
-                            superType.declaredIdentifiers().stream())
-                        .map(EntityProperty::propertyName)
-                        .collect(Collectors.toUnmodifiableList()), Objects.requireNonNull(
-                        this.preparedStatementFactory.prepare(Crud.UPDATE, superType,
-                            this.transaction, true, -1)), mergedProps)
-                        .executeUpdate();
-                } else {
-                    if (superTypes.hasNext()) {
-                        superTypes.next();
-                    }
+                if (!superTypes.hasNext()) { break; }
+                var superType = superTypes.next();
+                var version = this.preparedStatementFactory.version(superType);
+                if (version == null && component.keySet().stream().noneMatch(props::containsKey)) {
+                    continue;
+                }
+
+                Map<String, Object> values = new HashMap<>(mergedProps);
+                if (version != null) {
+                    values.put(version.propertyName(), component.get(version.propertyName()));
+                }
+
+                var statement = this.preparedStatementFactory.values(Stream
+                    .concat(Stream.concat(superType.uniqueProperties().stream()
+                            .filter(prop -> !prop.version()),
+                        superType.declaredIdentifiers().stream()), Stream.ofNullable(version))
+                    .map(EntityProperty::propertyName)
+                    .collect(Collectors.toUnmodifiableList()), Objects.requireNonNull(
+                    this.preparedStatementFactory.prepare(Crud.UPDATE, superType,
+                        this.transaction, true, -1)), values);
+
+                if (statement.executeUpdate() == 0 && version != null) {
+                    throw new VersionConflictException(superType.entityClass(),
+                        superType.declaredIdentifiers().stream().collect(HashMap::new,
+                            (m, v) -> m.put(v.propertyName(), values.get(v.propertyName())),
+                            HashMap::putAll), values.get(version.propertyName()));
                 }
             }
-        } catch (SQLException sqlException) {
-            this.transaction.rollback();
-            throw sqlException;
+        } catch (SQLException | VersionConflictException exception) {
+            if (!started) {
+                this.transaction.rollback();
+                this.transaction.autoCommit(true);
+            }
+            throw exception;
         }
-        this.transaction.autoCommit(true);
+        if (!started) {
+            this.transaction.autoCommit(true);
+        }
+    }
+
+    @NotNull
+    @Override
+    @Contract(pure = true)
+    public IdentityMap identityMap() {
+        return this.transaction.identityMap();
     }
 
     @Override
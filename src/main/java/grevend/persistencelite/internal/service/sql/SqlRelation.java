@@ -30,17 +30,29 @@ import grevend.persistencelite.entity.EntityMetadata;
 import grevend.persistencelite.internal.entity.EntityRelation;
 import grevend.persistencelite.util.TypeMarshaller;
 import grevend.sequence.Seq;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
+ * The related entities of a one-to-many or many-to-many relation. Until the entities are
+ * retrieved, {@link #size()}, {@link #isEmpty()} and {@link #contains(Object)} are answered by
+ * count and exists queries and {@link #iterator()} streams the entities in pages ordered by their
+ * identifiers, so that large relations are never loaded as a whole just to be inspected.
+ *
  * @param <E>
  *
  * @author David Greven
@@ -49,13 +61,20 @@ import org.jetbrains.annotations.Nullable;
  */
 public final class SqlRelation<E> implements LazyCollection<E> {
 
+    /**
+     * The number of entities retrieved per page while iterating.
+     *
+     * @since 0.6.9
+     */
+    static final int PAGE_SIZE = 500;
 
     private final Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap;
     private final EntityMetadata<?> entityMetadata;
     private final EntityRelation entityRelation;
     private final Map<String, Object> values;
     private final Supplier<Transaction> transactionSupplier;
-    private final List<E> elements;
+    private volatile List<E> elements;
+    private volatile CompletableFuture<List<E>> pending;
 
     @Contract(pure = true)
     SqlRelation(@NotNull EntityMetadata<?> entityMetadata, @NotNull EntityRelation entityRelation, @NotNull Map<String, Object> values, @NotNull Supplier<Transaction> transactionSupplier, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap) {
@@ -63,17 +82,68 @@ public final class SqlRelation<E> implements LazyCollection<E> {
         this.entityRelation = entityRelation;
         this.values = values;
         this.transactionSupplier = transactionSupplier;
-        this.elements = new ArrayList<>();
+        this.elements = null;
         this.marshallerMap = marshallerMap;
     }
 
-    @Contract(pure = true)
+    /**
+     * Retrieves the related entities once, an empty result is remembered like any other result.
+     *
+     * @return
+     *
+     * @since 0.2.0
+     */
+    @NotNull
     private List<E> retrieve() {
-        if (this.elements.isEmpty()) {
-            this.elements.addAll(SqlUtils.retrieve(this.entityMetadata, this.entityRelation,
-                this.values, this.transactionSupplier, this.marshallerMap));
+        var elements = this.elements;
+        if (elements != null) {
+            return elements;
+        }
+        synchronized (this) {
+            if (this.elements == null) {
+                var pending = this.pending;
+                List<E> retrieved = null;
+                if (pending != null) {
+                    try {
+                        retrieved = pending.join();
+                    } catch (CompletionException | CancellationException ignored) {
+                    }
+                    this.pending = null;
+                }
+                if (retrieved == null) {
+                    retrieved = this.query();
+                }
+                this.elements = Collections.unmodifiableList(retrieved);
+            }
+            return this.elements;
+        }
+    }
+
+    @NotNull
+    private List<E> query() {
+        return SqlUtils.retrieve(this.entityMetadata, this.entityRelation, this.values,
+            this.transactionSupplier, this.marshallerMap);
+    }
+
+    /**
+     * Starts retrieving the related entities on the given executor unless they are already
+     * retrieved or being prefetched.
+     *
+     * @param executor
+     *
+     * @since 0.6.9
+     */
+    void prefetch(@NotNull Executor executor) {
+        if (this.elements == null && this.pending == null) {
+            synchronized (this) {
+                if (this.elements == null && this.pending == null) {
+                    try {
+                        this.pending = CompletableFuture.supplyAsync(this::query, executor);
+                    } catch (RejectedExecutionException ignored) {
+                    }
+                }
+            }
         }
-        return this.elements;
     }
 
     /**
@@ -84,6 +154,14 @@ public final class SqlRelation<E> implements LazyCollection<E> {
      */
     @Override
     public int size() {
+        if (this.elements == null && this.pending == null) {
+            try {
+                return (int) Math.min(Integer.MAX_VALUE, SqlUtils.count(this.entityMetadata,
+                    this.entityRelation, this.values, this.transactionSupplier));
+            } catch (Throwable throwable) {
+                throwable.printStackTrace();
+            }
+        }
         return this.retrieve().size();
     }
 
@@ -95,6 +173,14 @@ public final class SqlRelation<E> implements LazyCollection<E> {
     @Override
     @Contract(pure = true)
     public boolean isEmpty() {
+        if (this.elements == null && this.pending == null) {
+            try {
+                return !SqlUtils.exists(this.entityMetadata, this.entityRelation, this.values,
+                    this.transactionSupplier, null);
+            } catch (Throwable throwable) {
+                throwable.printStackTrace();
+            }
+        }
         return this.retrieve().isEmpty();
     }
 
@@ -111,10 +197,20 @@ public final class SqlRelation<E> implements LazyCollection<E> {
      *                              collection (<a href="{@docRoot}/java.base/java/util/Collection.html#optional-restrictions">optional</a>)
      * @throws NullPointerException if the specified element is null and this collection does not
      *                              permit null elements (<a href="{@docRoot}/java.base/java/util/Collection.html#optional-restrictions">optional</a>)
+     * @implNote Until the entities are retrieved, an entity is considered contained if a related
+     * entity with the same identifiers exists.
      */
     @Override
     @Contract(pure = true)
     public boolean contains(@Nullable Object o) {
+        if (o != null && this.elements == null && this.pending == null) {
+            try {
+                return SqlUtils.exists(this.entityMetadata, this.entityRelation, this.values,
+                    this.transactionSupplier, o);
+            } catch (Throwable throwable) {
+                throwable.printStackTrace();
+            }
+        }
         return this.retrieve().contains(o);
     }
 
@@ -128,6 +224,17 @@ public final class SqlRelation<E> implements LazyCollection<E> {
     @NotNull
     @Override
     public Iterator<E> iterator() {
+        if (this.elements == null && this.pending == null) {
+            try {
+                SqlUtils.Page<E> page = SqlUtils.page(this.entityMetadata, this.entityRelation,
+                    this.values, this.transactionSupplier, this.marshallerMap, null, PAGE_SIZE);
+                if (page != null) {
+                    return new PageIterator(page);
+                }
+            } catch (Throwable throwable) {
+                throwable.printStackTrace();
+            }
+        }
         return this.retrieve().iterator();
     }
 
@@ -389,7 +496,8 @@ public final class SqlRelation<E> implements LazyCollection<E> {
     @NotNull
     @Override
     public String toString() {
-        return "SqlRelation" + this.elements.toString();
+        var elements = this.elements;
+        return "SqlRelation" + (elements == null ? List.of() : elements).toString();
     }
 
     @NotNull
@@ -398,4 +506,58 @@ public final class SqlRelation<E> implements LazyCollection<E> {
         return Seq.of(this.retrieve());
     }
 
+    /**
+     * Iterates the related entities page by page, retrieving the next page once the current page
+     * has been consumed.
+     *
+     * @author David Greven
+     * @since 0.6.9
+     */
+    private final class PageIterator implements Iterator<E> {
+
+        private Iterator<E> page;
+        private List<Object> last;
+        private boolean exhausted;
+
+        /**
+         * @param first
+         *
+         * @since 0.6.9
+         */
+        private PageIterator(@NotNull SqlUtils.Page<E> first) {
+            this.next(first);
+        }
+
+        private void next(@NotNull SqlUtils.Page<E> page) {
+            this.page = page.entities().iterator();
+            this.last = page.last();
+            this.exhausted = page.entities().size() < PAGE_SIZE;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!this.page.hasNext() && !this.exhausted) {
+                try {
+                    this.next(Objects.requireNonNull(SqlUtils.page(
+                        SqlRelation.this.entityMetadata, SqlRelation.this.entityRelation,
+                        SqlRelation.this.values, SqlRelation.this.transactionSupplier,
+                        SqlRelation.this.marshallerMap, this.last, PAGE_SIZE)));
+                } catch (Throwable throwable) {
+                    throw new IllegalStateException("Failed to retrieve the next page.",
+                        throwable);
+                }
+            }
+            return this.page.hasNext();
+        }
+
+        @Override
+        public E next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.page.next();
+        }
+
+    }
+
 }
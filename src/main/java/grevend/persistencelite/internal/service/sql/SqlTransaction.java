@@ -25,16 +25,72 @@
 package grevend.persistencelite.internal.service.sql;
 
 import grevend.persistencelite.dao.Transaction;
+import grevend.persistencelite.internal.cache.IdentityMap;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jetbrains.annotations.ApiStatus.AvailableSince;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * @author David Greven
  * @see Connection
  * @since 0.2.0
  */
-public final record SqlTransaction(@NotNull Connection connection) implements Transaction {
+public final record SqlTransaction(@NotNull Connection connection, @AvailableSince(value = "0.6.9") @NotNull IdentityMap identityMap, @AvailableSince(value = "0.6.9") @Nullable ConnectionPool connectionPool, @AvailableSince(value = "0.6.9") @NotNull List<Runnable> synchronizations, @AvailableSince(value = "0.6.9") boolean ownsIdentityMap) implements Transaction {
+
+    /**
+     * @param connection
+     *
+     * @since 0.2.0
+     */
+    @Contract(pure = true)
+    public SqlTransaction(@NotNull Connection connection) {
+        this(connection, new IdentityMap());
+    }
+
+    /**
+     * @param connection
+     * @param identityMap
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public SqlTransaction(@NotNull Connection connection, @NotNull IdentityMap identityMap) {
+        this(connection, identityMap, null);
+    }
+
+    /**
+     * @param connection
+     * @param identityMap
+     * @param connectionPool The pool the connection is returned to on {@link #close()} or null if
+     *                       the connection should be closed.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public SqlTransaction(@NotNull Connection connection, @NotNull IdentityMap identityMap, @Nullable ConnectionPool connectionPool) {
+        this(connection, identityMap, connectionPool, true);
+    }
+
+    /**
+     * @param connection
+     * @param identityMap
+     * @param connectionPool  The pool the connection is returned to on {@link #close()} or null if
+     *                        the connection should be closed.
+     * @param ownsIdentityMap False if the identity map is borrowed from another transaction, such
+     *                        as by the relation lookups of a started transaction, and is therefore
+     *                        left untouched when this transaction ends.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public SqlTransaction(@NotNull Connection connection, @NotNull IdentityMap identityMap, @Nullable ConnectionPool connectionPool, boolean ownsIdentityMap) {
+        this(connection, identityMap, connectionPool, new ArrayList<>(), ownsIdentityMap);
+    }
 
     /**
      * @param enabled
@@ -46,6 +102,42 @@ public final record SqlTransaction(@NotNull Connection connection) implements Tr
         this.connection.setAutoCommit(enabled);
     }
 
+    /**
+     * @return {@code true} if a transaction has been {@link #begin() started}, operations then
+     * neither commit nor roll back on their own.
+     *
+     * @throws SQLException
+     * @since 0.6.9
+     */
+    @Override
+    public boolean started() throws SQLException {
+        return !this.connection.getAutoCommit();
+    }
+
+    /**
+     * @throws SQLException
+     * @since 0.6.9
+     */
+    @Override
+    public void begin() throws SQLException {
+        this.connection.setAutoCommit(false);
+    }
+
+    /**
+     * @param action
+     *
+     * @throws SQLException
+     * @since 0.6.9
+     */
+    @Override
+    public void afterCommit(@NotNull Runnable action) throws SQLException {
+        if (this.started()) {
+            this.synchronizations.add(action);
+        } else {
+            action.run();
+        }
+    }
+
     /**
      * @throws Exception
      * @since 0.2.0
@@ -53,6 +145,10 @@ public final record SqlTransaction(@NotNull Connection connection) implements Tr
     @Override
     public void commit() throws SQLException {
         this.connection.commit();
+        this.clearIdentityMap();
+        var actions = List.copyOf(this.synchronizations);
+        this.synchronizations.clear();
+        actions.forEach(Runnable::run);
     }
 
     /**
@@ -61,18 +157,32 @@ public final record SqlTransaction(@NotNull Connection connection) implements Tr
      */
     @Override
     public void rollback() throws SQLException {
+        this.clearIdentityMap();
+        this.synchronizations.clear();
         this.connection.rollback();
     }
 
     /**
+     * Closes the connection or returns it to the {@link ConnectionPool pool} it was acquired from.
+     *
      * @throws Exception
      * @since 0.2.0
      */
     @Override
     public void close() throws SQLException {
-        if (!this.connection.isClosed()) {
+        this.clearIdentityMap();
+        this.synchronizations.clear();
+        if (this.connectionPool != null) {
+            this.connectionPool.release(this.connection);
+        } else if (!this.connection.isClosed()) {
             this.connection.close();
         }
     }
 
+    private void clearIdentityMap() {
+        if (this.ownsIdentityMap) {
+            this.identityMap.clear();
+        }
+    }
+
 }
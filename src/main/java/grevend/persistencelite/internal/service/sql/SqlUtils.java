@@ -30,6 +30,7 @@ import static grevend.sequence.function.ThrowableEscapeHatch.escape;
 import grevend.common.Lazy;
 import grevend.persistencelite.dao.Transaction;
 import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.cache.IdentityMap;
 import grevend.persistencelite.internal.entity.EntityProperty;
 import grevend.persistencelite.internal.entity.EntityRelation;
 import grevend.persistencelite.internal.entity.EntityType;
@@ -47,10 +48,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * @author David Greven
@@ -60,12 +63,15 @@ final class SqlUtils {
 
     /**
      * @param preparedStatement
+     * @param index             The index of the first parameter to bind.
+     *
+     * @return The index of the parameter following the bound parameters.
      *
      * @throws SQLException
      * @since 0.2.4
      */
-    private static void setRetrieveStatementValues(@NotNull PreparedStatement preparedStatement, @NotNull EntityMetadata<?> entityMetadata, @NotNull EntityRelation entityRelation, @NotNull Map<String, Object> values) throws SQLException {
-        var i = 1;
+    private static int setRetrieveStatementValues(@NotNull PreparedStatement preparedStatement, int index, @NotNull EntityMetadata<?> entityMetadata, @NotNull EntityRelation entityRelation, @NotNull Map<String, Object> values) throws SQLException {
+        var i = index;
         var selfProperties = List.of(entityRelation.getSelfProperties());
         for (EntityProperty property : entityMetadata.properties().stream().filter(
             prop -> selfProperties.contains(prop.propertyName()) || selfProperties
@@ -78,6 +84,7 @@ final class SqlUtils {
             }
             i++;
         }
+        return i;
     }
 
     /**
@@ -87,14 +94,37 @@ final class SqlUtils {
      * @since 0.2.4
      */
     static void createRelationValues(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> map, @NotNull Supplier<Transaction> transactionSupplier, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap) {
-        entityMetadata.declaredRelations().forEach(relation -> map.put(relation.fieldName(),
-            relation.type().isAssignableFrom(Collection.class) ? new SqlRelation<>(entityMetadata,
-                Objects.requireNonNull(relation.relation()), map, transactionSupplier,
-                marshallerMap) : (relation.type().isAssignableFrom(Lazy.class) ? Lazy.of(
-                () -> SqlUtils
+        createRelationValues(entityMetadata, map, transactionSupplier, marshallerMap, null);
+    }
+
+    /**
+     * @param entityMetadata
+     * @param map
+     * @param transactionSupplier
+     * @param marshallerMap
+     * @param prefetch            The executor on which the relations start to be retrieved right
+     *                            away or null if they are retrieved on first access.
+     *
+     * @since 0.6.9
+     */
+    static void createRelationValues(@NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> map, @NotNull Supplier<Transaction> transactionSupplier, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap, @Nullable Executor prefetch) {
+        entityMetadata.declaredRelations().forEach(relation -> {
+            Object value = null;
+            if (relation.type().isAssignableFrom(Collection.class)) {
+                var sqlRelation = new SqlRelation<>(entityMetadata,
+                    Objects.requireNonNull(relation.relation()), map, transactionSupplier,
+                    marshallerMap);
+                if (prefetch != null) { sqlRelation.prefetch(prefetch); }
+                value = sqlRelation;
+            } else if (relation.type().isAssignableFrom(Lazy.class)) {
+                var lazy = Lazy.of(() -> SqlUtils
                     .retrieve(entityMetadata, Objects.requireNonNull(relation.relation()), map,
-                        transactionSupplier, marshallerMap).stream().findFirst().orElse(null))
-                : null)));
+                        transactionSupplier, marshallerMap).stream().findFirst().orElse(null));
+                if (prefetch != null) { lazy.prefetch(prefetch); }
+                value = lazy;
+            }
+            map.put(relation.fieldName(), value);
+        });
     }
 
     /**
@@ -106,6 +136,8 @@ final class SqlUtils {
      *
      * @return
      *
+     * @throws IllegalStateException if the related entities could not be retrieved, a partial
+     *                               result is never returned.
      * @since 0.2.4
      */
     @NotNull
@@ -118,7 +150,7 @@ final class SqlUtils {
         if (!(transaction instanceof SqlTransaction)) {
             throw new IllegalStateException("Transaction not instanceof SqlTransaction.");
         } else {
-            try {
+            try (transaction) {
                 var targetMetadata = EntityMetadata.of(entityRelation.getTargetEntity());
                 Collection<EntityMetadata<?>> types;
                 if (targetMetadata.entityType() == EntityType.INTERFACE) {
@@ -127,36 +159,277 @@ final class SqlUtils {
                     types = List.of(targetMetadata);
                 }
 
+                var identityMap = ((SqlTransaction) transaction).identityMap();
+                List<EntityMetadata<?>> pending = new ArrayList<>();
                 for (var subType : types) {
-                    var preparedStatement = ((SqlTransaction) transaction).connection()
-                        .prepareStatement(preparedStatementFactory
-                            .prepareSelectWithAttributes(subType,
-                                List.of(entityRelation.getTargetProperties())));
-                    setRetrieveStatementValues(preparedStatement, entityMetadata, entityRelation,
-                        values);
-
-                    var res = convert(preparedStatement.executeQuery());
-                    for (var map : res) {
-                        createRelationValues(subType, map, transactionSupplier, marshallerMap);
+                    var identified = identified(subType, entityRelation, entityMetadata, values);
+                    if (identified != null) {
+                        var entity = identityMap.get(subType, identified);
+                        if (entity != null) {
+                            elements.add((E) entity);
+                            continue;
+                        }
                     }
+                    pending.add(subType);
+                }
+
+                var targetProperties = List.of(entityRelation.getTargetProperties());
+                var union = pending.size() > 1 ? preparedStatementFactory
+                    .prepareUnionWithAttributes(pending, targetProperties) : null;
+                if (union != null) {
+                    try (var preparedStatement = ((SqlTransaction) transaction).connection()
+                        .prepareStatement(union)) {
+                        var index = 1;
+                        for (var ignored : pending) {
+                            index = setRetrieveStatementValues(preparedStatement, index,
+                                entityMetadata, entityRelation, values);
+                        }
 
-                    var exceptionEscapeHatch = new ThrowableEscapeHatch<>(Throwable.class);
-                    var entities = res.stream().map(escape(
-                        (ThrowingFunction<? super Map<String, Object>, ?>)
-                            (Map<String, Object> map) -> EntityFactory
-                                .construct(subType, Objects.requireNonNull(map), true,
-                                    unsafeCast(marshallerMap)), exceptionEscapeHatch))
-                        .filter(Objects::nonNull).collect(Collectors.toUnmodifiableList());
-                    exceptionEscapeHatch.rethrow();
-                    elements.addAll((List<E>) entities);
+                        List<List<Map<String, Object>>> rows = new ArrayList<>(pending.size());
+                        pending.forEach(subType -> rows.add(new ArrayList<>()));
+                        try (var resultSet = preparedStatement.executeQuery()) {
+                            for (var map : convert(resultSet)) {
+                                var discriminator = ((Number) Objects.requireNonNull(
+                                    map.remove(PreparedStatementFactory.DISCRIMINATOR))).intValue();
+                                map.keySet().retainAll(preparedStatementFactory
+                                    .columns(pending.get(discriminator)).keySet());
+                                rows.get(discriminator).add(map);
+                            }
+                        }
+                        for (var i = 0; i < pending.size(); i++) {
+                            elements.addAll(construct(pending.get(i), rows.get(i), identityMap,
+                                transactionSupplier, marshallerMap));
+                        }
+                    }
+                } else {
+                    for (var subType : pending) {
+                        var preparedStatement = ((SqlTransaction) transaction).connection()
+                            .prepareStatement(preparedStatementFactory
+                                .prepareSelectWithAttributes(subType, targetProperties));
+                        setRetrieveStatementValues(preparedStatement, 1, entityMetadata,
+                            entityRelation, values);
+                        elements.addAll(construct(subType, convert(preparedStatement
+                            .executeQuery()), identityMap, transactionSupplier, marshallerMap));
+                    }
                 }
+            } catch (RuntimeException | Error exception) {
+                throw exception;
             } catch (Throwable throwable) {
-                throwable.printStackTrace();
+                throw new IllegalStateException("Unable to retrieve related entities.", throwable);
             }
         }
         return elements;
     }
 
+    /**
+     * @param entityRelation
+     *
+     * @return The entities queried for the given relation.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    private static Collection<EntityMetadata<?>> targets(@NotNull EntityRelation entityRelation) {
+        var targetMetadata = EntityMetadata.of(entityRelation.getTargetEntity());
+        return targetMetadata.entityType() == EntityType.INTERFACE ? targetMetadata.subTypes()
+            : List.of(targetMetadata);
+    }
+
+    @NotNull
+    private static SqlTransaction transaction(@NotNull Supplier<Transaction> transactionSupplier) {
+        var transaction = transactionSupplier.get();
+        if (!(transaction instanceof SqlTransaction sqlTransaction)) {
+            throw new IllegalStateException("Transaction not instanceof SqlTransaction.");
+        }
+        return sqlTransaction;
+    }
+
+    /**
+     * @param entityMetadata
+     * @param entityRelation
+     * @param values
+     * @param transactionSupplier
+     *
+     * @return The number of related entities counted by the database.
+     *
+     * @throws SQLException
+     * @since 0.6.9
+     */
+    static long count(@NotNull EntityMetadata<?> entityMetadata, @NotNull EntityRelation entityRelation, @NotNull Map<String, Object> values, @NotNull Supplier<Transaction> transactionSupplier) throws SQLException {
+        var preparedStatementFactory = new PreparedStatementFactory();
+        try (var transaction = transaction(transactionSupplier)) {
+            var targetProperties = List.of(entityRelation.getTargetProperties());
+            var count = 0L;
+            for (var target : targets(entityRelation)) {
+                try (var preparedStatement = transaction.connection().prepareStatement(
+                    preparedStatementFactory.prepareCountWithAttributes(target, targetProperties))) {
+                    setRetrieveStatementValues(preparedStatement, 1, entityMetadata, entityRelation,
+                        values);
+                    try (var resultSet = preparedStatement.executeQuery()) {
+                        if (resultSet.next()) { count += resultSet.getLong(1); }
+                    }
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @param entityMetadata
+     * @param entityRelation
+     * @param values
+     * @param transactionSupplier
+     * @param element             The related entity whose identity is looked up or null if any
+     *                            related entity counts.
+     *
+     * @return True if the database holds a related entity with the identifiers of the given
+     * element, or any related entity if the element is null.
+     *
+     * @throws Throwable
+     * @since 0.6.9
+     */
+    static boolean exists(@NotNull EntityMetadata<?> entityMetadata, @NotNull EntityRelation entityRelation, @NotNull Map<String, Object> values, @NotNull Supplier<Transaction> transactionSupplier, @Nullable Object element) throws Throwable {
+        var preparedStatementFactory = new PreparedStatementFactory();
+        try (var transaction = transaction(transactionSupplier)) {
+            var targetProperties = List.of(entityRelation.getTargetProperties());
+            for (var target : targets(entityRelation)) {
+                if (element != null && !(target.entityType() == EntityType.RECORD && target
+                    .entityClass().isInstance(element))) {
+                    continue;
+                }
+                try (var preparedStatement = transaction.connection().prepareStatement(
+                    preparedStatementFactory
+                        .prepareExistsWithAttributes(target, targetProperties, element != null))) {
+                    var index = setRetrieveStatementValues(preparedStatement, 1, entityMetadata,
+                        entityRelation, values);
+                    if (element != null) {
+                        for (var identifier : target.declaredIdentifiers()) {
+                            preparedStatement.setObject(index++,
+                                Objects.requireNonNull(identifier.getter()).invoke(element));
+                        }
+                    }
+                    try (var resultSet = preparedStatement.executeQuery()) {
+                        if (resultSet.next() && resultSet.getBoolean(1)) { return true; }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param entityMetadata
+     * @param entityRelation
+     * @param values
+     * @param transactionSupplier
+     * @param marshallerMap
+     * @param after               The identifier values of the last entity of the previous page
+     *                            or null for the first page.
+     * @param limit               The maximum number of entities of the page.
+     * @param <E>
+     *
+     * @return The page of related entities ordered by their identifiers and the identifier values
+     * of its last entity, or null if the relation targets an entity interface and cannot be paged.
+     *
+     * @throws Throwable
+     * @since 0.6.9
+     */
+    @Nullable
+    static <E> Page<E> page(@NotNull EntityMetadata<?> entityMetadata, @NotNull EntityRelation entityRelation, @NotNull Map<String, Object> values, @NotNull Supplier<Transaction> transactionSupplier, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap, @Nullable List<Object> after, int limit) throws Throwable {
+        var target = EntityMetadata.of(entityRelation.getTargetEntity());
+        if (target.entityType() != EntityType.RECORD || target.declaredIdentifiers().isEmpty()) {
+            return null;
+        }
+        var preparedStatementFactory = new PreparedStatementFactory();
+        try (var transaction = transaction(transactionSupplier)) {
+            try (var preparedStatement = transaction.connection().prepareStatement(
+                preparedStatementFactory.preparePageWithAttributes(target,
+                    List.of(entityRelation.getTargetProperties()), after != null, limit))) {
+                var index = setRetrieveStatementValues(preparedStatement, 1, entityMetadata,
+                    entityRelation, values);
+                if (after != null) {
+                    for (var value : after) { preparedStatement.setObject(index++, value); }
+                }
+                List<Map<String, Object>> rows;
+                try (var resultSet = preparedStatement.executeQuery()) {
+                    rows = new ArrayList<>(convert(resultSet));
+                }
+                List<Object> last = null;
+                if (!rows.isEmpty()) {
+                    var row = rows.get(rows.size() - 1);
+                    last = target.declaredIdentifiers().stream()
+                        .map(identifier -> row.get(identifier.propertyName()))
+                        .collect(Collectors.toList());
+                }
+                return new Page<>(construct(target, rows, transaction.identityMap(),
+                    transactionSupplier, marshallerMap), last);
+            }
+        }
+    }
+
+    /**
+     * @param entityMetadata
+     * @param rows
+     * @param identityMap
+     * @param transactionSupplier
+     * @param marshallerMap
+     * @param <E>
+     *
+     * @return The entities constructed from the given rows, entities already known to the identity
+     * map are shared instead of constructed twice.
+     *
+     * @throws Throwable
+     * @since 0.6.9
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static <E> List<E> construct(@NotNull EntityMetadata<?> entityMetadata, @NotNull Collection<Map<String, Object>> rows, @NotNull IdentityMap identityMap, @NotNull Supplier<Transaction> transactionSupplier, @NotNull Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap) throws Throwable {
+        for (var map : rows) {
+            createRelationValues(entityMetadata, map, transactionSupplier, marshallerMap);
+        }
+
+        var exceptionEscapeHatch = new ThrowableEscapeHatch<>(Throwable.class);
+        var entities = rows.stream().map(escape(
+            (ThrowingFunction<? super Map<String, Object>, ?>)
+                (Map<String, Object> map) -> identityMap.putIfAbsent(
+                    (EntityMetadata<Object>) entityMetadata, Objects.requireNonNull(map),
+                    EntityFactory.construct(entityMetadata, map, true,
+                        unsafeCast(marshallerMap))), exceptionEscapeHatch))
+            .filter(Objects::nonNull).collect(Collectors.toUnmodifiableList());
+        exceptionEscapeHatch.rethrow();
+        return (List<E>) entities;
+    }
+
+    /**
+     * @param targetMetadata
+     * @param entityRelation
+     * @param entityMetadata
+     * @param values
+     *
+     * @return The identifiers of the target entity if the relation targets exactly its declared
+     * identifiers, otherwise null.
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    @Contract(pure = true)
+    private static Map<String, Object> identified(@NotNull EntityMetadata<?> targetMetadata, @NotNull EntityRelation entityRelation, @NotNull EntityMetadata<?> entityMetadata, @NotNull Map<String, Object> values) {
+        var targetProperties = entityRelation.getTargetProperties();
+        var selfProperties = entityRelation.getSelfProperties();
+        if (targetProperties.length != targetMetadata.declaredIdentifiers().size()) {
+            return null;
+        }
+        Map<String, Object> identifiers = new HashMap<>();
+        for (var i = 0; i < targetProperties.length; i++) {
+            var self = entityMetadata.property(selfProperties[i]);
+            if (self == null || !values.containsKey(self.propertyName())) {
+                return null;
+            }
+            identifiers.put(targetProperties[i], values.get(self.propertyName()));
+        }
+        return identifiers;
+    }
+
     /**
      * @param resultSet
      *
@@ -180,4 +453,14 @@ final class SqlUtils {
         return res;
     }
 
+    /**
+     * @param entities The entities of the page.
+     * @param last     The identifier values of the last entity or null if the page is empty.
+     * @param <E>
+     *
+     * @author David Greven
+     * @since 0.6.9
+     */
+    record Page<E>(@NotNull List<E>entities, @Nullable List<Object>last) {}
+
 }
@@ -196,6 +196,28 @@ public final class Utils {
                     Collectors.mapping(Pair::second, Collectors.toUnmodifiableList())));
     }
 
+    /**
+     * Normalizes values so that numbers of different integral types and enums compare equal to
+     * their persisted representation.
+     *
+     * @param value
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @Nullable
+    @Contract(pure = true)
+    public static Object normalize(@Nullable Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short
+            || value instanceof Byte) {
+            return ((Number) value).longValue();
+        } else if (value != null && value.getClass().isEnum()) {
+            return value.toString().toLowerCase();
+        }
+        return value;
+    }
+
     @NotNull
     @Contract(pure = true)
     @SuppressWarnings("unchecked")
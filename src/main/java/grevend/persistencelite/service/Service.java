@@ -39,7 +39,7 @@ import org.jetbrains.annotations.Nullable;
  * @see TypeMarshaller
  * @since 0.2.0
  */
-public interface Service<C extends Configurator<? extends Service<C>>> {
+public interface Service<C extends Configurator<? extends Service<C>>> extends AutoCloseable {
 
     /**
      * @return
@@ -155,4 +155,14 @@ public interface Service<C extends Configurator<? extends Service<C>>> {
         return false;
     }
 
+    /**
+     * Releases the resources held by the service, such as open connections or threads. The service
+     * should not be used afterwards.
+     *
+     * @throws Exception
+     * @since 0.6.9
+     */
+    @Override
+    default void close() throws Exception {}
+
 }
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.service.memory;
+
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.service.Configurator;
+import java.util.List;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * @author David Greven
+ * @see Configurator
+ * @see MemoryService
+ * @since 0.6.9
+ */
+public final class MemoryConfigurator implements Configurator<MemoryService> {
+
+    private final MemoryService service;
+
+    /**
+     * @param service The service that is currently being configured.
+     *
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    MemoryConfigurator(@NotNull MemoryService service) {
+        this.service = service;
+    }
+
+    /**
+     * Eagerly creates a secondary index instead of building it on the first lookup by the given
+     * properties.
+     *
+     * @param entity     The entity class.
+     * @param properties The field or property names that should be indexed together.
+     *
+     * @return this
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_, _ -> this")
+    public MemoryConfigurator index(@NotNull Class<?> entity, @NotNull String... properties) {
+        this.service.store().index(EntityMetadata.of(entity), List.of(properties));
+        return this;
+    }
+
+    /**
+     * @return The service that is currently being configured.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    @Contract(pure = true)
+    public MemoryService service() {
+        return this.service;
+    }
+
+}
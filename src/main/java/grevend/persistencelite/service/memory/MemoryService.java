@@ -0,0 +1,217 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.service.memory;
+
+import grevend.common.Failure;
+import grevend.persistencelite.dao.Dao;
+import grevend.persistencelite.dao.DaoFactory;
+import grevend.persistencelite.dao.Transaction;
+import grevend.persistencelite.dao.TransactionFactory;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.dao.BaseDao;
+import grevend.persistencelite.internal.dao.FailureDao;
+import grevend.persistencelite.internal.entity.factory.EntityFactory;
+import grevend.persistencelite.internal.service.memory.MemoryDao;
+import grevend.persistencelite.internal.service.memory.MemoryStore;
+import grevend.persistencelite.service.Service;
+import grevend.persistencelite.util.TypeMarshaller;
+import java.util.HashMap;
+import java.util.Map;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A thread-safe service that keeps all entities in memory. Entities are stored per entity type
+ * and keyed by their declared identifiers, lookups by other properties and relation lookups are
+ * answered by secondary hash indexes.
+ *
+ * @author David Greven
+ * @see MemoryConfigurator
+ * @since 0.6.9
+ */
+public final class MemoryService implements Service<MemoryConfigurator> {
+
+    private final Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap;
+    private final Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> unmarshallerMap;
+    private final MemoryStore store;
+
+    /**
+     * @since 0.6.9
+     */
+    @Contract(pure = true)
+    public MemoryService() {
+        this.marshallerMap = new HashMap<>();
+        this.unmarshallerMap = new HashMap<>();
+        this.store = new MemoryStore();
+    }
+
+    /**
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(pure = true)
+    MemoryStore store() {
+        return this.store;
+    }
+
+    /**
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    @Contract(value = " -> new", pure = true)
+    public MemoryConfigurator configurator() {
+        return new MemoryConfigurator(this);
+    }
+
+    /**
+     * @return
+     *
+     * @see DaoFactory
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    @Contract(value = " -> new", pure = true)
+    public DaoFactory daoFactory() {
+        return new DaoFactory() {
+            @NotNull
+            @Override
+            public <E> Dao<E> createDao(@NotNull EntityMetadata<E> entityMetadata, @Nullable Transaction transaction) {
+                EntityMetadata.inferRelationTypes(entityMetadata);
+                try {
+                    return new BaseDao<>(entityMetadata,
+                        new MemoryDao<>(entityMetadata, MemoryService.this.store,
+                            MemoryService.this.marshallerMap),
+                        MemoryService.this.transactionFactory(), transaction, true,
+                        MemoryService.this.marshallerMap, MemoryService.this.unmarshallerMap);
+                } catch (Throwable throwable) {
+                    throw new IllegalStateException("Failed to construct Dao.", throwable);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param entity
+     * @param transaction
+     * @param <E>
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    public <E> Dao<E> createDao(@NotNull Class<E> entity, @Nullable Transaction transaction) {
+        return this.daoFactory().createDao(EntityMetadata.of(entity), transaction);
+    }
+
+    /**
+     * @param entity
+     * @param <E>
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    public <E> Dao<E> createDao(@NotNull Class<E> entity) {
+        try {
+            return this.createDao(entity, this.transactionFactory().createTransaction());
+        } catch (Throwable throwable) {
+            return new FailureDao<>((Failure<?>) () -> throwable);
+        }
+    }
+
+    /**
+     * Every operation of the in-memory service is applied immediately, therefore the transactions
+     * do not have any effect.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Override
+    @Contract(pure = true)
+    public TransactionFactory transactionFactory() {
+        return () -> new Transaction() {
+
+            @Override
+            public void commit() {}
+
+            @Override
+            public void rollback() {}
+
+            @Override
+            public void close() {}
+
+        };
+    }
+
+    /**
+     * @param entity
+     * @param from
+     * @param to
+     * @param marshaller
+     * @param unmarshaller
+     * @param customNullHandling
+     *
+     * @since 0.6.9
+     */
+    @Override
+    public <A, B, E> void registerTypeMarshaller(@Nullable Class<E> entity, @NotNull Class<A> from, @NotNull Class<B> to, @NotNull TypeMarshaller<A, B> marshaller, @NotNull TypeMarshaller<B, A> unmarshaller, boolean customNullHandling) {
+        if (!this.marshallerMap.containsKey(entity)) {
+            this.marshallerMap.put(entity, new HashMap<>());
+        }
+        if (!this.unmarshallerMap.containsKey(entity)) {
+            this.unmarshallerMap.put(entity, new HashMap<>());
+        }
+        this.marshallerMap.get(entity).put(to, customNullHandling ? marshaller
+            : (A a) -> a == null ? null : marshaller.marshall(a));
+        this.unmarshallerMap.get(entity).put(to, customNullHandling ? unmarshaller
+            : (B b) -> b == null ? null : unmarshaller.marshall(b));
+        EntityFactory.marshallersChanged();
+    }
+
+    /**
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @Override
+    @Contract(pure = true)
+    public boolean allowsCaching() {
+        return false;
+    }
+
+}
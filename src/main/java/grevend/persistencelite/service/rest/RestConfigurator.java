@@ -26,13 +26,22 @@ package grevend.persistencelite.service.rest;
 
 import static grevend.persistencelite.service.rest.RestMode.SERVER;
 
+import com.sun.net.httpserver.spi.HttpServerProvider;
+import grevend.persistencelite.entity.Cached;
+import grevend.persistencelite.internal.cache.EntityCache;
+import grevend.persistencelite.internal.service.rest.NioServerProvider;
+import grevend.persistencelite.internal.service.rest.ResponseCache;
 import grevend.persistencelite.internal.service.rest.RestConfiguration;
 import grevend.persistencelite.service.Configurator;
 import grevend.persistencelite.service.Service;
 import java.io.FileNotFoundException;
+import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Range;
@@ -49,9 +58,20 @@ public final class RestConfigurator implements Configurator<RestService> {
     private int version, poolSize = -1, backlog = -1;
     private String scope;
     private boolean cached = false;
+    private long cacheBudget = 16L * 1024 * 1024;
     private Charset charset = StandardCharsets.UTF_8;
     private Service<?> service;
     private Properties properties;
+    private Executor executor;
+    private HttpServerProvider engine;
+    private URI endpoint;
+    private Duration timeout;
+    private int compressionLevel = Deflater.BEST_SPEED, compressionThreshold = 1024;
+    private int pageSize = 500;
+    private boolean metrics = false;
+    private boolean noDelay = true;
+    private int cacheSize = EntityCache.DEFAULT_CAPACITY;
+    private Duration cacheTtl = RestService.DEFAULT_CACHE_TTL;
 
     /**
      * @param restService
@@ -91,6 +111,39 @@ public final class RestConfigurator implements Configurator<RestService> {
         return this;
     }
 
+    /**
+     * @param endpoint The scheme, host and port of the server the requester connects to, defaults
+     *                 to the {@code restHost} and {@code restPort} of the {@link #address(String)
+     *                 properties} or {@code http://localhost:8000}.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator endpoint(@NotNull String endpoint) {
+        if (this.mode == SERVER) { throw new IllegalStateException("Mode should be requester."); }
+        this.endpoint = URI.create(endpoint);
+        return this;
+    }
+
+    /**
+     * @param timeout The maximum duration of connecting to the server and of every single request
+     *                of the requester.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator timeout(@NotNull Duration timeout) {
+        if (this.mode == SERVER) { throw new IllegalStateException("Mode should be requester."); }
+        this.timeout = timeout;
+        return this;
+    }
+
     /**
      * @param service
      *
@@ -151,6 +204,76 @@ public final class RestConfigurator implements Configurator<RestService> {
         return this;
     }
 
+    /**
+     * @param executor The executor handling the requests, replaces the {@link #threadPool(int)
+     *                 thread pool}. Requests block on the underlying service for their whole
+     *                 duration, so an executor starting a thread per request (for example a
+     *                 virtual thread per task executor on runtimes that provide one) keeps slow
+     *                 clients from exhausting a fixed number of threads.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator executor(@NotNull Executor executor) {
+        if (this.mode != SERVER) { throw new IllegalStateException("Mode should be server."); }
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @param engine The provider creating the server, defaults to the selector based server of
+     *               the {@code jdk.httpserver} module as returned by {@link
+     *               HttpServerProvider#provider()}.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator engine(@NotNull HttpServerProvider engine) {
+        if (this.mode != SERVER) { throw new IllegalStateException("Mode should be server."); }
+        this.engine = engine;
+        return this;
+    }
+
+    /**
+     * Serves requests with the NIO engine running one selector loop per available processor.
+     *
+     * @return
+     *
+     * @see #nio(int)
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract(" -> this")
+    public RestConfigurator nio() {
+        return this.nio(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Serves requests with the NIO engine, which spreads connections over the given number of
+     * selector loops, keeps them alive and answers pipelined requests in order. Handlers still
+     * run on the {@link #executor(Executor) executor} or {@link #threadPool(int) thread pool}.
+     *
+     * @param selectors The number of selector loops.
+     *
+     * @return
+     *
+     * @see NioServerProvider
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator nio(@Range(from = 1, to = Integer.MAX_VALUE) int selectors) {
+        if (this.mode != SERVER) { throw new IllegalStateException("Mode should be server."); }
+        this.engine = new NioServerProvider(selectors);
+        return this;
+    }
+
     /**
      * @param cached
      *
@@ -165,6 +288,150 @@ public final class RestConfigurator implements Configurator<RestService> {
         return this;
     }
 
+    /**
+     * @param bytes The maximum number of serialized response bytes kept by the server if
+     *              {@link #cached(boolean) caching} is enabled.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator cacheBudget(@Range(from = 1, to = Long.MAX_VALUE) long bytes) {
+        if (this.mode != SERVER) { throw new IllegalStateException("Mode should be server."); }
+        this.cacheBudget = bytes;
+        return this;
+    }
+
+    /**
+     * @param capacity The maximum number of entities kept in the second-level cache of the
+     *                 requester and the maximum number of responses kept for conditional
+     *                 requests, zero disables both caches. Only entities annotated with {@link
+     *                 Cached} are kept in the second-level cache.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator cacheSize(@Range(from = 0, to = Integer.MAX_VALUE) int capacity) {
+        this.cacheSize = capacity;
+        this.restService.setEntityCache(capacity < 1 ? null
+            : new EntityCache(capacity, this.cacheTtl.toNanos()));
+        this.restService.setResponseCache(capacity < 1 ? null : new ResponseCache(capacity));
+        return this;
+    }
+
+    /**
+     * @param ttl How long the requester keeps entities in its second-level cache whose {@link
+     *            Cached#ttl()} is zero, defaults to thirty seconds. Other clients may write to the
+     *            same server, so cached entities should not be kept forever. {@link
+     *            Duration#ZERO} keeps them until they are written or evicted.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator cacheTtl(@NotNull Duration ttl) {
+        if (this.mode == SERVER) { throw new IllegalStateException("Mode should be requester."); }
+        this.cacheTtl = ttl;
+        this.restService.setEntityCache(this.cacheSize < 1 ? null
+            : new EntityCache(this.cacheSize, ttl.toNanos()));
+        return this;
+    }
+
+    /**
+     * @param level The deflate level of compressed responses, zero disables compression. The
+     *              server compresses responses with {@code gzip} or {@code deflate} if the
+     *              requester accepts either, a requester only asks for compressed responses if
+     *              the level is not zero.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator compression(@Range(from = 0, to = 9) int level) {
+        this.compressionLevel = level;
+        return this;
+    }
+
+    /**
+     * @param bytes The minimum size of a response before it is compressed, smaller responses
+     *              gain little and are sent as is.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator compressionThreshold(@Range(from = 0, to = Integer.MAX_VALUE) int bytes) {
+        if (this.mode != SERVER) { throw new IllegalStateException("Mode should be server."); }
+        this.compressionThreshold = bytes;
+        return this;
+    }
+
+    /**
+     * @param enabled Whether the server serves request metrics in the Prometheus text format at
+     *                {@code /metrics}, disabled by default.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator metrics(boolean enabled) {
+        if (this.mode != SERVER) { throw new IllegalStateException("Mode should be server."); }
+        this.metrics = enabled;
+        return this;
+    }
+
+    /**
+     * @param enabled Whether responses of the default engine are sent without waiting for the
+     *                delayed acknowledgements of the client, enabled by default. The default
+     *                engine only reads this setting from the JVM-wide {@code
+     *                sun.net.httpserver.nodelay} system property, which is set on {@link
+     *                RestService#start() start} unless it was set before, and only once before
+     *                its first server is created. The NIO engine always disables Nagle's
+     *                algorithm and ignores this setting.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator noDelay(boolean enabled) {
+        if (this.mode != SERVER) { throw new IllegalStateException("Mode should be server."); }
+        this.noDelay = enabled;
+        return this;
+    }
+
+    /**
+     * @param size The number of entities a requester retrieves per request while iterating the
+     *             {@link grevend.persistencelite.dao.Dao#sequence() sequence} of a dao, the
+     *             entities of the next page are only requested once the previous page has been
+     *             iterated.
+     *
+     * @return
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public RestConfigurator pageSize(@Range(from = 1, to = Integer.MAX_VALUE - 1) int size) {
+        if (this.mode == SERVER) { throw new IllegalStateException("Mode should be requester."); }
+        this.pageSize = size;
+        return this;
+    }
+
     /**
      * @param charset
      *
@@ -227,8 +494,10 @@ public final class RestConfigurator implements Configurator<RestService> {
             }
         }
         return this.restService.setConfiguration(new RestConfiguration(this.mode, this.version,
-            this.charset, this.cached, this.poolSize, this.backlog, this.scope, this.service,
-            this.properties));
+            this.charset, this.cached, this.cacheBudget, this.poolSize, this.backlog, this.scope, this.service,
+            this.properties, this.executor, this.engine, this.endpoint,
+            this.timeout, this.compressionLevel, this.compressionThreshold, this.pageSize, this.metrics,
+            this.noDelay));
     }
 
 }
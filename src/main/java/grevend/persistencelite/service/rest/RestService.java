@@ -25,30 +25,39 @@
 package grevend.persistencelite.service.rest;
 
 import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.spi.HttpServerProvider;
 import grevend.common.Failure;
 import grevend.persistencelite.dao.Dao;
 import grevend.persistencelite.dao.DaoFactory;
 import grevend.persistencelite.dao.Transaction;
 import grevend.persistencelite.dao.TransactionFactory;
+import grevend.persistencelite.entity.Cached;
 import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.internal.cache.EntityCache;
 import grevend.persistencelite.internal.dao.FailureDao;
+import grevend.persistencelite.internal.entity.factory.EntityFactory;
 import grevend.persistencelite.internal.service.rest.EntityHandler;
+import grevend.persistencelite.internal.service.rest.Metrics;
 import grevend.persistencelite.internal.service.rest.RestConfiguration;
 import grevend.persistencelite.internal.service.rest.RestDao;
 import grevend.persistencelite.internal.service.rest.RestDaoImpl;
 import grevend.persistencelite.internal.service.rest.RestHandler;
+import grevend.persistencelite.internal.service.rest.ResponseCache;
 import grevend.persistencelite.internal.service.rest.RestUtils;
 import grevend.persistencelite.service.Service;
 import grevend.persistencelite.util.TypeMarshaller;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
@@ -61,13 +70,30 @@ import org.jetbrains.annotations.Nullable;
  */
 public final class RestService implements Service<RestConfigurator> {
 
+    /**
+     * The default time to live of cached entities of a requester whose {@link Cached#ttl()} is
+     * zero.
+     *
+     * @since 0.6.9
+     */
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofSeconds(30);
+
     private final Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap;
     private final Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> unmarshallerMap;
     private RestConfiguration configuration;
+    private EntityCache entityCache;
+    private ResponseCache responseCache;
+    private HttpClient httpClient;
+    private HttpServer server;
+    private EntityHandler handler;
+    private ExecutorService executor;
 
     public RestService() {
         this.marshallerMap = new HashMap<>();
         this.unmarshallerMap = new HashMap<>();
+        this.entityCache = new EntityCache(EntityCache.DEFAULT_CAPACITY,
+            DEFAULT_CACHE_TTL.toNanos());
+        this.responseCache = new ResponseCache(EntityCache.DEFAULT_CAPACITY);
         RestUtils.initTypeMarshalling(this);
     }
 
@@ -102,16 +128,21 @@ public final class RestService implements Service<RestConfigurator> {
             public <E> Dao<E> createDao(@NotNull EntityMetadata<E> entityMetadata, @Nullable Transaction transaction) {
                 try {
                     return new RestDao<>(entityMetadata, new RestDaoImpl(entityMetadata,
-                        "http://localhost:8000/api/v" + RestService.this.configuration.
-                            version() + "/",
+                        RestService.this.endpoint() + "/api/v" + RestService.this.configuration
+                            .version() + "/",
                         (Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>>)
                             (Object) RestService.this.marshallerMap,
                         (Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>>)
-                            (Object) RestService.this.unmarshallerMap),
+                            (Object) RestService.this.unmarshallerMap,
+                        RestService.this.allowsCaching() ? RestService.this.responseCache : null,
+                        RestService.this.httpClient(), RestService.this.configuration.timeout(),
+                        RestService.this.configuration.compressionLevel() > 0,
+                        RestService.this.configuration.pageSize()),
                         RestService.this.transactionFactory(), RestService.this.transactionFactory()
                         .createTransaction(),
                         RestService.this.configuration.mode() != RestMode.REQUESTER,
-                        new HashMap<>(), new HashMap<>());
+                        new HashMap<>(), new HashMap<>(), RestService.this.allowsCaching() ?
+                        RestService.this.entityCache : null);
                 } catch (Throwable throwable) {
                     return new FailureDao<>(() -> throwable);
                 }
@@ -197,6 +228,7 @@ public final class RestService implements Service<RestConfigurator> {
             : (A a) -> a == null || Objects.equals(a, "null") ? null : marshaller.marshall(a));
         this.unmarshallerMap.get(entity).put(from, customNullHandling ? unmarshaller
             : (B b) -> b == null || Objects.equals(b, "null") ? null : unmarshaller.marshall(b));
+        EntityFactory.marshallersChanged();
     }
 
     /**
@@ -243,48 +275,158 @@ public final class RestService implements Service<RestConfigurator> {
             throw new IllegalStateException();
         }
 
+        // Small responses would otherwise wait for delayed acknowledgements of the client. The
+        // default engine only reads this JVM-wide property, see RestConfigurator#noDelay.
+        if (this.configuration.noDelay() && this.configuration.engine() == null) {
+            System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+        }
         HttpServer server = null;
+        HttpServerProvider engine = Objects.requireNonNullElseGet(this.configuration.engine(),
+            HttpServerProvider::provider);
 
         if (this.notEmpty("restHost") && this.notEmpty("restPort")) {
             try {
-                server = HttpServer.create(new InetSocketAddress(Objects.requireNonNull(
+                server = engine.createHttpServer(new InetSocketAddress(Objects.requireNonNull(
                     this.configuration.properties()).getProperty("restHost"),
                         Integer.parseInt(Objects.requireNonNull(this.configuration.properties()).
                             getProperty("restPort"))),
                     this.configuration.backlog());
             } catch (NumberFormatException | NullPointerException exception) {
-                server = HttpServer.create(new InetSocketAddress(8000),
+                server = engine.createHttpServer(new InetSocketAddress(8000),
                     this.configuration.backlog());
             }
         } else {
-            server = HttpServer.create(new InetSocketAddress(8000),
+            server = engine.createHttpServer(new InetSocketAddress(8000),
                 this.configuration.backlog());
         }
 
-        RestHandler handler = new EntityHandler(this.configuration);
+        var metrics = this.configuration.metrics() ? new Metrics() : null;
+        var handler = new EntityHandler(this.configuration, metrics);
+        this.handler = handler;
         HttpServer finalServer = server;
+        Map<String, EntityMetadata<?>> entities = new HashMap<>();
 
         EntityMetadata.entities(Objects.requireNonNull(this.configuration.scope())).forEach(
-            entity -> finalServer.createContext("/api/v" + this.configuration.version() + "/" +
-                entity.name().toLowerCase(), exchange -> {
+            entity -> entities.put(entity.name().toLowerCase(), entity));
+        entities.values().forEach(entity -> {
+            var context = finalServer.createContext("/api/v" + this.configuration.version() +
+                "/" + entity.name().toLowerCase(), exchange -> {
 
                 var headers = exchange.getResponseHeaders();
                 headers.put("Content-Type", List.of("application/pl.v0.entity+json; utf-8"));
                 headers.put("Last-Modified", List.of(DateTimeFormatter.RFC_1123_DATE_TIME
-                    .format(EntityHandler.lastModified
-                        .computeIfAbsent(entity, e -> ZonedDateTime.now(ZoneOffset.UTC)))));
+                    .format(EntityHandler.lastModified(entity))));
                 handler.handle(this.configuration.version(), entity,
                     (Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>>)
                         (Object) this.marshallerMap,
                     (Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>>)
                         (Object) this.unmarshallerMap, exchange);
-            }));
-        server.setExecutor(this.configuration.poolSize() < 1 ? null
-            : Executors.newFixedThreadPool(this.configuration.poolSize()));
+            });
+            if (metrics != null) {
+                context.getFilters().add(metrics.filter(entity.name().toLowerCase()));
+            }
+        });
+        var batch = server.createContext("/api/v" + this.configuration.version() + "/batch",
+            exchange -> {
+                exchange.getResponseHeaders().put("Content-Type",
+                    List.of("application/pl.v0.entity+json; utf-8"));
+                handler.handleBatch(entities,
+                    (Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>>)
+                        (Object) this.marshallerMap,
+                    (Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>>)
+                        (Object) this.unmarshallerMap, exchange);
+            });
+        if (metrics != null) {
+            batch.getFilters().add(metrics.filter("batch"));
+            server.createContext("/metrics", exchange -> {
+                try {
+                    exchange.getRequestBody().readAllBytes();
+                    if (!Metrics.method(exchange).equals(RestHandler.GET)) {
+                        exchange.sendResponseHeaders(RestHandler.METHOD_NOT_ALLOWED, -1);
+                        return;
+                    }
+                    exchange.getResponseHeaders().put("Content-Type",
+                        List.of(Metrics.CONTENT_TYPE));
+                    exchange.sendResponseHeaders(RestHandler.OK, RestHandler.CHUNKED);
+                    metrics.write(exchange.getResponseBody());
+                } finally {
+                    exchange.close();
+                }
+            });
+        }
+        this.executor = this.configuration.executor() == null &&
+            this.configuration.poolSize() > 0 ?
+            Executors.newFixedThreadPool(this.configuration.poolSize()) : null;
+        server.setExecutor(this.configuration.executor() != null ? this.configuration.executor()
+            : this.executor);
+        if (metrics != null) {
+            metrics.executor(server.getExecutor());
+        }
         server.start();
+        this.server = server;
         return server;
     }
 
+    /**
+     * Stops the server started by {@link #start()}, shuts down the thread pool it created and
+     * releases the handles of all entities. The service the server uses is not closed.
+     *
+     * @since 0.6.9
+     */
+    @Override
+    public void close() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.server = null;
+        }
+        if (this.executor != null) {
+            this.executor.shutdown();
+            this.executor = null;
+        }
+        if (this.handler != null) {
+            this.handler.close();
+            this.handler = null;
+        }
+    }
+
+    /**
+     * @return The scheme, host and port of the server the requester connects to.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    private String endpoint() {
+        if (this.configuration.endpoint() != null) {
+            var endpoint = Objects.requireNonNull(this.configuration.endpoint()).toString();
+            return endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1)
+                : endpoint;
+        } else if (this.notEmpty("restHost") && this.notEmpty("restPort")) {
+            var properties = Objects.requireNonNull(this.configuration.properties());
+            return "http://" + properties.getProperty("restHost") + ":" +
+                properties.getProperty("restPort");
+        }
+        return "http://localhost:8000";
+    }
+
+    /**
+     * @return The client shared by all daos of this service, so that connections are kept alive
+     * and reused across requests.
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    private synchronized HttpClient httpClient() {
+        if (this.httpClient == null) {
+            var builder = HttpClient.newBuilder().version(Version.HTTP_2)
+                .followRedirects(Redirect.NEVER);
+            if (this.configuration.timeout() != null) {
+                builder.connectTimeout(Objects.requireNonNull(this.configuration.timeout()));
+            }
+            this.httpClient = builder.build();
+        }
+        return this.httpClient;
+    }
+
     private boolean notEmpty(@NotNull String property) {
         if (this.configuration.properties() != null) {
             var res = Objects.requireNonNull(this.configuration.properties()).getProperty(property);
@@ -293,9 +435,28 @@ public final class RestService implements Service<RestConfigurator> {
         return false;
     }
 
+    /**
+     * @param entityCache
+     *
+     * @since 0.6.9
+     */
+    void setEntityCache(@Nullable EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * @param responseCache
+     *
+     * @since 0.6.9
+     */
+    void setResponseCache(@Nullable ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
     @Contract("_ -> this")
-    RestService setConfiguration(@NotNull RestConfiguration configuration) {
+    synchronized RestService setConfiguration(@NotNull RestConfiguration configuration) {
         this.configuration = configuration;
+        this.httpClient = null;
         return this;
     }
 
@@ -24,6 +24,8 @@
 
 package grevend.persistencelite.service.sql;
 
+import grevend.persistencelite.entity.Cached;
+import grevend.persistencelite.internal.cache.EntityCache;
 import grevend.persistencelite.service.Configurator;
 import grevend.sequence.function.ThrowingConsumer;
 import java.io.FileNotFoundException;
@@ -31,6 +33,7 @@ import java.util.Properties;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
 
 /**
  * @author David Greven
@@ -97,6 +100,57 @@ public final class PostgresConfigurator implements Configurator<PostgresService>
         return this;
     }
 
+    /**
+     * @param capacity The maximum number of entities kept in the second-level cache, zero disables
+     *                 the cache. Only entities annotated with {@link Cached} are cached.
+     *
+     * @return this
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public PostgresConfigurator cacheSize(@Range(from = 0, to = Integer.MAX_VALUE) int capacity) {
+        this.service.setEntityCache(capacity < 1 ? null : new EntityCache(capacity));
+        return this;
+    }
+
+    /**
+     * @param threads The number of background threads that start retrieving the relations of an
+     *                entity as soon as it is retrieved, so that they are usually ready by the time
+     *                they are accessed. Every prefetched relation uses its own connection. Zero
+     *                disables prefetching, which is the default.
+     *
+     * @return this
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public PostgresConfigurator prefetch(@Range(from = 0, to = Integer.MAX_VALUE) int threads) {
+        this.service.setPrefetchThreads(threads);
+        return this;
+    }
+
+    /**
+     * @param size The maximum number of connections open at the same time and shared by all
+     *             transactions of the service. Once all are in use, a new transaction waits for one
+     *             to be released. Every dao holds one connection for its whole lifetime, so the size
+     *             has to cover all daos open at the same time as well as their relation lookups.
+     *             Zero opens a new connection for every transaction. By default the number of
+     *             connections is not limited and up to {@value PostgresService#DEFAULT_POOL_SIZE}
+     *             idle connections are kept open.
+     *
+     * @return this
+     *
+     * @since 0.6.9
+     */
+    @NotNull
+    @Contract("_ -> this")
+    public PostgresConfigurator poolSize(@Range(from = 0, to = Integer.MAX_VALUE) int size) {
+        this.service.setPoolSize(size);
+        return this;
+    }
 
     /**
      * @return The service that is currently being configured.
@@ -35,7 +35,11 @@ import grevend.persistencelite.dao.Transaction;
 import grevend.persistencelite.dao.TransactionFactory;
 import grevend.persistencelite.entity.EntityMetadata;
 import grevend.persistencelite.internal.dao.BaseDao;
+import grevend.persistencelite.internal.cache.EntityCache;
 import grevend.persistencelite.internal.dao.FailureDao;
+import grevend.persistencelite.internal.cache.IdentityMap;
+import grevend.persistencelite.internal.entity.factory.EntityFactory;
+import grevend.persistencelite.internal.service.sql.ConnectionPool;
 import grevend.persistencelite.internal.service.sql.SqlDao;
 import grevend.persistencelite.internal.service.sql.SqlTransaction;
 import grevend.persistencelite.service.Service;
@@ -49,6 +53,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -60,10 +69,22 @@ import org.jetbrains.annotations.Nullable;
  */
 public final class PostgresService implements Service<PostgresConfigurator> {
 
+    /**
+     * The default maximum number of idle connections kept open. The number of connections in use
+     * is not limited unless a {@link PostgresConfigurator#poolSize(int) pool size} is set.
+     *
+     * @since 0.6.9
+     */
+    public static final int DEFAULT_POOL_SIZE = 10;
+
     final Collection<ThrowingConsumer<ConnectionStatus>> connectionFailureCallbacks;
     private final Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> marshallerMap;
     private final Map<Class<?>, Map<Class<?>, TypeMarshaller<?, ?>>> unmarshallerMap;
     private Properties properties;
+    private EntityCache entityCache;
+    private ExecutorService prefetchExecutor;
+    private ConnectionPool connectionPool;
+    private final Set<EntityMetadata<?>> inferred;
 
     /**
      * @since 0.2.0
@@ -74,6 +95,9 @@ public final class PostgresService implements Service<PostgresConfigurator> {
         this.unmarshallerMap = new HashMap<>();
         this.connectionFailureCallbacks = new ArrayList<>();
         this.properties = new Properties();
+        this.entityCache = new EntityCache(EntityCache.DEFAULT_CAPACITY);
+        this.connectionPool = ConnectionPool.unbounded(this::createConnection, DEFAULT_POOL_SIZE);
+        this.inferred = ConcurrentHashMap.newKeySet();
     }
 
     /**
@@ -96,6 +120,54 @@ public final class PostgresService implements Service<PostgresConfigurator> {
         this.properties = properties;
     }
 
+    /**
+     * @param entityCache
+     *
+     * @since 0.6.9
+     */
+    void setEntityCache(@Nullable EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * @param threads The number of daemon threads retrieving relations in the background, zero
+     *                disables relation prefetching.
+     *
+     * @since 0.6.9
+     */
+    void setPrefetchThreads(int threads) {
+        if (this.prefetchExecutor != null) {
+            this.prefetchExecutor.shutdown();
+        }
+        if (threads < 1) {
+            this.prefetchExecutor = null;
+        } else {
+            var counter = new AtomicInteger();
+            this.prefetchExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                var thread = new Thread(runnable,
+                    "persistencelite-prefetch-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @param size The maximum number of connections open at the same time, zero opens a new
+     *             connection for every transaction.
+     *
+     * @since 0.6.9
+     */
+    void setPoolSize(int size) {
+        var previous = this.connectionPool;
+        this.connectionPool = size < 1 ? null : new ConnectionPool(this::createConnection, size);
+        if (previous != null) {
+            try {
+                previous.close();
+            } catch (SQLException ignored) {}
+        }
+    }
+
     /**
      * @param entity
      * @param transaction
@@ -162,15 +234,20 @@ public final class PostgresService implements Service<PostgresConfigurator> {
             @Override
             public <E> Dao<E> createDao(@NotNull EntityMetadata<E> entityMetadata, @Nullable Transaction transaction) {
                 if (transaction instanceof SqlTransaction sqlTransaction) {
-                    EntityMetadata.inferRelationTypes(entityMetadata);
+                    if (PostgresService.this.inferred.add(entityMetadata)) {
+                        EntityMetadata.inferRelationTypes(entityMetadata);
+                    }
                     try {
                         return new BaseDao<>(entityMetadata,
                             new SqlDao<>(entityMetadata, sqlTransaction,
                                 PostgresService.this.transactionFactory(),
-                                PostgresService.this.marshallerMap),
+                                PostgresService.this.marshallerMap,
+                                PostgresService.this.prefetchExecutor),
                             PostgresService.this.transactionFactory(), transaction, true,
                             PostgresService.this.marshallerMap,
-                            PostgresService.this.unmarshallerMap);
+                            PostgresService.this.unmarshallerMap,
+                            PostgresService.this.allowsCaching() ?
+                                PostgresService.this.entityCache : null);
                     } catch (Throwable throwable) {
                         throw new IllegalStateException("Failed to construct Dao.", throwable);
                     }
@@ -192,7 +269,26 @@ public final class PostgresService implements Service<PostgresConfigurator> {
     @Override
     @Contract(value = " -> new", pure = true)
     public TransactionFactory transactionFactory() {
-        return () -> new SqlTransaction(this.createConnection());
+        return () -> {
+            var connectionPool = this.connectionPool;
+            return connectionPool == null ? new SqlTransaction(this.createConnection())
+                : new SqlTransaction(connectionPool.acquire(), new IdentityMap(), connectionPool);
+        };
+    }
+
+    /**
+     * Closes the idle connections of the pool and stops the prefetch threads. Connections still in
+     * use are closed once their transaction is closed.
+     *
+     * @throws SQLException
+     * @since 0.6.9
+     */
+    @Override
+    public void close() throws SQLException {
+        this.setPrefetchThreads(0);
+        if (this.connectionPool != null) {
+            this.connectionPool.close();
+        }
     }
 
     /**
@@ -217,6 +313,7 @@ public final class PostgresService implements Service<PostgresConfigurator> {
             : (A a) -> a == null ? null : marshaller.marshall(a));
         this.unmarshallerMap.get(entity).put(to, customNullHandling ? unmarshaller
             : (B b) -> b == null ? null : unmarshaller.marshall(b));
+        EntityFactory.marshallersChanged();
     }
 
     /**
@@ -3,6 +3,7 @@ open module grevend.persistencelite {
     requires java.sql;
     requires org.postgresql.jdbc;
     requires jdk.httpserver;
+    requires java.net.http;
     requires java.compiler;
     requires reflections;
     requires com.google.gson;
@@ -16,12 +17,15 @@ open module grevend.persistencelite {
     exports grevend.persistencelite.service;
     exports grevend.persistencelite.service.sql;
     exports grevend.persistencelite.service.rest;
+    exports grevend.persistencelite.service.memory;
     exports grevend.persistencelite.internal.entity;
     exports grevend.persistencelite.util;
     exports grevend.sequence.function;
     exports grevend.sequence.iterators;
     exports grevend.sequence;
 
+    provides javax.annotation.processing.Processor with grevend.persistencelite.internal.entity.index.EntityProcessor;
+
     //provides System.LoggerFinder with PersistenceLiteLoggerFinder;
 
 }
\ No newline at end of file
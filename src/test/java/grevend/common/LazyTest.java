@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class LazyTest {
+
+    @Test
+    void testNullIsRemembered() {
+        var calls = new AtomicInteger();
+        var lazy = Lazy.of(() -> {
+            calls.incrementAndGet();
+            return null;
+        });
+        assertThat(lazy.isLoaded()).isFalse();
+        assertThat(lazy.get()).isNull();
+        assertThat(lazy.get()).isNull();
+        assertThat(lazy.isLoaded()).isTrue();
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testPrefetch() {
+        var calls = new AtomicInteger();
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var lazy = Lazy.of(() -> {
+                calls.incrementAndGet();
+                return "value";
+            }).prefetch(executor).prefetch(executor);
+            assertThat(lazy.get()).isEqualTo("value");
+            assertThat(calls.get()).isEqualTo(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
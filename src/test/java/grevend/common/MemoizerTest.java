@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.common;
+
+import static grevend.common.Memoizer.memoize;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class MemoizerTest {
+
+    @Test
+    void testMemoize() {
+        var calls = new AtomicInteger();
+        var square = memoize((Integer x) -> {
+            calls.incrementAndGet();
+            return x * x;
+        });
+        assertThat(square.apply(3)).isEqualTo(9);
+        assertThat(square.apply(3)).isEqualTo(9);
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(square.hits()).isEqualTo(1);
+        assertThat(square.misses()).isEqualTo(1);
+    }
+
+    @Test
+    void testSingleFlight() throws InterruptedException {
+        var calls = new AtomicInteger();
+        var latch = new CountDownLatch(1);
+        var memoized = memoize((String key) -> {
+            calls.incrementAndGet();
+            try {
+                latch.await();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            return key.length();
+        });
+        var executor = Executors.newFixedThreadPool(8);
+        for (var i = 0; i < 8; i++) {
+            executor.execute(() -> memoized.apply("key"));
+        }
+        Thread.sleep(100);
+        latch.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(memoized.hits() + memoized.misses()).isEqualTo(8);
+    }
+
+    @Test
+    void testMaximumSize() {
+        var memoized = memoize((Integer x) -> x, 10);
+        for (var i = 0; i < 100; i++) {
+            memoized.apply(i);
+        }
+        assertThat(memoized.size()).isEqualTo(10);
+        memoized.apply(99);
+        assertThat(memoized.hits()).isEqualTo(1);
+    }
+
+    @Test
+    void testEvictionOrderIsBounded() {
+        var memoized = memoize((Integer x) -> x, 10);
+        for (var i = 0; i < 1000; i++) {
+            memoized.apply(i % 3);
+            memoized.invalidate(i % 3);
+        }
+        assertThat(memoized.size()).isZero();
+        assertThat(memoized.queued()).isLessThanOrEqualTo(20);
+    }
+
+    @Test
+    void testWaitingForAComputationIsAMiss() throws InterruptedException {
+        var started = new CountDownLatch(1);
+        var latch = new CountDownLatch(1);
+        var memoized = memoize((String key) -> {
+            started.countDown();
+            try {
+                latch.await();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            return key.length();
+        });
+        var computing = new Thread(() -> memoized.apply("key"));
+        computing.start();
+        started.await();
+        var waiting = new Thread(() -> memoized.apply("key"));
+        waiting.start();
+        Thread.sleep(100);
+        latch.countDown();
+        computing.join();
+        waiting.join();
+        assertThat(memoized.misses()).isEqualTo(2);
+        assertThat(memoized.hits()).isZero();
+    }
+
+    @Test
+    void testExpiration() throws InterruptedException {
+        var calls = new AtomicInteger();
+        var memoized = memoize((Integer x) -> calls.incrementAndGet(), 0, 1,
+            TimeUnit.MILLISECONDS);
+        memoized.apply(1);
+        Thread.sleep(5);
+        memoized.apply(1);
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testFailuresAreNotMemoized() {
+        var calls = new AtomicInteger();
+        var memoized = memoize((Integer x) -> {
+            if (calls.incrementAndGet() == 1) { throw new IllegalStateException(); }
+            return x;
+        });
+        try {
+            memoized.apply(1);
+        } catch (IllegalStateException ignored) {
+        }
+        assertThat(memoized.apply(1)).isEqualTo(1);
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+}
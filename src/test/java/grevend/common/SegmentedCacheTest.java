@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class SegmentedCacheTest {
+
+    @Test
+    void testPutAndGet() {
+        var cache = new SegmentedCache<String, Integer>(10);
+        cache.put("a", 1);
+        assertThat(cache.get("a")).isEqualTo(1);
+        assertThat(cache.get("b")).isNull();
+        cache.invalidate("a");
+        assertThat(cache.get("a")).isNull();
+    }
+
+    @Test
+    void testFrequentlyUsedEntriesSurviveScans() {
+        var cache = new SegmentedCache<Integer, Integer>(10);
+        cache.put(-1, -1);
+        cache.get(-1);
+        for (var i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        assertThat(cache.get(-1)).isEqualTo(-1);
+        assertThat(cache.size()).isEqualTo(10);
+        assertThat(cache.get(0)).isNull();
+        assertThat(cache.get(99)).isEqualTo(99);
+    }
+
+    @Test
+    void testExpiration() throws InterruptedException {
+        var cache = new SegmentedCache<String, Integer>(10);
+        cache.put("a", 1, 1);
+        Thread.sleep(1);
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void testInvalidateIf() {
+        var cache = new SegmentedCache<Integer, Integer>(10);
+        for (var i = 0; i < 6; i++) {
+            cache.put(i, i);
+            cache.get(i);
+        }
+        cache.invalidateIf(key -> key % 2 == 0);
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.get(1)).isEqualTo(1);
+    }
+
+}
@@ -40,4 +40,9 @@ class EntityAnnotationTest {
         TestUtil.assertAnnotationRetentionAndTarget(Property.class, ElementType.FIELD);
     }
 
+    @Test
+    void testVersion() {
+        TestUtil.assertAnnotationRetentionAndTarget(Version.class, ElementType.RECORD_COMPONENT);
+    }
+
 }
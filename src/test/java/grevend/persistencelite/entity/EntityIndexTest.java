@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.entity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import grevend.persistencelite.internal.entity.index.EntityIndex;
+import org.junit.jupiter.api.Test;
+
+class EntityIndexTest {
+
+    @Test
+    void testIndexGenerated() {
+        assertThat(this.getClass().getClassLoader().getResource(EntityIndex.RESOURCE)).isNotNull();
+        assertThat(EntityIndex.instance()).isNotNull();
+    }
+
+    @Test
+    void testEntities() {
+        assertThat(EntityMetadata.entities(this.getClass().getPackageName()))
+            .<Object>extracting(EntityMetadata::entityClass).contains(Animal.class, Cat.class, Dog.class);
+    }
+
+    @Test
+    void testSubTypes() {
+        assertThat(EntityMetadata.of(Animal.class).subTypes())
+            .<Object>extracting(EntityMetadata::entityClass).containsExactlyInAnyOrder(Cat.class, Dog.class);
+    }
+
+    @Entity(name = "animal")
+    public interface Animal {
+
+        @Id
+        int id();
+
+    }
+
+    @Entity(name = "cat")
+    public record Cat(@Id int id, String name) implements Animal {}
+
+    @Entity(name = "dog")
+    public record Dog(@Id int id, String breed) implements Animal {}
+
+}
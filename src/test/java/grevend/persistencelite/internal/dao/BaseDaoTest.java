@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.dao;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import grevend.persistencelite.dao.Transaction;
+import grevend.persistencelite.entity.Cached;
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.internal.cache.EntityCache;
+import grevend.persistencelite.internal.cache.IdentityMap;
+import grevend.persistencelite.internal.service.memory.MemoryDao;
+import grevend.persistencelite.internal.service.memory.MemoryStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+class BaseDaoTest {
+
+    private final EntityCache entityCache = new EntityCache(16);
+    private final MemoryStore store = new MemoryStore();
+
+    private BaseDao<Owner, RuntimeException> dao(@NotNull Transaction transaction) throws Throwable {
+        var entityMetadata = EntityMetadata.of(Owner.class);
+        return new BaseDao<>(entityMetadata, new MemoryDao<>(entityMetadata, this.store,
+            new HashMap<>()), () -> transaction, transaction, true, new HashMap<>(),
+            new HashMap<>(), this.entityCache);
+    }
+
+    @Test
+    void testEntitiesAreCachedAfterCommit() throws Throwable {
+        var transaction = new StartedTransaction();
+        var dao = this.dao(transaction);
+        dao.create(new Owner(1, "Ann")).orThrow();
+        assertThat(this.entityCache.get(EntityMetadata.of(Owner.class), Map.of("id", 1)))
+            .isNull();
+        transaction.commit();
+        assertThat(this.entityCache.get(EntityMetadata.of(Owner.class), Map.of("id", 1)))
+            .isEqualTo(new Owner(1, "Ann"));
+    }
+
+    @Test
+    void testRolledBackEntitiesAreNeverCached() throws Throwable {
+        var transaction = new StartedTransaction();
+        var dao = this.dao(transaction);
+        dao.create(new Owner(1, "Ann")).orThrow();
+        dao.update(new Owner(1, "Ann"), "name", "Bob").orThrow();
+        transaction.rollback();
+        transaction.commit();
+        assertThat(this.entityCache.get(EntityMetadata.of(Owner.class), Map.of("id", 1)))
+            .isNull();
+    }
+
+    @Test
+    void testUpdatesInvalidateAfterCommit() throws Throwable {
+        var autoCommit = this.dao(new StartedTransaction(false));
+        autoCommit.create(new Owner(1, "Ann")).orThrow();
+        assertThat(this.entityCache.get(EntityMetadata.of(Owner.class), Map.of("id", 1)))
+            .isEqualTo(new Owner(1, "Ann"));
+
+        var transaction = new StartedTransaction();
+        this.dao(transaction).update(new Owner(1, "Ann"), "name", "Bob").orThrow();
+        assertThat(this.entityCache.get(EntityMetadata.of(Owner.class), Map.of("id", 1)))
+            .isNull();
+        this.entityCache.put(EntityMetadata.of(Owner.class), new Owner(1, "Ann"));
+        transaction.commit();
+        assertThat(this.entityCache.get(EntityMetadata.of(Owner.class), Map.of("id", 1)))
+            .isEqualTo(new Owner(1, "Bob"));
+    }
+
+    @Test
+    void testQueriesCachedBeforeCommitAreDiscarded() throws Throwable {
+        var entityMetadata = EntityMetadata.of(Tag.class);
+        var transaction = new StartedTransaction();
+        new BaseDao<>(entityMetadata, new MemoryDao<>(entityMetadata, this.store,
+            new HashMap<>()), () -> transaction, transaction, true, new HashMap<>(),
+            new HashMap<>(), this.entityCache).create(new Tag(1, "red")).orThrow();
+        this.entityCache.query(entityMetadata, Map.of(), List.of(),
+            this.entityCache.generations(entityMetadata));
+        assertThat(this.entityCache.query(entityMetadata, Map.of())).isNotNull();
+        transaction.commit();
+        assertThat(this.entityCache.query(entityMetadata, Map.of())).isNull();
+    }
+
+    @Test
+    void testIdentityMapIsOnlyUsedInsideStartedTransactions() throws Throwable {
+        var entityMetadata = EntityMetadata.of(Owner.class);
+        var memoryDao = new MemoryDao<>(entityMetadata, this.store, new HashMap<>());
+        var identityMap = new IdentityMap();
+        var shared = new DaoImpl<RuntimeException>() {
+
+            @Override
+            public void create(@NotNull Iterable<Map<String, Object>> entity) {
+                memoryDao.create(entity);
+            }
+
+            @NotNull
+            @Override
+            public Iterable<Map<String, Object>> retrieve(@NotNull Iterable<String> keys, @NotNull Map<String, Object> props) {
+                return memoryDao.retrieve(keys, props);
+            }
+
+            @Override
+            public void update(@NotNull Iterable<Map<String, Object>> entity, @NotNull Map<String, Object> props) {
+                memoryDao.update(entity, props);
+            }
+
+            @Override
+            public void delete(@NotNull Map<String, Object> props) {
+                memoryDao.delete(props);
+            }
+
+            @Override
+            public IdentityMap identityMap() {
+                return identityMap;
+            }
+
+        };
+        var autoCommit = new StartedTransaction(false);
+        var reader = new BaseDao<>(entityMetadata, shared, () -> autoCommit, autoCommit, true,
+            new HashMap<>(), new HashMap<>(), null);
+        var writerTransaction = new StartedTransaction(false);
+        var writer = new BaseDao<>(entityMetadata, memoryDao, () -> writerTransaction,
+            writerTransaction, true, new HashMap<>(), new HashMap<>(), null);
+
+        var owner = writer.create(new Owner(1, "Ann")).orThrow();
+        assertThat(reader.retrieveById("id", 1).orThrow().name()).isEqualTo("Ann");
+        writer.update(owner, "name", "Bob").orThrow();
+        assertThat(reader.retrieveById("id", 1).orThrow().name()).isEqualTo("Bob");
+
+        var started = new StartedTransaction();
+        var repeatable = new BaseDao<>(entityMetadata, shared, () -> started, started, true,
+            new HashMap<>(), new HashMap<>(), null);
+        var first = repeatable.retrieveById("id", 1).orThrow();
+        assertThat(repeatable.retrieveById("id", 1).orThrow()).isSameAs(first);
+    }
+
+    @Cached(queries = true)
+    @Entity(name = "tag")
+    public record Tag(@Id int id, String name) {}
+
+    @Cached
+    @Entity(name = "owner")
+    public record Owner(@Id int id, String name) {}
+
+    private static final class StartedTransaction implements Transaction {
+
+        private final List<Runnable> actions = new ArrayList<>();
+        private final boolean started;
+
+        private StartedTransaction() {
+            this(true);
+        }
+
+        private StartedTransaction(boolean started) {
+            this.started = started;
+        }
+
+        @Override
+        public boolean started() {
+            return this.started;
+        }
+
+        @Override
+        public void afterCommit(@NotNull Runnable action) {
+            if (this.started) {
+                this.actions.add(action);
+            } else {
+                action.run();
+            }
+        }
+
+        @Override
+        public void commit() {
+            this.actions.forEach(Runnable::run);
+            this.actions.clear();
+        }
+
+        @Override
+        public void rollback() {
+            this.actions.clear();
+        }
+
+        @Override
+        public void close() {}
+
+    }
+
+}
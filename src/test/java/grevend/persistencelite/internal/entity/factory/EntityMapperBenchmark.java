@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.entity.factory;
+
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An ad-hoc benchmark comparing the construction and deconstruction of a record through the
+ * {@link EntityMapper} with the previous {@code invokeWithArguments} and generic {@code invoke}
+ * calls. It is not run by the test suite, start it with
+ * {@code java --enable-preview -cp target/classes:target/test-classes
+ * grevend.persistencelite.internal.entity.factory.EntityMapperBenchmark [iterations] [rounds]}.
+ *
+ * @author David Greven
+ * @since 0.6.9
+ */
+public final class EntityMapperBenchmark {
+
+    private static volatile Object sink;
+
+    private EntityMapperBenchmark() {}
+
+    public static void main(String[] args) throws Throwable {
+        var iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        var rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        var entityMetadata = EntityMetadata.of(Sample.class);
+        var mapper = EntityMapper.of(entityMetadata);
+        var properties = List.copyOf(entityMetadata.declaredProperties());
+        var constructor = Objects.requireNonNull(entityMetadata.constructor());
+        var sample = new Sample(1, "name", 2L, 3.0, true);
+        var values = new Object[]{1, "name", 2L, 3.0, true};
+        for (var round = 1; round <= rounds; round++) {
+            var start = System.nanoTime();
+            for (var i = 0; i < iterations; i++) {
+                sink = constructor.invokeWithArguments(new ArrayList<>(List.of(values)));
+            }
+            var generic = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (var i = 0; i < iterations; i++) {
+                sink = mapper.construct(values.clone());
+            }
+            var exact = System.nanoTime() - start;
+            System.out.printf("round %d construct:   %6.1f ns/op -> %6.1f ns/op%n", round,
+                (double) generic / iterations, (double) exact / iterations);
+
+            start = System.nanoTime();
+            for (var i = 0; i < iterations; i++) {
+                var row = new Object[properties.size()];
+                for (var j = 0; j < row.length; j++) {
+                    row[j] = Objects.requireNonNull(properties.get(j).getter()).invoke(sample);
+                }
+                sink = row;
+            }
+            generic = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (var i = 0; i < iterations; i++) {
+                var row = new Object[properties.size()];
+                for (var j = 0; j < row.length; j++) {
+                    row[j] = mapper.get(j, sample);
+                }
+                sink = row;
+            }
+            exact = System.nanoTime() - start;
+            System.out.printf("round %d deconstruct: %6.1f ns/op -> %6.1f ns/op%n", round,
+                (double) generic / iterations, (double) exact / iterations);
+        }
+    }
+
+    @Entity(name = "benchmarksample")
+    public record Sample(@Id int id, String name, long count, double ratio, boolean active) {}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.entity.factory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.util.TypeMarshaller;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class EntityMapperTest {
+
+    @Test
+    void testPlansAreKeptPerMarshallerMap() {
+        var mapper = EntityMapper.of(EntityMetadata.of(Item.class));
+        Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> first = new HashMap<>();
+        Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> second = new HashMap<>();
+        var firstPlan = mapper.marshalling(first);
+        var secondPlan = mapper.marshalling(second);
+        assertThat(secondPlan).isNotSameAs(firstPlan);
+        assertThat(mapper.marshalling(first)).isSameAs(firstPlan);
+        assertThat(mapper.marshalling(second)).isSameAs(secondPlan);
+    }
+
+    @Test
+    void testRegisteredMarshallersOutdatePlans() {
+        var mapper = EntityMapper.of(EntityMetadata.of(Item.class));
+        Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> marshallerMap =
+            new HashMap<>();
+        var plan = mapper.marshalling(marshallerMap);
+        assertThat(plan.convert(1, "name")).isEqualTo("name");
+
+        Map<Class<?>, TypeMarshaller<Object, Object>> marshallers = new HashMap<>();
+        marshallers.put(String.class, value -> value.toString().toUpperCase());
+        marshallerMap.put(null, marshallers);
+        EntityFactory.marshallersChanged();
+
+        var compiled = mapper.marshalling(marshallerMap);
+        assertThat(compiled).isNotSameAs(plan);
+        assertThat(compiled.convert(1, "name")).isEqualTo("NAME");
+    }
+
+    @Entity(name = "item")
+    public record Item(@Id int id, String name) {}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.entity.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.tools.ToolProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntityProcessorTest {
+
+    @TempDir
+    Path directory;
+
+    private Path source(String name, String content) throws IOException {
+        var source = this.directory.resolve("src").resolve("example").resolve(name + ".java");
+        Files.createDirectories(source.getParent());
+        return Files.writeString(source, "package example;\n\n" +
+            "import grevend.persistencelite.entity.Entity;\n\n" + content);
+    }
+
+    private void compile(Path... sources) {
+        var output = this.directory.resolve("classes");
+        var classPath = String.join(File.pathSeparator, System.getProperty("java.class.path"),
+            System.getProperty("jdk.module.path", ""), output.toString());
+        List<String> arguments = new ArrayList<>(List.of("-processor",
+            EntityProcessor.class.getName(), "-d", output.toString(), "-cp", classPath));
+        for (var source : sources) {
+            arguments.add(source.toString());
+        }
+        assertThat(ToolProvider.getSystemJavaCompiler().run(null, null, null,
+            arguments.toArray(String[]::new))).isZero();
+    }
+
+    private List<String> index() throws IOException {
+        return Files.readAllLines(this.directory.resolve("classes").resolve(EntityIndex.RESOURCE));
+    }
+
+    @Test
+    void testIncrementalCompilationKeepsIndexedEntities() throws IOException {
+        var animal = this.source("Animal", "@Entity(name = \"animal\")\npublic interface Animal {}\n");
+        this.compile(animal);
+        assertThat(this.index()).contains("example.Animal");
+
+        var pet = this.source("Pet",
+            "@Entity(name = \"pet\")\npublic interface Pet extends Animal {}\n");
+        this.compile(pet);
+        assertThat(this.index()).contains("example.Animal", "example.Pet example.Animal");
+    }
+
+    @Test
+    void testEntitiesNoLongerAnnotatedAreDropped() throws IOException {
+        var animal = this.source("Animal", "@Entity(name = \"animal\")\npublic interface Animal {}\n");
+        var pet = this.source("Pet", "@Entity(name = \"pet\")\npublic interface Pet {}\n");
+        this.compile(animal, pet);
+        assertThat(this.index()).contains("example.Animal", "example.Pet");
+
+        this.compile(this.source("Animal", "public interface Animal {}\n"), pet);
+        assertThat(this.index()).contains("example.Pet").doesNotContain("example.Animal");
+    }
+
+}
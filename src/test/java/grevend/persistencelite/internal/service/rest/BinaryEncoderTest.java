@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.util.TypeMarshaller;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class BinaryEncoderTest {
+
+    private static final List<String> NAMES = List.of("id", "name", "score", "ratio", "active",
+        "visits");
+
+    private static byte[] encode(List<Object[]> rows) throws IOException {
+        var out = new ByteArrayOutputStream();
+        var encoder = new BinaryEncoder(out);
+        encoder.schema(NAMES);
+        for (var row : rows) {
+            encoder.row();
+            for (var value : row) {
+                encoder.value(value, value);
+            }
+        }
+        encoder.end().close();
+        return out.toByteArray();
+    }
+
+    private static List<Map<String, Object>> decode(byte[] bytes, Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        RestCodec.rows(EntityMetadata.of(Sample.class), new ByteArrayInputStream(bytes), true,
+            unmarshallerMap, null).forEach(rows::add);
+        return rows;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        var bytes = encode(List.of(
+            new Object[]{-1, "Ann", 1.5d, 0.25f, true, Long.MAX_VALUE},
+            new Object[]{Integer.MAX_VALUE, "ü€😀", -0.0d, Float.NaN, false,
+                null}));
+        var rows = decode(bytes, new HashMap<>());
+
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0)).containsEntry("id", -1).containsEntry("name", "Ann")
+            .containsEntry("score", 1.5d).containsEntry("ratio", 0.25f)
+            .containsEntry("active", true).containsEntry("visits", Long.MAX_VALUE);
+        assertThat(rows.get(1)).containsEntry("id", Integer.MAX_VALUE)
+            .containsEntry("name", "ü€😀").containsEntry("score", -0.0d)
+            .containsEntry("ratio", Float.NaN).containsEntry("active", false)
+            .containsEntry("visits", null);
+    }
+
+    @Test
+    void testEmptyResponse() throws IOException {
+        var out = new ByteArrayOutputStream();
+        new BinaryEncoder(out).schema(List.of()).end().close();
+        assertThat(decode(out.toByteArray(), new HashMap<>())).isEmpty();
+    }
+
+    @Test
+    void testLoneSurrogatesAreReplaced() throws IOException {
+        var bytes = encode(List.<Object[]>of(new Object[]{1, "a\ud800b", 0d, 0f, true, 0L}));
+        assertThat(decode(bytes, new HashMap<>()).get(0)).containsEntry("name", "a?b");
+    }
+
+    @Test
+    void testMarshallersAreHonoured() throws IOException {
+        var out = new ByteArrayOutputStream();
+        var encoder = new BinaryEncoder(out);
+        encoder.schema(NAMES).row().value(7, "#7").value("Ann", "Ann").value(1d, "1.0")
+            .value(1f, 1f).value(true, "yes").value(3L, 3L);
+        encoder.end().close();
+
+        Map<Class<?>, TypeMarshaller<Object, Object>> unmarshallers = new HashMap<>();
+        unmarshallers.put(int.class, value -> Integer.valueOf(value.toString().substring(1)));
+        unmarshallers.put(boolean.class, "yes"::equals);
+        unmarshallers.put(String.class, value -> value);
+        Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap = new HashMap<>();
+        unmarshallerMap.put(null, unmarshallers);
+
+        assertThat(decode(out.toByteArray(), unmarshallerMap).get(0)).containsEntry("id", 7)
+            .containsEntry("score", 1d).containsEntry("active", true);
+    }
+
+    @Entity(name = "binarysample")
+    public record Sample(@Id int id, String name, double score, float ratio, boolean active,
+                         Long visits) {}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.gson.JsonParser;
+import grevend.persistencelite.PersistenceLite;
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.service.memory.MemoryService;
+import grevend.persistencelite.service.rest.RestMode;
+import grevend.persistencelite.service.rest.RestService;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.Test;
+
+class EntityHandlerTest {
+
+    private static ZonedDateTime now() {
+        return ZonedDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    @Test
+    void testTouchPropagatesToSuperAndSubTypes() {
+        var vehicle = EntityMetadata.of(Vehicle.class);
+        var car = EntityMetadata.of(Car.class);
+        var bike = EntityMetadata.of(Bike.class);
+        var generations = new long[]{EntityHandler.generation(vehicle),
+            EntityHandler.generation(car), EntityHandler.generation(bike)};
+        EntityHandler.touch(car);
+        assertThat(EntityHandler.generation(vehicle)).isEqualTo(generations[0] + 1);
+        assertThat(EntityHandler.generation(car)).isEqualTo(generations[1] + 1);
+        assertThat(EntityHandler.generation(bike)).isEqualTo(generations[2]);
+        EntityHandler.touch(vehicle);
+        assertThat(EntityHandler.generation(vehicle)).isEqualTo(generations[0] + 2);
+        assertThat(EntityHandler.generation(car)).isEqualTo(generations[1] + 2);
+        assertThat(EntityHandler.generation(bike)).isEqualTo(generations[2] + 1);
+    }
+
+    @Test
+    void testLastModifiedIsNeverInTheFuture() {
+        var car = EntityMetadata.of(Car.class);
+        var generation = EntityHandler.generation(car);
+        for (int i = 0; i < 10; i++) {
+            EntityHandler.touch(car);
+        }
+        assertThat(EntityHandler.lastModified(car)).isBeforeOrEqualTo(now());
+        assertThat(EntityHandler.generation(car)).isEqualTo(generation + 10);
+    }
+
+    @Test
+    void testModificationsWithinTheCurrentSecondAreNotHidden() {
+        var bike = EntityMetadata.of(Bike.class);
+        var before = now();
+        EntityHandler.touch(bike);
+        var stamp = EntityHandler.lastModified(bike);
+        if (before.equals(now())) {
+            assertThat(stamp).isBefore(before);
+        } else {
+            assertThat(stamp).isBeforeOrEqualTo(now());
+        }
+    }
+
+    @Test
+    void testFailedBatchOperationsLeaveNoPartialResult() throws Throwable {
+        var memory = PersistenceLite.configure(MemoryService.class).service();
+        var dao = memory.createDao(Pet.class);
+        dao.create(new Pet(1, "Rex")).orThrow();
+        dao.create(new Pet(2, "Bad")).orThrow();
+        var rest = PersistenceLite.configure(RestService.class).mode(RestMode.SERVER).version(1)
+            .scope("grevend.persistencelite.internal.service.rest").uses(memory).service();
+        rest.registerTypeMarshaller(String.class, value -> {
+            if ("Bad".equals(value)) {
+                throw new IllegalArgumentException("Unmarshallable name.");
+            }
+            return value;
+        }, value -> value);
+        var server = rest.start();
+        try {
+            var response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(
+                "http://localhost:" + server.getAddress().getPort() + "/api/v1/batch"))
+                .POST(BodyPublishers.ofString("{\"operations\": [" +
+                    "{\"method\": \"GET\", \"type\": \"batchpet\", \"props\": {}}, " +
+                    "{\"method\": \"GET\", \"type\": \"batchpet\", \"props\": {\"id\": \"1\"}}]}"))
+                .build(), BodyHandlers.ofString());
+            assertThat(response.statusCode()).isEqualTo(200);
+            var results = JsonParser.parseString(response.body()).getAsJsonObject()
+                .getAsJsonArray("results");
+            assertThat(results).hasSize(2);
+            assertThat(results.get(0).getAsJsonObject().get("code").getAsInt()).isEqualTo(400);
+            assertThat(results.get(0).getAsJsonObject().has("body")).isFalse();
+            assertThat(results.get(1).getAsJsonObject().get("code").getAsInt()).isEqualTo(200);
+            assertThat(results.get(1).toString()).contains("Rex").doesNotContain("Bad");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Entity(name = "batchpet")
+    public record Pet(@Id int id, String name) {}
+
+    @Entity(name = "vehicle")
+    public interface Vehicle {
+
+        @Id
+        int id();
+
+    }
+
+    @Entity(name = "car")
+    public record Car(@Id int id, int seats) implements Vehicle {}
+
+    @Entity(name = "bike")
+    public record Bike(@Id int id, int gears) implements Vehicle {}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_16;
+import static java.nio.charset.StandardCharsets.UTF_16LE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.gson.JsonParser;
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class JsonEncoderTest {
+
+    private static String string(String value, Charset charset) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var encoder = new JsonEncoder(out, charset)) {
+            encoder.string(value);
+        }
+        return out.toString(charset);
+    }
+
+    private static String value(Object value, Object marshalled) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var encoder = new JsonEncoder(out, UTF_8)) {
+            encoder.value(value, marshalled);
+        }
+        return out.toString(UTF_8);
+    }
+
+    @Test
+    void testEscaping() throws IOException {
+        assertThat(string("a\"b\\c\n\r\t\b\f\u0001/", UTF_8))
+            .isEqualTo("\"a\\\"b\\\\c\\n\\r\\t\\b\\f\\u0001/\"");
+        assertThat(string("a\"b\\c\n\u0001", ISO_8859_1))
+            .isEqualTo("\"a\\\"b\\\\c\\n\\u0001\"");
+    }
+
+    @Test
+    void testMultiByteCharacters() throws IOException {
+        var value = "ü€😀";
+        assertThat(string(value, UTF_8)).isEqualTo('"' + value + '"');
+        assertThat(JsonParser.parseString(string(value, UTF_8)).getAsString()).isEqualTo(value);
+    }
+
+    @Test
+    void testLoneSurrogatesAreEscaped() throws IOException {
+        for (var charset : new Charset[]{UTF_8, ISO_8859_1, UTF_16}) {
+            assertThat(string("a\uD83Db", charset)).isEqualTo("\"a\\ud83db\"");
+            assertThat(string("a\uDE00", charset)).isEqualTo("\"a\\ude00\"");
+            assertThat(string("\uDE00\uD83D", charset)).isEqualTo("\"\\ude00\\ud83d\"");
+        }
+    }
+
+    @Test
+    void testUnmappableCharactersAreEscaped() throws IOException {
+        var json = string("ü€😀", ISO_8859_1);
+        assertThat(json).isEqualTo("\"ü\\u20ac\\ud83d\\ude00\"");
+        assertThat(JsonParser.parseString(json).getAsString()).isEqualTo("ü€😀");
+    }
+
+    @Test
+    void testCharsetsThatAreNotAsciiCompatible() throws IOException {
+        assertThat(JsonEncoder.compatible(UTF_8)).isTrue();
+        assertThat(JsonEncoder.compatible(ISO_8859_1)).isTrue();
+        assertThat(JsonEncoder.compatible(UTF_16)).isFalse();
+        var entityMetadata = EntityMetadata.of(Note.class);
+        assertThat(JsonEncoder.names(entityMetadata, UTF_16LE)).isEmpty();
+        var out = new ByteArrayOutputStream();
+        try (var encoder = new JsonEncoder(out, UTF_16LE)) {
+            encoder.raw("{").name("text", JsonEncoder.names(entityMetadata, UTF_16LE))
+                .string("€ \"x\"").raw(", ").name("id", Map.of()).value(1, 1).raw(", ")
+                .string("none").raw(": ").value(null, null).raw("}");
+        }
+        assertThat(out.toString(UTF_16LE))
+            .isEqualTo("{\"text\": \"€ \\\"x\\\"\", \"id\": 1, \"none\": null}");
+        out.reset();
+        try (var encoder = new JsonEncoder(out, UTF_16)) {
+            encoder.raw("[").string("a").raw(", ").string("b").raw("]");
+        }
+        assertThat(out.toString(UTF_16)).isEqualTo("[\"a\", \"b\"]");
+    }
+
+    @Test
+    void testLiterals() throws IOException {
+        assertThat(value(1, 1)).isEqualTo("1");
+        assertThat(value(2L, 2L)).isEqualTo("2");
+        assertThat(value(1.5, 1.5)).isEqualTo("1.5");
+        assertThat(value(new BigDecimal("1.10"), new BigDecimal("1.10"))).isEqualTo("1.10");
+        assertThat(value(true, true)).isEqualTo("true");
+        assertThat(value(null, null)).isEqualTo("null");
+        assertThat(value(Double.NaN, Double.NaN)).isEqualTo("\"NaN\"");
+        assertThat(value(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY))
+            .isEqualTo("\"Infinity\"");
+        assertThat(value(3, "3")).isEqualTo("3");
+        assertThat(value(false, "false")).isEqualTo("false");
+        assertThat(value(3, "03")).isEqualTo("\"03\"");
+        assertThat(value("3", "3")).isEqualTo("\"3\"");
+        assertThat(value(null, "x")).isEqualTo("\"x\"");
+    }
+
+    @Entity(name = "note")
+    public record Note(@Id int id, String text) {}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+
+    private static String write(Metrics metrics) throws IOException {
+        var out = new ByteArrayOutputStream();
+        metrics.write(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testRequests() throws IOException {
+        var metrics = new Metrics();
+        metrics.record("pet", "GET", 200, 10, 100, 2_000_000);
+        metrics.record("pet", "GET", 304, 0, 0, 500_000);
+        metrics.record("pet", "PUT", 500, 20, 0, 1_000_000_000);
+        metrics.record("pet", "PUT", -1, 0, 0, 20_000_000_000L);
+        var text = write(metrics);
+        assertThat(text)
+            .contains("persistencelite_http_requests_total{entity=\"pet\",method=\"GET\",code=\"2xx\"} 1\n")
+            .contains("persistencelite_http_requests_total{entity=\"pet\",method=\"GET\",code=\"3xx\"} 1\n")
+            .contains("persistencelite_http_requests_total{entity=\"pet\",method=\"PUT\",code=\"none\"} 1\n")
+            .contains("persistencelite_http_errors_total{entity=\"pet\",method=\"GET\"} 0\n")
+            .contains("persistencelite_http_errors_total{entity=\"pet\",method=\"PUT\"} 2\n")
+            .contains("persistencelite_http_not_modified_total{entity=\"pet\",method=\"GET\"} 1\n")
+            .contains("persistencelite_http_request_bytes_total{entity=\"pet\",method=\"PUT\"} 20\n")
+            .contains("persistencelite_http_response_bytes_total{entity=\"pet\",method=\"GET\"} 100\n")
+            .contains("persistencelite_http_requests_in_flight 0\n");
+    }
+
+    @Test
+    void testHistogram() throws IOException {
+        var metrics = new Metrics();
+        metrics.record("pet", "GET", 200, 0, 0, 500_000);
+        metrics.record("pet", "GET", 200, 0, 0, 3_000_000);
+        metrics.record("pet", "GET", 200, 0, 0, 20_000_000_000L);
+        var text = write(metrics);
+        var labels = "{entity=\"pet\",method=\"GET\",le=";
+        assertThat(text)
+            .contains("persistencelite_http_request_duration_seconds_bucket" + labels + "\"0.001\"} 1\n")
+            .contains("persistencelite_http_request_duration_seconds_bucket" + labels + "\"0.005\"} 2\n")
+            .contains("persistencelite_http_request_duration_seconds_bucket" + labels + "\"10.0\"} 2\n")
+            .contains("persistencelite_http_request_duration_seconds_bucket" + labels + "\"+Inf\"} 3\n")
+            .contains("persistencelite_http_request_duration_seconds_count{entity=\"pet\",method=\"GET\"} 3\n");
+    }
+
+    @Test
+    void testUnknownMethods() throws IOException {
+        var metrics = new Metrics();
+        metrics.record("pet", "BREW", 200, 0, 0, 1_000);
+        metrics.record("pet", "X".repeat(100), 200, 0, 0, 1_000);
+        var text = write(metrics);
+        assertThat(text)
+            .contains("persistencelite_http_requests_total{entity=\"pet\",method=\"OTHER\",code=\"2xx\"} 2\n")
+            .doesNotContain("BREW");
+    }
+
+}
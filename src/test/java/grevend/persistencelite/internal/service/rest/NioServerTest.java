@@ -0,0 +1,299 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import grevend.persistencelite.PersistenceLite;
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.service.memory.MemoryService;
+import grevend.persistencelite.service.rest.RestMode;
+import grevend.persistencelite.service.rest.RestService;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.HashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NioServerTest {
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+        .build();
+    private HttpServer server;
+
+    private static void respond(HttpExchange exchange, int code, long length, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.server = new NioServerProvider(2)
+            .createHttpServer(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/port", exchange -> {
+            var body = String.valueOf(exchange.getRemoteAddress().getPort()).getBytes(UTF_8);
+            respond(exchange, 200, body.length, body);
+        });
+        this.server.createContext("/echo", exchange -> {
+            var body = exchange.getRequestBody().readAllBytes();
+            respond(exchange, 200, body.length == 0 ? -1 : body.length, body);
+        });
+        this.server.createContext("/chunked", exchange -> respond(exchange, 200, 0,
+            "x".repeat(100_000).getBytes(UTF_8)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.server.stop(0);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + this.server.getAddress().getPort() + path);
+    }
+
+    private String raw(String requests) throws IOException {
+        try (var socket = new Socket("localhost", this.server.getAddress().getPort())) {
+            socket.getOutputStream().write(requests.getBytes(ISO_8859_1));
+            socket.getOutputStream().flush();
+            return new String(socket.getInputStream().readAllBytes(), ISO_8859_1);
+        }
+    }
+
+    @Test
+    void testConnectionsAreKeptAlive() throws Exception {
+        this.server.start();
+        var ports = new HashSet<String>();
+        for (int i = 0; i < 5; i++) {
+            var response = this.client.send(HttpRequest.newBuilder(this.uri("/port")).build(),
+                BodyHandlers.ofString());
+            assertThat(response.statusCode()).isEqualTo(200);
+            ports.add(response.body());
+        }
+        assertThat(ports).hasSize(1);
+    }
+
+    @Test
+    void testPipelinedRequestsAreAnsweredInOrder() throws Exception {
+        var order = new AtomicInteger();
+        this.server.createContext("/slow", exchange -> {
+            var query = exchange.getRequestURI().getQuery();
+            try {
+                Thread.sleep(query.equals("a") ? 200 : 0);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            var body = (query + order.incrementAndGet()).getBytes(UTF_8);
+            respond(exchange, 200, body.length, body);
+        });
+        this.server.start();
+        var responses = this.raw(
+            "GET /slow?a HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello"
+                + "GET /slow?b HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+        assertThat(responses.split("HTTP/1.1 200 OK", -1)).hasSize(4);
+        assertThat(responses.indexOf("a1")).isPositive()
+            .isLessThan(responses.indexOf("hello"));
+        assertThat(responses.indexOf("hello")).isLessThan(responses.indexOf("b2"));
+        assertThat(responses).contains("Connection: close");
+    }
+
+    @Test
+    void testChunkedResponsesAndRequests() throws Exception {
+        this.server.start();
+        var response = this.client.send(HttpRequest.newBuilder(this.uri("/chunked")).build(),
+            BodyHandlers.ofString());
+        assertThat(response.headers().firstValue("Transfer-encoding")).hasValue("chunked");
+        assertThat(response.body()).hasSize(100_000);
+        var chunked = this.raw("POST /echo HTTP/1.1\r\nHost: localhost\r\n"
+            + "Transfer-Encoding: chunked\r\nConnection: close\r\n\r\n"
+            + "5;name=value\r\nhello\r\n6\r\n world\r\n0\r\nTrailer: x\r\n\r\n");
+        assertThat(chunked).startsWith("HTTP/1.1 200 OK").contains("Content-length: 11")
+            .endsWith("\r\n\r\nhello world");
+    }
+
+    @Test
+    void testChunkedRequestsArriveInPieces() throws Exception {
+        this.server.start();
+        var expected = new StringBuilder();
+        try (var socket = new Socket("localhost", this.server.getAddress().getPort())) {
+            var out = socket.getOutputStream();
+            out.write(("POST /echo HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n"
+                + "Connection: close\r\n\r\n").getBytes(ISO_8859_1));
+            for (int i = 0; i < 200; i++) {
+                var data = String.valueOf((char) ('a' + i % 26)).repeat(1000 + i);
+                expected.append(data);
+                var chunk = Integer.toHexString(data.length()) + "\r\n" + data + "\r\n";
+                var split = i % 3 == 0 ? 2 : chunk.length() / 2;
+                out.write(chunk.substring(0, split).getBytes(ISO_8859_1));
+                out.flush();
+                out.write(chunk.substring(split).getBytes(ISO_8859_1));
+                out.flush();
+            }
+            out.write("0\r\n\r".getBytes(ISO_8859_1));
+            out.flush();
+            out.write("\n".getBytes(ISO_8859_1));
+            out.flush();
+            var response = new String(socket.getInputStream().readAllBytes(), ISO_8859_1);
+            assertThat(response).startsWith("HTTP/1.1 200 OK")
+                .contains("Content-length: " + expected.length())
+                .endsWith("\r\n\r\n" + expected);
+        }
+    }
+
+    @Test
+    void testExpectContinue() throws Exception {
+        this.server.start();
+        var body = "y".repeat(50_000);
+        var response = this.client.send(HttpRequest.newBuilder(this.uri("/echo")).expectContinue(true)
+            .POST(BodyPublishers.ofString(body)).build(), BodyHandlers.ofString());
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).isEqualTo(body);
+    }
+
+    @Test
+    void testHttp10ClosesTheConnection() throws Exception {
+        this.server.start();
+        assertThat(this.raw("GET /chunked HTTP/1.0\r\n\r\n")).startsWith("HTTP/1.1 200 OK")
+            .contains("Connection: close").doesNotContain("Transfer-encoding")
+            .endsWith("x".repeat(1000));
+    }
+
+    @Test
+    void testUnknownAndMalformedRequests() throws Exception {
+        this.server.start();
+        assertThat(this.raw("GET /missing HTTP/1.1\r\nConnection: close\r\n\r\n"))
+            .startsWith("HTTP/1.1 404 Not Found");
+        assertThat(this.raw("NONSENSE\r\n\r\n")).startsWith("HTTP/1.1 400 Bad Request");
+        assertThat(this.raw("POST /echo HTTP/1.1\r\nContent-Length: x\r\n\r\n"))
+            .startsWith("HTTP/1.1 400 Bad Request");
+        assertThat(this.raw("GET /port HTTP/1.1\r\nX: " + "z".repeat(NioConnection.MAX_HEADER_SIZE)
+            + "\r\n\r\n")).startsWith("HTTP/1.1 431 Request Header Fields Too Large");
+    }
+
+    @Test
+    void testFailingHandlersRespondWithAnError() throws Exception {
+        this.server.createContext("/fail", exchange -> {
+            throw new IllegalStateException();
+        });
+        this.server.start();
+        var response = this.client.send(HttpRequest.newBuilder(this.uri("/fail")).build(),
+            BodyHandlers.ofString());
+        assertThat(response.statusCode()).isEqualTo(500);
+    }
+
+    @Test
+    void testHandlersRunOnTheExecutor() throws Exception {
+        var executor = Executors.newFixedThreadPool(2, runnable -> new Thread(runnable, "custom"));
+        try {
+            var threads = new HashSet<String>();
+            this.server.createContext("/thread", exchange -> {
+                synchronized (threads) {
+                    threads.add(Thread.currentThread().getName());
+                }
+                respond(exchange, 204, -1, new byte[0]);
+            });
+            this.server.setExecutor(executor);
+            this.server.start();
+            for (int i = 0; i < 3; i++) {
+                assertThat(this.client.send(HttpRequest.newBuilder(this.uri("/thread")).build(),
+                    BodyHandlers.discarding()).statusCode()).isEqualTo(204);
+            }
+            assertThat(threads).containsExactly("custom");
+            assertThatThrownBy(() -> this.server.setExecutor(null))
+                .isInstanceOf(IllegalStateException.class);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testContextsMatchTheLongestPrefix() throws Exception {
+        HttpHandler handler = exchange -> {
+            var body = exchange.getHttpContext().getPath().getBytes(UTF_8);
+            respond(exchange, 200, body.length, body);
+        };
+        this.server.createContext("/api", handler);
+        this.server.createContext("/api/v1/pet", handler);
+        this.server.start();
+        assertThat(this.client.send(HttpRequest.newBuilder(this.uri("/api/v1/pet?limit=1")).build(),
+            BodyHandlers.ofString()).body()).isEqualTo("/api/v1/pet");
+        assertThat(this.client.send(HttpRequest.newBuilder(this.uri("/api/v2")).build(),
+            BodyHandlers.ofString()).body()).isEqualTo("/api");
+        assertThatThrownBy(() -> this.server.createContext("/api"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testRestServiceRunsOnTheEngineAndExecutor() throws Throwable {
+        var dispatched = new AtomicInteger();
+        var pool = Executors.newFixedThreadPool(2);
+        var memory = PersistenceLite.configure(MemoryService.class).service();
+        memory.createDao(Pet.class).create(new Pet(1, "Rex")).orThrow();
+        var service = PersistenceLite.configure(RestService.class).mode(RestMode.SERVER)
+            .version(1).scope("grevend.persistencelite.internal.service.rest").uses(memory).nio(2)
+            .executor(task -> {
+                dispatched.incrementAndGet();
+                pool.execute(task);
+            }).service().start();
+        try {
+            assertThat(service).isInstanceOf(NioServer.class);
+            var response = this.client.send(HttpRequest.newBuilder(URI.create(
+                "http://localhost:" + service.getAddress().getPort() + "/api/v1/niopet?limit=10"))
+                .build(), BodyHandlers.ofString());
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.body()).contains("Rex");
+            assertThat(dispatched).hasPositiveValue();
+        } finally {
+            service.stop(0);
+            pool.shutdown();
+        }
+        assertThatThrownBy(() -> PersistenceLite.configure(RestService.class)
+            .mode(RestMode.REQUESTER).nio()).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> PersistenceLite.configure(RestService.class)
+            .mode(RestMode.SERVER).nio(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Entity(name = "niopet")
+    public record Pet(@Id int id, String name) {}
+
+}
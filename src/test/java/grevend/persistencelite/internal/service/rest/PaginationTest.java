@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import grevend.persistencelite.PersistenceLite;
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.internal.dao.BaseDao;
+import grevend.persistencelite.service.memory.MemoryService;
+import grevend.persistencelite.util.TypeMarshaller;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class PaginationTest {
+
+    private static Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallers() {
+        Map<Class<?>, TypeMarshaller<Object, Object>> unmarshallers = new HashMap<>();
+        unmarshallers.put(int.class, value -> Integer.valueOf(value.toString()));
+        unmarshallers.put(String.class, value -> value);
+        Map<Class<?>, Map<Class<?>, TypeMarshaller<Object, Object>>> unmarshallerMap = new HashMap<>();
+        unmarshallerMap.put(null, unmarshallers);
+        return unmarshallerMap;
+    }
+
+    private static List<Object> after(String token) {
+        return Pagination.after(EntityMetadata.of(Tag.class), Map.of(Pagination.AFTER,
+            List.of(token)), unmarshallers());
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(UTF_8));
+    }
+
+    @Test
+    void testLimit() {
+        assertThat(Pagination.limit(Map.of())).isZero();
+        assertThat(Pagination.limit(Map.of(Pagination.LIMIT, List.of("25")))).isEqualTo(25);
+        for (var limit : List.of("0", "-1", "abc", "", Integer.toString(Integer.MAX_VALUE))) {
+            assertThatThrownBy(() -> Pagination.limit(Map.of(Pagination.LIMIT, List.of(limit))))
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void testTokenRoundTrip() {
+        var tag = EntityMetadata.of(Tag.class);
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", 42);
+        row.put("label", "a \"b\" & ü/+=");
+        var token = Pagination.token(tag, row, new HashMap<>());
+        var link = Pagination.link(URI.create("/api/v1/tag?label=x&limit=5&after=old&sort"), 10,
+            token);
+
+        assertThat(link).startsWith("</api/v1/tag?label=x&sort&limit=10&after=")
+            .endsWith(">; rel=\"next\"").doesNotContain("old");
+        assertThat(Pagination.next(link)).isEqualTo(token);
+        assertThat(after(Pagination.next(link))).containsExactly(42, "a \"b\" & ü/+=");
+    }
+
+    @Test
+    void testNext() {
+        assertThat(Pagination.next(null)).isNull();
+        assertThat(Pagination.next("</api/v1/tag?after=abc>; rel=\"prev\"")).isNull();
+        assertThat(Pagination.next("</api/v1/tag?limit=2>; rel=\"next\"")).isNull();
+        assertThat(Pagination.next("</api/v1/tag?after=abc&limit=2>; rel=\"next\""))
+            .isEqualTo("abc");
+    }
+
+    @Test
+    void testMalformedTokens() {
+        assertThat(Pagination.after(EntityMetadata.of(Tag.class), Map.of(), unmarshallers()))
+            .isNull();
+        for (var token : List.of("not base64!", encode("{"), encode("null"), encode("[\"1\"]"),
+            encode("[\"1\", \"a\", \"b\"]"), encode("{\"id\": 1}"))) {
+            assertThatThrownBy(() -> after(token)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void testPageWithoutDatabasePaging() throws Throwable {
+        var memory = PersistenceLite.configure(MemoryService.class).service();
+        var dao = memory.createDao(Tag.class);
+        for (var id : List.of(3, 1, 5, 2, 4)) {
+            dao.create(new Tag(id, "tag" + id)).orThrow();
+        }
+        var daoImpl = ((BaseDao<?, ?>) dao).daoImpl();
+        var tag = EntityMetadata.of(Tag.class);
+        List<Object> ids = new ArrayList<>();
+        List<Object> after = null;
+        List<Map<String, Object>> page;
+        do {
+            page = Pagination.page(daoImpl, tag, Map.of(), after, 2);
+            assertThat(page.size()).isLessThanOrEqualTo(2);
+            for (var row : page) {
+                ids.add(row.get("id"));
+                after = List.of(row.get("id"), row.get("label"));
+            }
+        } while (!page.isEmpty());
+        assertThat(ids).containsExactly(1, 2, 3, 4, 5);
+    }
+
+    @Entity(name = "pagetag")
+    public record Tag(@Id int id, @Id String label) {}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class RestCodecTest {
+
+    private static final String RESPONSE = "{\"entities\": [" +
+        "{\"props\": {\"id\": \"1\", \"name\": \"Ann\"}}, " +
+        "{\"props\": {\"id\": \"2\", \"name\": \"Bob\"}}]}";
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private ByteArrayInputStream body() {
+        return new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)) {
+
+            @Override
+            public void close() {
+                RestCodecTest.this.closed.set(true);
+            }
+
+        };
+    }
+
+    @Test
+    void testRowsAreReleasedOnceReadCompletely() {
+        var complete = new AtomicReference<List<Map<String, Object>>>();
+        var rows = RestCodec.rows(EntityMetadata.of(Owner.class), this.body(), false,
+            new HashMap<>(), complete::set);
+        assertThat(rows).extracting(row -> row.get("name")).containsExactly("Ann", "Bob");
+        assertThat(this.closed).isTrue();
+        assertThat(complete.get()).hasSize(2);
+    }
+
+    @Test
+    void testClosingAbandonedRowsReleasesTheResponse() throws Exception {
+        var complete = new AtomicReference<List<Map<String, Object>>>();
+        var rows = RestCodec.rows(EntityMetadata.of(Owner.class), this.body(), false,
+            new HashMap<>(), complete::set);
+        assertThat(rows.iterator().next()).containsEntry("name", "Ann");
+        assertThat(this.closed).isFalse();
+
+        assertThat(rows).isInstanceOf(AutoCloseable.class);
+        ((AutoCloseable) rows).close();
+        assertThat(this.closed).isTrue();
+        assertThat(complete.get()).isNull();
+        assertThat(rows).extracting(row -> row.get("name")).containsExactly("Ann");
+    }
+
+    @Entity(name = "owner")
+    public record Owner(@Id int id, String name) {}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.sql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import grevend.persistencelite.internal.cache.IdentityMap;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ConnectionPoolTest {
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicBoolean valid = new AtomicBoolean(true);
+
+    private Connection connection() {
+        var autoCommit = new AtomicBoolean(true);
+        var open = new AtomicBoolean(true);
+        this.opened.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "isClosed" -> !open.get();
+                case "isValid" -> open.get() && this.valid.get();
+                case "getAutoCommit" -> autoCommit.get();
+                case "setAutoCommit" -> {
+                    autoCommit.set((Boolean) args[0]);
+                    yield null;
+                }
+                case "close" -> {
+                    if (open.getAndSet(false)) { this.closed.incrementAndGet(); }
+                    yield null;
+                }
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> null;
+            });
+    }
+
+    @Test
+    void testReuse() throws SQLException {
+        var pool = new ConnectionPool(this::connection, 2);
+        var connection = pool.acquire();
+        pool.release(connection);
+        assertThat(pool.acquire()).isSameAs(connection);
+        assertThat(this.opened).hasValue(1);
+    }
+
+    @Test
+    void testCapacity() throws SQLException {
+        var pool = new ConnectionPool(this::connection, 2, Duration.ofMillis(50));
+        var first = pool.acquire();
+        var second = pool.acquire();
+        assertThatThrownBy(pool::acquire).isInstanceOf(SQLTransientConnectionException.class);
+        pool.release(first);
+        assertThat(pool.acquire()).isSameAs(first);
+        pool.release(first);
+        pool.release(second);
+        assertThat(pool.idle()).isEqualTo(2);
+        assertThat(this.opened).hasValue(2);
+    }
+
+    @Test
+    void testUnboundedPoolOnlyLimitsIdleConnections() throws SQLException {
+        var pool = ConnectionPool.unbounded(this::connection, 2);
+        List<Connection> connections = new ArrayList<>();
+        for (var i = 0; i < 5; i++) {
+            connections.add(pool.acquire());
+        }
+        assertThat(connections).doesNotHaveDuplicates();
+        for (var connection : connections) {
+            pool.release(connection);
+        }
+        assertThat(pool.idle()).isEqualTo(2);
+        assertThat(this.closed).hasValue(3);
+        assertThat(pool.acquire()).isIn(connections);
+        assertThat(this.opened).hasValue(5);
+    }
+
+    @Test
+    void testAcquireWaitsForRelease() throws Exception {
+        var pool = new ConnectionPool(this::connection, 1, Duration.ofSeconds(5));
+        var connection = pool.acquire();
+        var waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire();
+            } catch (SQLException exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+        Thread.sleep(50);
+        assertThat(waiting).isNotDone();
+        pool.release(connection);
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isSameAs(connection);
+    }
+
+    @Test
+    void testReleaseIsIdempotent() throws SQLException {
+        var pool = new ConnectionPool(this::connection, 1, Duration.ofMillis(50));
+        var connection = pool.acquire();
+        pool.release(connection);
+        pool.release(connection);
+        assertThat(pool.acquire()).isSameAs(connection);
+        assertThatThrownBy(pool::acquire).isInstanceOf(SQLTransientConnectionException.class);
+    }
+
+    @Test
+    void testBrokenIdleConnectionsAreDiscarded() throws Exception {
+        var pool = new ConnectionPool(this::connection, 2);
+        var connection = pool.acquire();
+        pool.release(connection);
+        Thread.sleep(600);
+        this.valid.set(false);
+        var replacement = pool.acquire();
+        assertThat(replacement).isNotSameAs(connection);
+        assertThat(connection.isClosed()).isTrue();
+        assertThat(this.opened).hasValue(2);
+    }
+
+    @Test
+    void testReleaseResetsTransaction() throws SQLException {
+        var pool = new ConnectionPool(this::connection, 2);
+        try (var transaction = new SqlTransaction(pool.acquire(), new IdentityMap(), pool)) {
+            transaction.begin();
+            assertThat(transaction.started()).isTrue();
+        }
+        assertThat(pool.acquire().getAutoCommit()).isTrue();
+        assertThat(this.closed).hasValue(0);
+    }
+
+    @Test
+    void testClose() throws SQLException {
+        var pool = new ConnectionPool(this::connection, 2);
+        var idle = pool.acquire();
+        var used = pool.acquire();
+        pool.release(idle);
+        pool.close();
+        assertThat(idle.isClosed()).isTrue();
+        pool.release(used);
+        assertThat(used.isClosed()).isTrue();
+        assertThat(this.closed).hasValue(2);
+        assertThatThrownBy(pool::acquire).isInstanceOf(IllegalStateException.class);
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.sql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PreparedStatementFactoryTest {
+
+    private static final String SELECT = "select distinct * from toy where owner = ?";
+    private static final String ORDER = " order by toy.id, toy.kind limit 10";
+
+    private final PreparedStatementFactory factory = new PreparedStatementFactory();
+
+    @Test
+    void testPrepareCount() {
+        assertThat(this.factory.prepareCountWithAttributes(EntityMetadata.of(Toy.class),
+            List.of("owner"))).isEqualTo("select count(*) from (" + SELECT + ") as \"relation\"");
+    }
+
+    @Test
+    void testPrepareExists() {
+        var toy = EntityMetadata.of(Toy.class);
+        assertThat(this.factory.prepareExistsWithAttributes(toy, List.of("owner"), false))
+            .isEqualTo("select exists(" + SELECT + ")");
+        assertThat(this.factory.prepareExistsWithAttributes(toy, List.of("owner"), true))
+            .isEqualTo("select exists(" + SELECT + " and toy.id = ? and toy.kind = ?)");
+    }
+
+    @Test
+    void testPreparePage() {
+        var toy = EntityMetadata.of(Toy.class);
+        assertThat(this.factory.preparePageWithAttributes(toy, List.of("owner"), false, 10))
+            .isEqualTo(SELECT + ORDER);
+        assertThat(this.factory.preparePageWithAttributes(toy, List.of("owner"), true, 10))
+            .isEqualTo(SELECT + " and (toy.id, toy.kind) > (?, ?)" + ORDER);
+        assertThat(this.factory.preparePageWithAttributes(toy, List.of(), true, 10))
+            .isEqualTo("select distinct * from toy where (toy.id, toy.kind) > (?, ?)" + ORDER);
+    }
+
+    @Entity(name = "toy")
+    public record Toy(@Id int id, @Id String kind, int owner) {}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.sql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import grevend.persistencelite.dao.VersionConflictException;
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.entity.Relation;
+import grevend.persistencelite.entity.Version;
+import grevend.persistencelite.internal.dao.BaseDao;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SqlDaoTest {
+
+    private static Object identity(Object proxy, String method, Object[] args) {
+        return switch (method) {
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> null;
+        };
+    }
+
+    /**
+     * A result set over one row with the given columns.
+     */
+    private static ResultSet resultSet(Map<String, Object> row) {
+        var columns = List.copyOf(row.keySet());
+        var metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+            ResultSetMetaData.class.getClassLoader(), new Class<?>[]{ResultSetMetaData.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getColumnCount" -> columns.size();
+                case "getColumnName" -> columns.get((int) args[0] - 1);
+                default -> identity(proxy, method.getName(), args);
+            });
+        var next = new AtomicBoolean(true);
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+            new Class<?>[]{ResultSet.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "next" -> next.getAndSet(false);
+                case "getMetaData" -> metaData;
+                case "getObject", "getLong" -> row.get(columns.get((int) args[0] - 1));
+                default -> identity(proxy, method.getName(), args);
+            });
+    }
+
+    private static Connection connection() {
+        return connection(1);
+    }
+
+    /**
+     * A connection on which every keeper has one toy and every update affects the given number of
+     * rows.
+     */
+    private static Connection connection(int updated) {
+        var autoCommit = new AtomicBoolean(true);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "prepareStatement" -> {
+                    var sql = (String) args[0];
+                    yield Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class},
+                        (statement, call, values) -> switch (call.getName()) {
+                            case "executeQuery" -> resultSet(sql.startsWith("select count(*)")
+                                ? Map.of("count", 1L) : Map.of("id", 1));
+                            case "executeUpdate" -> updated;
+                            default -> identity(statement, call.getName(), values);
+                        });
+                }
+                case "setAutoCommit" -> {
+                    autoCommit.set((boolean) args[0]);
+                    yield null;
+                }
+                case "getAutoCommit" -> autoCommit.get();
+                case "isClosed" -> false;
+                default -> identity(proxy, method.getName(), args);
+            });
+    }
+
+    private static SqlTransaction transaction() {
+        return new SqlTransaction(connection());
+    }
+
+    @Test
+    void testRelationLookupsKeepTheIdentityMapOfTheTransaction() throws Throwable {
+        var lookups = new AtomicInteger();
+        var transaction = new SqlTransaction(connection());
+        var entityMetadata = EntityMetadata.of(Keeper.class);
+        var dao = new BaseDao<>(entityMetadata, new SqlDao<>(entityMetadata, transaction, () -> {
+            lookups.incrementAndGet();
+            return new SqlTransaction(connection());
+        }, new HashMap<>()), () -> transaction, transaction, true, new HashMap<>(),
+            new HashMap<>());
+        transaction.begin();
+
+        var keeper = dao.retrieveById(Map.of("id", 1)).orThrow();
+        assertThat(keeper.toys()).hasSize(1);
+        assertThat(lookups).hasValue(1);
+        assertThat(dao.retrieveById(Map.of("id", 1)).orThrow()).isSameAs(keeper);
+
+        transaction.commit();
+        assertThat(dao.retrieveById(Map.of("id", 1)).orThrow()).isNotSameAs(keeper);
+    }
+
+    @Test
+    void testBorrowedIdentityMapsAreNotCleared() throws SQLException {
+        var transaction = new SqlTransaction(connection());
+        var identityMap = transaction.identityMap();
+        var entityMetadata = EntityMetadata.of(Toy.class);
+        identityMap.putIfAbsent(entityMetadata, Map.of("id", 1, "keeper", 1), new Toy(1, 1));
+        new SqlTransaction(connection(), identityMap, null, false).close();
+        assertThat(identityMap.get(entityMetadata, Map.of("id", 1))).isEqualTo(new Toy(1, 1));
+        transaction.close();
+        assertThat(identityMap.get(entityMetadata, Map.of("id", 1))).isNull();
+    }
+
+    @Test
+    void testUpdatesOfStaleVersionsConflict() throws SQLException {
+        var entityMetadata = EntityMetadata.of(Note.class);
+        List<Map<String, Object>> components = List.of(Map.of("id", 1, "text", "a", "version", 2));
+        new SqlDao<>(entityMetadata, new SqlTransaction(connection(1)),
+            SqlDaoTest::transaction, new HashMap<>())
+            .update(components, Map.of("text", "b"));
+        assertThatThrownBy(() -> new SqlDao<>(entityMetadata, new SqlTransaction(connection(0)),
+            SqlDaoTest::transaction, new HashMap<>()).update(components, Map.of("text", "b")))
+            .isInstanceOf(VersionConflictException.class)
+            .extracting(exception -> ((VersionConflictException) exception).version())
+            .isEqualTo(2);
+    }
+
+    @Entity(name = "keeper")
+    public record Keeper(@Id int id, @Relation(selfProperties = "id", targetEntity = Toy.class,
+        targetProperties = "keeper") Collection<Toy> toys) {}
+
+    @Entity(name = "toy")
+    public record Toy(@Id int id, int keeper) {}
+
+    @Entity(name = "note")
+    public record Note(@Id int id, String text, @Version int version) {}
+
+}
@@ -0,0 +1,284 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.internal.service.sql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import grevend.persistencelite.dao.Transaction;
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.EntityMetadata;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.internal.cache.IdentityMap;
+import grevend.persistencelite.internal.entity.EntityRelation;
+import grevend.persistencelite.internal.entity.EntityRelationType;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class SqlRelationTest {
+
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger queries = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicInteger closedResults = new AtomicInteger();
+    private final Deque<List<Map<String, Object>>> results = new ArrayDeque<>();
+    private final List<String> statements = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Map<String, Object> results) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> results.get(method.getName());
+            });
+    }
+
+    private static List<Map<String, Object>> pets(int from, int to) {
+        return IntStream.rangeClosed(from, to).mapToObj(id -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", id);
+            row.put("owner", 1);
+            return row;
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * A result set over the given rows, all rows have the columns of the first row.
+     */
+    private ResultSet resultSet(List<Map<String, Object>> rows) {
+        var columns = rows.isEmpty() ? List.<String>of() : List.copyOf(rows.get(0).keySet());
+        var metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+            ResultSetMetaData.class.getClassLoader(), new Class<?>[]{ResultSetMetaData.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getColumnCount" -> columns.size();
+                case "getColumnName" -> columns.get((int) args[0] - 1);
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> null;
+            });
+        var row = new AtomicInteger(-1);
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+            new Class<?>[]{ResultSet.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "next" -> row.incrementAndGet() < rows.size();
+                case "getMetaData" -> metaData;
+                case "getObject", "getLong", "getBoolean" -> rows.get(row.get())
+                    .get(columns.get((int) args[0] - 1));
+                case "close" -> this.closedResults.incrementAndGet();
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> null;
+            });
+    }
+
+    /**
+     * A connection whose statements find the {@link #results} in order and no rows once they are
+     * used up, the first {@link #failures} statements fail.
+     */
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "prepareStatement" -> {
+                    this.queries.incrementAndGet();
+                    if (this.failures.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0) {
+                        throw new SQLException("Connection reset.");
+                    }
+                    this.statements.add((String) args[0]);
+                    yield Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class},
+                        (statement, call, values) -> switch (call.getName()) {
+                            case "executeQuery" -> this.resultSet(
+                                Objects.requireNonNullElse(this.results.poll(), List.of()));
+                            case "setObject" -> this.parameters.add(values[1]);
+                            case "hashCode" -> System.identityHashCode(statement);
+                            case "equals" -> statement == values[0];
+                            default -> null;
+                        });
+                }
+                case "close" -> this.closed.incrementAndGet();
+                case "isClosed" -> false;
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> null;
+            });
+    }
+
+    private SqlRelation<Pet> relation() {
+        return this.relation(Pet.class);
+    }
+
+    private <E> SqlRelation<E> relation(Class<E> target) {
+        Supplier<Transaction> transactionSupplier = () -> new SqlTransaction(this.connection(),
+            new IdentityMap());
+        Map<String, Object> values = new HashMap<>();
+        values.put("id", 1);
+        return new SqlRelation<>(EntityMetadata.of(Owner.class), new EntityRelation(
+            new String[]{"id"}, target, new String[]{"owner"}, EntityRelationType.ONE_TO_MANY,
+            false), values, transactionSupplier, new HashMap<>());
+    }
+
+    @Test
+    void testFailedRetrieveIsNotRemembered() {
+        var relation = this.relation();
+        this.failures.set(1);
+        assertThatThrownBy(relation::toArray).isInstanceOf(IllegalStateException.class)
+            .hasCauseInstanceOf(SQLException.class);
+        assertThat(relation.toArray()).isEmpty();
+        assertThat(this.queries).hasValue(2);
+    }
+
+    @Test
+    void testFailedPrefetchIsRetriedOnAccess() {
+        var relation = this.relation();
+        this.failures.set(1);
+        relation.prefetch(Runnable::run);
+        assertThat(this.queries).hasValue(1);
+        assertThat(relation.toArray()).isEmpty();
+        assertThat(this.queries).hasValue(2);
+    }
+
+    @Test
+    void testSizeIsCountedByTheDatabase() {
+        this.results.add(List.of(Map.of("count", 3L)));
+        assertThat(this.relation().size()).isEqualTo(3);
+        assertThat(this.statements).hasSize(1);
+        assertThat(this.statements.get(0)).startsWith("select count(*)");
+        assertThat(this.closed).hasValue(1);
+        assertThat(this.closedResults).hasValue(1);
+    }
+
+    @Test
+    void testContainsChecksTheExistenceOfTheElement() {
+        this.results.add(List.of(Map.of("exists", true)));
+        this.results.add(List.of(Map.of("exists", true)));
+        assertThat(this.relation().contains(new Pet(7, 1))).isTrue();
+        assertThat(this.statements).hasSize(1);
+        assertThat(this.statements.get(0)).startsWith("select exists(");
+        assertThat(this.parameters).containsExactly(1, 7);
+        assertThat(this.relation().isEmpty()).isFalse();
+        assertThat(this.closed).hasValue(2);
+    }
+
+    @Test
+    void testIteratorPagesByKey() {
+        this.results.add(pets(1, SqlRelation.PAGE_SIZE));
+        this.results.add(pets(SqlRelation.PAGE_SIZE + 1, SqlRelation.PAGE_SIZE + 2));
+        var iterator = this.relation().iterator();
+        assertThat(this.queries).hasValue(1);
+        List<Integer> ids = new ArrayList<>();
+        iterator.forEachRemaining(pet -> ids.add(pet.id()));
+
+        assertThat(ids).hasSize(SqlRelation.PAGE_SIZE + 2).isSorted().startsWith(1)
+            .endsWith(SqlRelation.PAGE_SIZE + 2);
+        assertThat(this.statements).hasSize(2);
+        assertThat(this.statements.get(0)).doesNotContain(") > (")
+            .endsWith(" limit " + SqlRelation.PAGE_SIZE);
+        assertThat(this.statements.get(1)).contains(") > (");
+        assertThat(this.parameters).containsExactly(1, 1, SqlRelation.PAGE_SIZE);
+        assertThat(this.closed).hasValue(2);
+        assertThat(this.closedResults).hasValue(2);
+        assertThatThrownBy(iterator::next).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void testFailedPageClosesTheTransaction() {
+        this.results.add(pets(1, SqlRelation.PAGE_SIZE));
+        var iterator = this.relation().iterator();
+        for (var i = 0; i < SqlRelation.PAGE_SIZE; i++) {
+            iterator.next();
+        }
+        this.failures.set(1);
+        assertThatThrownBy(iterator::hasNext).isInstanceOf(IllegalStateException.class)
+            .hasRootCauseInstanceOf(SQLException.class);
+        assertThat(this.closed).hasValue(2);
+    }
+
+    @Test
+    void testUnionResultsKeepTheOrderOfTheSubTypes() {
+        var subTypes = List.copyOf(EntityMetadata.of(Animal.class).subTypes());
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (var id = 1; id <= 6; id++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(PreparedStatementFactory.DISCRIMINATOR, id % 2);
+            row.put("id", id);
+            row.put("owner", 1);
+            rows.add(row);
+        }
+        this.results.add(rows);
+
+        var animals = this.relation(Animal.class).toArray();
+        assertThat(this.statements).hasSize(1);
+        assertThat(this.statements.get(0)).contains(" union all ");
+        assertThat(animals).extracting(animal -> ((Animal) animal).id())
+            .containsExactly(2, 4, 6, 1, 3, 5);
+        assertThat(animals).extracting(Object::getClass).containsExactly(
+            subTypes.get(0).entityClass(), subTypes.get(0).entityClass(),
+            subTypes.get(0).entityClass(), subTypes.get(1).entityClass(),
+            subTypes.get(1).entityClass(), subTypes.get(1).entityClass());
+        assertThat(this.closedResults).hasValue(1);
+    }
+
+    @Entity(name = "owner")
+    public record Owner(@Id int id) {}
+
+    @Entity(name = "pet")
+    public record Pet(@Id int id, int owner) {}
+
+    @Entity(name = "animal")
+    public interface Animal {
+
+        @Id
+        int id();
+
+        int owner();
+
+    }
+
+    @Entity(name = "dog")
+    public record Dog(@Id int id, int owner) implements Animal {}
+
+    @Entity(name = "cat")
+    public record Cat(@Id int id, int owner) implements Animal {}
+
+}
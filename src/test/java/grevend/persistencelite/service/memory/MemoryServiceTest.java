@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.service.memory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import grevend.persistencelite.PersistenceLite;
+import grevend.persistencelite.dao.VersionConflictException;
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.entity.Property;
+import grevend.persistencelite.entity.Version;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class MemoryServiceTest {
+
+    @Test
+    void testCreateAndRetrieve() throws Throwable {
+        var dao = PersistenceLite.configure(MemoryService.class).service().createDao(Pet.class);
+        var created = dao.create(new Pet(0, "Rex", 7)).orThrow();
+        assertThat(created.id()).isPositive();
+        dao.create(new Pet(0, "Tom", 7)).orThrow();
+        dao.create(new Pet(0, "Jerry", 8)).orThrow();
+
+        assertThat(dao.retrieveById("id", created.id()).orThrow()).isEqualTo(created);
+        assertThat(dao.retrieveByProps("ownerId", 7).orThrow()).hasSize(2);
+        assertThat(dao.retrieveByProps("owner_id", 8).orThrow()).extracting(Pet::name)
+            .containsExactly("Jerry");
+        assertThat(dao.retrieveAll().orThrow()).hasSize(3);
+    }
+
+    @Test
+    void testIndexIsMaintainedOnUpdateAndDelete() throws Throwable {
+        var dao = PersistenceLite.configure(MemoryService.class).index(Pet.class, "ownerId")
+            .service().createDao(Pet.class);
+        var pet = dao.create(new Pet(0, "Rex", 7)).orThrow();
+
+        dao.update(pet, "ownerId", 9).orThrow();
+        assertThat(dao.retrieveByProps("ownerId", 7).orThrow()).isEmpty();
+        assertThat(dao.retrieveByProps("ownerId", 9).orThrow()).hasSize(1);
+
+        dao.delete("id", pet.id()).orThrow();
+        assertThat(dao.retrieveByProps("ownerId", 9).orThrow()).isEmpty();
+        assertThat(dao.retrieveAll().orThrow()).isEmpty();
+    }
+
+    @Test
+    void testConcurrentReadersNeverMissUpdatedRows() throws Throwable {
+        var dao = PersistenceLite.configure(MemoryService.class).index(Pet.class, "ownerId")
+            .service().createDao(Pet.class);
+        var pet = dao.create(new Pet(0, "Rex", 7)).orThrow();
+        var writer = new Thread(() -> {
+            for (var i = 0; i < 2000; i++) {
+                dao.update(pet, "name", "Rex " + i);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            assertThat(dao.retrieveAll().orThrow()).hasSize(1);
+            assertThat(dao.retrieveByProps("ownerId", 7).orThrow()).hasSize(1);
+        }
+        writer.join();
+        assertThat(dao.retrieveById("id", pet.id()).orThrow().name()).isEqualTo("Rex 1999");
+    }
+
+    @Test
+    void testCollectionOperations() throws Throwable {
+        var dao = PersistenceLite.configure(MemoryService.class).service().createDao(Pet.class);
+        var created = dao.create(List.of(new Pet(0, "Rex", 7), new Pet(0, "Tom", 8))).orThrow();
+        assertThat(created).extracting(Pet::name).containsExactly("Rex", "Tom");
+
+        var pets = List.copyOf(dao.retrieveByIds(List.of("id"), created.stream()
+            .map(pet -> List.<Object>of(pet.id())).collect(Collectors.toList())).orThrow());
+        assertThat(pets).containsExactlyElementsOf(created);
+
+        var updated = dao.update(pets, List.of(Map.of("name", "Max"), Map.of("name", "Tim")))
+            .orThrow();
+        assertThat(updated).extracting(Pet::name).containsExactly("Max", "Tim");
+
+        dao.delete(updated).orThrow();
+        assertThat(dao.retrieveAll().orThrow()).isEmpty();
+    }
+
+    @Test
+    void testVersionConflict() throws Throwable {
+        var dao = PersistenceLite.configure(MemoryService.class).service()
+            .createDao(Document.class);
+        var document = dao.create(new Document(1, "draft", 0)).orThrow();
+
+        var updated = dao.update(document, "title", "final").orThrow();
+        assertThat(updated.version()).isEqualTo(1);
+        assertThatThrownBy(() -> dao.update(document, "title", "stale").orThrow())
+            .isInstanceOf(VersionConflictException.class);
+        assertThat(dao.retrieveById(Map.of("id", 1)).orThrow().title()).isEqualTo("final");
+    }
+
+    @Entity(name = "pet")
+    public record Pet(@Id(autoGenerated = true) int id, String name, @Property(name = "owner_id") int ownerId) {}
+
+    @Entity(name = "document")
+    public record Document(@Id int id, String title, @Version int version) {}
+
+}
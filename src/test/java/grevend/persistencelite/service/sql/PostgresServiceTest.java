@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 David Greven
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package grevend.persistencelite.service.sql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import grevend.persistencelite.PersistenceLite;
+import grevend.persistencelite.dao.Dao;
+import grevend.persistencelite.entity.Entity;
+import grevend.persistencelite.entity.Id;
+import grevend.persistencelite.internal.dao.BaseDao;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PostgresServiceTest {
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final Driver driver = new Driver() {
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            return this.acceptsURL(url) ? PostgresServiceTest.this.connection() : null;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:postgresql://localhost:1/");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 0;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+
+    };
+
+    private Connection connection() {
+        var autoCommit = new AtomicBoolean(true);
+        var open = new AtomicBoolean(true);
+        this.opened.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "isClosed" -> !open.get();
+                case "isValid" -> open.get();
+                case "getAutoCommit" -> autoCommit.get();
+                case "setAutoCommit" -> {
+                    autoCommit.set((Boolean) args[0]);
+                    yield null;
+                }
+                case "close" -> {
+                    if (open.getAndSet(false)) { this.closed.incrementAndGet(); }
+                    yield null;
+                }
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> null;
+            });
+    }
+
+    @BeforeEach
+    void registerDriver() throws SQLException {
+        DriverManager.registerDriver(this.driver);
+    }
+
+    @AfterEach
+    void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(this.driver);
+    }
+
+    @Test
+    void testMoreDaosThanPooledConnections() throws Exception {
+        var service = PersistenceLite.configure(PostgresService.class).service();
+        service.getProperties().setProperty("user", "user");
+        service.getProperties().setProperty("password", "password");
+        service.getProperties().setProperty("sqlHost", "localhost");
+        service.getProperties().setProperty("sqlPort", "1");
+
+        List<Dao<Crate>> daos = new ArrayList<>();
+        for (var i = 0; i < PostgresService.DEFAULT_POOL_SIZE * 2; i++) {
+            daos.add(service.createDao(Crate.class));
+        }
+        assertThat(daos).allMatch(dao -> dao instanceof BaseDao);
+        assertThat(this.opened).hasValue(PostgresService.DEFAULT_POOL_SIZE * 2);
+        service.close();
+    }
+
+    @Entity(name = "crate")
+    public record Crate(@Id int id) {}
+
+}